@@ -9,6 +9,8 @@ import net.fortytwo.smsn.util.TypedProperties;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 public class Brain {
@@ -23,6 +25,9 @@ public class Brain {
     // TODO: make this configurable
     private static final int EVENT_STACK_CAPACITY = 50;
 
+    // the number of identified clients whose histories are kept; the least recently active client is forgotten first
+    private static final int MAX_CLIENT_HISTORIES = 100;
+
     // TODO: make these configurable
     private static final long
             INFERENCE_PERIOD = 1000L * 60,
@@ -38,6 +43,17 @@ public class Brain {
 
     private final EventStack eventStack;
 
+    // the history shared by all clients which do not identify themselves. It is never forgotten
+    private final NoteHistory defaultHistory = new NoteHistory();
+
+    private final Map<String, NoteHistory> historiesByClient
+            = new LinkedHashMap<String, NoteHistory>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, NoteHistory> eldest) {
+            return size() > MAX_CLIENT_HISTORIES;
+        }
+    };
+
     public Brain(final AtomGraph atomGraph) throws BrainException {
         this.atomGraph = atomGraph;
 
@@ -99,6 +115,22 @@ public class Brain {
         return eventStack;
     }
 
+    /**
+     * @param client an identifier of a client, or null for a client which does not identify itself
+     * @return the history of the given client.
+     * Clients which do not identify themselves share a single history, which is kept apart from those of
+     * identified clients, so that it cannot be displaced by them
+     */
+    public NoteHistory getNoteHistory(final String client) {
+        if (null == client || client.isEmpty()) {
+            return defaultHistory;
+        }
+
+        synchronized (historiesByClient) {
+            return historiesByClient.computeIfAbsent(client, c -> new NoteHistory());
+        }
+    }
+
     public class BrainException extends Exception {
         public BrainException(final Throwable cause) {
             super(cause);
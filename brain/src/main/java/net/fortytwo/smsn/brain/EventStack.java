@@ -3,36 +3,80 @@ package net.fortytwo.smsn.brain;
 import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.model.Note;
 
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded stack of recent events, such as gestures, which may be pushed and read concurrently.
+ * Events are kept in a ring buffer, so that pushing an event neither locks nor blocks,
+ * and the oldest event is overwritten once the stack is full.
+ * The stack holds its own copy of each event, and hands out copies, so that events cannot be changed once pushed.
+ */
 public class EventStack {
-    private static final SimpleDateFormat EVENT_TIME_FORMAT
-            = new SimpleDateFormat("HH:mm:ss' on 'yyyy-MM-dd' 'Z");
+    private static final DateTimeFormatter EVENT_TIME_FORMAT
+            = DateTimeFormatter.ofPattern("HH:mm:ss' on 'yyyy-MM-dd' 'Z").withZone(ZoneId.systemDefault());
+
+    // the number of distinct agents for whom a routine name is remembered
+    private static final int DEFAULT_NAMER_CAPACITY = 1000;
 
     private final int capacity;
 
-    private final LinkedList<Note> stack = new LinkedList<>();
+    private final AtomicReferenceArray<Entry> ring;
+    // the sequence number of the next event to be pushed
+    private final AtomicLong head = new AtomicLong();
+    // events with lesser sequence numbers have been cleared
+    private final AtomicLong floor = new AtomicLong();
 
-    private final RoutineNamer personNames = new RoutineNamer("person");
+    private final RoutineNamer personNames;
 
     public EventStack(final int capacity) {
+        this(capacity, DEFAULT_NAMER_CAPACITY);
+    }
+
+    EventStack(final int capacity, final int namerCapacity) {
+        if (capacity < 1 || namerCapacity < 1) {
+            throw new IllegalArgumentException();
+        }
+
         this.capacity = capacity;
+        ring = new AtomicReferenceArray<>(capacity);
+        personNames = new RoutineNamer("person", namerCapacity);
     }
 
+    /**
+     * @return a copy of the events currently in the stack, newest first.
+     * The list does not change as further events are pushed
+     */
     public List<Note> getEvents() {
-        return stack;
+        long h = head.get();
+        long lowest = Math.max(floor.get(), h - capacity);
+
+        List<Note> events = new ArrayList<>((int) Math.max(0, h - lowest));
+        for (long seq = h - 1; seq >= lowest; seq--) {
+            Entry e = ring.get(slotOf(seq));
+            // skip any event which is not yet in place, or which has already been overwritten by a newer one
+            if (null != e && e.sequenceNumber == seq) {
+                events.add(new Note(e.event));
+            }
+        }
+
+        return Collections.unmodifiableList(events);
     }
 
     public void clear() {
-        stack.clear();
-        //for (Atom event : stack) {
-        //    deleteEvent(event);
-        //}
+        long h = head.get();
+        long f;
+        while (h > (f = floor.get()) && !floor.compareAndSet(f, h)) {
+            // retry
+        }
     }
 
     public Note createGestureEvent(final String expressedBy,
@@ -41,7 +85,6 @@ public class EventStack {
         // Use this temporary name only if no actual name is discoverable
         String personName = personNames.getRoutineName(expressedBy);
 
-        //Atom gesture = createAtom();
         Note gesture = new Note();
         gesture.setValue(personName + " did something");
 
@@ -51,7 +94,7 @@ public class EventStack {
         person.setAlias(expressedBy);
 
         Note time = new Note();
-        time.setValue(EVENT_TIME_FORMAT.format(recognizedAt));
+        time.setValue(EVENT_TIME_FORMAT.format(recognizedAt.toInstant()));
 
         gesture.addChild(person);
         gesture.addChild(time);
@@ -60,15 +103,25 @@ public class EventStack {
     }
 
     public void push(final Note n) {
-        setIds(n);
-
-        while (stack.size() >= capacity) {
-            stack.removeLast();
-            //Atom event = stack.removeLast();
-            //deleteEvent(event);
-        }
+        // take a snapshot of the event, so that the caller's later changes do not affect it
+        Note event = new Note(n);
+        setIds(event);
+
+        long seq = head.getAndIncrement();
+        Entry entry = new Entry(seq, event);
+        int slot = slotOf(seq);
+        Entry current;
+        // a pusher delayed since taking its sequence number must not replace a newer event in the same slot
+        do {
+            current = ring.get(slot);
+            if (null != current && current.sequenceNumber > seq) {
+                return;
+            }
+        } while (!ring.compareAndSet(slot, current, entry));
+    }
 
-        stack.push(n);
+    private int slotOf(final long sequenceNumber) {
+        return (int) (sequenceNumber % capacity);
     }
 
     // make the note look like it came from a graph (so it is compatible with Brain-mode views) by giving it an ID
@@ -80,18 +133,34 @@ public class EventStack {
         n.getChildren().forEach(this::setIds);
     }
 
-    // note: instances of this class currently grow without bound
-    private class RoutineNamer {
+    private static class Entry {
+        private final long sequenceNumber;
+        private final Note event;
+
+        private Entry(final long sequenceNumber, final Note event) {
+            this.sequenceNumber = sequenceNumber;
+            this.event = event;
+        }
+    }
+
+    // gives each agent a short name, remembering only the most recently seen agents.
+    // An agent which has been forgotten is given a new name when it is seen again
+    private static class RoutineNamer {
         private final String type;
         private final Map<String, Long> numberByName;
         private long count;
 
-        public RoutineNamer(final String type) {
+        public RoutineNamer(final String type, final int capacity) {
             this.type = type;
-            numberByName = new HashMap<>();
+            numberByName = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                    return size() > capacity;
+                }
+            };
         }
 
-        public String getRoutineName(final String longName) {
+        public synchronized String getRoutineName(final String longName) {
             Long number = numberByName.get(longName);
             if (null == number) {
                 number = ++count;
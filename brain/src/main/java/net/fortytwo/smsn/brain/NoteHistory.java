@@ -4,11 +4,16 @@ import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.model.Filter;
 
-import java.util.Collection;
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
+/**
+ * The most recently visited atoms of a single client, in a ring buffer of atom ids.
+ * Visits may be recorded and read concurrently.
+ */
 public class NoteHistory {
     private static final int CAPACITY = 1000;
 
@@ -20,40 +25,61 @@ public class NoteHistory {
         totalVisits = 0;
     }
 
-    public void visit(final String atomId) {
+    public synchronized void visit(final String atomId) {
         visitedAtoms[totalVisits % CAPACITY] = atomId;
         totalVisits++;
     }
 
-    public List<String> getHistory(final int maxlen,
-                                   final boolean dedup,
-                                   final AtomGraph graph,
-                                   final Filter filter) {
-        Collection<String> r = dedup
-                ? new LinkedHashSet<>()
-                : new LinkedList<>();
-
-        int low = Math.max(totalVisits - CAPACITY, 0);
+    /**
+     * @return the number of visits so far, which changes whenever the history changes
+     */
+    public synchronized int getTotalVisits() {
+        return totalVisits;
+    }
 
-        for (int i = totalVisits - 1; i >= low; i--) {
+    /**
+     * Finds the most recently visited atoms, most recent first.
+     * Atoms are looked up one at a time, in order of recency, until enough visible atoms have been found.
+     *
+     * @param maxlen the maximum number of atoms to return
+     * @param dedup  whether to include each atom only once, at the position of its most recent visit
+     * @param graph  the graph of the atoms
+     * @param filter a filter for visible atoms. Atoms which are not visible, or which no longer exist, are skipped
+     * @return the atoms of the most recent visits
+     */
+    public List<Atom> getHistory(final int maxlen,
+                                 final boolean dedup,
+                                 final AtomGraph graph,
+                                 final Filter filter) {
+        List<Atom> r = new LinkedList<>();
+        for (String id : getRecentIds(dedup)) {
             if (r.size() >= maxlen) {
                 break;
             }
 
-            String id = visitedAtoms[i % CAPACITY];
-
-            Atom v = graph.getAtom(id);
-            if (null != v && filter.isVisible(v)) {
-                r.add(id);
+            Atom a = graph.getAtom(id);
+            if (null != a && filter.isVisible(a)) {
+                r.add(a);
             }
         }
 
-        if (dedup) {
-            List<String> s = new LinkedList<>();
-            s.addAll(r);
-            return s;
-        } else {
-            return (List<String>) r;
+        return r;
+    }
+
+    // copies the ids of the history, most recent first, so that the atoms can be found without holding the lock.
+    // Only ids are copied; no atom is looked up which is not needed
+    private synchronized List<String> getRecentIds(final boolean dedup) {
+        int low = Math.max(totalVisits - CAPACITY, 0);
+
+        List<String> ids = new ArrayList<>(totalVisits - low);
+        Set<String> seen = dedup ? new HashSet<>() : null;
+        for (int i = totalVisits - 1; i >= low; i--) {
+            String id = visitedAtoms[i % CAPACITY];
+            if (!dedup || seen.add(id)) {
+                ids.add(id);
+            }
         }
+
+        return ids;
     }
 }
@@ -1,33 +1,71 @@
 package net.fortytwo.smsn.brain;
 
+import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.error.InvalidGraphException;
 import net.fortytwo.smsn.brain.error.InvalidUpdateException;
+import net.fortytwo.smsn.brain.metrics.SearchEvent;
+import net.fortytwo.smsn.brain.metrics.UpdateEvent;
+import net.fortytwo.smsn.brain.metrics.ViewEvent;
 import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.model.AtomList;
 import net.fortytwo.smsn.brain.model.Filter;
 import net.fortytwo.smsn.brain.model.Note;
 import net.fortytwo.smsn.brain.rdf.KnowledgeBase;
+import net.fortytwo.smsn.brain.ripple.RippleProgram;
+import net.fortytwo.smsn.brain.ripple.RippleStack;
+import net.fortytwo.smsn.brain.util.Deadline;
 import net.fortytwo.smsn.brain.util.ListDiff;
+import net.fortytwo.smsn.util.TypedProperties;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Logger;
 
 public class NoteQueries {
 
     protected static final Logger logger = Logger.getLogger(NoteQueries.class.getName());
 
+    // configuration properties
+    public static final String
+            PROP_VIEW_PARALLELISM = "net.fortytwo.smsn.brain.viewParallelism",
+            PROP_PARALLEL_VIEW_THRESHOLD = "net.fortytwo.smsn.brain.parallelViewThreshold";
+
+    // subtrees of lesser height are expanded by a single thread, as they are too small to be worth dividing
+    private static final int MIN_FORK_HEIGHT = 2;
+
+    private static final int viewParallelism;
+    private static final int parallelViewThreshold;
+
+    static {
+        try {
+            // parallel expansion is off unless configured, as it has not yet been shown to pay off on any backend
+            viewParallelism = SemanticSynchrony.getConfiguration().getInt(PROP_VIEW_PARALLELISM, 1);
+            parallelViewThreshold = SemanticSynchrony.getConfiguration().getInt(PROP_PARALLEL_VIEW_THRESHOLD, 2000);
+        } catch (TypedProperties.PropertyException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static ForkJoinPool viewPool;
+
     public enum QueryType {
         FullText, Acronym, Shortcut
     }
 
     private final Brain brain;
-    //private final QueryEngine rippleQueryEngine;
 
     /**
      * @param brain the Extend-o-Brain instance to query and update
@@ -61,11 +99,180 @@ public class NoteQueries {
             throw new IllegalArgumentException();
         }
 
+        ViewEvent event = new ViewEvent();
+        event.begin();
+
+        if (null != brain.getActivityLog()) {
+            brain.getActivityLog().logView(root);
+        }
+
+        Note view = viewInternal(root, height, filter, style, true);
+        event.finish(style.getName(), height, view);
+        return view;
+    }
+
+    /**
+     * Renders a view of the graph as in {@link #view}, without logging it and without returning it,
+     * so that the properties and lists of its atoms are cached in advance of a request for the view
+     */
+    public void prefetchView(final Atom root,
+                             final int height,
+                             final Filter filter,
+                             final ViewStyle style) {
+        if (null == root || height < 0 || null == filter || null == style) {
+            throw new IllegalArgumentException();
+        }
+
+        viewInternal(root, height, filter, style, true);
+    }
+
+    /**
+     * Generates a view of the graph as in {@link #view}, but expands sibling subtrees in parallel
+     * if the view is expected to contain at least a configurable number of notes.
+     * Parallel expansion is off by default, and is enabled by setting a view parallelism of 2 or more.
+     * Children appear in the same order, and are subject to the same filter, as in a sequential view.
+     * Worker threads do not see uncommitted changes to a transactional graph,
+     * so this method is only for views which are not preceded by changes in the same transaction.
+     *
+     * @param root   the root atom of the view
+     * @param height the maximum height of the view, as in {@link #view}
+     * @param filter a collection of criteria for atoms and links.
+     *               Atoms and links which do not meet the criteria are not to appear in the view.
+     * @param style  the adjacency style of the view
+     * @return a partial view of the graph as a tree of <code>Note</code> objects
+     */
+    public Note parallelView(final Atom root,
+                             final int height,
+                             final Filter filter,
+                             final ViewStyle style) {
+        if (null == root || height < 0 || null == filter || null == style) {
+            throw new IllegalArgumentException();
+        }
+
+        if (viewParallelism < 2 || estimateViewSize(root, height, filter, style) < parallelViewThreshold) {
+            return view(root, height, filter, style);
+        }
+
+        ViewEvent event = new ViewEvent();
+        event.begin();
+
         if (null != brain.getActivityLog()) {
             brain.getActivityLog().logView(root);
         }
 
-        return viewInternal(root, height, filter, style, true);
+        // worker threads do not share the thread-local deadline of the request, so each task carries it instead
+        Note view = getViewPool().invoke(new ViewTask(root, height, filter, style, Deadline.getCurrent()));
+        event.finish(style.getName(), height, view);
+        return view;
+    }
+
+    /**
+     * Generates a view of the graph in which each subtree appears only once.
+     * Any later appearance of an atom whose children have already been rendered is a reference note,
+     * with the properties of the atom but without its children.
+     * Notes are rendered breadth-first, so that an atom's children appear at its shallowest position in the view,
+     * and heavier notes are expanded before lighter notes at the same depth.
+     * A note's children are rendered all together or not at all, so that no list of children is partial.
+     * Such a view is meant for reading, not for editing and updating.
+     *
+     * @param root     the root atom of the view
+     * @param height   the maximum height of the view, as in {@link #view}
+     * @param filter   a collection of criteria for atoms and links.
+     *                 Atoms and links which do not meet the criteria are not to appear in the view.
+     * @param style    the adjacency style of the view
+     * @param maxNodes the maximum number of notes in the view, including the root.
+     *                 Notes whose children would exceed the budget are rendered without their children
+     * @return a partial view of the graph as a tree of <code>Note</code> objects
+     */
+    public Note viewWithSharedSubtrees(final Atom root,
+                                       final int height,
+                                       final Filter filter,
+                                       final ViewStyle style,
+                                       final int maxNodes) {
+        if (null == root || height < 0 || null == filter || null == style || maxNodes < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        ViewEvent event = new ViewEvent();
+        event.begin();
+
+        if (null != brain.getActivityLog()) {
+            brain.getActivityLog().logView(root);
+        }
+
+        Note rootNote = toNote(root, filter.isVisible(root), true);
+        int nodes = 1;
+
+        PriorityQueue<PendingNote> pending = new PriorityQueue<>();
+        Set<String> expanded = new HashSet<>();
+        int order = 0;
+        pending.add(new PendingNote(root, rootNote, 0, height, order++));
+
+        while (!pending.isEmpty()) {
+            PendingNote p = pending.poll();
+            if (0 == p.height || !filter.isVisible(p.atom)) {
+                p.note.setHasChildren(hasChildren(p.atom, filter, style));
+                continue;
+            }
+
+            if (expanded.contains(p.atom.getId())) {
+                if (hasChildren(p.atom, filter, style)) {
+                    p.note.setHasChildren(true);
+                    p.note.setIsReference(true);
+                }
+                continue;
+            }
+
+            List<Atom> children = new ArrayList<>();
+            for (Atom a : style.getLinked(p.atom, filter)) {
+                children.add(a);
+            }
+            if (nodes + children.size() > maxNodes) {
+                p.note.setHasChildren(!children.isEmpty());
+                continue;
+            }
+
+            expanded.add(p.atom.getId());
+            nodes += children.size();
+            for (Atom a : children) {
+                Note cn = toNote(a, filter.isVisible(a), true);
+                p.note.addChild(cn);
+                pending.add(new PendingNote(a, cn, p.depth + 1, p.height - 1, order++));
+            }
+        }
+
+        event.finish(style.getName(), height, rootNote);
+        return rootNote;
+    }
+
+    // a note whose children have yet to be rendered, in order of depth, then of descending weight
+    private static class PendingNote implements Comparable<PendingNote> {
+        private final Atom atom;
+        private final Note note;
+        private final int depth;
+        private final int height;
+        private final int order;
+
+        private PendingNote(final Atom atom, final Note note, final int depth, final int height, final int order) {
+            this.atom = atom;
+            this.note = note;
+            this.depth = depth;
+            this.height = height;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(final PendingNote other) {
+            int cmp = Integer.compare(depth, other.depth);
+            if (0 == cmp) {
+                cmp = compareWeights(other.note.getWeight(), note.getWeight());
+            }
+            return 0 == cmp ? Integer.compare(order, other.order) : cmp;
+        }
+
+        private static int compareWeights(final Float a, final Float b) {
+            return null == a ? (null == b ? 0 : -1) : null == b ? 1 : a.compareTo(b);
+        }
     }
 
     private Note viewInternal(final Atom root,
@@ -94,20 +301,136 @@ public class NoteQueries {
         return n;
     }
 
+    private static synchronized ForkJoinPool getViewPool() {
+        if (null == viewPool) {
+            viewPool = new ForkJoinPool(viewParallelism);
+        }
+
+        return viewPool;
+    }
+
+    // Estimates the number of notes in a view from the number of children and grandchildren of the root,
+    // supposing that the average number of children is the same at each level.
+    // The estimate stops growing once it reaches the threshold.
+    private long estimateViewSize(final Atom root,
+                                  final int height,
+                                  final Filter filter,
+                                  final ViewStyle style) {
+        if (height < MIN_FORK_HEIGHT || !filter.isVisible(root)) {
+            return 1;
+        }
+
+        int children = 0;
+        long grandchildren = 0;
+        for (Atom a : style.getLinked(root, filter)) {
+            children++;
+            if (filter.isVisible(a)) {
+                grandchildren += style.getDirection().equals(ViewStyle.Direction.Forward)
+                        ? a.getNumberOfChildren() : a.getNumberOfParents();
+            }
+        }
+
+        double branching = 0 == children ? 0 : grandchildren / (double) children;
+        double total = 1, level = children;
+        for (int i = 0; i < height && total < parallelViewThreshold && level >= 1; i++) {
+            total += level;
+            level *= branching;
+        }
+
+        return (long) total;
+    }
+
+    /**
+     * Expands a subtree of a view, forking a task for each child if the subtree is tall enough.
+     * Children are joined in order, so that the result is the same as that of a sequential expansion.
+     * Each task runs under the deadline of the request, if any, so that a cancelled or expired view stops
+     * with a <code>CancellationException</code>.
+     */
+    private class ViewTask extends RecursiveTask<Note> {
+        private final Atom root;
+        private final int height;
+        private final Filter filter;
+        private final ViewStyle style;
+        private final Deadline deadline;
+
+        private ViewTask(final Atom root,
+                         final int height,
+                         final Filter filter,
+                         final ViewStyle style,
+                         final Deadline deadline) {
+            this.root = root;
+            this.height = height;
+            this.filter = filter;
+            this.style = style;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Note compute() {
+            // a worker may run tasks of other views while it waits, so the previous deadline is restored afterwards
+            Deadline previous = Deadline.getCurrent();
+            Deadline.setCurrent(deadline);
+            try {
+                Deadline.check();
+                return expand();
+            } finally {
+                Deadline.setCurrent(previous);
+            }
+        }
+
+        private Note expand() {
+            if (height < MIN_FORK_HEIGHT) {
+                return viewInternal(root, height, filter, style, true);
+            }
+
+            Note n = toNote(root, filter.isVisible(root), true);
+
+            List<ViewTask> tasks = new ArrayList<>();
+            for (Atom target : style.getLinked(root, filter)) {
+                int h = filter.isVisible(target) ? height - 1 : 0;
+                tasks.add(new ViewTask(target, h, filter, style, deadline));
+            }
+
+            invokeAll(tasks);
+            for (ViewTask t : tasks) {
+                n.addChild(t.join());
+            }
+
+            return n;
+        }
+    }
+
     public Note customView(final List<String> atomIds,
                            final Filter filter) {
         if (null == atomIds || null == filter) {
             throw new IllegalArgumentException();
         }
 
-        Note n = new Note();
-
+        List<Atom> atoms = new ArrayList<>(atomIds.size());
         for (String id : atomIds) {
             Atom a = brain.getAtomGraph().getAtom(id);
             if (null == a) {
                 throw new IllegalArgumentException("no such atom: " + id);
             }
 
+            atoms.add(a);
+        }
+
+        return customViewOfAtoms(atoms, filter);
+    }
+
+    /**
+     * Generates a list of notes, as in {@link #customView}, for atoms which have already been found
+     */
+    public Note customViewOfAtoms(final List<Atom> atoms,
+                                  final Filter filter) {
+        if (null == atoms || null == filter) {
+            throw new IllegalArgumentException();
+        }
+
+        Note n = new Note();
+
+        for (Atom a : atoms) {
             n.addChild(viewInternal(a, 0, filter, forwardViewStyle, true));
         }
 
@@ -139,9 +462,75 @@ public class NoteQueries {
             throw new IllegalStateException("can't update in style " + style);
         }
 
-        updateInternal(rootNote, height, filter, style);
+        // look up all atoms of the update before changing anything, then apply all changes,
+        // and only then bring indices, priorities and the activity log up to date, once for each changed atom
+        UpdateEvent event = new UpdateEvent();
+        event.begin();
+
+        UpdateContext context = new UpdateContext();
+        context.resolveAtoms(rootNote);
+        updateInternal(rootNote, height, filter, style, context);
+        context.finish();
 
         brain.getAtomGraph().notifyOfUpdate();
+        event.finish(style.getName(), height, rootNote, context.changedAtoms.size());
+    }
+
+    /**
+     * The atoms involved in a single update, and the atoms whose properties it has changed
+     */
+    private class UpdateContext {
+        private final Map<String, Atom> atomsById = new HashMap<>();
+        private final Map<String, Atom> changedAtoms = new LinkedHashMap<>();
+        private final Set<String> changedPriorities = new HashSet<>();
+
+        private void resolveAtoms(final Note rootNote) {
+            // the root must already exist; any other atom may be created by the update
+            getRequiredAtomForNote(rootNote, this);
+
+            LinkedList<Note> toVisit = new LinkedList<>(rootNote.getChildren());
+            while (!toVisit.isEmpty()) {
+                Note n = toVisit.removeFirst();
+                if (null != n.getId()) {
+                    getAtom(n.getId());
+                }
+                toVisit.addAll(n.getChildren());
+            }
+        }
+
+        private Atom getAtom(final String id) {
+            Atom a = atomsById.get(id);
+            if (null == a && !atomsById.containsKey(id)) {
+                a = brain.getAtomGraph().getAtom(id);
+                atomsById.put(id, a);
+            }
+            return a;
+        }
+
+        private void atomCreated(final Atom a) {
+            atomsById.put(a.getId(), a);
+        }
+
+        private void propertiesChanged(final Atom a, final boolean priorityChanged) {
+            changedAtoms.put(a.getId(), a);
+            if (priorityChanged) {
+                changedPriorities.add(a.getId());
+            }
+        }
+
+        private void finish() {
+            for (Atom a : changedAtoms.values()) {
+                brain.getAtomGraph().addAtomToIndices(a);
+
+                if (changedPriorities.contains(a.getId())) {
+                    brain.getPriorities().updatePriority(a);
+                }
+
+                if (null != brain.getActivityLog()) {
+                    brain.getActivityLog().logSetProperties(a);
+                }
+            }
+        }
     }
 
     private final Comparator<Note> noteComparator = (a, b) -> null == a.getId()
@@ -158,6 +547,13 @@ public class NoteQueries {
 
         // If the note is visible, we can see its children (although we will not be able to read the values of any
         // children which are themselves invisible).
+        // The number of children, or of parents, is known without a traversal
+        if (style.getDirection().equals(ViewStyle.Direction.Forward)) {
+            return root.getNumberOfChildren() > 0;
+        } else if (0 == root.getNumberOfParents()) {
+            return false;
+        }
+
         Iterable<Atom> children = style.getLinked(root, filter);
         return children.iterator().hasNext();
     }
@@ -165,21 +561,22 @@ public class NoteQueries {
     private void updateInternal(final Note rootNote,
                                 final int height,
                                 final Filter filter,
-                                final ViewStyle style) {
-        Atom rootAtom = getRequiredAtomForNote(rootNote);
+                                final ViewStyle style,
+                                final UpdateContext context) {
+        Atom rootAtom = getRequiredAtomForNote(rootNote, context);
 
         // we are pre-ordered w.r.t. setting of properties
-        setProperties(rootAtom, rootNote);
+        setProperties(rootAtom, rootNote, context);
 
-        updateChildren(rootNote, rootAtom, height, filter, style);
+        updateChildren(rootNote, rootAtom, height, filter, style, context);
     }
 
-    private Atom getRequiredAtomForNote(final Note note) {
+    private Atom getRequiredAtomForNote(final Note note, final UpdateContext context) {
         if (null == note.getId()) {
             throw new InvalidUpdateException("note has no id");
         }
 
-        Atom atom = brain.getAtomGraph().getAtom(note.getId());
+        Atom atom = context.getAtom(note.getId());
         if (null == atom) {
             throw new InvalidUpdateException("no such atom: " + note);
         }
@@ -191,7 +588,8 @@ public class NoteQueries {
                                 final Atom rootAtom,
                                 final int height,
                                 final Filter filter,
-                                final ViewStyle style) {
+                                final ViewStyle style,
+                                final UpdateContext context) {
 
         if (0 >= height || !filter.isVisible(rootAtom)) {
             return;
@@ -208,7 +606,7 @@ public class NoteQueries {
                     return;
                 }
 
-                Atom atom = getAtom(note, filter, childrenCreated);
+                Atom atom = getAtom(note, filter, childrenCreated, context);
 
                 rootAtom.addChildAt(atom, position);
 
@@ -231,13 +629,19 @@ public class NoteQueries {
 
                 // log this activity
                 if (null != brain.getActivityLog()) {
-                    Atom a = brain.getAtomGraph().getAtom(note.getId());
+                    Atom a = context.getAtom(note.getId());
                     brain.getActivityLog().logUnlink(rootAtom, a);
                 }
             }
         };
 
-        List<Note> before = viewInternal(rootAtom, 1, filter, style, false).getChildren();
+        // only the ids of the existing children are needed for the diff
+        List<Note> before = new ArrayList<>();
+        for (Atom a : style.getLinked(rootAtom, filter)) {
+            Note n = new Note();
+            n.setId(a.getId());
+            before.add(n);
+        }
         List<Note> after = rootNote.getChildren();
         List<Note> lcs = ListDiff.longestCommonSubsequence(before, after, noteComparator);
 
@@ -258,19 +662,21 @@ public class NoteQueries {
                     : height - 1;
 
             // TODO: verify that this can result in multiple log events per call to update()
-            updateInternal(n, h, filter, style);
+            updateInternal(n, h, filter, style, context);
         }
     }
 
-    private Atom getAtom(final Note note, final Filter filter, final Set<String> created) {
+    private Atom getAtom(final Note note, final Filter filter, final Set<String> created,
+                         final UpdateContext context) {
         // retrieve or create an atom for the note
         // atoms are only created if they appear under a parent which is also an atom
         String id = note.getId();
-        Atom atom = null == id ? null : brain.getAtomGraph().getAtom(id);
+        Atom atom = null == id ? null : context.getAtom(id);
 
         if (null == atom) {
             atom = createAtom(note.getId(), filter);
             created.add(atom.getId());
+            context.atomCreated(atom);
         }
         if (null == note.getId()) {
             note.setId(atom.getId());
@@ -312,6 +718,9 @@ public class NoteQueries {
             throw new IllegalArgumentException();
         }
 
+        SearchEvent event = new SearchEvent();
+        event.begin();
+
         Note result = new Note();
 
         List<Atom> results;
@@ -337,48 +746,242 @@ public class NoteQueries {
         Collections.sort(result.getChildren(), new NoteComparator());
 
         result.setValue(queryType.name() + " results for \"" + query + "\"");
+        event.finish(queryType.name(), results.size());
+        return result;
+    }
+
+    /**
+     * Evaluates a Ripple query against the graph, producing one result for each solution of the query
+     *
+     * @param program       the compiled query
+     * @param height        maximum height of the results view, as in {@link #search}.
+     *                      A solution with an atom at the top of its stack is viewed at one less than this height,
+     *                      while any other value at the top of the stack becomes a note with that value
+     * @param filter        a collection of criteria for atoms and links.
+     *                      Atoms and links which do not meet the criteria are neither reached by the query
+     *                      nor appear in its results.
+     * @param style         the adjacency style of the view
+     * @param maxSteps      the maximum number of steps of evaluation
+     * @param timeoutMillis the maximum time of evaluation, in milliseconds
+     * @return an ordered list of query results
+     */
+    public Note rippleQuery(final RippleProgram program,
+                            final int height,
+                            final Filter filter,
+                            final ViewStyle style,
+                            final long maxSteps,
+                            final long timeoutMillis) {
+        if (null == program || height < 1 || null == filter || null == style) {
+            throw new IllegalArgumentException();
+        }
+
+        SearchEvent event = new SearchEvent();
+        event.begin();
+
+        List<RippleStack> solutions = program.evaluate(brain.getAtomGraph(), filter, maxSteps, timeoutMillis);
+
+        Note result = new Note();
+        for (RippleStack s : solutions) {
+            if (!s.isEmpty()) {
+                result.addChild(toResultNote(s.getFirst(), height - 1, filter, style));
+            }
+        }
+
+        result.setValue("Ripple results for \"" + program + "\"");
+        event.finish("Ripple", solutions.size());
         return result;
     }
 
+    private Note toResultNote(final Object value,
+                              final int height,
+                              final Filter filter,
+                              final ViewStyle style) {
+        if (value instanceof Atom) {
+            return viewInternal((Atom) value, height, filter, style, true);
+        }
+
+        Note n = new Note();
+        if (value instanceof List) {
+            n.setValue("list of " + ((List<?>) value).size());
+            for (Object o : (List<?>) value) {
+                n.addChild(toResultNote(o, height, filter, style));
+            }
+        } else {
+            // an empty string is a valid result, but not a valid value of a note, so it is shown as a literal
+            String s = value.toString();
+            n.setValue(s.isEmpty() ? "\"\"" : s);
+        }
+
+        return n;
+    }
+
     private boolean isAdjacent(final Atom a, final boolean includeChildren, final boolean includeParents) {
         return (includeChildren && null != a.getNotes())
                 || (includeParents && a.getFirstOf().size() > 0);
     }
 
-    private Note findAtoms(final Filter filter,
-                           final boolean includeChildren,
-                           final boolean includeParents,
-                           int height,
-                           ViewStyle style) {
-        if (null == filter || height < 0) {
+    private NotePage findAtoms(final Filter filter,
+                               final boolean includeChildren,
+                               final boolean includeParents,
+                               final int height,
+                               final ViewStyle style,
+                               final int maxResults,
+                               final String cursor) {
+        if (null == filter || height < 0 || maxResults < 1) {
             throw new IllegalArgumentException();
         }
 
-        Note result = new Note();
+        RankedAtom after = null == cursor ? null : RankedAtom.fromCursor(cursor);
 
-        for (Atom a : brain.getAtomGraph().getAllAtoms()) {
+        // start from the atoms known to lack parents or children, rather than from all atoms.
+        // The candidates are streamed from the key index, and only the atoms of the requested page are kept
+        AtomGraph graph = brain.getAtomGraph();
+        Iterable<Atom> candidates = includeParents
+                ? graph.getAtomsWithoutParents()
+                : includeChildren ? graph.getAtomsWithoutChildren() : graph.getAllAtoms();
+
+        TreeSet<RankedAtom> page = new TreeSet<>();
+        boolean more = false;
+        for (Atom a : candidates) {
+            Deadline.check();
             if (filter.isVisible(a) && !isAdjacent(a, includeChildren, includeParents)) {
-                Note n = viewInternal(a, height, filter, style, true);
-                result.addChild(n);
+                RankedAtom r = new RankedAtom(a);
+                if (null == after || r.compareTo(after) > 0) {
+                    page.add(r);
+                    if (page.size() > maxResults) {
+                        page.pollLast();
+                        more = true;
+                    }
+                }
             }
         }
 
-        Collections.sort(result.getChildren(), new NoteComparator());
-        return result;
+        // views are built only for the atoms of the page, which are already in the order of NoteComparator
+        Note result = new Note();
+        for (RankedAtom r : page) {
+            result.addChild(viewInternal(r.atom, height, filter, style, true));
+        }
+
+        return new NotePage(result, more ? page.last().toCursor() : null);
     }
 
     public Note findRootAtoms(final Filter filter,
                               final ViewStyle style,
                               final int height) {
+        return findRootAtoms(filter, style, height, Integer.MAX_VALUE, null).getNote();
+    }
+
+    /**
+     * Finds a page of the atoms which have no parents (in a forward view) or no children (in a backward view),
+     * in order of descending weight, then descending creation time
+     *
+     * @param maxResults the maximum number of atoms in the page
+     * @param cursor     the cursor of the previous page, or null for the first page
+     * @return the page of atoms, as children of a single note, together with the cursor of the next page
+     * @throws IllegalArgumentException if the cursor is not a valid cursor
+     */
+    public NotePage findRootAtoms(final Filter filter,
+                                  final ViewStyle style,
+                                  final int height,
+                                  final int maxResults,
+                                  final String cursor) {
 
         boolean includeChildren = style.getDirection().equals(ViewStyle.Direction.Backward);
         boolean includeParents = style.getDirection().equals(ViewStyle.Direction.Forward);
 
-        return findAtoms(filter, includeChildren, includeParents, height, style);
+        return findAtoms(filter, includeChildren, includeParents, height, style, maxResults, cursor);
     }
 
     public Note findIsolatedAtoms(final Filter filter) {
-        return findAtoms(filter, true, true, 1, forwardViewStyle);
+        return findIsolatedAtoms(filter, Integer.MAX_VALUE, null).getNote();
+    }
+
+    /**
+     * Finds a page of the atoms which have neither parents nor children,
+     * in order of descending weight, then descending creation time
+     *
+     * @param maxResults the maximum number of atoms in the page
+     * @param cursor     the cursor of the previous page, or null for the first page
+     * @return the page of atoms, as children of a single note, together with the cursor of the next page
+     * @throws IllegalArgumentException if the cursor is not a valid cursor
+     */
+    public NotePage findIsolatedAtoms(final Filter filter,
+                                      final int maxResults,
+                                      final String cursor) {
+        return findAtoms(filter, true, true, 1, forwardViewStyle, maxResults, cursor);
+    }
+
+    public static class NotePage {
+        private final Note note;
+        private final String nextCursor;
+
+        private NotePage(final Note note, final String nextCursor) {
+            this.note = note;
+            this.nextCursor = nextCursor;
+        }
+
+        public Note getNote() {
+            return note;
+        }
+
+        /**
+         * @return the cursor of the next page, or null if this page is the last
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    // order as NoteComparator does, by descending weight and then by descending creation time,
+    // and finally by id, so that each atom has a distinct position which may be used as a cursor
+    private static class RankedAtom implements Comparable<RankedAtom> {
+        private static final char SEPARATOR = ' ';
+
+        private final Atom atom;
+        private final String id;
+        private final float weight;
+        private final long created;
+
+        private RankedAtom(final Atom atom) {
+            this(atom, atom.getId(), atom.getWeight(), atom.getCreated());
+        }
+
+        private RankedAtom(final Atom atom, final String id, final float weight, final long created) {
+            this.atom = atom;
+            this.id = id;
+            this.weight = weight;
+            this.created = created;
+        }
+
+        @Override
+        public int compareTo(final RankedAtom other) {
+            int c = Float.compare(other.weight, weight);
+            if (0 == c) {
+                c = Long.compare(other.created, created);
+                if (0 == c) {
+                    c = id.compareTo(other.id);
+                }
+            }
+
+            return c;
+        }
+
+        private String toCursor() {
+            return "" + weight + SEPARATOR + created + SEPARATOR + id;
+        }
+
+        private static RankedAtom fromCursor(final String cursor) {
+            String[] parts = cursor.split("" + SEPARATOR, 3);
+            if (3 != parts.length) {
+                throw new IllegalArgumentException("invalid cursor: " + cursor);
+            }
+
+            try {
+                return new RankedAtom(null, parts[2], Float.valueOf(parts[0]), Long.valueOf(parts[1]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid cursor: " + cursor);
+            }
+        }
     }
 
     /**
@@ -397,19 +1000,27 @@ public class NoteQueries {
             throw new IllegalArgumentException();
         }
 
+        return priorityView(priorities.getPage(filter, maxResults, null), maxResults);
+    }
+
+    /**
+     * Generates a prioritized list of notes from a page of priorities
+     *
+     * @param page       a page of prioritized atoms, which have already been filtered
+     * @param maxResults the maximum number of results in the page
+     * @return a prioritized list of notes
+     */
+    public Note priorityView(final Priorities.Page page,
+                             final int maxResults) throws InvalidGraphException {
+        if (null == page) {
+            throw new IllegalArgumentException();
+        }
+
         Note result = new Note();
         result.setValue("priority queue with up to " + maxResults + " results");
 
-        Queue<Atom> queue = priorities.getQueue();
-        int i = 0;
-        for (Atom a : queue) {
-            if (filter.isVisible(a)) {
-                result.addChild(toNote(a, true, true));
-
-                if (++i >= maxResults) {
-                    break;
-                }
-            }
+        for (Atom a : page.getAtoms()) {
+            result.addChild(toNote(a, true, true));
         }
 
         return result;
@@ -452,10 +1063,7 @@ public class NoteQueries {
         if (null != priority) {
             if (0 == priority) priority = null;
 
-            if (target.setPriority(priority)) {
-                brain.getPriorities().updatePriority(target);
-                return true;
-            }
+            return target.setPriority(priority);
         }
 
         return false;
@@ -472,20 +1080,19 @@ public class NoteQueries {
     }
 
     private void setProperties(final Atom target,
-                               final Note note) throws InvalidGraphException, InvalidUpdateException {
+                               final Note note,
+                               final UpdateContext context) throws InvalidGraphException, InvalidUpdateException {
+        boolean priorityChanged = setPriority(target, note.getPriority());
         boolean changed = setValue(target, note.getValue())
                 | setAlias(target, note.getAlias())
                 | setShortcut(target, note.getShortcut())
-                | setPriority(target, note.getPriority())
+                | priorityChanged
                 | setWeight(target, note.getWeight())
                 | setSharability(target, note.getSharability());
 
+        // indices, priorities and the activity log are brought up to date at the end of the update
         if (changed) {
-            brain.getAtomGraph().addAtomToIndices(target);
-
-            if (null != brain.getActivityLog()) {
-                brain.getActivityLog().logSetProperties(target);
-            }
+            context.propertiesChanged(target, priorityChanged);
         }
     }
 
@@ -643,15 +1250,8 @@ public class NoteQueries {
                                         final Filter filter) {
             List<Atom> results = new LinkedList<>();
             root.forFirstOf(list -> {
-                AtomList cur = list;
-                AtomList prev = null;
-                while (null != cur) {
-                    prev = cur;
-                    cur = cur.getRestOf();
-                }
-
-                Atom a = prev.getNotesOf();
-                if (filter.isVisible(a)) {
+                Atom a = list.getOwner();
+                if (null != a && filter.isVisible(a)) {
                     results.add(a);
                 }
             });
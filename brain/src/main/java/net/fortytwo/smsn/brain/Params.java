@@ -3,6 +3,11 @@ package net.fortytwo.smsn.brain;
 public interface Params {
     public static final String
             ACTION = "action",
+            ASYNC = "async",
+            ATOMIC = "atomic",
+            CLIENT = "client",
+            COUNTERS = "counters",
+            CURSOR = "cursor",
             DATASET = "dataset",
             DEFAULT_SHARABILITY = "defaultSharability",
             DEFAULT_WEIGHT = "defaultWeight",
@@ -10,21 +15,33 @@ public interface Params {
             FILTER = "filter",
             FORMAT = "format",
             HEIGHT = "height",
+            HISTOGRAMS = "histograms",
             ID = "id",
             INCLUDE_TYPES = "includeTypes",
+            JOB = "job",
+            JOB_ID = "jobId",
+            JOBS = "jobs",
+            MAX_NODES = "maxNodes",
             MAX_RESULTS = "maxResults",
             MAX_SHARABILITY = "maxSharability",
             MAX_WEIGHT = "maxWeight",
             MIN_SHARABILITY = "minSharability",
             MIN_WEIGHT = "minWeight",
             NAME = "name",
+            NOT_MODIFIED = "notModified",
+            PROPERTIES = "properties",
             QUERY = "query",
             QUERY_TYPE = "queryType",
             REQUEST = "request",
+            REQUESTS = "requests",
+            RESET = "reset",
+            RESULTS = "results",
             ROOT = "root",
+            SHARE_SUBTREES = "shareSubtrees",
             STYLE = "style",
             TITLE = "title",
             VALUE = "value",
+            VALIDATOR = "validator",
             VALUE_CUTOFF = "valueCutoff",
             VIEW = "view",
             VIEW_FORMAT = "viewFormat";
@@ -3,30 +3,35 @@ package net.fortytwo.smsn.brain;
 import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
 
-import java.util.Comparator;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.logging.Logger;
 
 /**
- * A dynamically updated list of atoms ordered by their priority value
+ * A dynamically updated list of atoms ordered by their priority value.
+ * The list may be read in pages, each beginning after a cursor which marks a position in the order of atoms,
+ * so that a change to the list in between pages neither repeats nor skips any atom which has not itself changed.
+ * Readers do not block, and are not blocked by, concurrent updates.
  */
 public class Priorities {
     private static final Logger logger = SemanticSynchrony.getLogger(Priorities.class);
 
-    private final PriorityQueue<Atom> queue;
-
-    public Priorities() {
-        queue = new PriorityQueue<>(1, new AtomPriorityComparator());
-    }
-
-    public Queue<Atom> getQueue() {
-        return queue;
-    }
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>();
+    private final Map<String, Entry> entriesById = new ConcurrentHashMap<>();
+    // changes whenever the list is changed
+    private volatile long version;
 
     public void refreshQueue(final AtomGraph graph) {
-        queue.clear();
+        clear();
 
         new Thread(() -> {
             logger.info("generating priority queue");
@@ -43,28 +48,166 @@ public class Priorities {
         }).start();
     }
 
-    public void updatePriority(final Atom a) {
-        queue.remove(a);
-        if (null != a.getPriority()) {
-            queue.add(a);
+    public synchronized void updatePriority(final Atom a) {
+        updateEntry(a);
+        version++;
+    }
+
+    /**
+     * Brings the positions of several atoms up to date at once, e.g. after a bulk change of their properties,
+     * changing the version of the list only once
+     */
+    public synchronized void updatePriorities(final Iterable<Atom> atoms) {
+        for (Atom a : atoms) {
+            updateEntry(a);
+        }
+        version++;
+    }
+
+    private void updateEntry(final Atom a) {
+        Entry previous = entriesById.remove(a.getId());
+        if (null != previous) {
+            entries.remove(previous);
+        }
+
+        Float priority = a.getPriority();
+        if (null != priority) {
+            Entry e = new Entry(a, priority, a.getWeight());
+            entries.add(e);
+            entriesById.put(a.getId(), e);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        entriesById.clear();
+        version++;
+    }
+
+    /**
+     * @return a number which changes whenever the list is changed
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of atoms with a priority
+     */
+    public int size() {
+        return entriesById.size();
+    }
+
+    /**
+     * Finds a page of visible atoms, in order of descending priority, then descending weight, then id.
+     * The cost is logarithmic in the number of prioritized atoms, plus linear in the number of atoms read,
+     * including any invisible atoms which are skipped.
+     *
+     * @param filter     a filter for visible atoms
+     * @param maxResults the maximum number of atoms in the page
+     * @param cursor     the cursor of the previous page, or null for the first page
+     * @return the page of atoms, together with the cursor of the next page
+     * @throws IllegalArgumentException if the cursor is not a valid cursor
+     */
+    public Page getPage(final Filter filter,
+                        final int maxResults,
+                        final String cursor) {
+        if (null == filter || maxResults < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        Iterable<Entry> candidates = null == cursor ? entries : entries.tailSet(Entry.fromCursor(cursor), false);
+
+        List<Atom> atoms = new LinkedList<>();
+        // a concurrent update may move an atom to a later position while the page is being read
+        Set<String> ids = new HashSet<>();
+        Entry last = null;
+        for (Entry e : candidates) {
+            if (filter.isVisible(e.atom) && ids.add(e.id)) {
+                atoms.add(e.atom);
+                last = e;
+
+                if (atoms.size() >= maxResults) {
+                    break;
+                }
+            }
+        }
+
+        String nextCursor = null != last && atoms.size() >= maxResults && null != entries.higher(last)
+                ? last.toCursor() : null;
+        return new Page(atoms, nextCursor);
+    }
+
+    public static class Page {
+        private final List<Atom> atoms;
+        private final String nextCursor;
+
+        private Page(final List<Atom> atoms, final String nextCursor) {
+            this.atoms = Collections.unmodifiableList(atoms);
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Atom> getAtoms() {
+            return atoms;
+        }
+
+        /**
+         * @return the cursor of the next page, or null if this page is the last
+         */
+        public String getNextCursor() {
+            return nextCursor;
         }
     }
 
-    // order primarily by descending priority, secondarily by descending weight
-    private static class AtomPriorityComparator implements Comparator<Atom> {
-        public int compare(final Atom a, final Atom b) {
-            Float pa = a.getPriority();
-            Float pb = b.getPriority();
-
-            if (null == pa) {
-                return null == pb || 0 == pb ? 0 : -1;
-            } else if (null == pb) {
-                return 1;
-            } else {
-                int c = pa.compareTo(pb);
-                return 0 == c
-                        ? b.getWeight().compareTo(a.getWeight())
-                        : c;
+    // order primarily by descending priority, secondarily by descending weight, and finally by id,
+    // so that each entry has a distinct position which may be used as a cursor.
+    // The priority and weight of an entry are fixed when the entry is created.
+    private static class Entry implements Comparable<Entry> {
+        private static final char SEPARATOR = ' ';
+
+        private final Atom atom;
+        private final String id;
+        private final float priority;
+        private final float weight;
+
+        private Entry(final Atom atom, final float priority, final float weight) {
+            this(atom, atom.getId(), priority, weight);
+        }
+
+        private Entry(final Atom atom, final String id, final float priority, final float weight) {
+            this.atom = atom;
+            this.id = id;
+            this.priority = priority;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(final Entry other) {
+            int c = Float.compare(other.priority, priority);
+            if (0 == c) {
+                c = Float.compare(other.weight, weight);
+                if (0 == c) {
+                    c = id.compareTo(other.id);
+                }
+            }
+
+            return c;
+        }
+
+        private String toCursor() {
+            return "" + priority + SEPARATOR + weight + SEPARATOR + id;
+        }
+
+        private static Entry fromCursor(final String cursor) {
+            String[] parts = cursor.split("" + SEPARATOR, 3);
+            if (3 != parts.length) {
+                throw new IllegalArgumentException("invalid cursor: " + cursor);
+            }
+
+            try {
+                return new Entry(null, parts[2], Float.valueOf(parts[0]), Float.valueOf(parts[1]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid cursor: " + cursor);
             }
         }
     }
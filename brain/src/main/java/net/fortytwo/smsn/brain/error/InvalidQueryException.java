@@ -0,0 +1,7 @@
+package net.fortytwo.smsn.brain.error;
+
+public class InvalidQueryException extends AtomGraphException {
+    public InvalidQueryException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package net.fortytwo.smsn.brain.error;
+
+public class QueryBudgetExceededException extends AtomGraphException {
+    public QueryBudgetExceededException(final String message) {
+        super(message);
+    }
+}
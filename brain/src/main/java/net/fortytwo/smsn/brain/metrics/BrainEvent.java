@@ -0,0 +1,75 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import net.fortytwo.smsn.brain.model.Note;
+
+/**
+ * The base of the Java Flight Recorder events of the brain and the server,
+ * by which slow views, updates, imports and the like can be found in a recording of a live server.
+ * Each event is to be created, begun and finished on the same thread, e.g.
+ * <pre>
+ *     ViewEvent event = new ViewEvent();
+ *     event.begin();
+ *     ...
+ *     event.finish(style, height, view);
+ * </pre>
+ * While no recording is in progress, or while the event is disabled, this amounts to a check of a flag,
+ * and the fields of the event, such as counts of atoms, are not computed at all.
+ */
+@Category("Semantic Synchrony")
+@StackTrace(false)
+public abstract class BrainEvent extends Event {
+    private static final ThreadLocal<String> currentAction = new ThreadLocal<>();
+
+    @Label("Action")
+    @Description("The server action which triggered the event, if any")
+    String action;
+
+    /**
+     * Sets the action on whose behalf the current thread is working, for all events it begins from now on
+     *
+     * @param name the name of the action, or null if the thread is no longer working on behalf of an action
+     */
+    public static void setCurrentAction(final String name) {
+        if (null == name) {
+            currentAction.remove();
+        } else {
+            currentAction.set(name);
+        }
+    }
+
+    public static String getCurrentAction() {
+        return currentAction.get();
+    }
+
+    /**
+     * Ends the event
+     *
+     * @return whether the event is to be committed, in which case its fields are now to be set
+     */
+    protected boolean endAndCheck() {
+        end();
+        if (shouldCommit()) {
+            action = currentAction.get();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    static int countNotes(final Note note) {
+        if (null == note) {
+            return 0;
+        }
+
+        int count = 1;
+        for (Note child : note.getChildren()) {
+            count += countNotes(child);
+        }
+        return count;
+    }
+}
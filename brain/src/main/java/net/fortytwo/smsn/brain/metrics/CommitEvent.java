@@ -0,0 +1,20 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.fortytwo.smsn.Commit")
+@Label("Commit")
+@Description("The commit, or rollback, of a transaction of the graph")
+public class CommitEvent extends BrainEvent {
+    @Label("Success")
+    boolean success;
+
+    public void finish(final boolean success) {
+        if (endAndCheck()) {
+            this.success = success;
+            commit();
+        }
+    }
+}
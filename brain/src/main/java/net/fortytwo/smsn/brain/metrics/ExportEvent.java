@@ -0,0 +1,25 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.fortytwo.smsn.Export")
+@Label("Export")
+@Description("The export of the graph, or of a part of it, in a given format")
+public class ExportEvent extends BrainEvent {
+    @Label("Format")
+    String format;
+
+    @Label("Atoms")
+    @Description("The number of atoms written, in those formats which are written atom by atom")
+    long atoms;
+
+    public void finish(final String format, final long atoms) {
+        if (endAndCheck()) {
+            this.format = format;
+            this.atoms = atoms;
+            commit();
+        }
+    }
+}
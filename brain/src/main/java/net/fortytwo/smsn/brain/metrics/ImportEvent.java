@@ -0,0 +1,35 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+import java.util.Collection;
+
+@Name("net.fortytwo.smsn.Import")
+@Label("Import")
+@Description("The import of a file, or of a directory of files, into the graph")
+public class ImportEvent extends BrainEvent {
+    @Label("Format")
+    String format;
+
+    @Label("Files")
+    int files;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    public void finish(final String format, final Collection<File> files) {
+        if (endAndCheck()) {
+            this.format = format;
+            this.files = files.size();
+            for (File f : files) {
+                bytes += f.length();
+            }
+            commit();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.fortytwo.smsn.Index")
+@Label("Index Maintenance")
+@Description("A pass over the graph which builds or rebuilds its indices")
+public class IndexEvent extends BrainEvent {
+    @Label("Operation")
+    String operation;
+
+    @Label("Atoms")
+    long atoms;
+
+    public void finish(final String operation, final long atoms) {
+        if (endAndCheck()) {
+            this.operation = operation;
+            this.atoms = atoms;
+            commit();
+        }
+    }
+}
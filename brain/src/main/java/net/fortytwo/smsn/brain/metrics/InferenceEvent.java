@@ -0,0 +1,24 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.fortytwo.smsn.Inference")
+@Label("Inference")
+@Description("A pass of type inference over all atoms of the knowledge base")
+public class InferenceEvent extends BrainEvent {
+    @Label("Atoms")
+    long atoms;
+
+    @Label("Atoms Classified")
+    long atomsClassified;
+
+    public void finish(final long atoms, final long atomsClassified) {
+        if (endAndCheck()) {
+            this.atoms = atoms;
+            this.atomsClassified = atomsClassified;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import net.fortytwo.smsn.SemanticSynchrony;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A process-wide registry of named counters and histograms, e.g. of the latency of each action of the server.
+ * Metrics are created on first use and are never removed, so the set of names is to be kept small and fixed.
+ * Frequently used metrics may be looked up once and kept in a field.
+ */
+public class Metrics {
+    private static final Logger logger = SemanticSynchrony.getLogger(Metrics.class);
+
+    public static final String MBEAN_NAME = "net.fortytwo.smsn:type=Metrics";
+
+    // the percentiles reported for each histogram
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static LongAdder getCounter(final String name) {
+        LongAdder c = counters.get(name);
+        return null == c ? counters.computeIfAbsent(name, n -> new LongAdder()) : c;
+    }
+
+    public static Histogram getHistogram(final String name) {
+        Histogram h = histograms.get(name);
+        return null == h ? histograms.computeIfAbsent(name, n -> new Histogram()) : h;
+    }
+
+    /**
+     * @return the current value of each counter, by name
+     */
+    public static SortedMap<String, Long> getCounterValues() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            values.put(e.getKey(), e.getValue().sum());
+        }
+        return values;
+    }
+
+    /**
+     * @return the count, mean, maximum and selected percentiles of each histogram, by name
+     */
+    public static SortedMap<String, Map<String, Number>> getHistogramSummaries() {
+        SortedMap<String, Map<String, Number>> summaries = new TreeMap<>();
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            summaries.put(e.getKey(), summarize(e.getValue()));
+        }
+        return summaries;
+    }
+
+    static Map<String, Number> summarize(final Histogram h) {
+        Map<String, Number> summary = new LinkedHashMap<>();
+        summary.put("count", h.getCount());
+        summary.put("mean", h.getMean());
+        for (double p : PERCENTILES) {
+            summary.put(percentileName(p), h.getValueAtPercentile(p));
+        }
+        summary.put("max", h.getMax());
+        return summary;
+    }
+
+    static String percentileName(final double p) {
+        return "p" + (p == Math.floor(p) ? "" + (int) p : ("" + p).replace(".", ""));
+    }
+
+    /**
+     * Sets all counters and histograms to zero
+     */
+    public static void reset() {
+        for (LongAdder c : counters.values()) {
+            c.reset();
+        }
+        for (Histogram h : histograms.values()) {
+            h.reset();
+        }
+    }
+
+    /**
+     * Makes the metrics available through JMX, if they are not already
+     */
+    public static synchronized void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsBean(), name);
+            }
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "failed to register metrics MBean", e);
+        }
+    }
+}
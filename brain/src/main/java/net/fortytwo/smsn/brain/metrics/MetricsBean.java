@@ -0,0 +1,98 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes each counter as a read-only attribute, and each histogram as a group of attributes
+ * such as <code>action.view.latency.p99</code>, together with an operation which resets all metrics.
+ * Attributes are computed when read, so metrics created later appear without re-registration.
+ */
+class MetricsBean implements DynamicMBean {
+    private static final String RESET = "reset";
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        Long count = Metrics.getCounterValues().get(attribute);
+        if (null != count) {
+            return count;
+        }
+
+        int i = attribute.lastIndexOf('.');
+        if (i > 0) {
+            Map<String, Number> summary = Metrics.getHistogramSummaries().get(attribute.substring(0, i));
+            if (null != summary) {
+                Number value = summary.get(attribute.substring(i + 1));
+                if (null != value) {
+                    return value;
+                }
+            }
+        }
+
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("metrics are read-only");
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String a : attributes) {
+            try {
+                list.add(new Attribute(a, getAttribute(a)));
+            } catch (AttributeNotFoundException e) {
+                // omit the attribute, as is conventional
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature)
+            throws ReflectionException {
+        if (RESET.equals(actionName)) {
+            Metrics.reset();
+            return null;
+        }
+
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : Metrics.getCounterValues().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), "counter", true, false, false));
+        }
+        for (Map.Entry<String, Map<String, Number>> e : Metrics.getHistogramSummaries().entrySet()) {
+            for (Map.Entry<String, Number> s : e.getValue().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(e.getKey() + "." + s.getKey(),
+                        s.getValue().getClass().getName(), "histogram " + s.getKey(), true, false, false));
+            }
+        }
+
+        MBeanOperationInfo reset = new MBeanOperationInfo(RESET, "sets all metrics to zero",
+                null, "void", MBeanOperationInfo.ACTION);
+
+        return new MBeanInfo(Metrics.class.getName(), "Semantic Synchrony metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                null, new MBeanOperationInfo[]{reset}, null);
+    }
+}
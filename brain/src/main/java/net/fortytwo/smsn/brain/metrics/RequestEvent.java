@@ -0,0 +1,20 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.fortytwo.smsn.Request")
+@Label("Request")
+@Description("The handling of a request by a server action, within which the other events of the action occur")
+public class RequestEvent extends BrainEvent {
+    @Label("Succeeded")
+    boolean succeeded;
+
+    public void finish(final boolean succeeded) {
+        if (endAndCheck()) {
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
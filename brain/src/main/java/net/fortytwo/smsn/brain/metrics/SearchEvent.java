@@ -0,0 +1,25 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.fortytwo.smsn.Search")
+@Label("Search")
+@Description("A full-text, acronym or shortcut query, including the rendering of its results")
+public class SearchEvent extends BrainEvent {
+    @Label("Query Type")
+    String queryType;
+
+    @Label("Results")
+    @Description("The number of atoms found")
+    int results;
+
+    public void finish(final String queryType, final int results) {
+        if (endAndCheck()) {
+            this.queryType = queryType;
+            this.results = results;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import net.fortytwo.smsn.brain.model.Note;
+
+@Name("net.fortytwo.smsn.Update")
+@Label("Update")
+@Description("The application of a tree of notes to the graph")
+public class UpdateEvent extends BrainEvent {
+    @Label("Style")
+    String style;
+
+    @Label("Height")
+    int height;
+
+    @Label("Notes")
+    @Description("The number of notes in the update")
+    int notes;
+
+    @Label("Atoms Changed")
+    @Description("The number of atoms whose properties were changed")
+    int atomsChanged;
+
+    public void finish(final String style, final int height, final Note update, final int atomsChanged) {
+        if (endAndCheck()) {
+            this.style = style;
+            this.height = height;
+            this.notes = countNotes(update);
+            this.atomsChanged = atomsChanged;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import net.fortytwo.smsn.brain.model.Note;
+
+@Name("net.fortytwo.smsn.View")
+@Label("View")
+@Description("The rendering of a view of the graph as a tree of notes")
+public class ViewEvent extends BrainEvent {
+    @Label("Style")
+    String style;
+
+    @Label("Height")
+    int height;
+
+    @Label("Notes")
+    @Description("The number of notes in the view")
+    int notes;
+
+    public void finish(final String style, final int height, final Note view) {
+        if (endAndCheck()) {
+            this.style = style;
+            this.height = height;
+            this.notes = countNotes(view);
+            commit();
+        }
+    }
+}
@@ -35,6 +35,17 @@ public interface Atom {
 
     boolean setWeight(Float weight);
 
+    /**
+     * @return the number of notes of this atom, i.e. the length of its list of notes
+     */
+    int getNumberOfChildren();
+
+    /**
+     * @return the number of places in which this atom appears among the notes of an atom,
+     * counting an atom which appears several times among the notes of another once for each appearance
+     */
+    int getNumberOfParents();
+
     AtomList getNotes();
 
     boolean setNotes(AtomList notes);
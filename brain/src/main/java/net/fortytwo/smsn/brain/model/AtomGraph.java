@@ -16,6 +16,16 @@ public interface AtomGraph {
 
     Iterable<Atom> getAllAtoms();
 
+    /**
+     * @return all atoms which are not among the notes of any other atom
+     */
+    Iterable<Atom> getAtomsWithoutParents();
+
+    /**
+     * @return all atoms which have no notes
+     */
+    Iterable<Atom> getAtomsWithoutChildren();
+
     String idOfAtom(Atom a);
 
     String iriOfAtom(Atom a);
@@ -42,7 +52,20 @@ public interface AtomGraph {
 
     long getLastUpdate();
 
+    /**
+     * @return a number which changes with every change to the graph made through this object,
+     * and with every commit or notification of an update.
+     * Changes which are later rolled back also change the number
+     */
+    long getChangeCount();
+
     void commit();
 
+    /**
+     * Discards the changes of the current transaction, along with anything cached from them.
+     * A transaction with changes made through this graph is to be ended through this graph, not the graph beneath it
+     */
+    void rollback();
+
     AtomGraph createFilteredGraph(Filter filter);
 }
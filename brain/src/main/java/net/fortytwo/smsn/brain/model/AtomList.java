@@ -18,5 +18,11 @@ public interface AtomList {
 
     Atom getNotesOf();
 
+    /**
+     * @return the atom whose notes include this list node, or null if the list belongs to no atom.
+     * Unlike {@link #getNotesOf()}, this may be called on any node of a list, not only on its head
+     */
+    Atom getOwner();
+
     List<Atom> toJavaList();
 }
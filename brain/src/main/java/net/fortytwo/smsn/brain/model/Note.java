@@ -11,6 +11,8 @@ public class Note {
 
     private final List<Note> children;
     private boolean hasChildren;
+    // whether the children of this note are to be found at another note with the same id, elsewhere in the view
+    private boolean isReference;
     private String value;
     private String id;
     private Float weight;
@@ -38,6 +40,7 @@ public class Note {
         this.alias = copy.alias;
 
         this.hasChildren = copy.hasChildren;
+        this.isReference = copy.isReference;
         //this.type = copy.type;
         this.meta = copy.meta;
 
@@ -173,6 +176,14 @@ public class Note {
         hasChildren = b;
     }
 
+    public boolean getIsReference() {
+        return isReference;
+    }
+
+    public void setIsReference(final boolean b) {
+        isReference = b;
+    }
+
     // note: deliberately leaves hasChildren unaffected
     public void truncate(final int depth) {
         if (depth <= 1) {
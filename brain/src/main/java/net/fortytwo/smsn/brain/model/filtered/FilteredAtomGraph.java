@@ -56,6 +56,16 @@ public class FilteredAtomGraph implements AtomGraph {
         return wrapAtoms(baseGraph.getAllAtoms());
     }
 
+    @Override
+    public Iterable<Atom> getAtomsWithoutParents() {
+        return wrapAtoms(baseGraph.getAtomsWithoutParents());
+    }
+
+    @Override
+    public Iterable<Atom> getAtomsWithoutChildren() {
+        return wrapAtoms(baseGraph.getAtomsWithoutChildren());
+    }
+
     @Override
     public String idOfAtom(Atom a) {
         return baseGraph.idOfAtom(((FilteredAtom) a).baseAtom);
@@ -121,11 +131,21 @@ public class FilteredAtomGraph implements AtomGraph {
         return baseGraph.getLastUpdate();
     }
 
+    @Override
+    public long getChangeCount() {
+        return baseGraph.getChangeCount();
+    }
+
     @Override
     public void commit() {
         baseGraph.commit();
     }
 
+    @Override
+    public void rollback() {
+        baseGraph.rollback();
+    }
+
     @Override
     public AtomGraph createFilteredGraph(Filter filter) {
         return baseGraph.createFilteredGraph(filter);
@@ -217,6 +237,16 @@ public class FilteredAtomGraph implements AtomGraph {
             return isVisible() && baseAtom.setWeight(weight);
         }
 
+        @Override
+        public int getNumberOfChildren() {
+            return isVisible() ? baseAtom.getNumberOfChildren() : 0;
+        }
+
+        @Override
+        public int getNumberOfParents() {
+            return baseAtom.getNumberOfParents();
+        }
+
         @Override
         public AtomList getNotes() {
             return isVisible() ? baseAtom.getNotes() : null;
@@ -290,6 +320,12 @@ public class FilteredAtomGraph implements AtomGraph {
             return null == baseList.getNotesOf() ? null : wrapAtom(baseList.getNotesOf());
         }
 
+        @Override
+        public Atom getOwner() {
+            Atom owner = baseList.getOwner();
+            return null == owner ? null : wrapAtom(owner);
+        }
+
         @Override
         public List<Atom> toJavaList() {
             return wrapAtoms(baseList.toJavaList());
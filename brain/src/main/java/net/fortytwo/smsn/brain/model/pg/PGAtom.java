@@ -3,9 +3,11 @@ package net.fortytwo.smsn.brain.model.pg;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Vertex;
 import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.error.InvalidGraphException;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomList;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -24,7 +26,7 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
 
     @Override
     public String getAlias() {
-        return (String) getOptionalProperty(SemanticSynchrony.ALIAS);
+        return getSnapshot().alias;
     }
 
     @Override
@@ -34,7 +36,7 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
 
     @Override
     public Long getCreated() {
-        return (Long) getRequiredProperty(SemanticSynchrony.CREATED);
+        return required(getSnapshot().created, SemanticSynchrony.CREATED);
     }
 
     @Override
@@ -44,7 +46,7 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
 
     @Override
     public String getValue() {
-        return (String) getRequiredProperty(SemanticSynchrony.VALUE);
+        return required(getSnapshot().value, SemanticSynchrony.VALUE);
     }
 
     @Override
@@ -54,7 +56,7 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
 
     @Override
     public Float getPriority() {
-        return (Float) getOptionalProperty(SemanticSynchrony.PRIORITY);
+        return getSnapshot().priority;
     }
 
     @Override
@@ -64,7 +66,7 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
 
     @Override
     public Float getSharability() {
-        return (Float) getRequiredProperty(SemanticSynchrony.SHARABILITY);
+        return required(getSnapshot().sharability, SemanticSynchrony.SHARABILITY);
     }
 
     @Override
@@ -74,7 +76,7 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
 
     @Override
     public String getShortcut() {
-        return (String) getOptionalProperty(SemanticSynchrony.SHORTCUT);
+        return getSnapshot().shortcut;
     }
 
     @Override
@@ -84,7 +86,7 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
 
     @Override
     public Float getWeight() {
-        return (Float) getRequiredProperty(SemanticSynchrony.WEIGHT);
+        return required(getSnapshot().weight, SemanticSynchrony.WEIGHT);
     }
 
     @Override
@@ -92,6 +94,31 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
         return setRequiredProperty(SemanticSynchrony.WEIGHT, weight);
     }
 
+    @Override
+    public int getNumberOfChildren() {
+        Integer count = getSnapshot().childCount;
+        if (null == count) {
+            AtomList notes = getNotes();
+            return null == notes ? 0 : notes.toJavaList().size();
+        }
+        return count;
+    }
+
+    @Override
+    public int getNumberOfParents() {
+        Integer count = getSnapshot().parentCount;
+        if (null == count) {
+            int parents = 0;
+            for (AtomList l : getFirstOf()) {
+                if (null != ((PGAtomList) l).getOwnerId()) {
+                    parents++;
+                }
+            }
+            return parents;
+        }
+        return count;
+    }
+
     @Override
     public AtomList getNotes() {
         return asAtomList(getAtMostOneVertex(SemanticSynchrony.NOTES, Direction.OUT));
@@ -103,10 +130,17 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
     }
 
     public boolean setNotes(AtomList notes, final String edgeId) {
-        boolean changed = removeNotes();
+        PGAtomList previous = (PGAtomList) getNotes();
+        if (null != previous) {
+            previous.setOwner(null, false);
+        }
+
+        boolean changed = setNotesHead(notes, edgeId);
         if (null != notes) {
-            addOutEdge(edgeId, ((PGGraphEntity) notes).asVertex(), SemanticSynchrony.NOTES);
+            ((PGAtomList) notes).setOwner(this, false);
         }
+
+        getAtomGraph().notesChanged(this, null);
         return changed;
     }
 
@@ -122,42 +156,43 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
 
     @Override
     public void addChildAt(final Atom child, int position) {
+        PersistentList<Vertex> listNodes = getIndexedListNodes();
+
         // create a list node for the atom and insert it
-        AtomList list = createList();
+        PGAtomList list = (PGAtomList) createList();
         list.setFirst(child);
         if (0 == position) {
-            list.setRest(getNotes());
-            setNotes(list);
+            list.linkRest(getNotes(), null, null);
+            setNotesHead(list, null);
+            list.setOwner(this, true);
         } else {
-            AtomList prev = getNotes();
-            for (int i = 1; i < position; i++) {
-                prev = prev.getRest();
-            }
-
-            list.setRest(prev.getRest());
-            prev.setRest(list);
+            PGAtomList prev = getListNodeAt(listNodes, position - 1);
+            list.linkRest(prev.getRest(), null, null);
+            prev.linkRest(list, null, this);
         }
+
+        getAtomGraph().notesChanged(this, null == listNodes ? null : listNodes.insert(position, list.asVertex()));
     }
 
     @Override
     public void deleteChildAt(int position) {
-        AtomList list = getNotes();
+        PersistentList<Vertex> listNodes = getIndexedListNodes();
 
         // remove the atom's list node
+        PGAtomList list;
         if (0 == position) {
-            setNotes(list.getRest());
-
-            deleteListNode(list);
+            list = (PGAtomList) getNotes();
+            // the remaining nodes keep their owner
+            setNotesHead(list.getRest(), null);
         } else {
-            AtomList prev = list;
-            for (int i = 1; i < position; i++) {
-                prev = prev.getRest();
-            }
-
-            AtomList l = prev.getRest();
-            prev.setRest(l.getRest());
-            deleteListNode(l);
+            PGAtomList prev = getListNodeAt(listNodes, position - 1);
+            list = (PGAtomList) prev.getRest();
+            prev.linkRest(list.getRest(), null, this);
         }
+        list.disown(this);
+        deleteListNode(list);
+
+        getAtomGraph().notesChanged(this, null == listNodes ? null : listNodes.remove(position));
     }
 
     @Override
@@ -168,10 +203,168 @@ abstract class PGAtom extends PGGraphEntity implements Atom {
         return result;
     }
 
+    /**
+     * @return the list nodes of this atom, in order, or null if positional indexing is disabled.
+     * The nodes are built by traversal if there is no current entry in the index
+     */
+    private PersistentList<Vertex> getIndexedListNodes() {
+        VersionedCache<PersistentList<Vertex>> index = getAtomGraph().getChildListIndex();
+        if (!index.isEnabled()) {
+            return null;
+        }
+
+        PGAtomList head = (PGAtomList) getNotes();
+        PersistentList<Vertex> listNodes = index.get(getId());
+        if (null != listNodes && (listNodes.isEmpty()
+                ? null == head
+                : null != head && listNodes.get(0).getId().equals(head.asVertex().getId()))) {
+            return listNodes;
+        }
+
+        List<Vertex> nodes = new ArrayList<>();
+        AtomList cur = head;
+        while (null != cur) {
+            nodes.add(((PGAtomList) cur).asVertex());
+            cur = cur.getRest();
+        }
+        listNodes = PersistentList.of(nodes);
+
+        // a list written before owners were recorded is given an owner,
+        // so that any change made to it directly will invalidate the index
+        if (null != head && !getId().equals(head.getOwnerId())) {
+            head.setOwner(this, false);
+        }
+
+        return listNodes;
+    }
+
+    private PGAtomList getListNodeAt(final PersistentList<Vertex> listNodes, final int position) {
+        if (null != listNodes) {
+            return (PGAtomList) asAtomList(listNodes.get(position));
+        }
+
+        AtomList cur = getNotes();
+        for (int i = 0; i < position; i++) {
+            cur = cur.getRest();
+        }
+        return (PGAtomList) cur;
+    }
+
+    @Override
+    protected boolean setOptionalProperty(final String name, final Object value) {
+        return propertyChanged(super.setOptionalProperty(name, value));
+    }
+
+    @Override
+    protected boolean setRequiredProperty(final String name, final Object value) {
+        return propertyChanged(super.setRequiredProperty(name, value));
+    }
+
+    private boolean propertyChanged(final boolean changed) {
+        if (changed) {
+            getAtomGraph().propertiesChanged(this);
+        }
+        return changed;
+    }
+
+    /**
+     * @return the properties of this atom, from the property cache if there is a current snapshot for the atom.
+     * Snapshots are not held by the atom itself, which may be shared between threads,
+     * so that each thread sees only the snapshots of its own transaction and those already committed
+     */
+    private PropertySnapshot getSnapshot() {
+        VersionedCache<PropertySnapshot> cache = getAtomGraph().getPropertyCache();
+        long version = cache.getVersion(getId());
+        PropertySnapshot snapshot = cache.get(getId());
+        if (null == snapshot) {
+            snapshot = new PropertySnapshot(asVertex());
+            cache.put(getId(), version, snapshot);
+        }
+
+        return snapshot;
+    }
+
+    private <T> T required(final T value, final String name) {
+        if (null == value) {
+            throw new InvalidGraphException("missing property '" + name + "' for atom vertex " + getId());
+        }
+        return value;
+    }
+
+    /**
+     * Adds to a parent or child count of this atom.
+     * The atom is locked first, as otherwise, under read-committed isolation,
+     * two transactions could read the same count and one update be lost.
+     */
+    void addToCount(final String key, final int delta) {
+        updateCounts(() -> {
+            Integer count = (Integer) getOptionalProperty(key);
+            setOptionalProperty(key, (null == count ? 0 : count) + delta);
+        });
+    }
+
+    /**
+     * Counts the children of this atom anew, giving each of its list nodes this atom as its owner
+     */
+    void countChildren() {
+        updateCounts(() -> {
+            int children = 0;
+            PGAtomList cur = (PGAtomList) getNotes();
+            while (null != cur) {
+                cur.setOptionalProperty(PGAtomList.OWNER, getId());
+                children++;
+                cur = (PGAtomList) cur.getRest();
+            }
+            setOptionalProperty(PGAtomGraph.CHILD_COUNT, children);
+        });
+    }
+
+    /**
+     * Counts the parents of this atom anew, from the owners of the list nodes which have it as their first element
+     */
+    void countParents() {
+        updateCounts(() -> {
+            int parents = 0;
+            for (AtomList l : getFirstOf()) {
+                if (null != ((PGAtomList) l).getOwnerId()) {
+                    parents++;
+                }
+            }
+            setOptionalProperty(PGAtomGraph.PARENT_COUNT, parents);
+        });
+    }
+
+    /**
+     * Reads and writes the parent and child counts of this atom.
+     * In a transactional graph, the vertex is first locked for writing,
+     * so that the counts are not read until any concurrent transaction which has changed them has ended.
+     * In a graph without transactions, the counts are instead read and written while holding a lock of the atom graph.
+     */
+    private void updateCounts(final Runnable update) {
+        PGAtomGraph graph = getAtomGraph();
+        if (graph.isTransactional()) {
+            graph.lockForWriting(asVertex());
+            update.run();
+        } else {
+            synchronized (graph) {
+                update.run();
+            }
+        }
+    }
+
     private void deleteListNode(final AtomList l) {
         getPropertyGraph().removeVertex(((PGGraphEntity) l).asVertex());
     }
 
+    // replaces the head of the list of notes, without updating the owner of any list node
+    private boolean setNotesHead(final AtomList notes, final String edgeId) {
+        boolean changed = removeNotes();
+        if (null != notes) {
+            addOutEdge(edgeId, ((PGGraphEntity) notes).asVertex(), SemanticSynchrony.NOTES);
+        }
+        return changed;
+    }
+
     private boolean removeNotes() {
         return removeEdge(SemanticSynchrony.NOTES, Direction.OUT);
     }
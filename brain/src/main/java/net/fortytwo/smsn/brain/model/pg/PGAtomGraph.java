@@ -4,32 +4,80 @@ import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Index;
 import com.tinkerpop.blueprints.KeyIndexableGraph;
 import com.tinkerpop.blueprints.Parameter;
+import com.tinkerpop.blueprints.TransactionalGraph;
 import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
+import com.tinkerpop.blueprints.impls.neo4j.Neo4jVertex;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdVertex;
 import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.model.AtomList;
 import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.metrics.CommitEvent;
+import net.fortytwo.smsn.brain.metrics.IndexEvent;
+import net.fortytwo.smsn.brain.metrics.Metrics;
 import net.fortytwo.smsn.brain.model.filtered.FilteredAtomGraph;
+import net.fortytwo.smsn.brain.util.Deadline;
 import net.fortytwo.smsn.util.TypedProperties;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.index.impl.lucene.LowerCaseKeywordAnalyzer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 public class PGAtomGraph implements AtomGraph {
     private static final Logger logger = SemanticSynchrony.getLogger(PGAtomGraph.class);
 
+    // configuration properties
+    public static final String
+            PROP_CHILD_INDEX_CAPACITY = "net.fortytwo.smsn.brain.model.pg.childIndexCapacity",
+            PROP_PROPERTY_CACHE_CAPACITY = "net.fortytwo.smsn.brain.model.pg.propertyCacheCapacity";
+
+    // the number of list nodes, belonging to some atom, which have an atom as their first element,
+    // i.e. the number of the atom's parents, counting any repeated parent once for each occurrence
+    static final String PARENT_COUNT = "parentCount";
+    // the number of nodes in an atom's list of notes
+    static final String CHILD_COUNT = "childCount";
+
+    // a property which is set and removed within a transaction, only to lock a vertex in a graph other than Neo4j
+    private static final String WRITE_LOCK = "writeLock";
+
+    /**
+     * The vertex properties which this graph maintains for its own use, and which are derived from the rest of the
+     * graph rather than being part of it. These are not exported, and are recomputed after a bulk load
+     */
+    public static final Set<String> INTERNAL_PROPERTIES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(PARENT_COUNT, CHILD_COUNT, PGAtomList.OWNER)));
+
+    // the number of atoms updated or removed between commits, in a pass over the graph
+    private static final int ATOMS_PER_COMMIT = 1000;
+
     private static final String thingNamespace;
+    private static final int childIndexCapacity;
+    private static final int propertyCacheCapacity;
 
     static {
         try {
             thingNamespace = SemanticSynchrony.getConfiguration().getString(PROP_THING_NAMESPACE, DEFAULT_THING_NAMESPACE);
+            childIndexCapacity = SemanticSynchrony.getConfiguration().getInt(PROP_CHILD_INDEX_CAPACITY, 1000);
+            propertyCacheCapacity = SemanticSynchrony.getConfiguration().getInt(PROP_PROPERTY_CACHE_CAPACITY, 10000);
         } catch (TypedProperties.PropertyException e) {
             throw new ExceptionInInitializerError(e);
         }
@@ -45,6 +93,7 @@ public class PGAtomGraph implements AtomGraph {
 
     private final IdGraph<KeyIndexableGraph> propertyGraph;
     private final PGAtomGraph thisGraph;
+    private final boolean transactional;
 
     // full-text search
     private Index<Vertex> searchIndex;
@@ -53,10 +102,29 @@ public class PGAtomGraph implements AtomGraph {
 
     private long lastUpdate;
 
+    // the list nodes of recently edited atoms, by position
+    private final VersionedCache<PersistentList<Vertex>> childListIndex;
+    // the properties of recently viewed atoms
+    private final VersionedCache<PropertySnapshot> propertyCache;
+    // the number of changes of any kind, including commits and notifications of updates
+    private final AtomicLong changeCount = new AtomicLong();
+    // whether the current transaction of each thread has changed any atom
+    private final ThreadLocal<Boolean> atomsChanged = ThreadLocal.withInitial(() -> false);
+
+    // counts over all graphs in this process
+    private static final LongAdder atomReads = Metrics.getCounter("graph.atomReads");
+    private static final LongAdder atomWrites = Metrics.getCounter("graph.atomWrites");
+    private static final LongAdder commits = Metrics.getCounter("graph.commits");
+
     public PGAtomGraph(final KeyIndexableGraph baseGraph) {
         this.propertyGraph = createIdGraph(baseGraph);
         thisGraph = this;
 
+        // in a graph without transactions, such as TinkerGraph, changes are shared with other threads at once
+        transactional = baseGraph instanceof TransactionalGraph;
+        childListIndex = new VersionedCache<>("childListIndex", childIndexCapacity, transactional);
+        propertyCache = new VersionedCache<>("propertyCache", propertyCacheCapacity, transactional);
+
         searchIndex = getPropertyGraph().getIndex("search", Vertex.class);
         if (null == searchIndex) {
             try {
@@ -82,6 +150,41 @@ public class PGAtomGraph implements AtomGraph {
             }
         }
 
+        // the parent and child counts of a graph written before they were kept are counted and indexed by upgrade().
+        // There is nothing to count in a new graph, so its counts are indexed from the start
+        createKeyIndices(!getAllAtoms().iterator().hasNext());
+    }
+
+    /**
+     * Brings a graph written by an earlier version of this class up to date, by recording the owners of list nodes
+     * and the parent and child counts of atoms, and indexing the counts.
+     * This visits every vertex of the graph, and is to be done once, before the graph serves any requests.
+     * A graph which is already up to date is left as it is
+     *
+     * @return whether the graph has been upgraded
+     */
+    public boolean upgrade() {
+        if (getPropertyGraph().getIndexedKeys(Vertex.class).containsAll(Arrays.asList(PARENT_COUNT, CHILD_COUNT))) {
+            return false;
+        }
+
+        logger.info("upgrading graph with parent and child counts");
+        countParentsAndChildren();
+        createKeyIndices();
+        return true;
+    }
+
+    /**
+     * Creates any missing key indices on atom properties.
+     * A newly created key index is populated in a single pass over the existing vertices.
+     * Parent and child counts are indexed as they stand, so they are to be counted first if they are not up to date,
+     * e.g. after a bulk load
+     */
+    public void createKeyIndices() {
+        createKeyIndices(true);
+    }
+
+    private void createKeyIndices(final boolean includeCounts) {
         // reverse index of user-defined shortcuts, e.g. "mf" for "my family"
         // shortcuts are distinct from acronyms, which are defined automatically for all values below a certain length
         if (!getPropertyGraph().getIndexedKeys(Vertex.class).contains(SemanticSynchrony.SHORTCUT)) {
@@ -94,6 +197,169 @@ public class PGAtomGraph implements AtomGraph {
             logger.info("creating key index for '" + SemanticSynchrony.ALIAS + "' property");
             getPropertyGraph().createKeyIndex(SemanticSynchrony.ALIAS, Vertex.class);
         }
+
+        // roots and isolated atoms are found through their parent and child counts, without a scan of the graph
+        if (includeCounts) {
+            for (String key : new String[]{PARENT_COUNT, CHILD_COUNT}) {
+                if (!getPropertyGraph().getIndexedKeys(Vertex.class).contains(key)) {
+                    logger.info("creating key index for '" + key + "' property");
+                    getPropertyGraph().createKeyIndex(key, Vertex.class);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the owner of each list node and the parent and child counts of each atom, in passes over the graph.
+     * This is needed only for a graph whose lists were not built through this class, e.g. after a bulk load
+     * into an empty graph, or by {@link #upgrade()}. Anything cached from the graph is discarded.
+     */
+    public void countParentsAndChildren() {
+        long before = System.currentTimeMillis();
+        IndexEvent event = new IndexEvent();
+        event.begin();
+
+        // clear any owners of list nodes which are no longer in a list
+        int count = 0;
+        for (Vertex v : propertyGraph.getVertices()) {
+            if (null == v.getProperty(SemanticSynchrony.CREATED) && null != v.getProperty(PGAtomList.OWNER)) {
+                v.removeProperty(PGAtomList.OWNER);
+                if (0 == ++count % ATOMS_PER_COMMIT) {
+                    commit();
+                }
+            }
+        }
+
+        Map<Object, Integer> parentCounts = new HashMap<>();
+        count = 0;
+        for (Vertex v : propertyGraph.getVertices()) {
+            if (null != v.getProperty(SemanticSynchrony.CREATED)) {
+                int children = 0;
+                Vertex cur = getAtMostOneVertex(v, SemanticSynchrony.NOTES);
+                while (null != cur) {
+                    cur.setProperty(PGAtomList.OWNER, v.getId());
+                    Vertex first = getAtMostOneVertex(cur, SemanticSynchrony.FIRST);
+                    if (null != first) {
+                        parentCounts.merge(first.getId(), 1, Integer::sum);
+                    }
+                    children++;
+                    cur = getAtMostOneVertex(cur, SemanticSynchrony.REST);
+                }
+                v.setProperty(CHILD_COUNT, children);
+
+                if (0 == ++count % ATOMS_PER_COMMIT) {
+                    commit();
+                }
+            }
+        }
+
+        count = 0;
+        for (Vertex v : propertyGraph.getVertices()) {
+            if (null != v.getProperty(SemanticSynchrony.CREATED)) {
+                Integer parents = parentCounts.get(v.getId());
+                v.setProperty(PARENT_COUNT, null == parents ? 0 : parents);
+
+                if (0 == ++count % ATOMS_PER_COMMIT) {
+                    commit();
+                }
+            }
+        }
+        commit();
+        childListIndex.clear();
+        propertyCache.clear();
+
+        long after = System.currentTimeMillis();
+        logger.info("counted parents and children of " + count + " atoms in " + (after - before) + "ms");
+        event.finish("countParentsAndChildren", count);
+    }
+
+    /**
+     * Records the owners of list nodes and the parent and child counts of atoms, for the given vertices only,
+     * e.g. for the vertices which a bulk load has added to a graph, and those at either end of the edges it has added.
+     * Each atom among the vertices is counted, as is the owner of each list node among them,
+     * and anything cached of those atoms is discarded. Ids of vertices which no longer exist are ignored.
+     * Each atom is locked as by an update of its counts, so that concurrent changes to its counts are not lost.
+     *
+     * @param vertexIds the ids of the vertices
+     */
+    public void countParentsAndChildren(final Collection<String> vertexIds) {
+        long before = System.currentTimeMillis();
+        IndexEvent event = new IndexEvent();
+        event.begin();
+
+        Set<String> atomIds = new HashSet<>();
+        Set<Object> visitedListNodes = new HashSet<>();
+        for (String id : vertexIds) {
+            Vertex v = propertyGraph.getVertex(id);
+            if (null == v) {
+                continue;
+            }
+
+            if (null != v.getProperty(SemanticSynchrony.CREATED)) {
+                atomIds.add(id);
+            } else {
+                // the owner of a list node is found at the head of its list.
+                // Nodes already visited are not visited again, so that each list is walked only once
+                Vertex cur = v;
+                while (null != cur && visitedListNodes.add(cur.getId())) {
+                    Vertex owner = getAtMostOneVertex(cur, SemanticSynchrony.NOTES, Direction.IN);
+                    if (null != owner) {
+                        atomIds.add((String) owner.getId());
+                        break;
+                    }
+                    cur = getAtMostOneVertex(cur, SemanticSynchrony.REST, Direction.IN);
+                }
+            }
+        }
+
+        List<PGAtom> atoms = new ArrayList<>(atomIds.size());
+        for (String id : atomIds) {
+            atoms.add((PGAtom) getAtom(id));
+        }
+
+        // owners are recorded first, as only the list nodes which belong to some atom count as parents
+        int count = 0;
+        for (PGAtom a : atoms) {
+            propertiesChanged(a);
+            notesChanged(a, null);
+            a.countChildren();
+            if (0 == ++count % ATOMS_PER_COMMIT) {
+                commit();
+            }
+        }
+        for (PGAtom a : atoms) {
+            a.countParents();
+            if (0 == ++count % ATOMS_PER_COMMIT) {
+                commit();
+            }
+        }
+        commit();
+
+        long after = System.currentTimeMillis();
+        logger.info("counted parents and children of " + atoms.size() + " atoms in " + (after - before) + "ms");
+        event.finish("countParentsAndChildren", atoms.size());
+    }
+
+    private Vertex getAtMostOneVertex(final Vertex v, final String label, final Direction direction) {
+        Iterator<Vertex> iter = v.getVertices(direction, label).iterator();
+        return iter.hasNext() ? iter.next() : null;
+    }
+
+    private Vertex getAtMostOneVertex(final Vertex v, final String label) {
+        return getAtMostOneVertex(v, label, Direction.OUT);
+    }
+
+    /**
+     * Drops the key indices on atom properties, so that they are not maintained during a bulk load.
+     * Shortcut lookups fall back to a scan of the graph until {@link #createKeyIndices()} is called.
+     */
+    public void dropKeyIndices() {
+        for (String key : new String[]{SemanticSynchrony.SHORTCUT, SemanticSynchrony.ALIAS, PARENT_COUNT, CHILD_COUNT}) {
+            if (getPropertyGraph().getIndexedKeys(Vertex.class).contains(key)) {
+                logger.info("dropping key index for '" + key + "' property");
+                getPropertyGraph().dropKeyIndex(key, Vertex.class);
+            }
+        }
     }
 
     public IdGraph<KeyIndexableGraph> getPropertyGraph() {
@@ -118,9 +384,102 @@ public class PGAtomGraph implements AtomGraph {
         return lastUpdate;
     }
 
+    @Override
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
     @Override
     public void commit() {
+        CommitEvent event = new CommitEvent();
+        event.begin();
         propertyGraph.commit();
+        childListIndex.commit();
+        propertyCache.commit();
+        event.finish(true);
+        atomsChanged.set(false);
+        changeCount.incrementAndGet();
+        commits.increment();
+    }
+
+    @Override
+    public void rollback() {
+        CommitEvent event = new CommitEvent();
+        event.begin();
+        propertyGraph.rollback();
+        childListIndex.rollback();
+        propertyCache.rollback();
+        event.finish(false);
+        // a transaction which has only read from the graph leaves it as it was
+        if (atomsChanged.get()) {
+            atomsChanged.set(false);
+            changeCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return whether changes to this graph become visible to other threads only when they are committed
+     */
+    boolean isTransactional() {
+        return transactional;
+    }
+
+    /**
+     * Locks a vertex for writing until the end of the current transaction, so that the vertex is not read
+     * until any concurrent transaction which has changed it has ended.
+     * In Neo4j, the node's own write lock is acquired, which is released when the transaction commits or rolls back.
+     * Blueprints offers no such lock for other graphs, so the vertex is locked by writing to it.
+     * As with any two transactions which write to the same vertices, transactions which take the same locks in
+     * a different order may deadlock, in which case the graph fails one of them rather than blocking both
+     */
+    void lockForWriting(final Vertex vertex) {
+        KeyIndexableGraph baseGraph = propertyGraph.getBaseGraph();
+        if (baseGraph instanceof Neo4jGraph) {
+            Neo4jGraph neo4jGraph = (Neo4jGraph) baseGraph;
+            // the nested transaction acquires the lock on behalf of the graph's transaction on this thread,
+            // which is begun if it has not been already
+            neo4jGraph.autoStartTransaction();
+            Transaction tx = neo4jGraph.getRawGraph().beginTx();
+            try {
+                tx.acquireWriteLock(((Neo4jVertex) ((IdVertex) vertex).getBaseVertex()).getRawVertex());
+                tx.success();
+            } finally {
+                tx.finish();
+            }
+        } else {
+            vertex.setProperty(WRITE_LOCK, true);
+            vertex.removeProperty(WRITE_LOCK);
+        }
+    }
+
+    VersionedCache<PersistentList<Vertex>> getChildListIndex() {
+        return childListIndex;
+    }
+
+    VersionedCache<PropertySnapshot> getPropertyCache() {
+        return propertyCache;
+    }
+
+    /**
+     * Gives an atom's properties a new version, invalidating any cached snapshot of the previous version
+     */
+    void propertiesChanged(final PGAtom atom) {
+        propertyCache.changed(atom.getId(), null);
+        atomsChanged.set(true);
+        changeCount.incrementAndGet();
+        atomWrites.increment();
+    }
+
+    /**
+     * Gives an atom's list of notes a new version, invalidating any indexed list nodes of the previous version
+     *
+     * @param listNodes the list nodes of the new version, in order, or null if they are not known
+     */
+    void notesChanged(final PGAtom atom, final PersistentList<Vertex> listNodes) {
+        childListIndex.changed(atom.getId(), listNodes);
+        atomsChanged.set(true);
+        changeCount.incrementAndGet();
+        atomWrites.increment();
     }
 
     @Override
@@ -131,6 +490,7 @@ public class PGAtomGraph implements AtomGraph {
     @Override
     public void notifyOfUpdate() {
         this.lastUpdate = System.currentTimeMillis();
+        changeCount.incrementAndGet();
     }
 
     private static class AtomIdFactory implements IdGraph.IdFactory {
@@ -154,6 +514,7 @@ public class PGAtomGraph implements AtomGraph {
         if (null == v) {
             throw new IllegalArgumentException("null vertex");
         }
+        atomReads.increment();
 
         return new PGAtomImpl(v);
     }
@@ -192,6 +553,8 @@ public class PGAtomGraph implements AtomGraph {
                            final String id) {
 
         Vertex vertex = createVertex(id);
+        vertex.setProperty(PARENT_COUNT, 0);
+        vertex.setProperty(CHILD_COUNT, 0);
         Atom atom = new PGAtomImpl(vertex);
         atom.setCreated(new Date().getTime());
 
@@ -211,10 +574,11 @@ public class PGAtomGraph implements AtomGraph {
             throw new IllegalArgumentException();
         }
 
+        // an isolated atom has no parents, so only atoms without parents need to be checked
         List<Vertex> toRemove = new LinkedList<>();
-
-        for (Vertex v : propertyGraph.getVertices()) {
-            if (null != v.getProperty("value")
+        for (Vertex v : propertyGraph.getVertices(PARENT_COUNT, 0)) {
+            Deadline.check();
+            if (null != v.getProperty(SemanticSynchrony.VALUE)
                     && !v.getEdges(Direction.IN).iterator().hasNext()
                     && !v.getEdges(Direction.OUT).iterator().hasNext()) {
                 Atom a = getAtom(v);
@@ -224,9 +588,22 @@ public class PGAtomGraph implements AtomGraph {
             }
         }
 
+        // remove the atoms in batches, so that no single transaction grows with the size of the graph.
+        // Until the first batch is committed, the operation may still be cancelled and rolled back as a whole.
+        // Once it has been committed, the operation is marked as completing and can no longer be cancelled,
+        // so that a client is never told of a failure after some of the atoms have been removed
+        int count = 0;
         for (Vertex v : toRemove) {
+            Deadline.check();
             // note: we assume from the above that there are no dependent vertices (i.e. list nodes) to remove first
             propertyGraph.removeVertex(v);
+
+            if (0 == ++count % ATOMS_PER_COMMIT) {
+                if (!Deadline.completeCurrent()) {
+                    throw new CancellationException("deadline exceeded");
+                }
+                commit();
+            }
         }
 
         notifyOfUpdate();
@@ -310,6 +687,42 @@ public class PGAtomGraph implements AtomGraph {
         };
     }
 
+    /**
+     * @return an Iterable of all atoms which are not the first element of any atom's list of notes,
+     * found through the key index on parent counts
+     */
+    @Override
+    public Iterable<Atom> getAtomsWithoutParents() {
+        return getAtomsWithCount(PARENT_COUNT, 0);
+    }
+
+    /**
+     * @return an Iterable of all atoms with an empty list of notes,
+     * found through the key index on child counts
+     */
+    @Override
+    public Iterable<Atom> getAtomsWithoutChildren() {
+        return getAtomsWithCount(CHILD_COUNT, 0);
+    }
+
+    private Iterable<Atom> getAtomsWithCount(final String key, final int count) {
+        return () -> new Iterator<Atom>() {
+            private final Iterator<Vertex> iter = getPropertyGraph().getVertices(key, count).iterator();
+
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            public Atom next() {
+                return getAtom(iter.next());
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
     @Override
     public List<Atom> getAtomsByFulltextQuery(final String query, final Filter filter) {
         List<Atom> results = new LinkedList<>();
@@ -6,11 +6,18 @@ import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomList;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 abstract class PGAtomList extends PGGraphEntity implements AtomList {
 
+    // the id of the atom whose notes include a list node.
+    // This serves as a child-to-parent index, so that finding the parent of a list node does not require
+    // a traversal to the head of the list
+    static final String OWNER = "owner";
+
     public PGAtomList(final Vertex vertex) {
         super(vertex);
     }
@@ -31,9 +38,22 @@ abstract class PGAtomList extends PGGraphEntity implements AtomList {
     }
 
     public boolean setFirst(Atom first, final String edgeId) {
+        // an atom's parent count includes only the list nodes which belong to some atom
+        boolean owned = null != getOwnerId();
+        if (owned) {
+            PGAtom previous = getFirstIfAny();
+            if (null != previous) {
+                previous.addToCount(PGAtomGraph.PARENT_COUNT, -1);
+            }
+        }
+
         boolean changed = removeFirst();
         if (null != first) {
             addOutEdge(edgeId, ((PGGraphEntity) first).asVertex(), SemanticSynchrony.FIRST);
+
+            if (owned) {
+                ((PGAtom) first).addToCount(PGAtomGraph.PARENT_COUNT, 1);
+            }
         }
         return changed;
     }
@@ -49,9 +69,42 @@ abstract class PGAtomList extends PGGraphEntity implements AtomList {
     }
 
     public boolean setRest(AtomList rest, final String edgeId) {
+        String ownerId = getOwnerId();
+        PGAtom owner = null == ownerId ? null : (PGAtom) getAtomGraph().getAtom(ownerId);
+
+        if (null != owner) {
+            // any nodes cut off from the list no longer belong to its owner
+            PGAtomList previousRest = (PGAtomList) getRest();
+            if (null != previousRest && (null == rest || !previousRest.getId().equals(rest.getId()))) {
+                previousRest.setOwner(null, false);
+            }
+        }
+
+        boolean changed = linkRest(rest, edgeId, owner);
+
+        // the list has been changed other than through its owner, so any indexed list nodes are out of date
+        if (null != owner) {
+            getAtomGraph().notesChanged(owner, null);
+        }
+
+        return changed;
+    }
+
+    /**
+     * Sets the rest of the list, giving any newly linked nodes the owner of this node,
+     * but without changing the version of the owner's notes
+     *
+     * @param owner the owner of this node, if any
+     */
+    boolean linkRest(final AtomList rest, final String edgeId, final PGAtom owner) {
         boolean changed = removeRest();
         if (null != rest) {
             addOutEdge(edgeId, ((PGGraphEntity) rest).asVertex(), SemanticSynchrony.REST);
+
+            if (null != owner) {
+                // the rest of the list is usually owned already, apart from any newly linked nodes
+                ((PGAtomList) rest).setOwner(owner, true);
+            }
         }
         return changed;
     }
@@ -66,6 +119,99 @@ abstract class PGAtomList extends PGGraphEntity implements AtomList {
         return asAtom(getAtMostOneVertex(SemanticSynchrony.NOTES, Direction.IN));
     }
 
+    @Override
+    public Atom getOwner() {
+        String ownerId = getOwnerId();
+        if (null != ownerId) {
+            return getAtomGraph().getAtom(ownerId);
+        }
+
+        // the owner of a list created before owners were recorded is found at the head of the list
+        AtomList cur = this;
+        AtomList prev = null;
+        while (null != cur) {
+            prev = cur;
+            cur = cur.getRestOf();
+        }
+        return prev.getNotesOf();
+    }
+
+    String getOwnerId() {
+        return (String) getOptionalProperty(OWNER);
+    }
+
+    /**
+     * Sets or clears the owner of this node and of the nodes which follow it,
+     * keeping the parent and child counts of the atoms involved up to date
+     *
+     * @param owner       the new owner, or null to clear the owner
+     * @param stopIfOwned whether to stop at the first node which already has the given owner
+     */
+    void setOwner(final PGAtom owner, final boolean stopIfOwned) {
+        String ownerId = null == owner ? null : owner.getId();
+
+        // the number of nodes taken from each previous owner
+        Map<String, Integer> taken = new HashMap<>();
+        int added = 0;
+
+        PGAtomList cur = this;
+        while (null != cur) {
+            String previousId = cur.getOwnerId();
+            if (null == ownerId ? null == previousId : ownerId.equals(previousId)) {
+                if (stopIfOwned && null != ownerId) {
+                    break;
+                }
+            } else {
+                cur.setOptionalProperty(OWNER, ownerId);
+
+                if (null == previousId || null == ownerId) {
+                    PGAtom first = cur.getFirstIfAny();
+                    if (null != first) {
+                        first.addToCount(PGAtomGraph.PARENT_COUNT, null == ownerId ? -1 : 1);
+                    }
+                }
+                if (null != previousId) {
+                    taken.merge(previousId, 1, Integer::sum);
+                }
+                if (null != ownerId) {
+                    added++;
+                }
+            }
+
+            cur = (PGAtomList) cur.getRest();
+        }
+
+        if (added > 0) {
+            owner.addToCount(PGAtomGraph.CHILD_COUNT, added);
+        }
+        for (Map.Entry<String, Integer> e : taken.entrySet()) {
+            PGAtom previousOwner = (PGAtom) getAtomGraph().getAtom(e.getKey());
+            if (null != previousOwner) {
+                previousOwner.addToCount(PGAtomGraph.CHILD_COUNT, -e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Clears the owner of this node alone, e.g. before the node is removed from its list
+     */
+    void disown(final PGAtom owner) {
+        if (owner.getId().equals(getOwnerId())) {
+            setOptionalProperty(OWNER, null);
+
+            PGAtom first = getFirstIfAny();
+            if (null != first) {
+                first.addToCount(PGAtomGraph.PARENT_COUNT, -1);
+            }
+            owner.addToCount(PGAtomGraph.CHILD_COUNT, -1);
+        }
+    }
+
+    // a list node may be briefly without a first element, e.g. while a list is being built
+    private PGAtom getFirstIfAny() {
+        return (PGAtom) asAtom(getAtMostOneVertex(SemanticSynchrony.FIRST, Direction.OUT));
+    }
+
     @Override
     public List<Atom> toJavaList() {
         List<Atom> list = new LinkedList<>();
@@ -0,0 +1,196 @@
+package net.fortytwo.smsn.brain.model.pg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable list which is read, and changed, by position in logarithmic time.
+ * The list is a balanced (AVL) tree in which each node knows the size of its subtree.
+ * Inserting or removing an element copies only the nodes along one path of the tree, sharing the rest with the
+ * original list, so that a list may be shared between threads while new versions of it are derived.
+ *
+ * @param <V> the type of the elements
+ */
+final class PersistentList<V> {
+    private static final PersistentList<?> EMPTY = new PersistentList<>(null);
+
+    private final Node<V> root;
+
+    private PersistentList(final Node<V> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentList<V> empty() {
+        return (PersistentList<V>) EMPTY;
+    }
+
+    /**
+     * @return a list of the given elements, in order, built in linear time
+     */
+    public static <V> PersistentList<V> of(final List<V> elements) {
+        return elements.isEmpty() ? empty() : new PersistentList<>(build(elements, 0, elements.size()));
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return null == root;
+    }
+
+    public V get(final int position) {
+        checkPosition(position, size() - 1);
+
+        Node<V> cur = root;
+        int i = position;
+        while (true) {
+            int leftSize = size(cur.left);
+            if (i < leftSize) {
+                cur = cur.left;
+            } else if (i > leftSize) {
+                i -= leftSize + 1;
+                cur = cur.right;
+            } else {
+                return cur.value;
+            }
+        }
+    }
+
+    /**
+     * @return a new list with the given element inserted at the given position, which may be the size of the list
+     */
+    public PersistentList<V> insert(final int position, final V value) {
+        checkPosition(position, size());
+
+        return new PersistentList<>(insert(root, position, value));
+    }
+
+    /**
+     * @return a new list without the element at the given position
+     */
+    public PersistentList<V> remove(final int position) {
+        checkPosition(position, size() - 1);
+
+        Node<V> newRoot = remove(root, position);
+        return null == newRoot ? empty() : new PersistentList<>(newRoot);
+    }
+
+    /**
+     * @return the elements of this list, in order, in a new mutable list
+     */
+    public List<V> toList() {
+        List<V> result = new ArrayList<>(size());
+        addAll(root, result);
+        return result;
+    }
+
+    // the height of the tree, which is logarithmic in the size of the list
+    int getHeight() {
+        return height(root);
+    }
+
+    private void checkPosition(final int position, final int max) {
+        if (position < 0 || position > max) {
+            throw new IndexOutOfBoundsException("position " + position + " in list of size " + size());
+        }
+    }
+
+    private static <V> Node<V> build(final List<V> elements, final int from, final int to) {
+        if (from >= to) {
+            return null;
+        }
+
+        int mid = (from + to) >>> 1;
+        return new Node<>(build(elements, from, mid), elements.get(mid), build(elements, mid + 1, to));
+    }
+
+    private static <V> void addAll(final Node<V> node, final List<V> result) {
+        if (null != node) {
+            addAll(node.left, result);
+            result.add(node.value);
+            addAll(node.right, result);
+        }
+    }
+
+    private static <V> Node<V> insert(final Node<V> node, final int position, final V value) {
+        if (null == node) {
+            return new Node<>(null, value, null);
+        }
+
+        int leftSize = size(node.left);
+        return position <= leftSize
+                ? balance(insert(node.left, position, value), node.value, node.right)
+                : balance(node.left, node.value, insert(node.right, position - leftSize - 1, value));
+    }
+
+    private static <V> Node<V> remove(final Node<V> node, final int position) {
+        int leftSize = size(node.left);
+        if (position < leftSize) {
+            return balance(remove(node.left, position), node.value, node.right);
+        } else if (position > leftSize) {
+            return balance(node.left, node.value, remove(node.right, position - leftSize - 1));
+        } else if (null == node.left) {
+            return node.right;
+        } else if (null == node.right) {
+            return node.left;
+        } else {
+            // replace the removed element with the first element of the right subtree
+            Node<V> first = node.right;
+            while (null != first.left) {
+                first = first.left;
+            }
+            return balance(node.left, first.value, remove(node.right, 0));
+        }
+    }
+
+    // joins two subtrees whose heights differ by at most two, restoring the balance of the tree by rotation
+    private static <V> Node<V> balance(final Node<V> left, final V value, final Node<V> right) {
+        int leftHeight = height(left), rightHeight = height(right);
+
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<>(left.left, left.value, new Node<>(left.right, value, right));
+            } else {
+                Node<V> lr = left.right;
+                return new Node<>(
+                        new Node<>(left.left, left.value, lr.left), lr.value, new Node<>(lr.right, value, right));
+            }
+        } else if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<>(new Node<>(left, value, right.left), right.value, right.right);
+            } else {
+                Node<V> rl = right.left;
+                return new Node<>(
+                        new Node<>(left, value, rl.left), rl.value, new Node<>(rl.right, right.value, right.right));
+            }
+        } else {
+            return new Node<>(left, value, right);
+        }
+    }
+
+    private static int size(final Node<?> node) {
+        return null == node ? 0 : node.size;
+    }
+
+    private static int height(final Node<?> node) {
+        return null == node ? 0 : node.height;
+    }
+
+    private static final class Node<V> {
+        private final Node<V> left;
+        private final V value;
+        private final Node<V> right;
+        private final int size;
+        private final int height;
+
+        private Node(final Node<V> left, final V value, final Node<V> right) {
+            this.left = left;
+            this.value = value;
+            this.right = right;
+            this.size = size(left) + 1 + size(right);
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package net.fortytwo.smsn.brain.model.pg;
+
+import com.tinkerpop.blueprints.Vertex;
+import net.fortytwo.smsn.SemanticSynchrony;
+
+/**
+ * The properties of an atom at a given version, read from the graph all at once
+ */
+class PropertySnapshot {
+    final String value;
+    final String alias;
+    final String shortcut;
+    final Float weight;
+    final Float sharability;
+    final Float priority;
+    final Long created;
+    final Integer parentCount;
+    final Integer childCount;
+
+    PropertySnapshot(final Vertex vertex) {
+        value = vertex.getProperty(SemanticSynchrony.VALUE);
+        alias = vertex.getProperty(SemanticSynchrony.ALIAS);
+        shortcut = vertex.getProperty(SemanticSynchrony.SHORTCUT);
+        weight = vertex.getProperty(SemanticSynchrony.WEIGHT);
+        sharability = vertex.getProperty(SemanticSynchrony.SHARABILITY);
+        priority = vertex.getProperty(SemanticSynchrony.PRIORITY);
+        created = vertex.getProperty(SemanticSynchrony.CREATED);
+        parentCount = vertex.getProperty(PGAtomGraph.PARENT_COUNT);
+        childCount = vertex.getProperty(PGAtomGraph.CHILD_COUNT);
+    }
+}
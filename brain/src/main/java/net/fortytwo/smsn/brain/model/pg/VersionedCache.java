@@ -0,0 +1,205 @@
+package net.fortytwo.smsn.brain.model.pg;
+
+import net.fortytwo.smsn.brain.metrics.Metrics;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-memory cache of values derived from the atoms of a graph, e.g. the list nodes of an atom, by position.
+ * Nothing is stored in the graph itself. Instead, each atom has a version, kept in memory,
+ * which changes whenever the atom is changed; a value derived from the graph is added to the cache only if
+ * the version of its atom has not changed since the value was read, so that a value read concurrently with a change
+ * is never cached.
+ * In a transactional graph, the values of atoms changed in the current transaction are visible only to the thread
+ * of the transaction, and are shared with other threads only when the transaction is committed.
+ * In a non-transactional graph, where a change is visible to all threads at once and there may never be a commit,
+ * a changed value is shared at once.
+ *
+ * @param <V> the type of the cached values
+ */
+class VersionedCache<V> {
+    private final int capacity;
+    private final boolean transactional;
+    private final Map<String, V> entries;
+    private final Map<String, Long> versions;
+    // the values of atoms changed in the current transaction of each thread, or null where not known
+    private final ThreadLocal<Map<String, V>> changedValues = ThreadLocal.withInitial(HashMap::new);
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    private long lastVersion;
+    // the version of every atom for which no version is kept
+    private long baseVersion;
+
+    /**
+     * @param name     the name of the cache in metrics, e.g. cache.[name].hits
+     * @param capacity      the maximum number of entries, or 0 to disable the cache
+     * @param transactional whether changes become visible to other threads only when they are committed
+     */
+    public VersionedCache(final String name, final int capacity, final boolean transactional) {
+        this.capacity = capacity;
+        this.transactional = transactional;
+        hits = Metrics.getCounter("cache." + name + ".hits");
+        misses = Metrics.getCounter("cache." + name + ".misses");
+
+        // least recently used entries are evicted first
+        entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, V> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        // versions are kept for as many atoms as there are entries.
+        // The version of an atom whose version is forgotten becomes a new base version, shared with other such atoms
+        versions = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                if (size() > capacity) {
+                    baseVersion = ++lastVersion;
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * @return the current version of the given atom, to be read before any value is derived from the atom
+     */
+    public synchronized long getVersion(final String atomId) {
+        Long version = versions.get(atomId);
+        return null == version ? baseVersion : version;
+    }
+
+    /**
+     * @return the value for the given atom, or null if there is no current entry for the atom
+     */
+    public V get(final String atomId) {
+        Map<String, V> changed = changedValues.get();
+        if (changed.containsKey(atomId)) {
+            V value = changed.get(atomId);
+            (null == value ? misses : hits).increment();
+            return value;
+        }
+
+        V value;
+        synchronized (this) {
+            value = entries.get(atomId);
+        }
+        (null == value ? misses : hits).increment();
+        return value;
+    }
+
+    /**
+     * Adds a value derived from the graph, unless the atom has been changed since the value was read
+     *
+     * @param version the version of the atom, as read before the value was derived
+     * @param value   the value for the atom. The value is not copied, and must not be modified
+     */
+    public void put(final String atomId, final long version, final V value) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Map<String, V> changed = changedValues.get();
+        if (changed.containsKey(atomId)) {
+            putChanged(changed, atomId, value);
+            return;
+        }
+
+        synchronized (this) {
+            if (getVersion(atomId) == version) {
+                entries.put(atomId, value);
+            }
+        }
+    }
+
+    /**
+     * Records a change to an atom in the current transaction
+     *
+     * @param value the new value for the atom, if known, or null
+     */
+    public void changed(final String atomId, final V value) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        if (transactional) {
+            invalidate(atomId);
+            putChanged(changedValues.get(), atomId, value);
+        } else {
+            synchronized (this) {
+                invalidate(atomId);
+                if (null != value) {
+                    entries.put(atomId, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shares the values of the atoms changed in the current transaction, which has just been committed
+     */
+    public void commit() {
+        Map<String, V> changed = changedValues.get();
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            for (Map.Entry<String, V> e : changed.entrySet()) {
+                invalidate(e.getKey());
+                if (null != e.getValue()) {
+                    entries.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        changed.clear();
+    }
+
+    /**
+     * Discards the values of the atoms changed in the current transaction, which has just been rolled back
+     */
+    public void rollback() {
+        Map<String, V> changed = changedValues.get();
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            for (String atomId : changed.keySet()) {
+                invalidate(atomId);
+            }
+        }
+        changed.clear();
+    }
+
+    /**
+     * Discards all entries, e.g. after the graph has been changed other than through its atoms
+     */
+    public synchronized void clear() {
+        entries.clear();
+        versions.clear();
+        baseVersion = ++lastVersion;
+        changedValues.get().clear();
+    }
+
+    private synchronized void invalidate(final String atomId) {
+        entries.remove(atomId);
+        versions.put(atomId, ++lastVersion);
+    }
+
+    // the values of a transaction are not kept beyond the capacity of the cache, although the changed atoms are
+    private void putChanged(final Map<String, V> changed, final String atomId, final V value) {
+        changed.put(atomId, changed.size() < capacity || changed.containsKey(atomId) ? value : null);
+    }
+}
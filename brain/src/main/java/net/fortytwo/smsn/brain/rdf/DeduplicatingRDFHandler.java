@@ -0,0 +1,540 @@
+package net.fortytwo.smsn.brain.rdf;
+
+import net.fortytwo.smsn.SemanticSynchrony;
+import org.openrdf.model.BNode;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+/**
+ * An RDF handler which removes duplicate statements before passing them downstream.
+ * Statements are passed on as soon as they are received, and only a 64-bit fingerprint of each distinct statement
+ * is kept in memory.
+ * If the number of distinct statements exceeds the in-memory budget, any further statements which are not already
+ * known are spilled to disk, then sorted, deduplicated, and passed on when the RDF stream ends.
+ * <p>
+ * Two distinct statements which share a fingerprint within the in-memory set will be treated as duplicates.
+ * The chance of this is negligible for graphs of realistic size (on the order of n^2/2^65 for n statements).
+ * <p>
+ * A stream which is abandoned before it ends, for example when an export is cancelled,
+ * must be closed in order to release the spill file.
+ */
+public class DeduplicatingRDFHandler implements RDFHandler, Closeable {
+    private static final Logger logger = SemanticSynchrony.getLogger(DeduplicatingRDFHandler.class);
+
+    // the maximum total size of spilled records to be sorted in memory at one time
+    private static final long MAX_SORTED_RUN_BYTES = 1024L * 1024 * 16;
+
+    private static final byte
+            NULL_TAG = 0,
+            IRI_TAG = 1,
+            BNODE_TAG = 2,
+            LITERAL_TAG = 3,
+            LANGUAGE_LITERAL_TAG = 4;
+
+    private final RDFHandler downstream;
+    private final ValueFactory valueFactory;
+    private final FingerprintSet fingerprints;
+
+    private File spillFile;
+    private DataOutputStream spillOut;
+
+    private long received, duplicates, spilled;
+
+    /**
+     * @param downstream   the handler which is to receive distinct statements
+     * @param valueFactory a factory for statements which are read back from disk
+     * @param budget       the maximum number of statement fingerprints to keep in memory
+     */
+    public DeduplicatingRDFHandler(final RDFHandler downstream,
+                                   final ValueFactory valueFactory,
+                                   final int budget) {
+        if (null == downstream || null == valueFactory || budget < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.downstream = downstream;
+        this.valueFactory = valueFactory;
+        this.fingerprints = new FingerprintSet(budget);
+    }
+
+    public long getReceivedCount() {
+        return received;
+    }
+
+    public long getDuplicateCount() {
+        return duplicates;
+    }
+
+    public long getSpilledCount() {
+        return spilled;
+    }
+
+    // the file to which statements are currently being spilled, if any
+    File getSpillFile() {
+        return spillFile;
+    }
+
+    @Override
+    public void startRDF() throws RDFHandlerException {
+        downstream.startRDF();
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        if (null != spillFile) {
+            try {
+                spillOut.close();
+                flushSpilledStatements();
+            } catch (IOException e) {
+                throw new RDFHandlerException(e);
+            } finally {
+                close();
+            }
+        }
+
+        downstream.endRDF();
+    }
+
+    /**
+     * Closes and deletes the spill file, if any, discarding any statements which have not yet been passed on.
+     * This is done by {@link #endRDF}, and is harmless if repeated.
+     */
+    @Override
+    public void close() {
+        if (null != spillFile) {
+            try {
+                spillOut.close();
+            } catch (IOException e) {
+                logger.warning("could not close spill file " + spillFile + ": " + e.getMessage());
+            }
+
+            deleteQuietly(spillFile);
+            spillFile = null;
+            spillOut = null;
+        }
+    }
+
+    @Override
+    public void handleNamespace(final String prefix, final String uri) throws RDFHandlerException {
+        downstream.handleNamespace(prefix, uri);
+    }
+
+    @Override
+    public void handleStatement(final Statement st) throws RDFHandlerException {
+        received++;
+
+        long fingerprint = fingerprintOf(st);
+        if (fingerprints.contains(fingerprint)) {
+            duplicates++;
+        } else if (fingerprints.add(fingerprint)) {
+            downstream.handleStatement(st);
+        } else {
+            try {
+                spill(fingerprint, st);
+            } catch (IOException e) {
+                throw new RDFHandlerException(e);
+            }
+        }
+    }
+
+    @Override
+    public void handleComment(final String comment) throws RDFHandlerException {
+        downstream.handleComment(comment);
+    }
+
+    private void spill(final long fingerprint, final Statement st) throws IOException {
+        if (null == spillFile) {
+            logger.info("statement fingerprint budget exceeded; spilling further statements to disk");
+            spillFile = File.createTempFile("smsn-rdf-spill", ".bin");
+            spillFile.deleteOnExit();
+            spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+        }
+
+        new SpilledStatement(fingerprint, encode(st)).writeTo(spillOut);
+        spilled++;
+    }
+
+    // an external merge sort of the spilled statements, dropping duplicates as they are merged
+    private void flushSpilledStatements() throws IOException, RDFHandlerException {
+        List<File> runs = new ArrayList<>();
+        try {
+            try (DataInputStream in = openForReading(spillFile)) {
+                List<SpilledStatement> buffer = new ArrayList<>();
+                long bufferedBytes = 0;
+                SpilledStatement s;
+                while (null != (s = SpilledStatement.readFrom(in))) {
+                    buffer.add(s);
+                    bufferedBytes += s.encoded.length;
+                    if (bufferedBytes >= MAX_SORTED_RUN_BYTES) {
+                        runs.add(writeSortedRun(buffer));
+                        buffer.clear();
+                        bufferedBytes = 0;
+                    }
+                }
+                if (buffer.size() > 0) {
+                    runs.add(writeSortedRun(buffer));
+                }
+            }
+
+            mergeRuns(runs);
+        } finally {
+            runs.forEach(DeduplicatingRDFHandler::deleteQuietly);
+        }
+    }
+
+    private File writeSortedRun(final List<SpilledStatement> buffer) throws IOException {
+        Collections.sort(buffer);
+
+        File run = File.createTempFile("smsn-rdf-run", ".bin");
+        run.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (SpilledStatement s : buffer) {
+                s.writeTo(out);
+            }
+        }
+
+        return run;
+    }
+
+    private void mergeRuns(final List<File> runs) throws IOException, RDFHandlerException {
+        List<DataInputStream> inputs = new ArrayList<>();
+        try {
+            PriorityQueue<RunHead> heads = new PriorityQueue<>();
+            for (File run : runs) {
+                DataInputStream in = openForReading(run);
+                inputs.add(in);
+                RunHead head = new RunHead(in);
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+
+            SpilledStatement last = null;
+            while (!heads.isEmpty()) {
+                RunHead head = heads.poll();
+                SpilledStatement s = head.current;
+                if (null != last && 0 == last.compareTo(s)) {
+                    duplicates++;
+                } else {
+                    downstream.handleStatement(decode(s.encoded));
+                    last = s;
+                }
+
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+        } finally {
+            for (DataInputStream in : inputs) {
+                in.close();
+            }
+        }
+    }
+
+    private static DataInputStream openForReading(final File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private static void deleteQuietly(final File file) {
+        if (!file.delete()) {
+            logger.warning("could not delete temporary file " + file);
+        }
+    }
+
+    // FNV-1a over the terms of the statement, followed by a final avalanche step
+    private static long fingerprintOf(final Statement st) {
+        long h = 0xcbf29ce484222325L;
+        h = hash(h, st.getSubject());
+        h = hash(h, st.getPredicate());
+        h = hash(h, st.getObject());
+        h = hash(h, st.getContext());
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hash(long h, final Value v) {
+        if (null == v) {
+            return hash(h, NULL_TAG);
+        } else if (v instanceof IRI) {
+            h = hash(h, IRI_TAG);
+            return hash(h, v.stringValue());
+        } else if (v instanceof BNode) {
+            h = hash(h, BNODE_TAG);
+            return hash(h, ((BNode) v).getID());
+        } else {
+            Literal l = (Literal) v;
+            if (l.getLanguage().isPresent()) {
+                h = hash(h, LANGUAGE_LITERAL_TAG);
+                h = hash(h, l.getLabel());
+                return hash(h, l.getLanguage().get());
+            } else {
+                h = hash(h, LITERAL_TAG);
+                h = hash(h, l.getLabel());
+                return hash(h, l.getDatatype().stringValue());
+            }
+        }
+    }
+
+    private static long hash(long h, final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = hash(h, s.charAt(i));
+        }
+        // terminate each string so that adjacent terms cannot run together
+        return hash(h, 0xffff);
+    }
+
+    private static long hash(final long h, final int c) {
+        return (h ^ c) * 0x100000001b3L;
+    }
+
+    private static byte[] encode(final Statement st) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeValue(st.getSubject(), out);
+            writeValue(st.getPredicate(), out);
+            writeValue(st.getObject(), out);
+            writeValue(st.getContext(), out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Statement decode(final byte[] encoded) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            Resource subject = (Resource) readValue(in);
+            IRI predicate = (IRI) readValue(in);
+            Value object = readValue(in);
+            Resource context = (Resource) readValue(in);
+            return null == context
+                    ? valueFactory.createStatement(subject, predicate, object)
+                    : valueFactory.createStatement(subject, predicate, object, context);
+        }
+    }
+
+    private static void writeValue(final Value v, final DataOutputStream out) throws IOException {
+        if (null == v) {
+            out.writeByte(NULL_TAG);
+        } else if (v instanceof IRI) {
+            out.writeByte(IRI_TAG);
+            writeString(v.stringValue(), out);
+        } else if (v instanceof BNode) {
+            out.writeByte(BNODE_TAG);
+            writeString(((BNode) v).getID(), out);
+        } else {
+            Literal l = (Literal) v;
+            if (l.getLanguage().isPresent()) {
+                out.writeByte(LANGUAGE_LITERAL_TAG);
+                writeString(l.getLabel(), out);
+                writeString(l.getLanguage().get(), out);
+            } else {
+                out.writeByte(LITERAL_TAG);
+                writeString(l.getLabel(), out);
+                writeString(l.getDatatype().stringValue(), out);
+            }
+        }
+    }
+
+    private Value readValue(final DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL_TAG:
+                return null;
+            case IRI_TAG:
+                return valueFactory.createIRI(readString(in));
+            case BNODE_TAG:
+                return valueFactory.createBNode(readString(in));
+            case LITERAL_TAG: {
+                String label = readString(in);
+                return valueFactory.createLiteral(label, valueFactory.createIRI(readString(in)));
+            }
+            case LANGUAGE_LITERAL_TAG: {
+                String label = readString(in);
+                return valueFactory.createLiteral(label, readString(in));
+            }
+            default:
+                throw new IOException("unexpected value tag in spilled statement: " + tag);
+        }
+    }
+
+    // unlike DataOutputStream.writeUTF, this is not limited to 64KB strings
+    private static void writeString(final String s, final DataOutputStream out) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class SpilledStatement implements Comparable<SpilledStatement> {
+        private final long fingerprint;
+        private final byte[] encoded;
+
+        private SpilledStatement(final long fingerprint, final byte[] encoded) {
+            this.fingerprint = fingerprint;
+            this.encoded = encoded;
+        }
+
+        private void writeTo(final DataOutputStream out) throws IOException {
+            out.writeLong(fingerprint);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+
+        private static SpilledStatement readFrom(final DataInputStream in) throws IOException {
+            long fingerprint;
+            try {
+                fingerprint = in.readLong();
+            } catch (EOFException e) {
+                return null;
+            }
+
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            return new SpilledStatement(fingerprint, encoded);
+        }
+
+        // order by fingerprint, then by encoded form, so that identical statements end up adjacent
+        @Override
+        public int compareTo(final SpilledStatement other) {
+            int cmp = Long.compare(fingerprint, other.fingerprint);
+            if (0 != cmp) {
+                return cmp;
+            }
+
+            int n = Math.min(encoded.length, other.encoded.length);
+            for (int i = 0; i < n; i++) {
+                cmp = Integer.compare(encoded[i] & 0xff, other.encoded[i] & 0xff);
+                if (0 != cmp) {
+                    return cmp;
+                }
+            }
+
+            return Integer.compare(encoded.length, other.encoded.length);
+        }
+    }
+
+    private static class RunHead implements Comparable<RunHead> {
+        private final DataInputStream in;
+        private SpilledStatement current;
+
+        private RunHead(final DataInputStream in) {
+            this.in = in;
+        }
+
+        private boolean advance() throws IOException {
+            current = SpilledStatement.readFrom(in);
+            return null != current;
+        }
+
+        @Override
+        public int compareTo(final RunHead other) {
+            return current.compareTo(other.current);
+        }
+    }
+
+    /**
+     * An open-addressing hash set of nonzero longs which grows on demand up to a fixed number of elements
+     */
+    private static class FingerprintSet {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final int maxSize;
+
+        private long[] slots;
+        private int size;
+        private boolean containsZero;
+
+        private FingerprintSet(final int maxSize) {
+            this.maxSize = maxSize;
+            this.slots = new long[INITIAL_CAPACITY];
+        }
+
+        private boolean contains(final long fingerprint) {
+            if (0 == fingerprint) {
+                return containsZero;
+            }
+
+            int mask = slots.length - 1;
+            for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+                long s = slots[i];
+                if (0 == s) {
+                    return false;
+                } else if (fingerprint == s) {
+                    return true;
+                }
+            }
+        }
+
+        // adds a fingerprint which is not already present, returning false if the set is full
+        private boolean add(final long fingerprint) {
+            if (size >= maxSize) {
+                return false;
+            }
+
+            if (0 == fingerprint) {
+                containsZero = true;
+            } else {
+                // keep the load factor at or below 1/2
+                if (2 * (size + 1) > slots.length) {
+                    rehash(slots.length * 2);
+                }
+                insert(slots, fingerprint);
+            }
+
+            size++;
+            return true;
+        }
+
+        private void rehash(final int newCapacity) {
+            long[] newSlots = new long[newCapacity];
+            for (long s : slots) {
+                if (0 != s) {
+                    insert(newSlots, s);
+                }
+            }
+            slots = newSlots;
+        }
+
+        private static void insert(final long[] slots, final long fingerprint) {
+            int mask = slots.length - 1;
+            int i = (int) fingerprint & mask;
+            while (0 != slots[i]) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = fingerprint;
+        }
+    }
+}
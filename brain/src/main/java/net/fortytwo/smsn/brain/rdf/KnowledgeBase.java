@@ -1,7 +1,7 @@
 package net.fortytwo.smsn.brain.rdf;
 
-import info.aduna.iteration.CloseableIteration;
 import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.metrics.InferenceEvent;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomList;
 import net.fortytwo.smsn.brain.model.AtomGraph;
@@ -34,17 +34,14 @@ import net.fortytwo.smsn.brain.rdf.classes.collections.PersonCollection;
 import net.fortytwo.smsn.brain.rdf.classes.collections.QuotedValueCollection;
 import net.fortytwo.smsn.brain.rdf.classes.collections.TODOCollection;
 import net.fortytwo.smsn.brain.rdf.classes.collections.TopicCollection;
-import org.openrdf.model.Statement;
+import net.fortytwo.smsn.brain.util.Deadline;
+import net.fortytwo.smsn.util.TypedProperties;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.SimpleValueFactory;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.Rio;
-import org.openrdf.sail.Sail;
-import org.openrdf.sail.SailConnection;
-import org.openrdf.sail.SailException;
-import org.openrdf.sail.memory.MemoryStore;
 
 import java.io.OutputStream;
 import java.util.Collection;
@@ -65,6 +62,25 @@ import java.util.logging.Logger;
 public class KnowledgeBase {
     private static final Logger logger = SemanticSynchrony.getLogger(KnowledgeBase.class);
 
+    /**
+     * The configurable maximum number of distinct statements which are deduplicated in memory during RDF export.
+     * Beyond this number, statements are deduplicated on disk.
+     */
+    public static final String PROP_EXPORT_DEDUPLICATION_BUDGET = "net.fortytwo.smsn.brain.exportDeduplicationBudget";
+
+    private static final int DEFAULT_EXPORT_DEDUPLICATION_BUDGET = 4000000;
+
+    private static final int defaultExportDeduplicationBudget;
+
+    static {
+        try {
+            defaultExportDeduplicationBudget = SemanticSynchrony.getConfiguration().getInt(
+                    PROP_EXPORT_DEDUPLICATION_BUDGET, DEFAULT_EXPORT_DEDUPLICATION_BUDGET);
+        } catch (TypedProperties.PropertyException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final AtomGraph atomGraph;
 
     private final Map<Class<? extends AtomClass>, AtomClass> classes;
@@ -73,6 +89,11 @@ public class KnowledgeBase {
 
     private ValueFactory valueFactory = SimpleValueFactory.getInstance();
 
+    private int exportDeduplicationBudget = defaultExportDeduplicationBudget;
+
+    // changes whenever the classifications of atoms may have changed
+    private volatile long version;
+
     public KnowledgeBase(final AtomGraph atomGraph) {
         this.atomGraph = atomGraph;
         this.atomClassifications = new HashMap<>();
@@ -88,9 +109,26 @@ public class KnowledgeBase {
         this.valueFactory = valueFactory;
     }
 
+    /**
+     * Overrides the configured number of distinct statements which are deduplicated in memory during RDF export
+     *
+     * @param budget the maximum number of statement fingerprints to hold in memory
+     */
+    public void setExportDeduplicationBudget(final int budget) {
+        this.exportDeduplicationBudget = budget;
+    }
+
     // note: graph and vocabulary are not affected by this operation
     public synchronized void reset() {
         atomClassifications.clear();
+        version++;
+    }
+
+    /**
+     * @return a number which changes whenever the classifications of atoms may have changed
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
@@ -355,6 +393,8 @@ public class KnowledgeBase {
      */
     public synchronized void inferClasses(final RDFHandler handler, final Filter filter) throws RDFHandlerException {
         long startTime = System.currentTimeMillis();
+        InferenceEvent event = new InferenceEvent();
+        event.begin();
 
         RDFizationContext context = new RDFizationContext(atomGraph, handler, valueFactory);
 
@@ -365,6 +405,7 @@ public class KnowledgeBase {
 
         // classify or re-classify each atom
         for (Atom subject : atomGraph.getAllAtoms()) {
+            Deadline.check();
             context.setSubject(subject);
 
             String value = subject.getValue();
@@ -578,6 +619,7 @@ public class KnowledgeBase {
                 e.callbacks = null;
             }
         }
+        version++;
 
         long typed = atomClassifications.size();
         long total = countAtoms();
@@ -585,6 +627,7 @@ public class KnowledgeBase {
         long endTime = System.currentTimeMillis();
         logger.info("classified " + typed + " of " + total + " atoms ("
                 + (total - typed) + " remaining) in " + (endTime - startTime) + "ms");
+        event.finish(total, typed);
     }
 
     private long countAtoms() {
@@ -641,48 +684,28 @@ public class KnowledgeBase {
 
     public void exportRDF(final OutputStream out,
                           final RDFFormat format,
-                          final Filter filter) throws SailException, RDFHandlerException {
+                          final Filter filter) throws RDFHandlerException {
         logger.info("exporting RDF in format " + format);
-        long startTime, endTime;
-        Sail dedupSail = new MemoryStore();
-        dedupSail.initialize();
-        try {
-            SailConnection sc = dedupSail.getConnection();
-            try {
-                sc.begin();
-
-                startTime = System.currentTimeMillis();
-                RDFHandler h0 = new SailAdder(sc);
-                h0.startRDF();
-
-                inferClasses(h0, filter);
+        long startTime = System.currentTimeMillis();
 
-                h0.endRDF();
-                endTime = System.currentTimeMillis();
-                logger.info("inferred classes and generated RDF in " + (endTime - startTime) + "ms");
+        // statements are written as soon as they are generated; only their fingerprints are held in memory
+        DeduplicatingRDFHandler h = new DeduplicatingRDFHandler(
+                Rio.createWriter(format, out), valueFactory, exportDeduplicationBudget);
+        try {
+            h.startRDF();
 
-                sc.commit();
-                sc.begin();
+            inferClasses(h, filter);
 
-                startTime = System.currentTimeMillis();
-                RDFHandler h = Rio.createWriter(format, out);
-                h.startRDF();
-                try (CloseableIteration<? extends Statement, SailException> iter
-                             = sc.getStatements(null, null, null, false)) {
-                    while (iter.hasNext()) {
-                        h.handleStatement(iter.next());
-                    }
-                }
-                h.endRDF();
-                endTime = System.currentTimeMillis();
-                logger.info("wrote triples to disk in " + (endTime - startTime) + "ms");
-            } finally {
-                sc.rollback();
-                sc.close();
-            }
+            h.endRDF();
         } finally {
-            dedupSail.shutDown();
+            // release any spill file, even if the export fails or is cancelled
+            h.close();
         }
+
+        long endTime = System.currentTimeMillis();
+        logger.info("inferred classes and wrote " + (h.getReceivedCount() - h.getDuplicateCount())
+                + " distinct statements (" + h.getDuplicateCount() + " duplicates, "
+                + h.getSpilledCount() + " spilled to disk) in " + (endTime - startTime) + "ms");
     }
 
     private static class AtomClassificationComparator implements Comparator<KnowledgeBase.AtomClassEntry> {
@@ -696,43 +719,6 @@ public class KnowledgeBase {
         }
     }
 
-    private static class SailAdder implements RDFHandler {
-        private final SailConnection sc;
-
-        private SailAdder(SailConnection sc) {
-            this.sc = sc;
-        }
-
-        @Override
-        public void startRDF() throws RDFHandlerException {
-        }
-
-        @Override
-        public void endRDF() throws RDFHandlerException {
-        }
-
-        @Override
-        public void handleNamespace(String s, String s2) throws RDFHandlerException {
-        }
-
-        @Override
-        public void handleStatement(Statement statement) throws RDFHandlerException {
-            try {
-                sc.addStatement(
-                        statement.getSubject(),
-                        statement.getPredicate(),
-                        statement.getObject(),
-                        statement.getContext());
-            } catch (SailException e) {
-                throw new RDFHandlerException(e);
-            }
-        }
-
-        @Override
-        public void handleComment(String s) throws RDFHandlerException {
-        }
-    }
-
     public class AtomClassEntry implements Comparable<AtomClassEntry> {
         private final Class<? extends AtomClass> inferredClass;
         private int outScore;
@@ -0,0 +1,162 @@
+package net.fortytwo.smsn.brain.ripple;
+
+import net.fortytwo.smsn.brain.NoteQueries;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.wiki.NoteParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The Ripple primitives which may be evaluated on the server.
+ * These are the read-only mappings of the Typeatron's SmSn library, with the same names and stack effects,
+ * together with the few stack and stream primitives needed to combine them.
+ * Mappings with side effects, such as set-atom-value, remain with the client.
+ */
+enum Primitive {
+    SHORTCUT_SEARCH(Primitive.SMSN, "shortcut-search", null) {
+        @Override
+        void apply(final RippleStack stack, final AtomGraph graph, final Filter filter,
+                   final List<RippleStack> solutions) {
+            RippleStack rest = stack.getRest();
+            for (Atom a : graph.getAtomsWithShortcut(stack.getFirst().toString(), filter)) {
+                solutions.add(rest.push(a));
+            }
+        }
+    },
+    GET_ATOM_ALIAS(Primitive.SMSN, "get-atom-alias", Atom::getAlias),
+    GET_ATOM_CHILDREN(Primitive.SMSN, "get-atom-children", null) {
+        @Override
+        void apply(final RippleStack stack, final AtomGraph graph, final Filter filter,
+                   final List<RippleStack> solutions) {
+            Atom a = toAtom(stack.getFirst(), graph, filter);
+            if (null != a) {
+                List<Object> children = new ArrayList<>(a.getNumberOfChildren());
+                for (Atom child : NoteQueries.toIterable(a.getNotes())) {
+                    if (filter.isVisible(child)) {
+                        children.add(child);
+                    }
+                }
+
+                // put both the children and the atom back on the stack
+                solutions.add(stack.getRest().push(a).push(Collections.unmodifiableList(children)));
+            }
+        }
+    },
+    GET_ATOM_CREATED(Primitive.SMSN, "get-atom-created", Atom::getCreated),
+    GET_ATOM_ID(Primitive.SMSN, "get-atom-id", Atom::getId),
+    GET_ATOM_SHARABILITY(Primitive.SMSN, "get-atom-sharability", Atom::getSharability),
+    GET_ATOM_SHORTCUT(Primitive.SMSN, "get-atom-shortcut", Atom::getShortcut),
+    GET_ATOM_VALUE(Primitive.SMSN, "get-atom-value", Atom::getValue),
+    GET_ATOM_WEIGHT(Primitive.SMSN, "get-atom-weight", Atom::getWeight),
+    DUP(Primitive.STACK, "dup", null) {
+        @Override
+        void apply(final RippleStack stack, final AtomGraph graph, final Filter filter,
+                   final List<RippleStack> solutions) {
+            solutions.add(stack.push(stack.getFirst()));
+        }
+    },
+    POP(Primitive.STACK, "pop", null) {
+        @Override
+        void apply(final RippleStack stack, final AtomGraph graph, final Filter filter,
+                   final List<RippleStack> solutions) {
+            solutions.add(stack.getRest());
+        }
+    },
+    SWAP(Primitive.STACK, "swap", null) {
+        @Override
+        int getArity() {
+            return 2;
+        }
+
+        @Override
+        void apply(final RippleStack stack, final AtomGraph graph, final Filter filter,
+                   final List<RippleStack> solutions) {
+            RippleStack rest = stack.getRest();
+            solutions.add(rest.getRest().push(stack.getFirst()).push(rest.getFirst()));
+        }
+    },
+    EACH(Primitive.STREAM, "each", null) {
+        @Override
+        void apply(final RippleStack stack, final AtomGraph graph, final Filter filter,
+                   final List<RippleStack> solutions) {
+            Object first = stack.getFirst();
+            if (first instanceof List) {
+                RippleStack rest = stack.getRest();
+                for (Object o : (List<?>) first) {
+                    solutions.add(rest.push(o));
+                }
+            }
+        }
+    };
+
+    private static final String
+            SMSN = "smsn",
+            STACK = "stack",
+            STREAM = "stream";
+
+    private final String prefix;
+    private final String name;
+    private final Function<Atom, Object> property;
+
+    Primitive(final String prefix, final String name, final Function<Atom, Object> property) {
+        this.prefix = prefix;
+        this.name = name;
+        this.property = property;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of values the primitive consumes from the stack
+     */
+    int getArity() {
+        return 1;
+    }
+
+    /**
+     * Applies the primitive to a stack which holds at least as many values as its arity.
+     * Each resulting stack is a solution; a primitive which fails, for example on a value which is not an atom,
+     * simply adds no solutions.
+     */
+    void apply(final RippleStack stack, final AtomGraph graph, final Filter filter,
+               final List<RippleStack> solutions) {
+        Atom a = toAtom(stack.getFirst(), graph, filter);
+        if (null != a) {
+            Object value = property.apply(a);
+            if (null != value) {
+                // put both the property and the atom back on the stack
+                solutions.add(stack.getRest().push(a).push(value));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return prefix + ":" + name;
+    }
+
+    // as on the Typeatron, a string which looks like an atom id stands for that atom
+    private static Atom toAtom(final Object value, final AtomGraph graph, final Filter filter) {
+        Atom a;
+        if (value instanceof Atom) {
+            a = (Atom) value;
+        } else if (value instanceof String && NoteParser.ID.matcher((String) value).matches()) {
+            a = graph.getAtom((String) value);
+        } else {
+            return null;
+        }
+
+        return null != a && filter.isVisible(a) ? a : null;
+    }
+}
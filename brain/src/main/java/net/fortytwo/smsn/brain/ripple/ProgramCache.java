@@ -0,0 +1,65 @@
+package net.fortytwo.smsn.brain.ripple;
+
+import net.fortytwo.smsn.brain.error.InvalidQueryException;
+import net.fortytwo.smsn.brain.metrics.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of compiled Ripple programs, keyed by the text of the query,
+ * so that a query which is evaluated repeatedly is parsed and compiled only once.
+ * The least recently used program is dropped when the cache is full.
+ */
+public class ProgramCache {
+    private static final LongAdder hits = Metrics.getCounter("cache.ripple.hits");
+    private static final LongAdder misses = Metrics.getCounter("cache.ripple.misses");
+
+    private final Map<String, RippleProgram> programsByText;
+
+    public ProgramCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        programsByText = new LinkedHashMap<String, RippleProgram>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, RippleProgram> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param text the text of a Ripple query
+     * @return the compiled program, from the cache if possible
+     * @throws InvalidQueryException if the query is not valid. Invalid queries are not cached
+     */
+    public RippleProgram getProgram(final String text) {
+        RippleProgram program;
+        synchronized (programsByText) {
+            program = programsByText.get(text);
+        }
+
+        if (null != program) {
+            hits.increment();
+            return program;
+        }
+
+        misses.increment();
+        // compile outside of the lock; two threads may occasionally compile the same query, harmlessly
+        program = RippleProgram.compile(text);
+        synchronized (programsByText) {
+            programsByText.put(text, program);
+        }
+
+        return program;
+    }
+
+    public int size() {
+        synchronized (programsByText) {
+            return programsByText.size();
+        }
+    }
+}
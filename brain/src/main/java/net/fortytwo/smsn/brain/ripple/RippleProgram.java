@@ -0,0 +1,269 @@
+package net.fortytwo.smsn.brain.ripple;
+
+import net.fortytwo.smsn.brain.error.InvalidQueryException;
+import net.fortytwo.smsn.brain.error.QueryBudgetExceededException;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A Ripple query which has been parsed and compiled for evaluation against an atom graph.
+ * The query language is the subset of Ripple used by the Typeatron to explore the graph:
+ * string and number literals, the primitives of {@link Primitive}, either bare or with a prefix such as "smsn:",
+ * and the application operator "&gt;&gt;", as in
+ * <code>"abc" shortcut-search &gt;&gt; get-atom-children &gt;&gt; each &gt;&gt; get-atom-value &gt;&gt;</code>.
+ * A program is immutable, and may be evaluated any number of times, concurrently.
+ */
+public class RippleProgram {
+
+    private static final Pattern
+            INTEGER = Pattern.compile("-?[0-9]+"),
+            DECIMAL = Pattern.compile("-?[0-9]+\\.[0-9]+"),
+            KEYWORD = Pattern.compile("([a-z]+:)?[a-zA-Z][a-zA-Z0-9-]*");
+
+    private static final String APPLY_OPERATOR = ">>";
+
+    private static final Map<String, Primitive> primitivesByName;
+
+    static {
+        primitivesByName = new HashMap<>();
+        for (Primitive p : Primitive.values()) {
+            primitivesByName.put(p.getName(), p);
+            primitivesByName.put(p.toString(), p);
+        }
+    }
+
+    private final String text;
+    private final List<Instruction> instructions;
+
+    private RippleProgram(final String text, final List<Instruction> instructions) {
+        this.text = text;
+        this.instructions = instructions;
+    }
+
+    /**
+     * Parses and compiles a Ripple query
+     *
+     * @param text the text of the query
+     * @return the compiled program
+     * @throws InvalidQueryException if the query is not valid, or uses a primitive which is not supported
+     */
+    public static RippleProgram compile(final String text) {
+        if (null == text) {
+            throw new IllegalArgumentException();
+        }
+
+        List<Object> tokens = tokenize(text);
+
+        List<Instruction> instructions = new ArrayList<>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            Object token = tokens.get(i);
+            // the operator is compared by identity, so that the string literal ">>" is not mistaken for it
+            if (APPLY_OPERATOR == token) {
+                instructions.add(Instruction.APPLY);
+            } else if (token instanceof Primitive && i + 1 < tokens.size() && APPLY_OPERATOR == tokens.get(i + 1)) {
+                // a primitive which is applied as soon as it is pushed is simply called
+                instructions.add(new Instruction(Instruction.Type.Call, token));
+                i++;
+            } else {
+                instructions.add(new Instruction(Instruction.Type.Push, token));
+            }
+        }
+
+        return new RippleProgram(text, Collections.unmodifiableList(instructions));
+    }
+
+    /**
+     * Evaluates the program, starting from an empty stack
+     *
+     * @param graph         the graph of atoms to query
+     * @param filter        a filter for visible atoms. Invisible atoms are neither found nor reached
+     * @param maxSteps      the maximum number of steps of evaluation, summed over all solutions,
+     *                      where a step is a single instruction applied to a single stack
+     * @param timeoutMillis the maximum time of evaluation, in milliseconds
+     * @return the stacks which are solutions of the program, in order
+     * @throws QueryBudgetExceededException if evaluation does not finish within the given steps or time
+     */
+    public List<RippleStack> evaluate(final AtomGraph graph,
+                                      final Filter filter,
+                                      final long maxSteps,
+                                      final long timeoutMillis) {
+        if (null == graph || null == filter || maxSteps < 1 || timeoutMillis < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long steps = 0;
+
+        List<RippleStack> stacks = Collections.singletonList(RippleStack.empty());
+        for (Instruction instruction : instructions) {
+            List<RippleStack> next = new ArrayList<>(stacks.size());
+            for (RippleStack stack : stacks) {
+                if (++steps > maxSteps) {
+                    throw new QueryBudgetExceededException("query exceeded its budget of " + maxSteps + " steps");
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    throw new QueryBudgetExceededException("query exceeded its budget of " + timeoutMillis + " ms");
+                }
+
+                instruction.execute(stack, graph, filter, next);
+            }
+
+            stacks = next;
+            if (stacks.isEmpty()) {
+                break;
+            }
+        }
+
+        return stacks;
+    }
+
+    /**
+     * @return the number of instructions of the compiled program
+     */
+    public int size() {
+        return instructions.size();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static List<Object> tokenize(final String query) {
+        List<Object> tokens = new ArrayList<>();
+        String text = query.trim();
+
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if ('"' == c) {
+                StringBuilder sb = new StringBuilder();
+                i = readString(text, i + 1, sb);
+                tokens.add(sb.toString());
+            } else {
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i)) && '"' != text.charAt(i)) {
+                    i++;
+                }
+                String word = text.substring(start, i);
+
+                // a period ends the query, as it ends a statement in Ripple
+                if (i == text.length() && word.endsWith(".") && !DECIMAL.matcher(word).matches()) {
+                    word = word.substring(0, word.length() - 1);
+                    if (word.isEmpty()) {
+                        break;
+                    }
+                }
+
+                tokens.add(toToken(word));
+            }
+        }
+
+        return tokens;
+    }
+
+    // reads a string literal up to its closing quote, returning the position after the quote
+    private static int readString(final String text, int i, final StringBuilder sb) {
+        while (i < text.length()) {
+            char c = text.charAt(i++);
+            if ('"' == c) {
+                return i;
+            } else if ('\\' == c && i < text.length()) {
+                char escaped = text.charAt(i++);
+                switch (escaped) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    default:
+                        sb.append(escaped);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+
+        throw new InvalidQueryException("unterminated string literal");
+    }
+
+    private static Object toToken(final String word) {
+        if (APPLY_OPERATOR.equals(word)) {
+            return APPLY_OPERATOR;
+        } else if (INTEGER.matcher(word).matches()) {
+            try {
+                return Long.valueOf(word);
+            } catch (NumberFormatException e) {
+                throw new InvalidQueryException("integer out of range: " + word);
+            }
+        } else if (DECIMAL.matcher(word).matches()) {
+            return Double.valueOf(word);
+        } else if (KEYWORD.matcher(word).matches()) {
+            Primitive p = primitivesByName.get(word);
+            if (null == p) {
+                throw new InvalidQueryException("unknown or unsupported keyword: " + word);
+            }
+            return p;
+        } else {
+            throw new InvalidQueryException("unexpected token: " + word);
+        }
+    }
+
+    private static class Instruction {
+        private enum Type {Push, Apply, Call}
+
+        private static final Instruction APPLY = new Instruction(Type.Apply, null);
+
+        private final Type type;
+        private final Object operand;
+
+        private Instruction(final Type type, final Object operand) {
+            this.type = type;
+            this.operand = operand;
+        }
+
+        private void execute(final RippleStack stack,
+                             final AtomGraph graph,
+                             final Filter filter,
+                             final List<RippleStack> solutions) {
+            switch (type) {
+                case Push:
+                    solutions.add(stack.push(operand));
+                    break;
+                case Apply:
+                    // only primitives can be applied; any other value yields no solutions
+                    if (!stack.isEmpty() && stack.getFirst() instanceof Primitive) {
+                        call((Primitive) stack.getFirst(), stack.getRest(), graph, filter, solutions);
+                    }
+                    break;
+                case Call:
+                    call((Primitive) operand, stack, graph, filter, solutions);
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        // a primitive applied to too few values yields no solutions
+        private void call(final Primitive p,
+                          final RippleStack stack,
+                          final AtomGraph graph,
+                          final Filter filter,
+                          final List<RippleStack> solutions) {
+            if (stack.size() >= p.getArity()) {
+                p.apply(stack, graph, filter, solutions);
+            }
+        }
+    }
+}
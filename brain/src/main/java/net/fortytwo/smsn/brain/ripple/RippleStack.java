@@ -0,0 +1,79 @@
+package net.fortytwo.smsn.brain.ripple;
+
+/**
+ * An immutable stack of values, as produced by a Ripple program.
+ * Pushing a value shares the rest of the stack, so that the many solutions of a program cost little to branch.
+ */
+public final class RippleStack {
+    private static final RippleStack EMPTY = new RippleStack(null, null, 0);
+
+    private final Object first;
+    private final RippleStack rest;
+    private final int size;
+
+    private RippleStack(final Object first, final RippleStack rest, final int size) {
+        this.first = first;
+        this.rest = rest;
+        this.size = size;
+    }
+
+    public static RippleStack empty() {
+        return EMPTY;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the value at the top of the stack
+     */
+    public Object getFirst() {
+        if (isEmpty()) {
+            throw new IllegalStateException("empty stack");
+        }
+
+        return first;
+    }
+
+    /**
+     * @return the stack beneath the top value
+     */
+    public RippleStack getRest() {
+        if (isEmpty()) {
+            throw new IllegalStateException("empty stack");
+        }
+
+        return rest;
+    }
+
+    public RippleStack push(final Object value) {
+        if (null == value) {
+            throw new IllegalArgumentException();
+        }
+
+        return new RippleStack(value, this, size + 1);
+    }
+
+    // prints the stack from bottom to top, as Ripple does
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        toString(this, sb);
+        return sb.toString();
+    }
+
+    private static void toString(final RippleStack s, final StringBuilder sb) {
+        if (!s.isEmpty()) {
+            toString(s.rest, sb);
+            if (sb.length() > 0) {
+                sb.append(" ");
+            }
+            sb.append(s.first);
+        }
+    }
+}
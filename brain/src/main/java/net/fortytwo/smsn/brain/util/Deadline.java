@@ -0,0 +1,108 @@
+package net.fortytwo.smsn.brain.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A limit on the running time of an operation, which may also be cancelled before it expires.
+ * Long-running loops call {@link #check()} at regular points, e.g. once per atom, and so stop with a
+ * <code>CancellationException</code> once the deadline of the current thread has passed or has been cancelled.
+ * Cancellation is cooperative rather than by interrupt, as an interrupt may close the files of an embedded database.
+ */
+public class Deadline {
+    private static final ThreadLocal<Deadline> currentDeadline = new ThreadLocal<>();
+
+    private final long expirationTime;
+    private final boolean unlimited;
+    private volatile boolean cancelled;
+    private volatile boolean completed;
+
+    /**
+     * @param timeout the time until the deadline, in milliseconds
+     */
+    public Deadline(final long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        // a timeout of centuries is no deadline at all, and would overflow
+        unlimited = nanos >= Long.MAX_VALUE / 2;
+        expirationTime = unlimited ? 0 : System.nanoTime() + nanos;
+    }
+
+    /**
+     * Cancels the operation, unless it has already begun to complete
+     *
+     * @return whether the operation was cancelled, rather than having already begun to complete
+     */
+    public synchronized boolean cancel() {
+        if (!completed) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Marks the operation as completing, e.g. before it commits its changes, after which it can no longer be cancelled
+     * and the deadline no longer expires
+     *
+     * @return whether the operation may complete, i.e. whether the deadline has neither expired nor been cancelled.
+     * If not, the operation is to be abandoned
+     */
+    public synchronized boolean complete() {
+        if (!isExpired()) {
+            completed = true;
+        }
+        return completed;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isExpired() {
+        return !completed && (cancelled || (!unlimited && System.nanoTime() - expirationTime >= 0));
+    }
+
+    /**
+     * @return the deadline of the current thread, or null if there is none
+     */
+    public static Deadline getCurrent() {
+        return currentDeadline.get();
+    }
+
+    /**
+     * @param deadline the deadline of the current thread, or null for no deadline
+     */
+    public static void setCurrent(final Deadline deadline) {
+        if (null == deadline) {
+            currentDeadline.remove();
+        } else {
+            currentDeadline.set(deadline);
+        }
+    }
+
+    /**
+     * Marks the current operation as completing, if the current thread has a deadline
+     *
+     * @return whether the operation may complete. If not, it is to be abandoned, and any changes rolled back
+     * @see #complete()
+     */
+    public static boolean completeCurrent() {
+        Deadline d = currentDeadline.get();
+        return null == d || d.complete();
+    }
+
+    /**
+     * Stops the current operation if the deadline of the current thread, if any, has expired or has been cancelled
+     *
+     * @throws CancellationException if the deadline has expired or has been cancelled
+     */
+    public static void check() {
+        Deadline d = currentDeadline.get();
+        if (null != d && d.isExpired()) {
+            throw new CancellationException(d.cancelled ? "operation cancelled" : "deadline exceeded");
+        }
+    }
+}
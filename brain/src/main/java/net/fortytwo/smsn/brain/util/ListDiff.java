@@ -1,9 +1,11 @@
 package net.fortytwo.smsn.brain.util;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Note: the LCS algorithm is probably not optimal in the sense of minimizing vertex and edge churn
@@ -30,34 +32,56 @@ public class ListDiff {
     }
 
     public static <T> List<T> longestCommonSubsequence(List<T> a, List<T> b, Comparator<T> comp) {
-        int[][] lengths = new int[a.size() + 1][b.size() + 1];
+        a = toRandomAccess(a);
+        b = toRandomAccess(b);
+
+        // a common prefix and suffix are part of a longest common subsequence, and are left out of the table.
+        // Most updates change only a few items of a list, so the table is usually small
+        int prefix = 0;
+        while (prefix < a.size() && prefix < b.size() && 0 == comp.compare(a.get(prefix), b.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.size() - prefix && suffix < b.size() - prefix
+                && 0 == comp.compare(a.get(a.size() - 1 - suffix), b.get(b.size() - 1 - suffix))) {
+            suffix++;
+        }
+        List<T> ac = a.subList(prefix, a.size() - suffix);
+        List<T> bc = b.subList(prefix, b.size() - suffix);
+
+        int[][] lengths = new int[ac.size() + 1][bc.size() + 1];
 
         // row 0 and column 0 are initialized to 0 already
-        for (int i = 0; i < a.size(); i++)
-            for (int j = 0; j < b.size(); j++)
-                if (0 == comp.compare(a.get(i), b.get(j)))
+        for (int i = 0; i < ac.size(); i++)
+            for (int j = 0; j < bc.size(); j++)
+                if (0 == comp.compare(ac.get(i), bc.get(j)))
                     lengths[i + 1][j + 1] = lengths[i][j] + 1;
                 else
                     lengths[i + 1][j + 1] =
                             Math.max(lengths[i + 1][j], lengths[i][j + 1]);
 
         // read the substring out from the matrix
-        List<T> result = new LinkedList<>();
-        for (int x = a.size(), y = b.size();
+        List<T> core = new ArrayList<>();
+        for (int x = ac.size(), y = bc.size();
              x != 0 && y != 0; ) {
             if (lengths[x][y] == lengths[x - 1][y])
                 x--;
             else if (lengths[x][y] == lengths[x][y - 1])
                 y--;
             else {
-                assert 0 == comp.compare(a.get(x - 1), b.get(y - 1));
-                result.add(a.get(x - 1));
+                assert 0 == comp.compare(ac.get(x - 1), bc.get(y - 1));
+                core.add(ac.get(x - 1));
                 x--;
                 y--;
             }
         }
 
-        Collections.reverse(result);
+        Collections.reverse(core);
+
+        List<T> result = new ArrayList<>(prefix + core.size() + suffix);
+        result.addAll(a.subList(0, prefix));
+        result.addAll(core);
+        result.addAll(a.subList(a.size() - suffix, a.size()));
 
         return result;
     }
@@ -73,6 +97,14 @@ public class ListDiff {
                                      final List<T> l,
                                      final Comparator<T> cmp,
                                      final DiffEditor<T> ed) {
+        applyDiffInternal(toRandomAccess(a), toRandomAccess(b), toRandomAccess(l), cmp, ed);
+    }
+
+    private static <T> void applyDiffInternal(final List<T> a,
+                                              final List<T> b,
+                                              final List<T> l,
+                                              final Comparator<T> cmp,
+                                              final DiffEditor<T> ed) {
         int acur = 0;
         int bcur = 0;
         int lcur = 0;
@@ -110,6 +142,11 @@ public class ListDiff {
         }
     }
 
+    // positional access to a linked list takes linear time
+    private static <T> List<T> toRandomAccess(final List<T> list) {
+        return list instanceof RandomAccess ? list : new ArrayList<>(list);
+    }
+
     public static interface DiffEditor<T> {
         void add(int position, T letter);
 
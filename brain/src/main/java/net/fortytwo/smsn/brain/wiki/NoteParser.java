@@ -6,20 +6,17 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.LinkedList;
-import java.util.regex.Matcher;
+import java.io.Reader;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 public class NoteParser {
 
     // regex of valid id suffixes
     public static final Pattern ID = Pattern.compile("[a-zA-Z0-9-_]+");
-    private static final Pattern ID_SUFFIX = Pattern.compile(":[a-zA-Z0-9-_]+:");
 
     private static final String VERBATIM_BLOCK_START = "{{{";
     private static final String VERBATIM_BLOCK_END = "}}}";
@@ -37,142 +34,166 @@ public class NoteParser {
 
     // Tabs count as four spaces each.
     private static final String TAB_REPLACEMENT = "    ";
+    private static final int TAB_WIDTH = TAB_REPLACEMENT.length();
+
+    private static final int INITIAL_BUFFER_SIZE = 8192, INITIAL_DEPTH = 16;
 
     public Note fromWikiText(final String s) throws IOException, NoteParsingException {
-        try (InputStream in = new ByteArrayInputStream(s.getBytes(SemanticSynchrony.UTF8))) {
-            return fromWikiText(in);
-        }
+        return parse(s.toCharArray(), s.length());
     }
 
     public Note fromWikiText(final InputStream in) throws IOException, NoteParsingException {
+        Reader r = new InputStreamReader(in, SemanticSynchrony.UTF8);
+
+        char[] buffer = new char[INITIAL_BUFFER_SIZE];
+        int length = 0;
+        int n;
+        while ((n = r.read(buffer, length, buffer.length - length)) >= 0) {
+            length += n;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+        }
+
+        return parse(buffer, length);
+    }
+
+    /**
+     * Parses wiki text in a single pass over its characters.
+     * Lines are delimited as in {@link java.io.BufferedReader#readLine()},
+     * and tabs are expanded only where they appear in a value.
+     */
+    private Note parse(final char[] text, final int length) throws NoteParsingException {
         Note root = new Note();
 
-        LinkedList<Note> hierarchy = new LinkedList<>();
-        LinkedList<Integer> indentHierarachy = new LinkedList<>();
+        // the chain of notes above the current line, with their indentation
+        Note[] hierarchy = new Note[INITIAL_DEPTH];
+        int[] indentHierarchy = new int[INITIAL_DEPTH];
+        int depth = 0;
 
-        InputStreamReader r = new InputStreamReader(in, SemanticSynchrony.UTF8);
-        BufferedReader br = new BufferedReader(r);
-        String line;
+        int pos = 0;
         int lineNumber = 0;
-        while ((line = br.readLine()) != null) {
+        while (pos < length) {
+            int lineStart = pos;
+            int lineEnd = findLineEnd(text, lineStart, length);
+            pos = skipLineTerminator(text, lineEnd, length);
             lineNumber++;
 
-            String l = line;
-
-            // Tabs count as four spaces each.
-            l = l.replaceAll("[\\t]", TAB_REPLACEMENT);
-
-            if (0 == l.trim().length()) {
+            if (isBlank(text, lineStart, lineEnd)) {
                 // Empty lines are simply ignored.
                 continue;
             }
 
-            if (l.endsWith(NoteWriter.VALUE_TRUNCATOR)) {
+            if (endsWithTruncator(text, lineStart, lineEnd)) {
                 throw new NoteParsingException(lineNumber,
                         "line ends with the reserved truncation sequence \"" + NoteWriter.VALUE_TRUNCATOR + "\"");
             }
 
             // find indent level
+            int i = lineStart;
             int indent = 0;
-            if (l.length() > 0) {
-                while (' ' == l.charAt(indent)) {
+            for (; i < lineEnd; i++) {
+                char c = text[i];
+                if (' ' == c) {
                     indent++;
+                } else if ('\t' == c) {
+                    indent += TAB_WIDTH;
+                } else {
+                    break;
                 }
-                l = l.substring(indent);
             }
 
-            if (0 == l.length()) {
+            if (i == lineEnd) {
                 throw new NoteParsingException(lineNumber, "missing bullet and value");
             }
 
-            while (0 < hierarchy.size() && indentHierarachy.getLast() >= indent) {
-                hierarchy.removeLast();
-                indentHierarachy.removeLast();
+            while (depth > 0 && indentHierarchy[depth - 1] >= indent) {
+                hierarchy[--depth] = null;
             }
 
             // parse bullet or property name
-            int j = -1;
-            for (int i = 0; i < l.length(); i++) {
-                char c = l.charAt(i);
-                if (' ' == c) {
-                    j = i;
-                    break;
-                }
+            int bulletStart = i;
+            while (i < lineEnd && !isSpace(text[i])) {
+                i++;
             }
-            if (j < 0) {
-                j = l.length();
-            }
-
-            boolean isProperty;
-            String bullet = l.substring(0, j);
-            if (bullet.startsWith("@") && bullet.length() > 1) {
-                isProperty = true;
-            } else {
-                isProperty = false;
+            int bulletLength = i - bulletStart;
 
-                if (bullet.length() > MAX_BULLET_LENGTH) {
-                    throw new NoteParsingException(lineNumber, "bullet is too long: " + bullet);
-                }
+            boolean isProperty = '@' == text[bulletStart] && bulletLength > 1;
+            if (!isProperty && bulletLength > MAX_BULLET_LENGTH) {
+                throw new NoteParsingException(lineNumber,
+                        "bullet is too long: " + new String(text, bulletStart, bulletLength));
             }
 
             // skip white space between bullet and value
-            while (j < l.length() && ' ' == l.charAt(j)) {
-                j++;
+            while (i < lineEnd && isSpace(text[i])) {
+                i++;
             }
-            l = l.substring(j);
 
             // find id, if present
             String id = null;
             if (!isProperty) {
-                Matcher m = ID_SUFFIX.matcher(l);
-                if (m.find() && 0 == m.start()) {
-                    id = l.substring(1, m.end() - 1);
-                    l = l.substring(m.end()).trim();
+                int idEnd = findIdSuffixEnd(text, i, lineEnd);
+                if (idEnd > 0) {
+                    id = new String(text, i + 1, idEnd - i - 2);
+                    i = idEnd;
                 }
             }
 
-            String value = "";
-            if (0 < l.length()) {
-                String lt = l.trim();
-                if (!isProperty && lt.startsWith(VERBATIM_BLOCK_START)) {
-                    if (lt.length() > 3) {
-                        throw new NoteParsingException(lineNumber, "verbatim block must open with a line containing only '{{{'");
+            // leading and trailing white space are not part of the value
+            int valueStart = i;
+            int valueEnd = lineEnd;
+            while (valueStart < valueEnd && text[valueStart] <= ' ') {
+                valueStart++;
+            }
+            while (valueEnd > valueStart && text[valueEnd - 1] <= ' ') {
+                valueEnd--;
+            }
+
+            String value;
+            if (!isProperty && startsWith(text, valueStart, valueEnd, VERBATIM_BLOCK_START)) {
+                if (valueEnd - valueStart > VERBATIM_BLOCK_START.length()) {
+                    throw new NoteParsingException(lineNumber, "verbatim block must open with a line containing only '{{{'");
+                }
+
+                int openingLineNumber = lineNumber;
+                StringBuilder verbatimValue = new StringBuilder();
+                boolean first = true;
+                while (true) {
+                    if (pos >= length) {
+                        throw new NoteParsingException(openingLineNumber, "verbatim block is never closed");
                     }
 
-                    StringBuilder verbatimValue = new StringBuilder();
-                    boolean first = true;
-                    while (true) {
-                        String nextLine = br.readLine();
-                        lineNumber++;
-                        if (nextLine.contains(VERBATIM_BLOCK_END)) {
-                            lt = nextLine.trim();
-                            if (lt.length() > 3) {
-                                throw new NoteParsingException(lineNumber, "verbatim block must close with a line containing only '}}}'");
-                            } else {
-                                break;
-                            }
+                    lineStart = pos;
+                    lineEnd = findLineEnd(text, lineStart, length);
+                    pos = skipLineTerminator(text, lineEnd, length);
+                    lineNumber++;
+
+                    if (contains(text, lineStart, lineEnd, VERBATIM_BLOCK_END)) {
+                        if (trimmedLength(text, lineStart, lineEnd) > VERBATIM_BLOCK_END.length()) {
+                            throw new NoteParsingException(lineNumber, "verbatim block must close with a line containing only '}}}'");
+                        } else {
+                            break;
+                        }
+                    } else {
+                        if (first) {
+                            first = false;
                         } else {
-                            if (first) {
-                                first = false;
-                            } else {
-                                verbatimValue.append('\n');
-                            }
-                            verbatimValue.append(nextLine);
+                            verbatimValue.append('\n');
                         }
+                        verbatimValue.append(text, lineStart, lineEnd - lineStart);
                     }
-
-                    value = verbatimValue.toString();
-                } else {
-                    value = l;
                 }
-            }
 
-            value = value.trim();
+                value = verbatimValue.toString().trim();
+            } else {
+                value = toValue(text, valueStart, valueEnd);
+            }
 
             if (0 == value.length()) {
                 if (isProperty) {
                     // can "clear" alias or shortcut by writing "@alias" or "@shortcut" and nothing else;
                     // all other properties require an argument
+                    String bullet = new String(text, bulletStart, bulletLength);
                     if (!(bullet.equals(ALIAS_PROP) || bullet.equals(SHORTCUT_PROP))) {
                         throw new NoteParsingException(
                                 lineNumber, "empty value for property candidate '" + bullet + "'");
@@ -187,76 +208,190 @@ public class NoteParser {
             }
 
             if (isProperty) {
-                Note n = 0 == hierarchy.size() ? root : hierarchy.get(hierarchy.size() - 1);
-
-                switch (bullet) {
-                    case ALIAS_PROP:
-                        if (value.length() > 0) {
-                            n.setAlias(value);
-                        } else {
-                            n.setAlias(Note.CLEARME_VALUE);
-                        }
-                        break;
-                    case SHORTCUT_PROP:
-                        if (value.length() > 0) {
-                            n.setShortcut(value);
-                        } else {
-                            n.setShortcut(Note.CLEARME_VALUE);
-                        }
-                        break;
-                    case PRIORITY_PROP: {
-                        float val;
-                        try {
-                            val = Float.valueOf(value);
-                        } catch (NumberFormatException e) {
-                            throw new NoteParsingException(lineNumber, "invalid @priority value: " + value);
-                        }
-                        n.setPriority(val);
-                        break;
-                    }
-                    case SHARABILITY_PROP: {
-                        float val;
-                        try {
-                            val = Float.valueOf(value);
-                        } catch (NumberFormatException e) {
-                            throw new NoteParsingException(lineNumber, "invalid @sharability value: " + value);
-                        }
-                        n.setSharability(val);
-                        break;
-                    }
-                    case WEIGHT_PROP: {
-                        float val;
-                        try {
-                            val = Float.valueOf(value);
-                        } catch (NumberFormatException e) {
-                            throw new NoteParsingException(lineNumber, "invalid @weight value: " + value);
-                        }
-                        n.setWeight(val);
-                        break;
-                    }
-                    default:
-                        throw new NoteParsingException(lineNumber, "unknown property: " + bullet);
-                }
+                Note n = 0 == depth ? root : hierarchy[depth - 1];
+                setProperty(n, new String(text, bulletStart, bulletLength), value, lineNumber);
             } else {
                 Note n = new Note();
                 n.setValue(value);
 
                 n.setId(id);
 
-                if (0 < hierarchy.size()) {
-                    hierarchy.get(hierarchy.size() - 1).addChild(n);
+                if (0 < depth) {
+                    hierarchy[depth - 1].addChild(n);
                 } else {
                     root.addChild(n);
                 }
 
-                hierarchy.add(n);
-                indentHierarachy.add(indent);
+                if (depth == hierarchy.length) {
+                    hierarchy = Arrays.copyOf(hierarchy, 2 * depth);
+                    indentHierarchy = Arrays.copyOf(indentHierarchy, 2 * depth);
+                }
+                hierarchy[depth] = n;
+                indentHierarchy[depth] = indent;
+                depth++;
             }
         }
 
         return root;
     }
 
+    private void setProperty(final Note n, final String name, final String value, final int lineNumber)
+            throws NoteParsingException {
+        switch (name) {
+            case ALIAS_PROP:
+                if (value.length() > 0) {
+                    n.setAlias(value);
+                } else {
+                    n.setAlias(Note.CLEARME_VALUE);
+                }
+                break;
+            case SHORTCUT_PROP:
+                if (value.length() > 0) {
+                    n.setShortcut(value);
+                } else {
+                    n.setShortcut(Note.CLEARME_VALUE);
+                }
+                break;
+            case PRIORITY_PROP:
+                n.setPriority(parseFloat(value, PRIORITY_PROP, lineNumber));
+                break;
+            case SHARABILITY_PROP:
+                n.setSharability(parseFloat(value, SHARABILITY_PROP, lineNumber));
+                break;
+            case WEIGHT_PROP:
+                n.setWeight(parseFloat(value, WEIGHT_PROP, lineNumber));
+                break;
+            default:
+                throw new NoteParsingException(lineNumber, "unknown property: " + name);
+        }
+    }
+
+    private float parseFloat(final String value, final String name, final int lineNumber)
+            throws NoteParsingException {
+        try {
+            return Float.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new NoteParsingException(lineNumber, "invalid " + name + " value: " + value);
+        }
+    }
+
+    private static int findLineEnd(final char[] text, final int from, final int length) {
+        int i = from;
+        while (i < length && '\n' != text[i] && '\r' != text[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipLineTerminator(final char[] text, final int lineEnd, final int length) {
+        if (lineEnd == length) {
+            return length;
+        }
+        // "\r\n" is a single line terminator
+        return '\r' == text[lineEnd] && lineEnd + 1 < length && '\n' == text[lineEnd + 1]
+                ? lineEnd + 2
+                : lineEnd + 1;
+    }
+
+    private static boolean isSpace(final char c) {
+        return ' ' == c || '\t' == c;
+    }
+
+    // white space here is anything String.trim() would remove
+    private static boolean isBlank(final char[] text, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (text[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int trimmedLength(final char[] text, final int from, final int to) {
+        int start = from;
+        int end = to;
+        while (start < end && text[start] <= ' ') {
+            start++;
+        }
+        while (end > start && text[end - 1] <= ' ') {
+            end--;
+        }
+        return end - start;
+    }
+
+    private static boolean endsWithTruncator(final char[] text, final int from, final int to) {
+        String truncator = NoteWriter.VALUE_TRUNCATOR;
+        if (to - from < truncator.length()) {
+            return false;
+        }
+        for (int i = truncator.length() - 1, j = to - 1; i >= 0; i--, j--) {
+            // a tab ends in a space once expanded
+            char c = '\t' == text[j] ? ' ' : text[j];
+            if (c != truncator.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(final char[] text, final int from, final int to, final String prefix) {
+        if (to - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text[from + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(final char[] text, final int from, final int to, final String s) {
+        for (int i = from; i <= to - s.length(); i++) {
+            if (startsWith(text, i, to, s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIdChar(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || '-' == c || '_' == c;
+    }
+
+    /**
+     * @return the position just after an id suffix such as ":0txXBm:" beginning at the given position,
+     * or -1 if there is no such suffix
+     */
+    private static int findIdSuffixEnd(final char[] text, final int from, final int to) {
+        if (from >= to || ':' != text[from]) {
+            return -1;
+        }
+        int i = from + 1;
+        while (i < to && isIdChar(text[i])) {
+            i++;
+        }
+        return i > from + 1 && i < to && ':' == text[i] ? i + 1 : -1;
+    }
+
+    // tabs in a value count as four spaces each
+    private static String toValue(final char[] text, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if ('\t' == text[i]) {
+                StringBuilder sb = new StringBuilder(to - from + TAB_WIDTH);
+                for (int j = from; j < to; j++) {
+                    if ('\t' == text[j]) {
+                        sb.append(TAB_REPLACEMENT);
+                    } else {
+                        sb.append(text[j]);
+                    }
+                }
+                return sb.toString();
+            }
+        }
+        return new String(text, from, to - from);
+    }
+
     /**
      * Removes the verbatim block terminators ("{{{" and "}}}") from an atom value string.
      * This method does not check the value with respect to matching and non-nested terminators;
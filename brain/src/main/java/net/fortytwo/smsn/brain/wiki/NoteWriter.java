@@ -6,9 +6,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
 import java.util.List;
 
 public class NoteWriter {
@@ -18,6 +17,7 @@ public class NoteWriter {
     public static final String CHILDREN = "children";
     public static final String HAS_CHILDREN = "hasChildren";
     public static final String ID = "id";
+    public static final String IS_REFERENCE = "isReference";
     public static final String META = "meta";
 
     private int valueLengthCutoff = -1;
@@ -38,6 +38,9 @@ public class NoteWriter {
         json.put(SemanticSynchrony.SHARABILITY, n.getSharability());
         json.put(SemanticSynchrony.CREATED, n.getCreated());
         json.put(HAS_CHILDREN, n.getHasChildren());
+        if (n.getIsReference()) {
+            json.put(IS_REFERENCE, true);
+        }
 
         Float priority = n.getPriority();
         if (null != priority && priority > 0) {
@@ -46,7 +49,7 @@ public class NoteWriter {
 
         String value = n.getValue();
         if (value != null && valueLengthCutoff > 0 && value.length() > valueLengthCutoff) {
-            value = value.substring(0, valueLengthCutoff) + VALUE_TRUNCATOR;
+            value = value.substring(0, truncationPoint(value)) + VALUE_TRUNCATOR;
         }
         json.put(SemanticSynchrony.VALUE, value);
 
@@ -80,23 +83,25 @@ public class NoteWriter {
         return json;
     }
 
+    /**
+     * Writes a list of notes as wiki text, encoding UTF-8 directly into a buffer which is flushed to the stream
+     * as it fills, so that a view is never materialized as a whole.
+     * Values longer than the value length cutoff are truncated, as in {@link #toJSON(Note)}
+     */
     public void toWikiText(final List<Note> notes,
-                           final OutputStream out) {
-        PrintStream p;
-        try {
-            p = new PrintStream(out, false, SemanticSynchrony.UTF8);
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalStateException(e);
-        }
+                           final OutputStream out) throws IOException {
+        Utf8Printer p = new Utf8Printer(out);
 
         for (Note n : notes) {
             printNote(n, 0, p);
         }
+
+        p.flush();
     }
 
-    private static void printNote(final Note n,
-                                  final int indent,
-                                  final PrintStream p) {
+    private void printNote(final Note n,
+                           final int indent,
+                           final Utf8Printer p) throws IOException {
 
         for (int i = 0; i < indent; i++) {
             p.print("    ");
@@ -110,7 +115,13 @@ public class NoteWriter {
             p.print(": ");
         }
 
-        p.print(sanitizeValue(n.getValue()));
+        String value = sanitizeValue(n.getValue());
+        if (valueLengthCutoff > 0 && value.length() > valueLengthCutoff) {
+            p.print(value, 0, truncationPoint(value));
+            p.print(VALUE_TRUNCATOR);
+        } else {
+            p.print(value);
+        }
 
         p.print("\n");
 
@@ -119,6 +130,13 @@ public class NoteWriter {
         }
     }
 
+    // the value length cutoff, backed off by one character so as not to split a surrogate pair
+    private int truncationPoint(final String value) {
+        return Character.isHighSurrogate(value.charAt(valueLengthCutoff - 1))
+                ? valueLengthCutoff - 1
+                : valueLengthCutoff;
+    }
+
     private static String sanitizeValue(final String value) {
         return null == value ? ""
                 : !isValidValue(value)
@@ -143,4 +161,66 @@ public class NoteWriter {
 
         return true;
     }
+
+    /**
+     * A minimal UTF-8 encoder over a fixed-size buffer.
+     * Unpaired surrogates are written as '?', as by the JDK's encoder.
+     */
+    private static class Utf8Printer {
+        private static final int BUFFER_SIZE = 8192;
+
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        public Utf8Printer(final OutputStream out) {
+            this.out = out;
+        }
+
+        public void print(final String s) throws IOException {
+            print(s, 0, s.length());
+        }
+
+        public void print(final String s, final int from, final int to) throws IOException {
+            for (int i = from; i < to; i++) {
+                if (position > BUFFER_SIZE - 4) {
+                    flushBuffer();
+                }
+
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xc0 | (c >> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        buffer[position++] = (byte) (0xf0 | (cp >> 18));
+                        buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                        buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                        buffer[position++] = (byte) (0x80 | (cp & 0x3f));
+                    } else {
+                        buffer[position++] = '?';
+                    }
+                } else {
+                    buffer[position++] = (byte) (0xe0 | (c >> 12));
+                    buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+        }
+
+        public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        private void flushBuffer() throws IOException {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+    }
 }
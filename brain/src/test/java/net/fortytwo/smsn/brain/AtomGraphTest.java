@@ -1,19 +1,38 @@
 package net.fortytwo.smsn.brain;
 
+import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.model.AtomList;
 import net.fortytwo.smsn.brain.model.Filter;
 import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import net.fortytwo.smsn.brain.util.Deadline;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class AtomGraphTest {
     private Neo4jGraph graph;
@@ -145,4 +164,545 @@ public class AtomGraphTest {
         assertEquals(1, result.size());
         assertEquals(a.getId(), result.iterator().next().getId());
     }
+
+    @Test
+    public void testShortcutsFoundWhileKeyIndicesDropped() throws Exception {
+        Filter f = new Filter();
+        PGAtomGraph pg = (PGAtomGraph) atomGraph;
+
+        Atom a = atomGraph.createAtom(f, null);
+        a.setValue("Arthur Dent");
+        a.setShortcut("ad");
+        assertEquals(1, atomGraph.getAtomsWithShortcut("ad", f).size());
+
+        pg.dropKeyIndices();
+        Atom t = atomGraph.createAtom(f, null);
+        t.setValue("Trillian");
+        t.setShortcut("t");
+        assertEquals(1, atomGraph.getAtomsWithShortcut("ad", f).size());
+        assertEquals(1, atomGraph.getAtomsWithShortcut("t", f).size());
+
+        // atoms created while the indices were dropped are indexed when the indices are rebuilt
+        pg.createKeyIndices();
+        assertEquals(1, atomGraph.getAtomsWithShortcut("ad", f).size());
+        assertEquals(t.getId(), atomGraph.getAtomsWithShortcut("t", f).get(0).getId());
+    }
+
+    @Test
+    public void testListOwnersMaintained() throws Exception {
+        Filter f = new Filter();
+
+        Atom chaos = atomGraph.createAtom(f, null);
+        chaos.setValue("Chaos");
+        Atom gaia = atomGraph.createAtom(f, null);
+        gaia.setValue("Gaia");
+        Atom eros = atomGraph.createAtom(f, null);
+        eros.setValue("Eros");
+        Atom nyx = atomGraph.createAtom(f, null);
+        nyx.setValue("Nyx");
+        Atom erebus = atomGraph.createAtom(f, null);
+        erebus.setValue("Erebus");
+
+        // a list has no owner until it becomes the notes of an atom
+        AtomList children = atomGraph.createAtomList(gaia, eros);
+        assertNull(children.getRest().getOwner());
+        chaos.setNotes(children);
+        assertOwnedBy(chaos, chaos.getNotes());
+
+        // nodes added at the head, in the middle, or at the end of the list
+        chaos.addChildAt(nyx, 0);
+        chaos.addChildAt(erebus, 2);
+        chaos.addChildAt(nyx, 4);
+        assertEquals(5, chaos.getNotes().toJavaList().size());
+        assertOwnedBy(chaos, chaos.getNotes());
+
+        chaos.deleteChildAt(0);
+        chaos.deleteChildAt(1);
+        assertEquals(3, chaos.getNotes().toJavaList().size());
+        assertOwnedBy(chaos, chaos.getNotes());
+
+        // a list which is moved to another atom changes owners
+        AtomList moved = chaos.getNotes();
+        chaos.setNotes(null);
+        gaia.setNotes(moved);
+        assertOwnedBy(gaia, gaia.getNotes());
+
+        // a list which is replaced no longer has an owner
+        gaia.setNotes(atomGraph.createAtomList(chaos));
+        assertNull(moved.getOwner());
+        assertNull(moved.getRest().getOwner());
+        assertOwnedBy(gaia, gaia.getNotes());
+
+        // nodes appended through the list itself take on the owner of the list
+        gaia.getNotes().setRest(atomGraph.createAtomList(eros, nyx));
+        assertOwnedBy(gaia, gaia.getNotes());
+    }
+
+    @Test
+    public void testChildrenInsertedAndDeletedByPosition() throws Exception {
+        Filter f = new Filter();
+        Random random = new Random(42);
+
+        Atom parent = atomGraph.createAtom(f, null);
+        parent.setValue("parent");
+        List<Atom> children = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Atom child = atomGraph.createAtom(f, null);
+            child.setValue("child " + i);
+            children.add(child);
+        }
+
+        List<Atom> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                int position = random.nextInt(expected.size() + 1);
+                Atom child = children.get(random.nextInt(children.size()));
+                parent.addChildAt(child, position);
+                expected.add(position, child);
+            } else {
+                int position = random.nextInt(expected.size());
+                parent.deleteChildAt(position);
+                expected.remove(position);
+            }
+
+            assertChildren(expected, parent);
+        }
+        assertOwnedBy(parent, parent.getNotes());
+
+        // a change made directly to the list is seen by the next positional change
+        AtomList last = parent.getNotes();
+        while (null != last.getRest()) {
+            last = last.getRest();
+        }
+        last.setRest(atomGraph.createAtomList(children.get(0), children.get(1)));
+        expected.add(children.get(0));
+        expected.add(children.get(1));
+        parent.addChildAt(children.get(2), expected.size());
+        expected.add(children.get(2));
+        assertChildren(expected, parent);
+
+        // so is a rollback
+        atomGraph.commit();
+        parent.deleteChildAt(0);
+        parent.addChildAt(children.get(3), 1);
+        atomGraph.rollback();
+        parent.addChildAt(children.get(4), 1);
+        expected.add(1, children.get(4));
+        assertChildren(expected, parent);
+    }
+
+    @Test
+    public void testAtomsWithoutParentsOrChildrenFoundThroughCounts() throws Exception {
+        Filter f = new Filter();
+        PGAtomGraph pg = (PGAtomGraph) atomGraph;
+        Random random = new Random(42);
+
+        List<Atom> atoms = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Atom a = atomGraph.createAtom(f, null);
+            a.setValue("atom " + i);
+            atoms.add(a);
+        }
+        assertParentsAndChildrenCounted();
+
+        for (int i = 0; i < 200; i++) {
+            Atom a = atoms.get(random.nextInt(atoms.size()));
+            Atom b = atoms.get(random.nextInt(atoms.size()));
+            int size = null == a.getNotes() ? 0 : a.getNotes().toJavaList().size();
+            switch (random.nextInt(5)) {
+                case 0:
+                    a.addChildAt(b, random.nextInt(size + 1));
+                    break;
+                case 1:
+                    if (size > 0) {
+                        a.deleteChildAt(random.nextInt(size));
+                    }
+                    break;
+                case 2:
+                    a.setNotes(random.nextBoolean() ? null : atomGraph.createAtomList(b));
+                    break;
+                case 3:
+                    if (size > 0) {
+                        a.getNotes().setFirst(b);
+                    }
+                    break;
+                case 4:
+                    if (size > 0) {
+                        a.getNotes().setRest(random.nextBoolean() ? null : atomGraph.createAtomList(b, a));
+                    }
+                    break;
+            }
+
+            // note: Neo4j does not hide vertices deleted in the current transaction from a scan of the graph
+            graph.commit();
+            assertParentsAndChildrenCounted();
+        }
+
+        // a graph written before the counts were kept is counted when it is upgraded, and only then
+        pg.dropKeyIndices();
+        for (Vertex v : graph.getVertices()) {
+            for (String key : PGAtomGraph.INTERNAL_PROPERTIES) {
+                v.removeProperty(key);
+            }
+        }
+        graph.commit();
+        PGAtomGraph older = new PGAtomGraph(graph);
+        assertTrue(older.upgrade());
+        assertFalse(older.upgrade());
+        assertParentsAndChildrenCounted();
+    }
+
+    @Test
+    public void testParentCountNotLostToConcurrentTransactions() throws Exception {
+        Filter f = new Filter();
+        Atom parent1 = atomGraph.createAtom(f, null);
+        parent1.setValue("Arthur Dent");
+        Atom parent2 = atomGraph.createAtom(f, null);
+        parent2.setValue("Ford Prefect");
+        Atom child = atomGraph.createAtom(f, null);
+        child.setValue("towel");
+        atomGraph.commit();
+
+        // the second transaction changes the child's parent count while the first has changed it but not committed
+        CountDownLatch linked = new CountDownLatch(1);
+        ExecutorService worker1 = Executors.newSingleThreadExecutor();
+        ExecutorService worker2 = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> first = worker1.submit(() -> {
+                parent1.addChildAt(child, 0);
+                linked.countDown();
+                Thread.sleep(500);
+                atomGraph.commit();
+                return null;
+            });
+            Future<?> second = worker2.submit(() -> {
+                linked.await();
+                parent2.addChildAt(child, 0);
+                atomGraph.commit();
+                return null;
+            });
+            first.get();
+            second.get();
+        } finally {
+            worker1.shutdown();
+            worker2.shutdown();
+        }
+
+        assertEquals(2, ((PGAtomGraph) atomGraph).getPropertyGraph().getVertex(child.getId()).getProperty("parentCount"));
+        assertEquals(2, atomGraph.getAtom(child.getId()).getNumberOfParents());
+    }
+
+    @Test
+    public void testIsolatedAtomsRemovedInBatchesCompleteTheOperation() throws Exception {
+        Filter f = new Filter();
+        for (int i = 0; i < 1500; i++) {
+            atomGraph.createAtom(f, null).setValue("atom " + i);
+        }
+        atomGraph.commit();
+
+        // a cancelled operation removes nothing
+        Deadline deadline = new Deadline(60000);
+        deadline.cancel();
+        Deadline.setCurrent(deadline);
+        try {
+            atomGraph.removeIsolatedAtoms(f);
+            Assert.fail("cancelled operation was not stopped");
+        } catch (CancellationException e) {
+            atomGraph.rollback();
+        } finally {
+            Deadline.setCurrent(null);
+        }
+        assertEquals(1500, countAtoms());
+
+        // once a batch has been committed, the operation can no longer be cancelled
+        deadline = new Deadline(60000);
+        Deadline.setCurrent(deadline);
+        try {
+            atomGraph.removeIsolatedAtoms(f);
+        } finally {
+            Deadline.setCurrent(null);
+        }
+        assertFalse(deadline.cancel());
+        atomGraph.commit();
+        assertEquals(0, countAtoms());
+    }
+
+    @Test
+    public void testCachedPropertiesKeptCurrent() throws Exception {
+        Filter f = new Filter();
+
+        Atom a = atomGraph.createAtom(f, null);
+        a.setValue("Arthur Dent");
+        Atom b = atomGraph.createAtom(f, null);
+        b.setValue("Ford Prefect");
+        atomGraph.commit();
+
+        // each lookup of an atom gives a new object; all of them see a change made through any one of them
+        Atom a1 = atomGraph.getAtom(a.getId());
+        Atom a2 = atomGraph.getAtom(a.getId());
+        assertEquals("Arthur Dent", a1.getValue());
+        assertEquals(0, a1.getNumberOfChildren());
+        a2.setValue("Arthur Philip Dent");
+        a2.addChildAt(b, 0);
+        assertEquals("Arthur Philip Dent", a1.getValue());
+        assertEquals(1, a1.getNumberOfChildren());
+        assertEquals(1, atomGraph.getAtom(b.getId()).getNumberOfParents());
+
+        // the previous properties are seen again after a rollback
+        atomGraph.rollback();
+        assertEquals("Arthur Dent", atomGraph.getAtom(a.getId()).getValue());
+        assertEquals(0, atomGraph.getAtom(a.getId()).getNumberOfChildren());
+        assertEquals(0, atomGraph.getAtom(b.getId()).getNumberOfParents());
+        assertEquals("Arthur Dent", a1.getValue());
+    }
+
+    @Test
+    public void testUncommittedChangesNotCachedForOtherThreads() throws Exception {
+        Filter f = new Filter();
+
+        Atom a = atomGraph.createAtom(f, null);
+        a.setValue("Arthur Dent");
+        Atom b = atomGraph.createAtom(f, null);
+        b.setValue("Ford Prefect");
+        atomGraph.commit();
+
+        a.setValue("Arthur Philip Dent");
+        a.addChildAt(b, 0);
+        assertEquals("Arthur Philip Dent", a.getValue());
+        assertEquals(1, a.getNumberOfChildren());
+
+        // another transaction sees only what has been committed, before and after the commit,
+        // even through the same atom object, as atoms may be shared between threads
+        assertEquals("Arthur Dent 0", readInOtherThread(a.getId()));
+        assertEquals("Arthur Dent 0", readInOtherThread(a));
+        atomGraph.commit();
+        assertEquals("Arthur Philip Dent 1", readInOtherThread(a.getId()));
+        assertEquals("Arthur Philip Dent 1", readInOtherThread(a));
+
+        // versions are kept in memory, not in the graph
+        for (String key : ((PGAtomGraph) atomGraph).getPropertyGraph().getVertex(a.getId()).getPropertyKeys()) {
+            assertFalse(key.toLowerCase().contains("version"));
+        }
+    }
+
+    @Test
+    public void testListChangesSharedAtOnceWithoutTransactions() throws Exception {
+        // TinkerGraph has no transactions, so there is never a commit to share a change with other threads
+        AtomGraph tinkerAtomGraph = new PGAtomGraph(new TinkerGraph());
+        Filter f = new Filter();
+
+        Atom x = tinkerAtomGraph.createAtom(f, null);
+        x.setValue("Arthur Dent");
+        List<Atom> children = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Atom child = tinkerAtomGraph.createAtom(f, null);
+            child.setValue("child " + i);
+            children.add(child);
+        }
+
+        ExecutorService worker1 = Executors.newSingleThreadExecutor();
+        ExecutorService worker2 = Executors.newSingleThreadExecutor();
+        try {
+            // each worker edits the same atom in turn, through its own atom object
+            inThread(worker1, () -> {
+                Atom a = tinkerAtomGraph.getAtom(x.getId());
+                a.addChildAt(children.get(0), 0);
+                a.addChildAt(children.get(1), 1);
+                return a.getNumberOfChildren();
+            });
+            inThread(worker2, () -> {
+                tinkerAtomGraph.getAtom(x.getId()).addChildAt(children.get(2), 1);
+                return null;
+            });
+            inThread(worker1, () -> {
+                Atom a = tinkerAtomGraph.getAtom(x.getId());
+                a.addChildAt(children.get(3), 2);
+                a.deleteChildAt(1);
+                return null;
+            });
+            inThread(worker2, () -> {
+                Atom a = tinkerAtomGraph.getAtom(x.getId());
+                assertChildren(Arrays.asList(children.get(0), children.get(3), children.get(1)), a);
+                a.deleteChildAt(2);
+                return null;
+            });
+            inThread(worker1, () -> {
+                Atom a = tinkerAtomGraph.getAtom(x.getId());
+                assertChildren(Arrays.asList(children.get(0), children.get(3)), a);
+                a.addChildAt(children.get(2), 2);
+                return null;
+            });
+        } finally {
+            worker1.shutdown();
+            worker2.shutdown();
+        }
+
+        assertChildren(Arrays.asList(children.get(0), children.get(3), children.get(2)), x);
+        assertOwnedBy(x, x.getNotes());
+    }
+
+    @Test
+    public void testPropertyChangesSharedAtOnceWithoutTransactions() throws Exception {
+        AtomGraph tinkerAtomGraph = new PGAtomGraph(new TinkerGraph());
+        Filter f = new Filter();
+
+        Atom x = tinkerAtomGraph.createAtom(f, null);
+        x.setValue("Arthur Dent");
+
+        ExecutorService worker1 = Executors.newSingleThreadExecutor();
+        ExecutorService worker2 = Executors.newSingleThreadExecutor();
+        try {
+            // worker 1 reads what it has just written, then must see what worker 2 writes afterwards
+            assertEquals("Arthur Philip Dent 0.5 ad", inThread(worker1, () -> {
+                Atom a = tinkerAtomGraph.getAtom(x.getId());
+                a.setValue("Arthur Philip Dent");
+                a.setWeight(0.5f);
+                a.setShortcut("ad");
+                return a.getValue() + " " + a.getWeight() + " " + a.getShortcut();
+            }));
+            inThread(worker2, () -> {
+                Atom a = tinkerAtomGraph.getAtom(x.getId());
+                a.setValue("Ford Prefect");
+                a.setWeight(1.0f);
+                a.setShortcut("fp");
+                return null;
+            });
+            assertEquals("Ford Prefect 1.0 fp", inThread(worker1, () -> {
+                Atom a = tinkerAtomGraph.getAtom(x.getId());
+                return a.getValue() + " " + a.getWeight() + " " + a.getShortcut();
+            }));
+            inThread(worker1, () -> {
+                x.setShortcut(null);
+                return null;
+            });
+            assertNull(inThread(worker2, () -> tinkerAtomGraph.getAtom(x.getId()).getShortcut()));
+        } finally {
+            worker1.shutdown();
+            worker2.shutdown();
+        }
+    }
+
+    @Test
+    public void testChangeCountReflectsChanges() throws Exception {
+        Filter f = new Filter();
+
+        Atom a = atomGraph.createAtom(f, null);
+        a.setValue("Arthur Dent");
+        Atom b = atomGraph.createAtom(f, null);
+        b.setValue("Ford Prefect");
+        graph.commit();
+
+        // reading does not change the count
+        long count = atomGraph.getChangeCount();
+        a.getValue();
+        atomGraph.getAtom(a.getId()).getNumberOfChildren();
+        assertEquals(count, atomGraph.getChangeCount());
+
+        a.setValue("Arthur Philip Dent");
+        assertTrue(atomGraph.getChangeCount() > count);
+        count = atomGraph.getChangeCount();
+        a.addChildAt(b, 0);
+        assertTrue(atomGraph.getChangeCount() > count);
+
+        // a commit changes the count, as the changes only now become visible to other transactions
+        count = atomGraph.getChangeCount();
+        atomGraph.commit();
+        assertTrue(atomGraph.getChangeCount() > count);
+        count = atomGraph.getChangeCount();
+        atomGraph.notifyOfUpdate();
+        assertTrue(atomGraph.getChangeCount() > count);
+
+        // a rollback changes the count only if the transaction has changed something
+        count = atomGraph.getChangeCount();
+        a.getValue();
+        atomGraph.rollback();
+        assertEquals(count, atomGraph.getChangeCount());
+        a.setValue("Arthur Dent");
+        count = atomGraph.getChangeCount();
+        atomGraph.rollback();
+        assertTrue(atomGraph.getChangeCount() > count);
+        count = atomGraph.getChangeCount();
+        atomGraph.rollback();
+        assertEquals(count, atomGraph.getChangeCount());
+    }
+
+    private String readInOtherThread(final String id) throws Exception {
+        return readInOtherThread(() -> atomGraph.getAtom(id));
+    }
+
+    private String readInOtherThread(final Atom a) throws Exception {
+        return readInOtherThread(() -> a);
+    }
+
+    private String readInOtherThread(final Supplier<Atom> atom) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(() -> {
+                try {
+                    Atom a = atom.get();
+                    return a.getValue() + " " + a.getNumberOfChildren();
+                } finally {
+                    graph.commit();
+                }
+            }).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private int countAtoms() {
+        int count = 0;
+        for (Atom a : atomGraph.getAllAtoms()) {
+            count++;
+        }
+        return count;
+    }
+
+    private <T> T inThread(final ExecutorService executor, final Callable<T> task) throws Exception {
+        return executor.submit(task).get();
+    }
+
+    private void assertParentsAndChildrenCounted() {
+        Collection<String> withoutParents = new HashSet<>(), withoutChildren = new HashSet<>();
+        for (Atom a : atomGraph.getAllAtoms()) {
+            if (0 == a.getFirstOf().size()) {
+                withoutParents.add(a.getId());
+            }
+            if (null == a.getNotes()) {
+                withoutChildren.add(a.getId());
+            }
+        }
+
+        // a list node which has been cut off from its list does not count as a parent,
+        // so atoms without parents are found among the atoms without a parent count, but not vice versa
+        Collection<String> found = new HashSet<>();
+        for (Atom a : atomGraph.getAtomsWithoutParents()) {
+            if (0 == a.getFirstOf().size()) {
+                found.add(a.getId());
+            }
+        }
+        assertEquals(withoutParents, found);
+
+        found = new HashSet<>();
+        for (Atom a : atomGraph.getAtomsWithoutChildren()) {
+            found.add(a.getId());
+        }
+        assertEquals(withoutChildren, found);
+    }
+
+    private void assertChildren(final List<Atom> expected, final Atom parent) {
+        List<Atom> actual = null == parent.getNotes() ? new ArrayList<>() : parent.getNotes().toJavaList();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+        }
+    }
+
+    private void assertOwnedBy(final Atom owner, final AtomList list) {
+        AtomList cur = list;
+        while (null != cur) {
+            assertEquals(owner.getId(), cur.getOwner().getId());
+            cur = cur.getRest();
+        }
+    }
 }
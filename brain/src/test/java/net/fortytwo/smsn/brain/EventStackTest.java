@@ -11,9 +11,22 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class EventStackTest {
     private EventStack eventStack;
@@ -46,6 +59,7 @@ public class EventStackTest {
         //assertEquals(0, countVertices(g));
 
         eventStack.push(eventStack.createGestureEvent(agent1, new Date()));
+        events = eventStack.getEvents();
         assertEquals(1, events.size());
         //assertEquals(3, countAtoms(bg));
         //assertEquals(5, countVertices(g));
@@ -61,6 +75,7 @@ public class EventStackTest {
         assertEquals(2, time.getValue().indexOf(":"));
 
         eventStack.push(eventStack.createGestureEvent(agent2, new Date()));
+        events = eventStack.getEvents();
         assertEquals(2, events.size());
         //assertEquals(6, countAtoms(bg));
         //assertEquals(10, countVertices(g));
@@ -74,6 +89,7 @@ public class EventStackTest {
 
         // push another event from agent #1 and verify that he is given the same routine name
         eventStack.push(eventStack.createGestureEvent(agent1, new Date()));
+        events = eventStack.getEvents();
         assertEquals(3, events.size());
         //assertEquals(9, countAtoms(bg));
         //assertEquals(15, countVertices(g));
@@ -85,6 +101,7 @@ public class EventStackTest {
 
         // fill to capacity
         eventStack.clear();
+        events = eventStack.getEvents();
         assertEquals(0, events.size());
         //assertEquals(0, countAtoms(bg));
         //assertEquals(0, countVertices(g));
@@ -92,6 +109,7 @@ public class EventStackTest {
         for (int i = 0; i < testCapacity; i++) {
             eventStack.push(eventStack.createGestureEvent(agent1, new Date()));
         }
+        events = eventStack.getEvents();
         assertEquals(testCapacity, events.size());
         //assertEquals(3 * testCapacity, countAtoms(bg));
         //assertEquals(5 * testCapacity, countVertices(g));
@@ -99,6 +117,7 @@ public class EventStackTest {
         // accommodate further events, but drop events from the bottom of the stack
         eventStack.push(eventStack.createGestureEvent(agent2, new Date()));
         // the stack has not grown
+        events = eventStack.getEvents();
         assertEquals(testCapacity, events.size());
         //assertEquals(3 * testCapacity, countAtoms(bg));
         //assertEquals(5 * testCapacity, countVertices(g));
@@ -107,12 +126,153 @@ public class EventStackTest {
 
         // cleanup leaves nothing behind
         eventStack.clear();
+        events = eventStack.getEvents();
         assertEquals(0, events.size());
-        
+
         //assertEquals(0, countAtoms(bg));
         //assertEquals(0, countVertices(g));
     }
 
+    @Test
+    public void testEventsAreSnapshots() throws Exception {
+        Note pushed = eventStack.createGestureEvent(agent1, new Date());
+        eventStack.push(pushed);
+        List<Note> events = eventStack.getEvents();
+
+        // neither the pushed note nor a list of events returned earlier is affected by later changes
+        pushed.setValue("changed");
+        events.get(0).setValue("changed");
+        eventStack.push(eventStack.createGestureEvent(agent2, new Date()));
+        assertEquals(1, events.size());
+
+        events = eventStack.getEvents();
+        assertEquals(2, events.size());
+        assertEquals("person 1 did something", events.get(1).getValue());
+        assertNotNull(events.get(1).getId());
+    }
+
+    @Test
+    public void testRoutineNamesAreBounded() throws Exception {
+        eventStack = new EventStack(testCapacity, 2);
+
+        assertEquals("person 1", personOf(eventStack.createGestureEvent(agent1, new Date())));
+        assertEquals("person 2", personOf(eventStack.createGestureEvent(agent2, new Date())));
+        // agent #1 is the least recently seen, and is forgotten to make room for a third agent
+        assertEquals("person 2", personOf(eventStack.createGestureEvent(agent2, new Date())));
+        assertEquals("person 3", personOf(eventStack.createGestureEvent("http://example.org/people/zaphod", new Date())));
+        assertEquals("person 2", personOf(eventStack.createGestureEvent(agent2, new Date())));
+        assertEquals("person 4", personOf(eventStack.createGestureEvent(agent1, new Date())));
+    }
+
+    @Test
+    public void testConcurrentPushAndRead() throws Exception {
+        int producers = 8;
+        int eventsPerProducer = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean(false);
+        List<Future<?>> futures = new LinkedList<>();
+
+        for (int i = 0; i < producers; i++) {
+            String agent = "http://example.org/people/agent" + i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < eventsPerProducer; j++) {
+                    Note e = eventStack.createGestureEvent(agent, new Date());
+                    e.setValue(agent + " " + j);
+                    eventStack.push(e);
+                }
+                return null;
+            }));
+        }
+
+        List<Future<?>> readers = new LinkedList<>();
+        for (int i = 0; i < 2; i++) {
+            readers.add(executor.submit(() -> {
+                start.await();
+                while (!done.get()) {
+                    List<Note> events = eventStack.getEvents();
+                    assertTrue(events.size() <= testCapacity);
+                    checkEvents(events);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        done.set(true);
+        for (Future<?> f : readers) {
+            f.get();
+        }
+        executor.shutdown();
+
+        // all producers have finished, so the stack is full and consistent
+        List<Note> events = eventStack.getEvents();
+        assertEquals(testCapacity, events.size());
+        checkEvents(events);
+
+        // each producer was given a single routine name
+        Set<String> names = new HashSet<>();
+        for (Note e : events) {
+            names.add(e.getChildren().get(0).getAlias() + " " + personOf(e));
+        }
+        Set<String> agents = new HashSet<>();
+        for (String name : names) {
+            assertTrue(agents.add(name.substring(0, name.indexOf(" "))));
+        }
+    }
+
+    @Test
+    public void testConcurrentPushDropsNoEventWithinWindow() throws Exception {
+        int capacity = 2;
+        int producers = 16;
+        int rounds = 3000;
+        eventStack = new EventStack(capacity);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+
+        try {
+            for (int i = 0; i < rounds; i++) {
+                CyclicBarrier start = new CyclicBarrier(producers);
+                List<Future<?>> futures = new LinkedList<>();
+                for (int j = 0; j < producers; j++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        eventStack.push(eventStack.createGestureEvent(agent1, new Date()));
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+
+                // a push which was delayed must not replace a newer event in the same slot
+                assertEquals(capacity, eventStack.getEvents().size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // events appear at most once, and newest first for any one producer
+    private void checkEvents(final List<Note> events) {
+        Set<String> ids = new HashSet<>();
+        Map<String, Integer> lastByAgent = new HashMap<>();
+        for (Note e : events) {
+            assertTrue(ids.add(e.getId()));
+            String[] parts = e.getValue().split(" ");
+            int index = Integer.valueOf(parts[1]);
+            Integer last = lastByAgent.put(parts[0], index);
+            assertTrue(null == last || last > index);
+        }
+    }
+
+    private String personOf(final Note event) {
+        return event.getChildren().get(0).getValue();
+    }
+
     @Test
     public void testViews() throws Exception {
         for (int i = 0; i < 3; i++) {
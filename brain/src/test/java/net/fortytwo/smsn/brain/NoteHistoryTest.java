@@ -0,0 +1,112 @@
+package net.fortytwo.smsn.brain;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import net.fortytwo.smsn.brain.metrics.Metrics;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class NoteHistoryTest {
+    private AtomGraph atomGraph;
+    private Filter filter;
+    private NoteHistory history;
+
+    @Before
+    public void setUp() throws Exception {
+        atomGraph = new PGAtomGraph(new TinkerGraph());
+        filter = new Filter();
+        history = new NoteHistory();
+    }
+
+    @Test
+    public void testMostRecentVisitsFirst() throws Exception {
+        Atom a = createAtom("a");
+        Atom b = createAtom("b");
+        Atom c = createAtom("c");
+
+        for (Atom atom : new Atom[]{a, b, a, c, b}) {
+            history.visit(atom.getId());
+        }
+        history.visit("nonexistent");
+        assertEquals(6, history.getTotalVisits());
+
+        // each atom appears at the position of its most recent visit
+        assertValues(history.getHistory(10, true, atomGraph, filter), "b", "c", "a");
+        assertValues(history.getHistory(2, true, atomGraph, filter), "b", "c");
+        assertValues(history.getHistory(10, false, atomGraph, filter), "b", "c", "a", "b", "a");
+
+        // invisible atoms are skipped
+        c.setSharability(0.25f);
+        Filter readFilter = new Filter(0f, 1f, 0.5f, 0.3f, 1f, 0.75f);
+        assertValues(history.getHistory(10, true, atomGraph, readFilter), "b", "a");
+    }
+
+    @Test
+    public void testOldestVisitsForgotten() throws Exception {
+        Atom a = createAtom("a");
+        Atom b = createAtom("b");
+
+        history.visit(a.getId());
+        for (int i = 0; i < 1000; i++) {
+            history.visit(b.getId());
+        }
+
+        assertValues(history.getHistory(10, true, atomGraph, filter), "b");
+    }
+
+    @Test
+    public void testLookupsStopOnceEnoughAtomsFound() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            history.visit(createAtom("atom " + i).getId());
+        }
+
+        long before = Metrics.getCounter("graph.atomReads").sum();
+        assertValues(history.getHistory(2, true, atomGraph, filter), "atom 99", "atom 98");
+        assertEquals(2, Metrics.getCounter("graph.atomReads").sum() - before);
+    }
+
+    @Test
+    public void testClientHistoriesKeptPerBrain() throws Exception {
+        Brain brain = new Brain(atomGraph);
+        Atom a = createAtom("a");
+        brain.getNoteHistory(null).visit(a.getId());
+        brain.getNoteHistory("first client").visit(a.getId());
+
+        // many identified clients displace the least recently active one, but never the shared history
+        for (int i = 0; i < 1000; i++) {
+            brain.getNoteHistory("client " + i).visit(a.getId());
+        }
+        assertValues(brain.getNoteHistory(null).getHistory(10, true, atomGraph, filter), "a");
+        assertSame(brain.getNoteHistory(null), brain.getNoteHistory(""));
+        assertEquals(0, brain.getNoteHistory("first client").getTotalVisits());
+
+        // another brain keeps its own histories
+        Brain other = new Brain(new PGAtomGraph(new TinkerGraph()));
+        assertEquals(0, other.getNoteHistory(null).getTotalVisits());
+        assertEquals(1, brain.getNoteHistory("client 999").getTotalVisits());
+    }
+
+    private Atom createAtom(final String value) {
+        Atom a = atomGraph.createAtom(filter, null);
+        a.setValue(value);
+        return a;
+    }
+
+    private void assertValues(final List<Atom> atoms, final String... expected) {
+        List<String> actual = new ArrayList<>();
+        for (Atom a : atoms) {
+            actual.add(a.getValue());
+        }
+        assertEquals(Arrays.asList(expected), actual);
+    }
+}
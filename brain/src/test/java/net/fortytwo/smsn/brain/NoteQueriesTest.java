@@ -7,6 +7,7 @@ import net.fortytwo.smsn.brain.model.AtomList;
 import net.fortytwo.smsn.brain.model.Filter;
 import net.fortytwo.smsn.brain.model.Note;
 import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import net.fortytwo.smsn.brain.ripple.RippleProgram;
 import net.fortytwo.smsn.brain.wiki.NoteParser;
 import net.fortytwo.smsn.brain.wiki.NoteWriter;
 import org.json.JSONObject;
@@ -14,7 +15,9 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
@@ -595,6 +598,146 @@ public class NoteQueriesTest {
         assertEquals(0, queries.findIsolatedAtoms(filter).getChildren().size());
     }
 
+    @Test
+    public void testFindRootsAndIsolatedAtomsInPages() throws Exception {
+        // the weights are distinct, so that the order of the atoms does not depend on their creation times
+        List<String> expected = new ArrayList<>();
+        for (int i = 7; i >= 1; i--) {
+            Atom a = atomGraph.createAtom(filter, "00" + i);
+            a.setValue("" + i);
+            a.setWeight(i / 10f);
+            expected.add(a.getId());
+        }
+
+        for (int i = 0; i < 2; i++) {
+            List<String> found = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                NoteQueries.NotePage page = 0 == i
+                        ? queries.findRootAtoms(filter, NoteQueries.forwardViewStyle, 1, 3, cursor)
+                        : queries.findIsolatedAtoms(filter, 3, cursor);
+                assertTrue(page.getNote().getChildren().size() <= 3);
+                for (Note n : page.getNote().getChildren()) {
+                    found.add(n.getId());
+                }
+                cursor = page.getNextCursor();
+                pages++;
+            } while (null != cursor);
+
+            assertEquals(3, pages);
+            assertEquals(expected, found);
+        }
+
+        // a page which exactly fills the last of the results has no cursor
+        assertNull(queries.findIsolatedAtoms(filter, 7, null).getNextCursor());
+
+        try {
+            queries.findIsolatedAtoms(filter, 3, "not a cursor");
+            Assert.fail("invalid cursor was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEmptyRippleResultIsShownAsLiteral() throws Exception {
+        // the top of the stack is the empty string
+        Note results = queries.rippleQuery(RippleProgram.compile("\"x\" \"\""), 1, filter,
+                NoteQueries.forwardViewStyle, 100, 1000);
+        assertEquals(1, results.getChildren().size());
+        assertEquals("\"\"", results.getChildren().get(0).getValue());
+    }
+
+    @Test
+    public void testViewWithSharedSubtrees() throws Exception {
+        Atom a = createAtom("000");
+        a.setValue("a");
+        Atom b = createAtom("001");
+        b.setValue("b");
+        Atom c = createAtom("002");
+        c.setValue("c");
+        c.setWeight(1.0f);
+        Atom d = createAtom("003");
+        d.setValue("d");
+        Atom e = createAtom("004");
+        e.setValue("e");
+
+        // d is reachable through both b and c, and also links back to a
+        a.addChildAt(b, 0);
+        a.addChildAt(c, 1);
+        b.addChildAt(d, 0);
+        c.addChildAt(d, 0);
+        d.addChildAt(e, 0);
+        d.addChildAt(a, 1);
+
+        Note full = queries.view(a, 4, filter, NoteQueries.forwardViewStyle);
+        assertEquals(2, full.getChildren().get(1).getChildren().get(0).getChildren().size());
+
+        Note shared = queries.viewWithSharedSubtrees(a, 4, filter, NoteQueries.forwardViewStyle, 100);
+        Note bn = shared.getChildren().get(0);
+        Note cn = shared.getChildren().get(1);
+        assertEquals("b", bn.getValue());
+        assertEquals("c", cn.getValue());
+
+        // d is expanded under c, the heavier of its two parents, and referenced under b
+        Note db = bn.getChildren().get(0);
+        Note dc = cn.getChildren().get(0);
+        assertEquals("d", db.getValue());
+        assertTrue(db.getIsReference());
+        assertTrue(db.getHasChildren());
+        assertEquals(0, db.getChildren().size());
+        assertFalse(dc.getIsReference());
+        assertEquals(2, dc.getChildren().size());
+
+        // the root is not expanded a second time
+        Note ad = dc.getChildren().get(1);
+        assertEquals("a", ad.getValue());
+        assertTrue(ad.getIsReference());
+        assertFalse(dc.getChildren().get(0).getIsReference());
+
+        // a note is either expanded with all of its children, or not at all
+        shared = queries.viewWithSharedSubtrees(a, 4, filter, NoteQueries.forwardViewStyle, 4);
+        assertEquals(2, shared.getChildren().size());
+        dc = shared.getChildren().get(1).getChildren().get(0);
+        assertEquals(0, dc.getChildren().size());
+        assertTrue(dc.getHasChildren());
+        assertFalse(dc.getIsReference());
+        bn = shared.getChildren().get(0);
+        assertEquals(0, bn.getChildren().size());
+        assertTrue(bn.getHasChildren());
+    }
+
+    @Test
+    public void testParallelViewMatchesSequentialView() throws Exception {
+        Filter readFilter = new Filter(0f, 1f, 0.5f, 0.75f, 1f, 0.75f);
+        Random random = new Random(42);
+
+        // a view of height 4 over this graph is well above the threshold for parallel expansion
+        List<Atom> atoms = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Atom a = createAtom(null);
+            a.setValue("atom " + i);
+            // some atoms are hidden by the filter
+            a.setSharability(0 == i % 7 ? 0.5f : 1.0f);
+            atoms.add(a);
+        }
+        for (Atom a : atoms) {
+            for (int j = 0; j < 10; j++) {
+                a.addChildAt(atoms.get(random.nextInt(atoms.size())), j);
+            }
+        }
+
+        for (NoteQueries.ViewStyle style : new NoteQueries.ViewStyle[]{
+                NoteQueries.forwardViewStyle, NoteQueries.backwardViewStyle}) {
+            for (int height = 0; height <= 4; height++) {
+                Note sequential = queries.view(atoms.get(1), height, readFilter, style);
+                Note parallel = queries.parallelView(atoms.get(1), height, readFilter, style);
+                assertEquals(writer.toJSON(sequential).toString(), writer.toJSON(parallel).toString());
+            }
+        }
+    }
+
     private void assertNotesEqual(final Atom a,
                                   final String... expected) {
         String[] actual = new String[countNotes(a)];
@@ -0,0 +1,170 @@
+package net.fortytwo.smsn.brain;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrioritiesTest {
+    private AtomGraph atomGraph;
+    private Priorities priorities;
+    private Filter filter;
+
+    @Before
+    public void setUp() throws Exception {
+        atomGraph = new PGAtomGraph(new TinkerGraph());
+        priorities = new Priorities();
+        filter = new Filter();
+    }
+
+    @Test
+    public void testAtomsOrderedByPriorityThenWeight() throws Exception {
+        Atom a = createAtom("a", 0.5f, 0.5f);
+        Atom b = createAtom("b", 0.9f, 0.5f);
+        Atom c = createAtom("c", 0.5f, 1.0f);
+        createAtom("d", null, 0.5f);
+
+        assertEquals(3, priorities.size());
+        assertValues(priorities.getPage(filter, 10, null), "b", "c", "a");
+
+        // a change of priority moves the atom, and a null priority removes it
+        a.setPriority(1.0f);
+        priorities.updatePriority(a);
+        b.setPriority(null);
+        priorities.updatePriority(b);
+        assertEquals(2, priorities.size());
+        assertValues(priorities.getPage(filter, 10, null), "a", "c");
+
+        // invisible atoms are skipped
+        c.setSharability(0.25f);
+        Filter readFilter = new Filter(0f, 1f, 0.5f, 0.3f, 1f, 0.75f);
+        assertValues(priorities.getPage(readFilter, 10, null), "a");
+    }
+
+    @Test
+    public void testBulkUpdate() throws Exception {
+        Atom a = createAtom("a", 0.5f, 0.5f);
+        Atom b = createAtom("b", 0.9f, 0.5f);
+        Atom c = createAtom("c", null, 0.5f);
+        long version = priorities.getVersion();
+
+        // a change of weight, as well as of priority, may move an atom
+        a.setWeight(1.0f);
+        b.setPriority(null);
+        c.setPriority(0.7f);
+        priorities.updatePriorities(Arrays.asList(a, b, c));
+
+        assertEquals(2, priorities.size());
+        assertValues(priorities.getPage(filter, 10, null), "c", "a");
+        assertTrue(priorities.getVersion() != version);
+    }
+
+    @Test
+    public void testStablePagination() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            createAtom("" + i, 0.9f - i * 0.1f, 0.5f);
+        }
+
+        Priorities.Page page = priorities.getPage(filter, 2, null);
+        assertValues(page, "0", "1");
+
+        // an atom added before the cursor does not shift later pages
+        createAtom("new", 1.0f, 0.5f);
+        page = priorities.getPage(filter, 2, page.getNextCursor());
+        assertValues(page, "2", "3");
+
+        page = priorities.getPage(filter, 2, page.getNextCursor());
+        assertValues(page, "4", "5");
+        assertNull(page.getNextCursor());
+
+        // a partial page is the last page
+        page = priorities.getPage(filter, 5, null);
+        page = priorities.getPage(filter, 5, page.getNextCursor());
+        assertValues(page, "4", "5");
+        assertNull(page.getNextCursor());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCursorRejected() throws Exception {
+        createAtom("a", 0.5f, 0.5f);
+        priorities.getPage(filter, 10, "not a cursor");
+    }
+
+    @Test
+    public void testPagesReadDuringConcurrentUpdates() throws Exception {
+        List<Atom> atoms = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            atoms.add(createAtom("" + i, 0.5f, 0.5f));
+        }
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            Random random = new Random(42);
+            try {
+                for (int i = 0; i < 20000; i++) {
+                    Atom a = atoms.get(random.nextInt(atoms.size()));
+                    a.setPriority(random.nextFloat() / 2 + 0.5f);
+                    priorities.updatePriority(a);
+                }
+            } catch (Throwable t) {
+                error.set(t);
+            } finally {
+                done.set(true);
+            }
+        });
+        writer.start();
+
+        while (!done.get()) {
+            String cursor = null;
+            do {
+                Priorities.Page page = priorities.getPage(filter, 50, cursor);
+                Set<String> ids = new HashSet<>();
+                for (Atom a : page.getAtoms()) {
+                    assertTrue(ids.add(a.getId()));
+                }
+                cursor = page.getNextCursor();
+            } while (null != cursor);
+        }
+        writer.join();
+
+        if (null != error.get()) {
+            fail(error.get().toString());
+        }
+        assertEquals(500, priorities.size());
+    }
+
+    private Atom createAtom(final String value, final Float priority, final float weight) {
+        Atom a = atomGraph.createAtom(filter, null);
+        a.setValue(value);
+        a.setWeight(weight);
+        a.setPriority(priority);
+        priorities.updatePriority(a);
+        return a;
+    }
+
+    private void assertValues(final Priorities.Page page, final String... expected) {
+        List<String> actual = new ArrayList<>();
+        for (Atom a : page.getAtoms()) {
+            actual.add(a.getValue());
+        }
+        assertEquals(Arrays.asList(expected), actual);
+    }
+}
@@ -0,0 +1,60 @@
+package net.fortytwo.smsn.brain.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void testBucketsCoverAllValues() throws Exception {
+        int previous = -1;
+        for (long v : new long[]{0, 1, 31, 32, 33, 63, 64, 65, 1000, 1L << 40, Long.MAX_VALUE}) {
+            int index = Histogram.indexOf(v);
+            assertTrue(index >= previous);
+            // each value is no greater than the highest value of its bucket, and greater than that of the previous
+            assertTrue(v <= Histogram.highestValueOf(index));
+            if (index > 0) {
+                assertTrue(v > Histogram.highestValueOf(index - 1));
+            }
+            previous = index;
+        }
+
+        // small values are counted exactly
+        for (int v = 0; v < 32; v++) {
+            assertEquals(v, Histogram.highestValueOf(Histogram.indexOf(v)));
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinRelativeError() throws Exception {
+        Histogram h = new Histogram();
+        Random random = new Random(42);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // a long-tailed distribution, as of latencies
+            values[i] = (long) Math.exp(random.nextDouble() * 14);
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, h.getCount());
+        assertEquals(values[values.length - 1], h.getMax());
+        assertEquals(values[values.length - 1], h.getValueAtPercentile(100));
+
+        for (double p : new double[]{10, 50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(values.length * p / 100) - 1];
+            long actual = h.getValueAtPercentile(p);
+            assertTrue(actual >= expected);
+            assertTrue(actual <= expected + expected / 32 + 1);
+        }
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getValueAtPercentile(50));
+    }
+}
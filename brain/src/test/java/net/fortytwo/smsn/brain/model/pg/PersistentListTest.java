@@ -0,0 +1,93 @@
+package net.fortytwo.smsn.brain.model.pg;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PersistentListTest {
+
+    @Test
+    public void testRandomChangesMatchArrayList() throws Exception {
+        Random random = new Random(42);
+        List<Integer> expected = new ArrayList<>();
+        PersistentList<Integer> list = PersistentList.empty();
+
+        for (int i = 0; i < 20000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                int position = random.nextInt(expected.size() + 1);
+                expected.add(position, i);
+                list = list.insert(position, i);
+            } else {
+                int position = random.nextInt(expected.size());
+                expected.remove(position);
+                list = list.remove(position);
+            }
+
+            assertEquals(expected.size(), list.size());
+            if (!expected.isEmpty()) {
+                int position = random.nextInt(expected.size());
+                assertEquals(expected.get(position), list.get(position));
+            }
+        }
+
+        assertEquals(expected, list.toList());
+        assertBalanced(list);
+    }
+
+    @Test
+    public void testChangesLeaveOriginalUnchanged() throws Exception {
+        PersistentList<String> original = PersistentList.of(Arrays.asList("a", "b", "c"));
+
+        PersistentList<String> inserted = original.insert(1, "x");
+        PersistentList<String> removed = original.remove(0);
+
+        assertEquals(Arrays.asList("a", "b", "c"), original.toList());
+        assertEquals(Arrays.asList("a", "x", "b", "c"), inserted.toList());
+        assertEquals(Arrays.asList("b", "c"), removed.toList());
+        assertTrue(removed.remove(0).remove(0).isEmpty());
+    }
+
+    @Test
+    public void testAppendsStayBalanced() throws Exception {
+        PersistentList<Integer> list = PersistentList.empty();
+        for (int i = 0; i < 100000; i++) {
+            list = list.insert(i, i);
+        }
+        assertBalanced(list);
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            values.add(i);
+        }
+        assertEquals(values, list.toList());
+        assertBalanced(PersistentList.of(values));
+    }
+
+    @Test
+    public void testPositionsOutOfBoundsRejected() throws Exception {
+        PersistentList<String> list = PersistentList.of(Arrays.asList("a", "b"));
+        for (Runnable r : new Runnable[]{
+                () -> list.get(2), () -> list.get(-1), () -> list.remove(2), () -> list.insert(3, "c"),
+                () -> PersistentList.empty().remove(0)}) {
+            try {
+                r.run();
+                fail("position out of bounds was accepted");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+        }
+    }
+
+    // the height of an AVL tree is less than 1.45 log2(n + 2)
+    private void assertBalanced(final PersistentList<?> list) {
+        double bound = 1.45 * Math.log(list.size() + 2) / Math.log(2);
+        assertTrue(list.getHeight() < bound);
+    }
+}
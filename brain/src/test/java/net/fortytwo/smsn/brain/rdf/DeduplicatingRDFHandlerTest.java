@@ -0,0 +1,113 @@
+package net.fortytwo.smsn.brain.rdf;
+
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.helpers.StatementCollector;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeduplicatingRDFHandlerTest {
+    private static final ValueFactory valueFactory = SimpleValueFactory.getInstance();
+
+    @Test
+    public void testDuplicatesRemovedInMemory() throws Exception {
+        List<Statement> input = createStatements(100);
+        input.addAll(createStatements(100));
+
+        List<Statement> output = deduplicate(input, 1000);
+
+        assertEquals(100, output.size());
+        assertEquals(new HashSet<>(input), new HashSet<>(output));
+    }
+
+    @Test
+    public void testDuplicatesRemovedOnDisk() throws Exception {
+        List<Statement> input = createStatements(1000);
+        input.addAll(createStatements(1000));
+        input.addAll(createStatements(500));
+
+        List<Statement> output = deduplicate(input, 100);
+
+        assertEquals(1000, output.size());
+        assertEquals(new HashSet<>(input), new HashSet<>(output));
+    }
+
+    @Test
+    public void testStatementsPassedOnBeforeEndOfStream() throws Exception {
+        StatementCollector collector = new StatementCollector();
+        RDFHandler h = new DeduplicatingRDFHandler(collector, valueFactory, 1000);
+
+        h.startRDF();
+        for (Statement st : createStatements(10)) {
+            h.handleStatement(st);
+        }
+        assertEquals(10, collector.getStatements().size());
+        h.endRDF();
+    }
+
+    @Test
+    public void testDistinctLiteralsAreNotConfused() throws Exception {
+        IRI s = valueFactory.createIRI("http://example.org/s");
+        List<Statement> input = new LinkedList<>();
+        input.add(valueFactory.createStatement(s, RDFS.LABEL, valueFactory.createLiteral("foo")));
+        input.add(valueFactory.createStatement(s, RDFS.LABEL, valueFactory.createLiteral("foo", "en")));
+        input.add(valueFactory.createStatement(s, RDFS.LABEL, valueFactory.createIRI("foo:")));
+        input.add(valueFactory.createStatement(s, RDFS.LABEL, valueFactory.createBNode("foo")));
+
+        // force all but the first statement to disk
+        assertEquals(4, deduplicate(input, 1).size());
+        assertEquals(4, deduplicate(input, 10).size());
+    }
+
+    @Test
+    public void testSpillFileReleasedWhenStreamIsAbandoned() throws Exception {
+        DeduplicatingRDFHandler h = new DeduplicatingRDFHandler(new StatementCollector(), valueFactory, 10);
+
+        h.startRDF();
+        for (Statement st : createStatements(100)) {
+            h.handleStatement(st);
+        }
+        assertEquals(90, h.getSpilledCount());
+        File spillFile = h.getSpillFile();
+        assertTrue(spillFile.exists());
+
+        // the stream never ends, as when an export is cancelled
+        h.close();
+        assertTrue(!spillFile.exists());
+        h.close();
+    }
+
+    private List<Statement> deduplicate(final List<Statement> input, final int budget) throws Exception {
+        StatementCollector collector = new StatementCollector();
+        RDFHandler h = new DeduplicatingRDFHandler(collector, valueFactory, budget);
+
+        h.startRDF();
+        for (Statement st : input) {
+            h.handleStatement(st);
+        }
+        h.endRDF();
+
+        return new LinkedList<>(collector.getStatements());
+    }
+
+    private List<Statement> createStatements(final int count) {
+        List<Statement> statements = new LinkedList<>();
+        for (int i = 0; i < count; i++) {
+            IRI subject = valueFactory.createIRI("http://example.org/things/" + i);
+            statements.add(valueFactory.createStatement(
+                    subject, RDFS.LABEL, valueFactory.createLiteral("thing #" + i)));
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,137 @@
+package net.fortytwo.smsn.brain.ripple;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import net.fortytwo.smsn.brain.error.InvalidQueryException;
+import net.fortytwo.smsn.brain.error.QueryBudgetExceededException;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RippleProgramTest {
+    private AtomGraph atomGraph;
+    private Filter filter;
+    private Atom root;
+
+    @Before
+    public void setUp() throws Exception {
+        atomGraph = new PGAtomGraph(new TinkerGraph());
+        filter = new Filter();
+
+        root = createAtom("root");
+        root.setShortcut("r");
+        for (String value : new String[]{"a", "b", "c"}) {
+            Atom child = createAtom(value);
+            root.addChildAt(child, root.getNumberOfChildren());
+            child.addChildAt(createAtom(value + "1"), 0);
+        }
+    }
+
+    @Test
+    public void testMultiHopQuery() throws Exception {
+        // children of children, reached in a single query
+        assertTopValues("\"r\" shortcut-search >> get-atom-children >> each >> get-atom-children >> each >>"
+                + " get-atom-value >>", "a1", "b1", "c1");
+
+        // prefixed keywords and a closing period are accepted, as in Ripple
+        assertTopValues("\"r\" smsn:shortcut-search >> smsn:get-atom-value >> .", "root");
+        // a string which looks like an id stands for an atom
+        assertTopValues("\"" + root.getId() + "\" get-atom-value >>", "root");
+    }
+
+    @Test
+    public void testStackPrimitives() throws Exception {
+        List<RippleStack> solutions = evaluate("1 2 swap >> dup >> \"x\" pop >>");
+        assertEquals(1, solutions.size());
+        assertEquals("2 1 1", solutions.get(0).toString());
+
+        // a primitive may be pushed, and applied later
+        assertTopValues("get-atom-value \"r\" shortcut-search >> swap >> >>", "root");
+
+        // a primitive applied to too few values, or a value which is not a primitive, yields no solutions
+        assertEquals(0, evaluate("swap >>").size());
+        assertEquals(0, evaluate("\">>\" >>").size());
+        assertEquals(0, evaluate("\"nosuchatom\" get-atom-value >>").size());
+    }
+
+    @Test
+    public void testInvisibleAtomsAreNotReached() throws Exception {
+        Atom hidden = root.getNotes().getRest().getFirst();
+        hidden.setSharability(0.25f);
+        filter = new Filter(0f, 1f, 0.5f, 0.3f, 1f, 0.75f);
+
+        assertTopValues("\"r\" shortcut-search >> get-atom-children >> each >> get-atom-value >>", "a", "c");
+        assertEquals(0, evaluate("\"" + hidden.getId() + "\" get-atom-value >>").size());
+    }
+
+    @Test
+    public void testInvalidQueries() throws Exception {
+        for (String query : new String[]{"\"unterminated", "set-atom-value >>", "nosuchprimitive", "1 ( 2 )"}) {
+            try {
+                RippleProgram.compile(query);
+                fail("query should have been rejected: " + query);
+            } catch (InvalidQueryException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testBudgetIsEnforced() throws Exception {
+        RippleProgram program = RippleProgram.compile(
+                "\"r\" shortcut-search >> get-atom-children >> each >> get-atom-value >>");
+        // one step for each of the four instructions on the way to the children, and three for the last
+        assertEquals(3, program.evaluate(atomGraph, filter, 7, 1000).size());
+
+        try {
+            program.evaluate(atomGraph, filter, 6, 1000);
+            fail("query should have exceeded its budget");
+        } catch (QueryBudgetExceededException e) {
+            assertTrue(e.getMessage().contains("6 steps"));
+        }
+    }
+
+    @Test
+    public void testProgramsAreCached() throws Exception {
+        ProgramCache cache = new ProgramCache(2);
+        RippleProgram p1 = cache.getProgram("1 dup >>");
+        assertSame(p1, cache.getProgram("1 dup >>"));
+        assertEquals(2, p1.size());
+
+        cache.getProgram("2 dup >>");
+        cache.getProgram("1 dup >>");
+        // the least recently used program is dropped to make room
+        cache.getProgram("3 dup >>");
+        assertEquals(2, cache.size());
+        assertSame(p1, cache.getProgram("1 dup >>"));
+    }
+
+    private Atom createAtom(final String value) {
+        Atom a = atomGraph.createAtom(filter, null);
+        a.setValue(value);
+        return a;
+    }
+
+    private List<RippleStack> evaluate(final String query) {
+        return RippleProgram.compile(query).evaluate(atomGraph, filter, 1000, 1000);
+    }
+
+    private void assertTopValues(final String query, final String... expected) {
+        List<String> actual = new ArrayList<>();
+        for (RippleStack s : evaluate(query)) {
+            actual.add(s.getFirst().toString());
+        }
+        assertEquals(Arrays.asList(expected), actual);
+    }
+}
@@ -0,0 +1,89 @@
+package net.fortytwo.smsn.brain.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeadlineTest {
+
+    @After
+    public void tearDown() throws Exception {
+        Deadline.setCurrent(null);
+    }
+
+    @Test
+    public void testNoDeadlineByDefault() throws Exception {
+        assertNull(Deadline.getCurrent());
+        // without a deadline, a check never fails
+        Deadline.check();
+    }
+
+    @Test
+    public void testExpiredDeadlineStopsOperation() throws Exception {
+        Deadline d = new Deadline(0);
+        assertTrue(d.isExpired());
+        assertFalse(d.isCancelled());
+
+        Deadline.setCurrent(d);
+        try {
+            Deadline.check();
+            fail("deadline should have expired");
+        } catch (CancellationException e) {
+            assertEquals("deadline exceeded", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCancellationFromAnotherThread() throws Exception {
+        Deadline d = new Deadline(Long.MAX_VALUE);
+        assertFalse(d.isExpired());
+        Deadline.setCurrent(d);
+        Deadline.check();
+
+        Thread t = new Thread(d::cancel);
+        t.start();
+        t.join();
+
+        assertTrue(d.isExpired());
+        try {
+            Deadline.check();
+            fail("operation should have been cancelled");
+        } catch (CancellationException e) {
+            assertEquals("operation cancelled", e.getMessage());
+        }
+
+        // the deadline belongs to this thread only
+        Thread other = new Thread(Deadline::check);
+        other.start();
+        other.join();
+    }
+
+    @Test
+    public void testCompletionAndCancellationExcludeEachOther() throws Exception {
+        assertTrue(Deadline.completeCurrent());
+
+        // once an operation has begun to complete, it can neither be cancelled nor expire
+        Deadline d = new Deadline(Long.MAX_VALUE);
+        Deadline.setCurrent(d);
+        assertTrue(Deadline.completeCurrent());
+        assertFalse(d.cancel());
+        assertFalse(d.isExpired());
+        Deadline.check();
+
+        // a cancelled operation may not complete
+        d = new Deadline(Long.MAX_VALUE);
+        assertTrue(d.cancel());
+        assertFalse(d.complete());
+        assertTrue(d.isExpired());
+
+        // nor may an operation past its deadline
+        assertFalse(new Deadline(0).complete());
+    }
+}
@@ -239,4 +239,22 @@ public class ListDiffTest {
         assertEquals(5, additions);
         assertEquals(10, removals);
     }
+
+    @Test
+    public void testLongListsWithSmallChanges() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String before = sb.toString();
+        String after = before.substring(0, 50000) + "XY" + before.substring(50001);
+
+        // without a common prefix and suffix, this would call for a table of 10^10 entries
+        String diff = findDiff(before, after);
+        assertEquals(before.length() - 1, diff.length());
+
+        assertEquals(after, applyDiff(before, after, diff));
+        assertEquals(2, additions);
+        assertEquals(1, removals);
+    }
 }
@@ -8,6 +8,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotSame;
@@ -80,6 +82,24 @@ public class NoteParserTest {
         assertEquals(3, notes.size());
     }
 
+    @Test
+    public void testLineTerminatorsAndTabs() throws Exception {
+        List<Note> notes = readNotes("* one\r\n" +
+                "\t* two\tand a half\r" +
+                "* three\n");
+        assertEquals(2, notes.size());
+        assertEquals("one", notes.get(0).getValue());
+        assertEquals(1, notes.get(0).getChildren().size());
+        assertEquals("two    and a half", notes.get(0).getChildren().get(0).getValue());
+        assertEquals("three", notes.get(1).getValue());
+    }
+
+    @Test(expected = NoteParser.NoteParsingException.class)
+    public void testUnclosedVerbatimBlockIsInvalid() throws Exception {
+        readNotes("* {{{\n" +
+                "this block is never closed");
+    }
+
     @Test(expected = NoteParser.NoteParsingException.class)
     public void testEmptyValuesNotAllowedForNewNotes() throws Exception {
         readNotes("* ");
@@ -146,6 +166,22 @@ public class NoteParserTest {
         assertNotSame("123@456", notes.get(0).getId());
     }
 
+    @Test
+    public void testIdCharactersMatchIdPattern() throws Exception {
+        // the id suffix is matched as by the former regular expression, whose class has no range between '9' and '_',
+        // but a literal '-', so that characters such as ':', '=' and '@' do not belong to an id
+        Pattern idSuffix = Pattern.compile(":" + NoteParser.ID.pattern() + ":");
+        for (char c = ' '; c <= '~'; c++) {
+            String text = ":a" + c + "b: value";
+            Matcher m = idSuffix.matcher(text);
+            boolean hasId = m.find() && 0 == m.start();
+
+            Note note = readNotes("* " + text).get(0);
+            assertEquals("character '" + c + "'", hasId ? text.substring(1, m.end() - 1) : null, note.getId());
+            assertEquals("character '" + c + "'", hasId ? text.substring(m.end()).trim() : text, note.getValue());
+        }
+    }
+
     @Test
     public void testVerbatimBlocks() throws Exception {
         List<Note> notes = readNotes("* {{{\n" +
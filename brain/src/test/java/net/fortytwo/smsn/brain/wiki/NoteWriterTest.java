@@ -7,6 +7,10 @@ import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -72,10 +76,66 @@ public class NoteWriterTest {
         }
     }
 
+    @Test
+    public void testWikiTextRoundTrip() throws Exception {
+        String text = "* :00001: one\n" +
+                "    * two, with non-ASCII characters: é€😀\n" +
+                "        * :abcdefg: three\n" +
+                "* four\n";
+
+        assertEquals(text, toWikiText(parser.fromWikiText(text).getChildren()));
+    }
+
+    @Test
+    public void testValueCutoffAppliedToWikiText() throws Exception {
+        Note n = new Note();
+        n.setId("12345");
+        n.setValue("a value which is too long");
+        Note child = new Note();
+        child.setValue("short");
+        n.addChild(child);
+
+        writer.setValueLengthCutoff(7);
+        assertEquals("* :12345: a value" + NoteWriter.VALUE_TRUNCATOR + "\n" +
+                "    * short\n", toWikiText(Arrays.asList(n)));
+    }
+
+    @Test
+    public void testValueCutoffDoesNotSplitSurrogatePairs() throws Exception {
+        Note n = new Note();
+        n.setValue("ab😀cd");
+
+        // the cutoff falls between the two chars of the emoji, which is dropped as a whole
+        writer.setValueLengthCutoff(3);
+        assertEquals("* ab" + NoteWriter.VALUE_TRUNCATOR + "\n", toWikiText(Arrays.asList(n)));
+
+        Note root = new Note();
+        root.addChild(n);
+        assertEquals("ab" + NoteWriter.VALUE_TRUNCATOR, writer.toJSON(root)
+                .getJSONArray(NoteWriter.CHILDREN).getJSONObject(0).getString(SemanticSynchrony.VALUE));
+
+        writer.setValueLengthCutoff(4);
+        assertEquals("* ab😀" + NoteWriter.VALUE_TRUNCATOR + "\n", toWikiText(Arrays.asList(n)));
+    }
+
+    @Test
+    public void testInvalidValuesReplaced() throws Exception {
+        Note n = new Note();
+        n.setValue("a control character: \u0007");
+
+        assertEquals("* ???\n", toWikiText(Arrays.asList(n)));
+    }
+
     /*
     @Test
     public void testHideNonSharable() throws Exception {
         List<Note> notes = parser.parse(NoteParser.class.getResourceAsStream("wiki-example-3.txt")).getChildren();
         writer.writeNotes(notes, System.out);
     }*/
+
+    private String toWikiText(final List<Note> notes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.toWikiText(notes, out);
+        return new String(out.toByteArray(), SemanticSynchrony.UTF8);
+    }
 }
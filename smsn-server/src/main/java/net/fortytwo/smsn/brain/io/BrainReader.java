@@ -1,44 +1,95 @@
 package net.fortytwo.smsn.brain.io;
 
+import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.Brain;
+import net.fortytwo.smsn.brain.metrics.ImportEvent;
+import net.fortytwo.smsn.brain.metrics.IndexEvent;
+import net.fortytwo.smsn.brain.util.Deadline;
+import net.fortytwo.smsn.util.TypedProperties;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.ProxyInputStream;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public abstract class BrainReader {
     private static final Logger logger = Logger.getLogger(BrainReader.class.getName());
 
-    protected abstract void importInternal(Context context) throws IOException;
+    // configuration properties
+    public static final String
+            PROP_IMPORT_THREADS = "net.fortytwo.smsn.brain.io.importThreads";
+
+    private static final int importThreads;
+
+    static {
+        try {
+            importThreads = SemanticSynchrony.getConfiguration().getInt(
+                    PROP_IMPORT_THREADS, Runtime.getRuntime().availableProcessors());
+        } catch (TypedProperties.PropertyException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
-    private String defaultNodeName;
+    protected abstract void importInternal(Context context) throws IOException;
 
     public abstract List<Format> getFormats();
 
+    /**
+     * @return whether {@link #importInternal} adds the atoms it creates to the indices itself,
+     * so that no further pass over the graph is needed
+     */
+    protected boolean indexesImportedAtoms() {
+        return false;
+    }
+
     public void doImport(
             File fileOrDir, Format format, Brain brain, boolean recursive)
             throws IOException {
+        doImport(fileOrDir, format, brain, recursive, null);
+    }
+
+    /**
+     * Imports a file, or a directory of files, reporting progress to the given listener, if any
+     */
+    public void doImport(
+            File fileOrDir, Format format, Brain brain, boolean recursive, ProgressListener listener)
+            throws IOException {
 
         if (!fileOrDir.exists()) {
             throw new IllegalArgumentException("file or directory not found: " + fileOrDir.getName());
         }
 
+        ImportEvent event = new ImportEvent();
+        event.begin();
+
+        List<File> files;
         if (fileOrDir.isDirectory()) {
-            if (recursive) {
-                importDirectoryRecursive(fileOrDir, format, brain);
-            }
+            files = recursive
+                    ? importDirectoryRecursive(fileOrDir, format, brain, listener) : Collections.emptyList();
         } else {
-            importSingleFile(fileOrDir, format, brain);
+            importSingleFile(fileOrDir, format, brain, listener);
+            files = Collections.singletonList(fileOrDir);
         }
+
+        event.finish(format.getName(), files);
     }
 
     public void doImport(Context context)
@@ -53,66 +104,227 @@ public abstract class BrainReader {
         // note: we assume the graph is small
         destGraph.commit();
 
-        reindexVertices(destGraph);
+        if (!indexesImportedAtoms()) {
+            reindexVertices(destGraph);
 
-        // again, we assume the graph is small
-        destGraph.commit();
+            // again, we assume the graph is small
+            destGraph.commit();
+        }
+        destGraph.notifyOfUpdate();
 
         long after = System.currentTimeMillis();
         logger.info("imported " + context.getFormat() + " data in " + (after - before) + "ms");
     }
 
-    protected String getDefaultNodeName() {
-        return defaultNodeName;
-    }
+    private List<File> importDirectoryRecursive(File dir, Format format, Brain brain, ProgressListener listener)
+            throws IOException {
+        Set<String> extensions = new HashSet<>();
+        Collections.addAll(extensions, format.getFileExtensions());
+
+        List<File> files = new ArrayList<>();
+        findFilesRecursive(dir, extensions, files);
+
+        if (this instanceof ParallelBrainReader) {
+            importFilesInParallel((ParallelBrainReader) this, files, format, brain.getAtomGraph(), listener);
+        } else {
+            int completed = 0;
+            for (File file : files) {
+                Deadline.check();
+                importSingleFile(file, format, brain, null);
+                fileImported(listener, file, ++completed, files.size());
+            }
+        }
 
-    public void setDefaultNodeName(final String defaultNodeName) {
-        this.defaultNodeName = defaultNodeName;
+        return files;
     }
 
-    private void importDirectoryRecursive(File dir, Format format, Brain brain) throws IOException {
-        Set<String> extensions = new HashSet<>();
-        Collections.addAll(extensions, format.getFileExtensions());
+    private void findFilesRecursive(final File dir, final Set<String> extensions, final List<File> files) {
         for (File file : dir.listFiles()) {
             if (!file.isHidden()) {
                 if (file.isDirectory()) {
-                    importDirectoryRecursive(file, format, brain);
+                    findFilesRecursive(file, extensions, files);
                 } else {
                     String ext = FilenameUtils.getExtension(file.getName());
                     if (extensions.contains(ext)) {
-                        setDefaultNodeName(file.getName());
-                        importSingleFile(file, format, brain);
+                        files.add(file);
                     }
                 }
             }
         }
     }
 
-    private void importSingleFile(File file, Format format, Brain brain) throws IOException {
-        logger.info("importing file " + file);
+    /**
+     * Parses files in a pool of worker threads while the calling thread applies the results to the graph,
+     * in their original order.
+     * Each file is committed once it has been applied, so that a file which fails partway can be rolled back
+     * without losing the others, and a failed file does not prevent the import of the remaining files.
+     * All files are applied within the same context, so that they may share atoms.
+     */
+    private void importFilesInParallel(final ParallelBrainReader parser,
+                                       final List<File> files,
+                                       final Format format,
+                                       final AtomGraph destGraph,
+                                       final ProgressListener listener) throws IOException {
+        Context context = new Context();
+        context.setAtomGraph(destGraph);
+        context.setFormat(format);
+
+        long before = System.currentTimeMillis();
+        int threads = Math.max(1, importThreads);
+        logger.info("importing " + files.size() + " files using " + threads + " parser threads");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // keep a bounded number of parsed files in memory at a time
+        int window = 2 * threads;
+        LinkedList<Future<ParallelBrainReader.ParsedFile>> pending = new LinkedList<>();
+        int submitted = 0, completed = 0, failed = 0;
+        Throwable firstFailure = null;
+
+        try {
+            for (File file : files) {
+                Deadline.check();
+                while (submitted < files.size() && pending.size() < window) {
+                    File toParse = files.get(submitted++);
+                    pending.add(executor.submit(() -> parseFile(parser, toParse)));
+                }
+
+                Throwable failure = null;
+                try {
+                    pending.removeFirst().get().applyTo(context);
+                    destGraph.commit();
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                    // discard whatever part of the file was applied before the failure
+                    destGraph.rollback();
+                }
+
+                completed++;
+                if (null == failure) {
+                    fileImported(listener, file, completed, files.size());
+                } else {
+                    failed++;
+                    if (null == firstFailure) {
+                        firstFailure = failure;
+                    }
+                    fileFailed(listener, file, failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted during import", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        reindexVertices(destGraph);
+        destGraph.commit();
+        destGraph.notifyOfUpdate();
+
+        long after = System.currentTimeMillis();
+        logger.info("imported " + (completed - failed) + " of " + files.size() + " files in "
+                + (after - before) + "ms");
+
+        if (failed > 0) {
+            throw new IOException(failed + " of " + files.size() + " files failed to import", firstFailure);
+        }
+    }
+
+    private ParallelBrainReader.ParsedFile parseFile(final ParallelBrainReader parser, final File file)
+            throws IOException {
         try (InputStream sourceStream = new FileInputStream(file)) {
-            setDefaultNodeName(file.getName());
+            return parser.parse(sourceStream, file.getName());
+        }
+    }
+
+    private void fileImported(final ProgressListener listener,
+                              final File file, final int completed, final int total) {
+        logger.info("imported file " + file + " (" + completed + " of " + total + ")");
+        if (null != listener) {
+            listener.fileImported(file, completed, total);
+        }
+    }
 
+    private void fileFailed(final ProgressListener listener, final File file, final Throwable cause) {
+        logger.log(Level.WARNING, "failed to import file " + file, cause);
+        if (null != listener) {
+            listener.fileFailed(file, cause);
+        }
+    }
+
+    private void importSingleFile(File file, Format format, Brain brain, ProgressListener listener)
+            throws IOException {
+        logger.info("importing file " + file);
+        try (InputStream sourceStream = null == listener
+                ? new FileInputStream(file) : new ProgressInputStream(new FileInputStream(file), file.length(), listener)) {
             Context context = new Context();
             context.setAtomGraph(brain.getAtomGraph());
             context.setSourceStream(sourceStream);
             context.setFormat(format);
+            context.setDefaultNodeName(file.getName());
 
             doImport(context);
         }
     }
 
     private void reindexVertices(AtomGraph destGraph) {
+        IndexEvent event = new IndexEvent();
+        event.begin();
+
+        long count = 0;
         for (Atom a : destGraph.getAllAtoms()) {
+            Deadline.check();
             String value = a.getValue();
             if (null != value) destGraph.addAtomToIndices(a);
+            count++;
+        }
+
+        event.finish("reindexVertices", count);
+    }
+
+    /**
+     * Receives the progress of an import: per file for a directory, and per block of bytes read for a single file
+     */
+    public interface ProgressListener {
+        void fileImported(File file, int completed, int total);
+
+        void fileFailed(File file, Throwable cause);
+
+        void bytesRead(long count, long total);
+    }
+
+    private static class ProgressInputStream extends ProxyInputStream {
+        private final long total;
+        private final ProgressListener listener;
+        private long count;
+
+        private ProgressInputStream(final InputStream in, final long total, final ProgressListener listener) {
+            super(in);
+            this.total = total;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void afterRead(final int n) {
+            if (n > 0) {
+                count += n;
+                listener.bytesRead(count, total);
+            }
         }
     }
 
+    /**
+     * The state of a single import, which is not shared with any other import by the same reader
+     */
     public static class Context {
         private AtomGraph atomGraph;
         private InputStream sourceStream;
         private Format format;
+        private String defaultNodeName;
+
+        // the ids of atoms which a reader shares between the files of an import, by keys of the reader's choosing
+        private final Map<String, String> sharedAtomIds = new HashMap<>();
 
         public AtomGraph getAtomGraph() {
             return atomGraph;
@@ -137,5 +349,20 @@ public abstract class BrainReader {
         public void setFormat(Format format) {
             this.format = format;
         }
+
+        /**
+         * @return a value for any node which does not have one, usually the name of the file
+         */
+        public String getDefaultNodeName() {
+            return defaultNodeName;
+        }
+
+        public void setDefaultNodeName(String defaultNodeName) {
+            this.defaultNodeName = defaultNodeName;
+        }
+
+        public Map<String, String> getSharedAtomIds() {
+            return sharedAtomIds;
+        }
     }
 }
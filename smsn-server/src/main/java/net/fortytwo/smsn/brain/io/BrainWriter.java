@@ -1,5 +1,6 @@
 package net.fortytwo.smsn.brain.io;
 
+import net.fortytwo.smsn.brain.metrics.ExportEvent;
 import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.model.Filter;
 import net.fortytwo.smsn.brain.rdf.KnowledgeBase;
@@ -14,7 +15,23 @@ public abstract class BrainWriter {
 
     public abstract List<Format> getFormats();
 
-    public abstract void doExport(Context context) throws IOException;
+    protected abstract void exportInternal(Context context) throws IOException;
+
+    public void doExport(final Context context) throws IOException {
+        ExportEvent event = new ExportEvent();
+        event.begin();
+
+        exportInternal(context);
+
+        event.finish(context.getFormat().getName(), context.atomsWritten);
+    }
+
+    /**
+     * Receives the progress of an export
+     */
+    public interface ProgressListener {
+        void atomWritten();
+    }
 
     public static class Context {
         private AtomGraph atomGraph;
@@ -23,6 +40,8 @@ public abstract class BrainWriter {
         private Filter filter;
         private OutputStream destStream;
         private Format format;
+        private ProgressListener progressListener;
+        private long atomsWritten;
 
         private AtomGraph filteredGraph;
 
@@ -74,6 +93,20 @@ public abstract class BrainWriter {
             this.format = format;
         }
 
+        public void setProgressListener(ProgressListener progressListener) {
+            this.progressListener = progressListener;
+        }
+
+        /**
+         * Called by writers for each atom written, in those formats which are written atom by atom
+         */
+        public void atomWritten() {
+            atomsWritten++;
+            if (null != progressListener) {
+                progressListener.atomWritten();
+            }
+        }
+
         public AtomGraph getFilteredGraph() {
             if (null == filter) {
                 return atomGraph;
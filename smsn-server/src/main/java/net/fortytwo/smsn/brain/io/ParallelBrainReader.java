@@ -0,0 +1,32 @@
+package net.fortytwo.smsn.brain.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A reader which can parse files independently of the graph, so that the files of a directory
+ * may be parsed in parallel and then applied to the graph from a single writer thread
+ */
+public abstract class ParallelBrainReader extends BrainReader {
+
+    /**
+     * Parses a single file into an intermediate form, without touching any graph.
+     * This may be called concurrently from several threads.
+     *
+     * @param sourceStream    the contents of the file
+     * @param defaultNodeName a value for any node which does not have one, usually the name of the file
+     * @return the parsed file, to be applied to a graph in a single writer thread
+     */
+    protected abstract ParsedFile parse(InputStream sourceStream, String defaultNodeName) throws IOException;
+
+    /**
+     * The result of parsing a single file, which has yet to be added to a graph
+     */
+    protected interface ParsedFile {
+        /**
+         * Adds the contents of the file to the graph of an import, in the current transaction.
+         * The transaction is not committed, so that a file which fails partway may be rolled back
+         */
+        void applyTo(Context context) throws IOException;
+    }
+}
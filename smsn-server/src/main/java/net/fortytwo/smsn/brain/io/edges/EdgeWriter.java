@@ -5,6 +5,7 @@ import net.fortytwo.smsn.brain.io.Format;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.model.AtomList;
+import net.fortytwo.smsn.brain.util.Deadline;
 
 import java.io.IOException;
 import java.io.PrintStream;
@@ -19,13 +20,15 @@ public class EdgeWriter extends BrainWriter {
     }
 
     @Override
-    public void doExport(Context context) throws IOException {
+    protected void exportInternal(Context context) throws IOException {
         AtomGraph sourceGraph = context.getFilteredGraph();
         PrintStream p = new PrintStream(context.getDestStream());
 
         p.println("from\tto");
 
         for (Atom a : sourceGraph.getAllAtoms()) {
+            Deadline.check();
+            context.atomWritten();
             if (null != a) {
                 AtomList l = a.getNotes();
                 while (null != l) {
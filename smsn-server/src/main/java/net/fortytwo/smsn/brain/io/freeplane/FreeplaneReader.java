@@ -1,39 +1,35 @@
 package net.fortytwo.smsn.brain.io.freeplane;
 
 import net.fortytwo.smsn.SemanticSynchrony;
-import net.fortytwo.smsn.brain.error.InvalidGraphException;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomGraph;
-import net.fortytwo.smsn.brain.Brain;
+import net.fortytwo.smsn.brain.model.AtomList;
 import net.fortytwo.smsn.brain.model.Filter;
-import net.fortytwo.smsn.brain.model.Note;
-import net.fortytwo.smsn.brain.NoteQueries;
 import net.fortytwo.smsn.brain.io.Format;
-import net.fortytwo.smsn.brain.io.BrainReader;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
-
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
+import net.fortytwo.smsn.brain.io.ParallelBrainReader;
+import net.fortytwo.smsn.brain.util.Deadline;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
-public class FreeplaneReader extends BrainReader {
+/**
+ * A reader for Freeplane mind maps which creates atoms and lists as it streams through the XML,
+ * so that memory use is proportional to the depth of the map rather than to its size
+ */
+public class FreeplaneReader extends ParallelBrainReader {
+    private static final Logger logger = Logger.getLogger(FreeplaneReader.class.getName());
 
     private static final String
             ELEMENTNAME_ARROWLINK = "arrowlink",
@@ -50,288 +46,438 @@ public class FreeplaneReader extends BrainReader {
             ATTR_LOCALIZED_STYLE_REF = "LOCALIZED_STYLE_REF",
             ATTR_TEXT = "TEXT";
 
-    //private static final String JAXP_SCHEMA_LANGUAGE = "http://java.sun.com/xml/jaxp/properties/schemaLanguage";
-    //private static final String W3C_XML_SCHEMA = "http://www.w3.org/2001/XMLSchema";
-
-    private static final String SCHEMA_PATH = "freeplane.xsd";
-
-    private static final boolean USE_VALIDATION = true;
+    // the number of new atoms after which the destination graph is committed
+    private static final int COMMIT_BATCH_SIZE = 10000;
 
     @Override
     public List<Format> getFormats() {
         return Arrays.asList(FreeplaneFormat.getInstance());
     }
 
-    private final Map<AtomGraph, ParserInstance> parserInstancesByGraph = new HashMap<>();
-
-    private final FreeplaneXMLParser xmlParser;
+    private final XMLInputFactory inputFactory;
 
-    public FreeplaneReader() throws ParserConfigurationException, SAXException {
-        xmlParser = new FreeplaneXMLParser();
+    public FreeplaneReader() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
     }
 
     @Override
     protected void importInternal(Context context)
             throws IOException {
 
-        Document doc;
+        parse(context.getSourceStream(), new GraphBuilder(context, context.getDefaultNodeName(), true));
+    }
+
+    @Override
+    protected ParsedFile parse(final InputStream sourceStream, final String defaultNodeName) throws IOException {
+        RecordedMindMap recorded = new RecordedMindMap();
+        parse(sourceStream, recorded);
+
+        // the file is applied in a single transaction, so that it can be rolled back as a whole
+        return context -> recorded.replay(new GraphBuilder(context, defaultNodeName, false));
+    }
+
+    private void parse(final InputStream sourceStream, final MindMapHandler handler) throws IOException {
         try {
-            doc = xmlParser.parseStreamToDocument(context.getSourceStream());
-        } catch (SAXException e) {
+            XMLStreamReader reader;
+            // factories are not guaranteed to be thread-safe, although the readers they create are independent
+            synchronized (inputFactory) {
+                reader = inputFactory.createXMLStreamReader(sourceStream);
+            }
+            try {
+                new MindMapParser(handler).parse(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
             throw new IOException(e);
         }
+    }
 
-        getParserInstanceFor(context.getAtomGraph()).parseDOMToGraph(doc);
+    private long getTimestamp(final XMLStreamReader reader, final String attrName) {
+        String value = reader.getAttributeValue(null, attrName);
+        return (null == value || 0 == value.length())
+                ? System.currentTimeMillis()
+                : Long.valueOf(value);
     }
 
-    private ParserInstance getParserInstanceFor(final AtomGraph destGraph) {
-        ParserInstance instance = parserInstancesByGraph.get(destGraph);
-        if (null == instance) {
-            instance = new ParserInstance(destGraph);
-            parserInstancesByGraph.put(destGraph, instance);
-        }
+    /**
+     * Receives the content of a mind map, one node at a time, in document order
+     */
+    private interface MindMapHandler {
+        void startNode(String freeplaneId, long created, String text, String style);
+
+        void arrowLink(String headId);
 
-        return instance;
+        void endNode(String richContent);
+
+        void endMap();
     }
 
-    private void persistNote(final AtomGraph destGraph, final Note rootNote)
-            throws Brain.BrainException {
+    /**
+     * Turns a stream of XML events into mind map events, ignoring anything but nodes, arrow links and rich content
+     */
+    private class MindMapParser {
+        private final MindMapHandler handler;
 
-        int maxHeight = 1000;
+        // the rich content (if any) of each open node, innermost last
+        private final List<StringBuilder> richContents = new ArrayList<>();
+        private int ignoredDepth;
+        private boolean inRichContent;
+        private int bodyDepth;
 
-        Brain brain = new Brain(destGraph);
-        NoteQueries queries = new NoteQueries(brain);
-        Filter filter = new Filter();
+        private MindMapParser(final MindMapHandler handler) {
+            this.handler = handler;
+        }
 
-        Atom atom = destGraph.createAtom(filter, SemanticSynchrony.createRandomKey());
-        rootNote.setId(atom.getId());
-        queries.update(rootNote, maxHeight, filter, NoteQueries.forwardViewStyle);
-    }
+        private void parse(final XMLStreamReader reader) throws XMLStreamException {
+            while (reader.hasNext()) {
+                Deadline.check();
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement(reader);
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (bodyDepth > 0) {
+                            richContents.get(richContents.size() - 1).append(
+                                    reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                }
+            }
 
-    private void setText(Note note, String text) {
-        note.setValue(text);
-    }
+            handler.endMap();
+        }
+
+        private void startElement(final XMLStreamReader reader) {
+            String name = reader.getLocalName();
+
+            if (richContents.isEmpty()) {
+                if (!name.equals(ELEMENTNAME_MAP)) {
+                    throw new IllegalArgumentException("root of mind map XML must be called 'map'");
+                }
+                startNode(reader);
+                return;
+            }
+
+            // elements which are not directly significant to the current node are only counted
+            if (ignoredDepth > 0) {
+                ignoredDepth++;
+                if (bodyDepth > 0) {
+                    bodyDepth++;
+                }
+                return;
+            }
+
+            if (inRichContent) {
+                int last = richContents.size() - 1;
+                if (name.equals(ELEMENTNAME_BODY) && null == richContents.get(last)) {
+                    richContents.set(last, new StringBuilder());
+                    bodyDepth = 1;
+                }
+                ignoredDepth = 1;
+                return;
+            }
 
-    private String getRichContent(final Element element) {
-        Element content = getSingleElement(element, ELEMENTNAME_RICHCONTENT);
-        if (null == content) {
-            return null;
+            switch (name) {
+                case ELEMENTNAME_NODE:
+                    startNode(reader);
+                    break;
+                case ELEMENTNAME_ARROWLINK:
+                    String headId = reader.getAttributeValue(null, ATTR_DESTINATION);
+                    if (null != headId) {
+                        handler.arrowLink(headId);
+                    }
+                    ignoredDepth = 1;
+                    break;
+                case ELEMENTNAME_RICHCONTENT:
+                    inRichContent = true;
+                    break;
+                default:
+                    // note: non-content elements such as <hook> are ignored
+                    ignoredDepth = 1;
+            }
         }
 
-        Element body = getSingleElement(content, ELEMENTNAME_BODY);
-        return body == null
-                ? null
-                : body.getTextContent();
-    }
+        private void endElement() {
+            if (ignoredDepth > 0) {
+                ignoredDepth--;
+                if (bodyDepth > 0) {
+                    bodyDepth--;
+                }
+                return;
+            }
+
+            if (inRichContent) {
+                inRichContent = false;
+                return;
+            }
 
-    private Element getSingleElement(final Element parent, final String name) {
-        List<Element> children = getChildElements(parent, name);
+            // end of a <node> or <map>
+            StringBuilder richContent = richContents.remove(richContents.size() - 1);
+            handler.endNode(null == richContent ? null : richContent.toString());
+        }
 
-        int length = children.size();
-        switch (children.size()) {
-            case 0:
-                return null;
-            case 1:
-                return children.get(0);
-            default:
-                throw new IllegalArgumentException("expected exactly one <" + name
-                        + "> node, found " + length);
+        private void startNode(final XMLStreamReader reader) {
+            richContents.add(null);
+            // TODO: make id and modified date into property values
+            handler.startNode(
+                    reader.getAttributeValue(null, ATTR_ID),
+                    getTimestamp(reader, ATTR_CREATED),
+                    reader.getAttributeValue(null, ATTR_TEXT),
+                    reader.getAttributeValue(null, ATTR_LOCALIZED_STYLE_REF));
         }
     }
 
-    private List<Element> getChildElements(final Element element, final String name) {
-        return getChildElements(element).stream().filter(el -> el.getNodeName().equals(name))
-                .collect(Collectors.toList());
-    }
+    /**
+     * Holds the events of a parsed mind map until they can be applied to a graph
+     */
+    private static class RecordedMindMap implements MindMapHandler {
+        private final List<Consumer<MindMapHandler>> events = new ArrayList<>();
 
-    private List<Element> getChildElements(final Element element) {
-        List<Element> asList = new LinkedList<>();
-        NodeList children = element.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node node = children.item(i);
-            if (node instanceof Element)
-                asList.add((Element) node);
+        @Override
+        public void startNode(String freeplaneId, long created, String text, String style) {
+            events.add(h -> h.startNode(freeplaneId, created, text, style));
         }
-        return asList;
-    }
 
-    private long getCreated(final Element element) {
-        return getTimestamp(element, ATTR_CREATED);
-    }
+        @Override
+        public void arrowLink(String headId) {
+            events.add(h -> h.arrowLink(headId));
+        }
 
-    private long getModified(final Element element) {
-        return getTimestamp(element, ATTR_MODIFIED);
-    }
+        @Override
+        public void endNode(String richContent) {
+            events.add(h -> h.endNode(richContent));
+        }
 
-    private String getStyle(final Element element) {
-        return element.getAttribute(ATTR_LOCALIZED_STYLE_REF);
-    }
+        @Override
+        public void endMap() {
+            events.add(MindMapHandler::endMap);
+        }
 
-    private long getTimestamp(final Element element, final String attrName) {
-        String value = element.getAttribute(attrName);
-        return (null == value || 0 == value.length())
-                ? System.currentTimeMillis()
-                : Long.valueOf(value);
+        private void replay(final MindMapHandler handler) {
+            for (Consumer<MindMapHandler> event : events) {
+                event.accept(handler);
+            }
+        }
     }
 
-    private class ParserInstance {
+    /**
+     * Creates atoms and lists directly from mind map events
+     */
+    private class GraphBuilder implements MindMapHandler {
         private final AtomGraph destGraph;
-        private final Map<String, List<String>> arrowLinks = new HashMap<>();
-        private final Map<String, Note> notesByFreeplaneId = new HashMap<>();
-        private final Map<String, Note> styleNotes = new HashMap<>();
-
-        public ParserInstance(AtomGraph destGraph) {
-            this.destGraph = destGraph;
+        private final String defaultNodeName;
+        private final boolean commitInBatches;
+        // the ids of style atoms shared by all files of the import, which are looked up again in each file,
+        // in case they have since been rolled back
+        private final Map<String, String> styleAtomIds;
+        private final Map<String, Atom> styleAtoms = new HashMap<>();
+        private final Filter filter = new Filter();
+
+        // links whose heads had not yet been seen when the children of their tails were listed.
+        // These are inserted at the end of the map, so that no list cell is ever created without an atom
+        private final List<ArrowLink> forwardArrowLinks = new LinkedList<>();
+        private final List<ArrowLink> lateArrowLinks = new LinkedList<>();
+        private final Map<String, String> atomIdsByFreeplaneId = new HashMap<>();
+
+        private final LinkedList<NodeFrame> stack = new LinkedList<>();
+        private int atomsSinceCommit;
+
+        /**
+         * @param commitInBatches whether to commit the destination graph after every batch of new atoms,
+         *                        or to leave all changes in the current transaction
+         */
+        private GraphBuilder(final Context context, final String defaultNodeName, final boolean commitInBatches) {
+            this.destGraph = context.getAtomGraph();
+            this.defaultNodeName = defaultNodeName;
+            this.commitInBatches = commitInBatches;
+            this.styleAtomIds = context.getSharedAtomIds();
         }
 
-        private void parseDOMToGraph(Document document) throws IOException, InvalidGraphException {
-            Element root = document.getDocumentElement();
+        @Override
+        public void startNode(final String freeplaneId, final long created, final String text, final String style) {
+            Atom atom = createAtom();
 
-            if (!root.getTagName().equals(ELEMENTNAME_MAP)) {
-                throw new IllegalArgumentException("root of mind map XML must be called 'map'");
+            if (null != freeplaneId) {
+                atomIdsByFreeplaneId.put(freeplaneId, atom.getId());
             }
+            atom.setCreated(created);
 
-            resetArrowLinks();
+            NodeFrame frame = new NodeFrame(atom);
 
-            Note mindMapAsNote = parseTree(root);
-            try {
-                persistNote(destGraph, mindMapAsNote);
-            } catch (Brain.BrainException e) {
-                throw new IOException(e);
+            if (null != text && 0 < text.length()) {
+                atom.setValue(text);
+                frame.hasValue = true;
+            } else {
+                // a provisional value, replaced by any rich content at the end of the node.
+                // Every atom has a value even if the import stops before the node ends
+                atom.setValue(defaultNodeName);
             }
 
-            persistArrowLinks();
-        }
+            frame.styleAtom = getStyleAtom(style);
 
-        private Atom getAtom(final String id) {
-            return destGraph.getAtom(notesByFreeplaneId.get(id).getId());
+            NodeFrame parent = stack.peek();
+            if (null != parent) {
+                parent.appendChild(atom);
+            }
+            stack.push(frame);
         }
 
-        private void persistArrowLinks() throws InvalidGraphException {
-            for (Map.Entry<String, List<String>> link : arrowLinks.entrySet()) {
-                Atom tailAtom = getAtom(link.getKey());
-                List<String> heads = link.getValue();
-                for (String head : heads) {
-                    Atom headAtom = getAtom(head);
-                    tailAtom.addChildAt(headAtom, 0);
+        @Override
+        public void arrowLink(final String headId) {
+            NodeFrame tail = stack.peek();
+
+            if (tail.childrenStarted) {
+                // rare: the link follows a child node, so it must be prepended once the head is known
+                lateArrowLinks.add(new ArrowLink(tail.atom.getId(), headId, 0));
+            } else {
+                if (null == tail.linkHeads) {
+                    tail.linkHeads = new ArrayList<>();
                 }
+                tail.linkHeads.add(headId);
             }
         }
 
-        private void resetArrowLinks() {
-            arrowLinks.clear();
+        @Override
+        public void endNode(final String richContent) {
+            NodeFrame frame = stack.pop();
+            frame.startChildren();
+            if (!frame.hasValue && null != richContent) {
+                frame.atom.setValue(richContent);
+            }
         }
 
-        private Note parseTree(Element nodeElement) {
-            Note note = new Note();
-            note.setId(SemanticSynchrony.createRandomKey());
-
-            String id = nodeElement.getAttribute(ATTR_ID);
-            long created = getCreated(nodeElement);
-            long modified = getModified(nodeElement);
-
-            Note styleNote = getStyleNote(getStyle(nodeElement));
-
-            notesByFreeplaneId.put(id, note);
-            note.setCreated(created);
-            // TODO: make id and modified date into property values
-
-            String text = nodeElement.getAttribute(ATTR_TEXT);
-            if (null == text || 0 == text.length()) {
-                text = getRichContent(nodeElement);
-                if (null == text) {
-                    text = getDefaultNodeName();
+        @Override
+        public void endMap() {
+            // links are visited in order of position within each tail, so that each is inserted after its predecessors
+            Map<String, Integer> droppedLinksByTail = new HashMap<>();
+            for (ArrowLink link : forwardArrowLinks) {
+                Atom headAtom = getArrowLinkHead(link);
+                if (null == headAtom) {
+                    droppedLinksByTail.merge(link.tailId, 1, Integer::sum);
+                } else {
+                    int position = link.position - droppedLinksByTail.getOrDefault(link.tailId, 0);
+                    destGraph.getAtom(link.tailId).addChildAt(headAtom, position);
                 }
             }
-            setText(note, text);
 
-            if (null != styleNote) {
-                note.setHasChildren(true);
-                note.addChild(styleNote);
+            for (ArrowLink link : lateArrowLinks) {
+                Atom headAtom = getArrowLinkHead(link);
+                if (null != headAtom) {
+                    destGraph.getAtom(link.tailId).addChildAt(headAtom, 0);
+                }
             }
+        }
 
-            parseChildren(note, nodeElement, id);
+        private Atom getArrowLinkHead(final ArrowLink link) {
+            String headAtomId = atomIdsByFreeplaneId.get(link.headId);
+            if (null == headAtomId) {
+                logger.warning("no such node as arrow link destination: " + link.headId);
+                return null;
+            }
 
-            return note;
+            return destGraph.getAtom(headAtomId);
         }
 
-        private void parseChildren(final Note note, final Element nodeElement, String nodeId) {
-            List<Element> backlinkChildren = getChildElements(nodeElement, ELEMENTNAME_ARROWLINK);
-            if (0 != backlinkChildren.size()) {
-                List<String> heads = arrowLinks.get(nodeId);
-                if (null == heads) {
-                    heads = new LinkedList<>();
-                    arrowLinks.put(nodeId, heads);
-                }
-                for (Element head : backlinkChildren) {
-                    String headId = head.getAttribute(ATTR_DESTINATION);
-                    if (null != headId) {
-                        note.setHasChildren(true);
-                        heads.add(headId);
-                    }
-                }
-            }
+        private Atom getStyleAtom(final String style) {
+            if (null == style || style.length() == 0) return null;
 
-            // note: non-content <hook> elements are ignored
-            List<Element> treeChildren = getChildElements(nodeElement, ELEMENTNAME_NODE);
-            if (0 != treeChildren.size()) {
-                note.setHasChildren(true);
-                for (Element childElement : treeChildren) {
-                    Note child = parseTree(childElement);
-                    note.addChild(child);
+            Atom atom = styleAtoms.get(style);
+            if (null == atom) {
+                String id = styleAtomIds.get(style);
+                atom = null == id ? null : destGraph.getAtom(id);
+                if (null == atom) {
+                    atom = createAtom();
+                    atom.setValue(style + " (style)");
+                    styleAtomIds.put(style, atom.getId());
                 }
+                styleAtoms.put(style, atom);
             }
+            return atom;
         }
 
-        private Note getStyleNote(final String style) {
-            if (null == style || style.length() == 0) return null;
-
-            Note note = styleNotes.get(style);
-            if (null == note) {
-                note = new Note();
-                note.setValue(style + " (style)");
-                note.setId(SemanticSynchrony.createRandomKey());
-                styleNotes.put(style, note);
+        private Atom createAtom() {
+            if (commitInBatches && ++atomsSinceCommit >= COMMIT_BATCH_SIZE) {
+                destGraph.commit();
+                atomsSinceCommit = 0;
             }
-            return note;
+
+            return destGraph.createAtom(filter, SemanticSynchrony.createRandomKey());
         }
-    }
 
-    private static class FreeplaneXMLParser extends DefaultHandler {
-        private final DocumentBuilder builder;
+        private class NodeFrame {
+            private final Atom atom;
+            private AtomList lastChild;
+            private boolean hasValue;
 
-        public FreeplaneXMLParser() throws SAXException, ParserConfigurationException {
-            DocumentBuilderFactory factory = createDocumentBuilderFactory();
-            builder = factory.newDocumentBuilder();
+            // arrow links and the style come before any child nodes, in the order (reversed links, style, nodes)
+            private boolean childrenStarted;
+            private List<String> linkHeads;
+            private Atom styleAtom;
 
-            // note: this suppresses error messages relating to the not-quite-accurate Freeplane schema
-            builder.setErrorHandler(new DefaultHandler());
-        }
+            private NodeFrame(final Atom atom) {
+                this.atom = atom;
+            }
 
-        private Document parseStreamToDocument(final InputStream sourceStream)
-                throws IOException, org.xml.sax.SAXException {
-            return builder.parse(sourceStream);
-        }
+            private void startChildren() {
+                if (childrenStarted) {
+                    return;
+                }
+                childrenStarted = true;
+
+                if (null != linkHeads) {
+                    for (int i = linkHeads.size() - 1, position = 0; i >= 0; i--, position++) {
+                        String headId = linkHeads.get(i);
+                        String headAtomId = atomIdsByFreeplaneId.get(headId);
+                        if (null == headAtomId) {
+                            forwardArrowLinks.add(new ArrowLink(atom.getId(), headId, position));
+                        } else {
+                            appendCell(destGraph.createAtomList(destGraph.getAtom(headAtomId)));
+                        }
+                    }
+                    linkHeads = null;
+                }
 
-        private DocumentBuilderFactory createDocumentBuilderFactory() throws SAXException {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setIgnoringElementContentWhitespace(true);
+                if (null != styleAtom) {
+                    appendCell(destGraph.createAtomList(styleAtom));
+                }
+            }
 
-            if (USE_VALIDATION) configureValidation(factory);
+            private void appendChild(final Atom child) {
+                startChildren();
+                appendCell(destGraph.createAtomList(child));
+            }
 
-            return factory;
+            // appends to the list of children in constant time, without walking or relinking the list
+            private void appendCell(final AtomList cell) {
+                if (null == lastChild) {
+                    atom.setNotes(cell);
+                } else {
+                    lastChild.setRest(cell);
+                }
+                lastChild = cell;
+            }
         }
+    }
+
+    private static class ArrowLink {
+        private final String tailId;
+        private final String headId;
+        // the position of the link among the children of its tail
+        private final int position;
 
-        // as of July 2016: http://www.freeplane.org/wiki/index.php/Current_Freeplane_File_Format
-        private void configureValidation(DocumentBuilderFactory docFactory) throws SAXException {
-            docFactory.setNamespaceAware(false);
-            //docFactory.setAttribute(JAXP_SCHEMA_LANGUAGE, W3C_XML_SCHEMA);
-            SchemaFactory schemaFactory =
-                    SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = schemaFactory.newSchema(new StreamSource(
-                    getClass().getResourceAsStream(SCHEMA_PATH)));
-            docFactory.setSchema(schema);
-            docFactory.setValidating(true);
+        private ArrowLink(final String tailId, final String headId, final int position) {
+            this.tailId = tailId;
+            this.headId = headId;
+            this.position = position;
         }
     }
 }
@@ -1,32 +1,208 @@
 package net.fortytwo.smsn.brain.io.graphml;
 
-import net.fortytwo.smsn.brain.Brain;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.batch.BatchGraph;
+import com.tinkerpop.blueprints.util.wrappers.batch.VertexIDType;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
 import net.fortytwo.smsn.brain.io.BrainReader;
 import net.fortytwo.smsn.brain.io.Format;
+import net.fortytwo.smsn.brain.util.Deadline;
+import net.fortytwo.smsn.util.TypedProperties;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
 
+/**
+ * A bulk loader for GraphML dumps of a property graph.
+ * Vertices and edges are buffered and committed in batches, and the loaded vertices are indexed at the end
+ * in a single pass, in order of id, provided that the load succeeds.
+ * Key index maintenance is suspended during the load only if the graph starts out without atoms.
+ * If the load fails or is cancelled, the batch in progress is rolled back, and every vertex added by earlier batches
+ * is removed again, along with its edges.
+ * Changes to vertices which existed before the load, and which the input names by id, are not undone.
+ * Either way, parents and children are counted anew, as the counts are not part of a dump:
+ * throughout a graph which has been loaded from scratch, and otherwise only for the atoms the load has added,
+ * and the atoms at either end of the edges it has added, so that a load into a large graph does not visit all of it.
+ */
 public class GraphMLReader extends BrainReader {
+    private static final Logger logger = Logger.getLogger(GraphMLReader.class.getName());
+
+    // configuration properties
+    public static final String
+            PROP_BUFFER_SIZE = "net.fortytwo.smsn.brain.io.graphml.bufferSize";
+
+    private static final int bufferSize;
+
+    static {
+        try {
+            bufferSize = SemanticSynchrony.getConfiguration().getInt(PROP_BUFFER_SIZE, 10000);
+        } catch (TypedProperties.PropertyException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     @Override
     public List<Format> getFormats() {
         return Arrays.asList(GraphMLFormat.getInstance());
     }
 
+    @Override
+    protected boolean indexesImportedAtoms() {
+        return true;
+    }
+
     @Override
     protected void importInternal(Context context)
             throws IOException {
-        if (context.getAtomGraph() instanceof PGAtomGraph) {
-            com.tinkerpop.blueprints.util.io.graphml.GraphMLReader r
-                    = new com.tinkerpop.blueprints.util.io.graphml.GraphMLReader(
-                    ((PGAtomGraph) context.getAtomGraph()).getPropertyGraph());
-            r.inputGraph(context.getSourceStream());
-        } else {
+        if (!(context.getAtomGraph() instanceof PGAtomGraph)) {
             throw new UnsupportedOperationException("GraphML I/O is not supported for this graph");
         }
+
+        PGAtomGraph destGraph = (PGAtomGraph) context.getAtomGraph();
+        IdGraph<KeyIndexableGraph> propertyGraph = destGraph.getPropertyGraph();
+
+        // only a graph which starts out without atoms is loaded without key indices or checks for unique ids;
+        // there is nothing in it to be found by other requests, and it cannot already contain an id of the input.
+        // The batch graph itself rejects a vertex id which occurs twice in the input.
+        // A graph with atoms keeps its indices, so that it can go on serving requests during the load.
+        // Note: some graphs, e.g. Neo4j 1.x, are never entirely free of vertices
+        boolean fromScratch = !destGraph.getAllAtoms().iterator().hasNext();
+        // the vertices a load into a graph with atoms has linked to are recorded, so that only they are counted
+        RecordingBatchGraph batchGraph = new RecordingBatchGraph(propertyGraph, !fromScratch);
+        batchGraph.setLoadingFromScratch(fromScratch);
+
+        long before = System.currentTimeMillis();
+        if (fromScratch) {
+            propertyGraph.enforceUniqueIds(false);
+            destGraph.dropKeyIndices();
+        }
+        boolean success = false;
+        try {
+            com.tinkerpop.blueprints.util.io.graphml.GraphMLReader.inputGraph(
+                    batchGraph, context.getSourceStream(), bufferSize, null, null, null);
+            success = true;
+        } finally {
+            if (!success) {
+                // the batch in progress is discarded, and earlier batches, which have already been committed,
+                // are removed
+                destGraph.rollback();
+                int removed = removeAddedVertices(destGraph, batchGraph.getVertexIds());
+                logger.warning("GraphML import failed after reading " + batchGraph.getVertexIds().size()
+                        + " vertices. Removed the " + removed + " of them which had already been committed");
+            }
+            // the counts of parents and children are not loaded, but counted for the graph as it now stands
+            if (fromScratch) {
+                destGraph.countParentsAndChildren();
+                propertyGraph.enforceUniqueIds(true);
+                destGraph.createKeyIndices();
+            } else {
+                destGraph.countParentsAndChildren(batchGraph.getLinkedVertexIds());
+            }
+            destGraph.commit();
+        }
+        long afterLoad = System.currentTimeMillis();
+
+        List<String> vertexIds = batchGraph.getVertexIds();
+        indexAtoms(destGraph, vertexIds);
+        long afterIndex = System.currentTimeMillis();
+
+        logger.info("loaded " + vertexIds.size() + " vertices in " + (afterLoad - before)
+                + "ms and indexed them in " + (afterIndex - afterLoad) + "ms");
+    }
+
+    // removes the vertices added by a failed load, in batches. This is not subject to the deadline of the load,
+    // which may be the very reason for the failure
+    private int removeAddedVertices(final PGAtomGraph destGraph, final List<String> vertexIds) {
+        int count = 0;
+        for (String id : vertexIds) {
+            Vertex v = destGraph.getVertex(id);
+            if (null != v) {
+                destGraph.getPropertyGraph().removeVertex(v);
+                if (0 == ++count % bufferSize) {
+                    destGraph.commit();
+                }
+            }
+        }
+        destGraph.commit();
+
+        return count;
+    }
+
+    private void indexAtoms(final PGAtomGraph destGraph, final List<String> vertexIds) {
+        Collections.sort(vertexIds);
+
+        int count = 0;
+        for (String id : vertexIds) {
+            Deadline.check();
+            Vertex v = destGraph.getVertex(id);
+            // list vertices have no value, and are not indexed
+            if (null != v && null != v.getProperty(SemanticSynchrony.VALUE)) {
+                destGraph.addAtomToIndices(destGraph.getAtom(v));
+            }
+
+            if (0 == ++count % bufferSize) {
+                destGraph.commit();
+            }
+        }
+
+        destGraph.commit();
+    }
+
+    /**
+     * A batch graph which keeps track of the ids of the vertices added through it,
+     * and optionally of the vertices at either end of the edges added through it
+     */
+    private static class RecordingBatchGraph extends BatchGraph<IdGraph<KeyIndexableGraph>> {
+        private final List<String> vertexIds = new ArrayList<>();
+        // null unless linked vertices are recorded
+        private final Set<String> linkedVertexIds;
+
+        public RecordingBatchGraph(final IdGraph<KeyIndexableGraph> baseGraph, final boolean recordLinks) {
+            super(baseGraph, VertexIDType.STRING, bufferSize);
+            linkedVertexIds = recordLinks ? new HashSet<>() : null;
+        }
+
+        @Override
+        public Vertex addVertex(final Object id, final Object... properties) {
+            Deadline.check();
+            Vertex v = super.addVertex(id, properties);
+            vertexIds.add((String) id);
+            if (null != linkedVertexIds) {
+                linkedVertexIds.add((String) id);
+            }
+            return v;
+        }
+
+        @Override
+        public Edge addEdge(final Object id, final Vertex outVertex, final Vertex inVertex, final String label) {
+            Edge e = super.addEdge(id, outVertex, inVertex, label);
+            if (null != linkedVertexIds) {
+                linkedVertexIds.add((String) outVertex.getId());
+                linkedVertexIds.add((String) inVertex.getId());
+            }
+            return e;
+        }
+
+        public List<String> getVertexIds() {
+            return vertexIds;
+        }
+
+        /**
+         * @return the ids of the vertices added through this graph, and of those at either end of an edge added
+         * through it, including vertices which existed before
+         */
+        public Set<String> getLinkedVertexIds() {
+            return linkedVertexIds;
+        }
     }
 }
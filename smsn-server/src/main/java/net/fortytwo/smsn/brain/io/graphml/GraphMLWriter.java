@@ -3,6 +3,8 @@ package net.fortytwo.smsn.brain.io.graphml;
 import com.tinkerpop.blueprints.Graph;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.wrappers.wrapped.WrappedGraph;
+import com.tinkerpop.blueprints.util.wrappers.wrapped.WrappedVertex;
 import net.fortytwo.smsn.brain.io.BrainWriter;
 import net.fortytwo.smsn.brain.io.Format;
 import net.fortytwo.smsn.brain.model.Atom;
@@ -13,7 +15,10 @@ import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 public class GraphMLWriter extends BrainWriter {
 
@@ -23,7 +28,7 @@ public class GraphMLWriter extends BrainWriter {
     }
 
     @Override
-    public void doExport(Context context) throws IOException {
+    protected void exportInternal(Context context) throws IOException {
         if (!(context.getAtomGraph() instanceof PGAtomGraph)) throw new UnsupportedOperationException();
         PGAtomGraph originalGraph = (PGAtomGraph) context.getAtomGraph();
         Filter filter = context.getFilter();
@@ -31,10 +36,51 @@ public class GraphMLWriter extends BrainWriter {
                 ? originalGraph
                 : originalGraph.copyGraph(context.getFilter());
 
+        // internal properties are left out, and recomputed when the graph is read back in
         com.tinkerpop.blueprints.util.io.graphml.GraphMLWriter w
                 = new com.tinkerpop.blueprints.util.io.graphml.GraphMLWriter(
-                newGraph.getPropertyGraph());
+                new ExportedGraph(newGraph.getPropertyGraph()));
         w.setNormalize(true);
         w.outputGraph(context.getDestStream());
     }
+
+    /**
+     * A view of a graph whose vertices show only those properties which are not internal to the atom graph
+     */
+    private static class ExportedGraph extends WrappedGraph<Graph> {
+        public ExportedGraph(final Graph baseGraph) {
+            super(baseGraph);
+        }
+
+        @Override
+        public Iterable<Vertex> getVertices() {
+            return () -> {
+                Iterator<Vertex> base = baseGraph.getVertices().iterator();
+                return new Iterator<Vertex>() {
+                    @Override
+                    public boolean hasNext() {
+                        return base.hasNext();
+                    }
+
+                    @Override
+                    public Vertex next() {
+                        return new ExportedVertex(base.next());
+                    }
+                };
+            };
+        }
+    }
+
+    private static class ExportedVertex extends WrappedVertex {
+        public ExportedVertex(final Vertex baseVertex) {
+            super(baseVertex);
+        }
+
+        @Override
+        public Set<String> getPropertyKeys() {
+            Set<String> keys = new HashSet<>(super.getPropertyKeys());
+            keys.removeAll(PGAtomGraph.INTERNAL_PROPERTIES);
+            return keys;
+        }
+    }
 }
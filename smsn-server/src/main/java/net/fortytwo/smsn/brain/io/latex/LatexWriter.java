@@ -5,6 +5,7 @@ import net.fortytwo.smsn.brain.io.BrainWriter;
 import net.fortytwo.smsn.brain.io.Format;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.util.Deadline;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -32,7 +33,7 @@ public class LatexWriter extends BrainWriter {
     }
 
     @Override
-    public void doExport(Context context) throws IOException {
+    protected void exportInternal(Context context) throws IOException {
         String rootId = context.getRootId();
         Filter filter = context.getFilter();
 
@@ -127,6 +128,7 @@ public class LatexWriter extends BrainWriter {
 
         if (doRecurse) {
             for (Atom child : NoteQueries.forwardViewStyle.getLinked(root, filter)) {
+                Deadline.check();
                 writeLatex(child, filter, level + 1, isSec ? sectionLevel + 1 : sectionLevel, out);
             }
         }
@@ -1,58 +1,98 @@
 package net.fortytwo.smsn.brain.io.pagerank;
 
-import com.tinkerpop.blueprints.Edge;
-import com.tinkerpop.blueprints.Vertex;
-import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
-import com.tinkerpop.blueprints.oupls.jung.GraphJung;
-import edu.uci.ics.jung.algorithms.scoring.PageRank;
+import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.io.BrainWriter;
 import net.fortytwo.smsn.brain.io.Format;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomList;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.util.Deadline;
+import net.fortytwo.smsn.util.TypedProperties;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class PageRankWriter extends BrainWriter {
 
+    // configuration properties
+    public static final String
+            PROP_THREADS = "net.fortytwo.smsn.brain.io.pagerank.threads",
+            PROP_TOLERANCE = "net.fortytwo.smsn.brain.io.pagerank.tolerance",
+            PROP_MAX_ITERATIONS = "net.fortytwo.smsn.brain.io.pagerank.maxIterations";
+
+    private static final double ALPHA = 0.15d;
+
+    private static final int threads;
+    private static final double tolerance;
+    private static final int maxIterations;
+
+    static {
+        try {
+            TypedProperties conf = SemanticSynchrony.getConfiguration();
+            threads = conf.getInt(PROP_THREADS, Runtime.getRuntime().availableProcessors());
+            tolerance = conf.getDouble(PROP_TOLERANCE, 1e-6);
+            maxIterations = conf.getInt(PROP_MAX_ITERATIONS, 100);
+        } catch (TypedProperties.PropertyException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     @Override
     public List<Format> getFormats() {
         return Arrays.asList(PageRankTSVFormat.getInstance());
     }
 
     @Override
-    public void doExport(Context context) throws IOException {
+    protected void exportInternal(Context context) throws IOException {
+        Filter filter = context.getFilter();
 
-        TinkerGraph tmpGraph = new TinkerGraph();
-
-        for (Atom a : context.getFilteredGraph().getAllAtoms()) {
-            tmpGraph.addVertex(a.getId());
+        // assign a dense ordinal to each visible atom
+        Map<String, Integer> ordinals = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (Atom a : context.getAtomGraph().getAllAtoms()) {
+            Deadline.check();
+            if (null == filter || filter.isVisible(a)) {
+                ordinals.put(a.getId(), ids.size());
+                ids.add(a.getId());
+            }
         }
 
-        for (Atom a : context.getFilteredGraph().getAllAtoms()) {
+        SparsePageRank.Builder builder = new SparsePageRank.Builder(ids.size());
+        for (Atom a : context.getAtomGraph().getAllAtoms()) {
+            Deadline.check();
+            context.atomWritten();
+            Integer from = ordinals.get(a.getId());
+            if (null == from) {
+                continue;
+            }
+
             AtomList children = a.getNotes();
-            Vertex outVertex = tmpGraph.getVertex(a.getId());
             while (null != children) {
-                Vertex inVertex = tmpGraph.getVertex(children.getFirst().getId());
-                tmpGraph.addEdge(null,
-                        outVertex,
-                        inVertex,
-                        "link");
+                Integer to = ordinals.get(children.getFirst().getId());
+                if (null != to) {
+                    builder.addEdge(from, to);
+                }
                 children = children.getRest();
             }
         }
+        ordinals.clear();
 
-        PageRank<Vertex, Edge> pr = new PageRank<>(new GraphJung(tmpGraph), 0.15d);
-        pr.evaluate();
+        long before = System.currentTimeMillis();
+        double[] scores = builder.build().evaluate(ALPHA, tolerance, maxIterations, threads);
+        long after = System.currentTimeMillis();
+        logger.info("computed PageRank of " + scores.length + " atoms in " + (after - before) + "ms");
 
-        PrintStream p = new PrintStream(context.getDestStream());
+        PrintStream p = new PrintStream(new BufferedOutputStream(context.getDestStream()));
         p.println("id\tscore");
-        for (Vertex v : tmpGraph.getVertices()) {
-            p.println(v.getId() + "\t" + pr.getVertexScore(v));
+        for (int i = 0; i < scores.length; i++) {
+            p.println(ids.get(i) + "\t" + scores[i]);
         }
-
-        tmpGraph.shutdown();
+        p.flush();
     }
 }
@@ -0,0 +1,211 @@
+package net.fortytwo.smsn.brain.io.pagerank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * PageRank over a directed graph of densely numbered vertices, stored in compressed sparse row form.
+ * Each iteration pulls rank along incoming edges, so that ranges of vertices can be updated independently
+ * and in parallel.
+ * The rank of vertices without outgoing edges is redistributed evenly over all vertices,
+ * as in JUNG's implementation.
+ */
+public class SparsePageRank {
+
+    // ranges smaller than this are not worth handing to another thread
+    private static final int MIN_CHUNK_SIZE = 10000;
+
+    private final int vertexCount;
+    // the sources of the incoming edges of vertex v are inSources[inOffsets[v]] ... inSources[inOffsets[v + 1] - 1]
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final int[] outDegrees;
+
+    private SparsePageRank(final int vertexCount,
+                           final int[] inOffsets,
+                           final int[] inSources,
+                           final int[] outDegrees) {
+        this.vertexCount = vertexCount;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.outDegrees = outDegrees;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Computes PageRank scores for all vertices
+     *
+     * @param alpha         the probability of a random jump, e.g. 0.15
+     * @param tolerance     the total (L1) change in scores below which the computation is considered to have converged
+     * @param maxIterations the maximum number of iterations to perform, whether or not the scores have converged
+     * @param threads       the number of threads among which to divide each iteration
+     * @return an array of scores, indexed by vertex, which sum to 1
+     */
+    public double[] evaluate(final double alpha,
+                             final double tolerance,
+                             final int maxIterations,
+                             final int threads) {
+        if (alpha < 0 || alpha > 1 || tolerance < 0 || maxIterations < 1 || threads < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        if (0 == vertexCount) {
+            return new double[0];
+        }
+
+        double[] rank = new double[vertexCount];
+        double[] next = new double[vertexCount];
+        // the share of each vertex's rank which it passes along each of its outgoing edges
+        double[] share = new double[vertexCount];
+        Arrays.fill(rank, 1.0 / vertexCount);
+
+        int chunks = Math.max(1, Math.min(threads, vertexCount / MIN_CHUNK_SIZE));
+        ExecutorService executor = chunks > 1 ? Executors.newFixedThreadPool(chunks) : null;
+        try {
+            for (int i = 0; i < maxIterations; i++) {
+                final double[] current = rank, updated = next;
+
+                double danglingRank = sumOverChunks(executor, chunks, (from, to) -> {
+                    double dangling = 0;
+                    for (int v = from; v < to; v++) {
+                        int d = outDegrees[v];
+                        if (0 == d) {
+                            share[v] = 0;
+                            dangling += current[v];
+                        } else {
+                            share[v] = current[v] / d;
+                        }
+                    }
+                    return dangling;
+                });
+
+                double base = (alpha + (1 - alpha) * danglingRank) / vertexCount;
+
+                double delta = sumOverChunks(executor, chunks, (from, to) -> {
+                    double change = 0;
+                    for (int v = from; v < to; v++) {
+                        double input = 0;
+                        for (int j = inOffsets[v]; j < inOffsets[v + 1]; j++) {
+                            input += share[inSources[j]];
+                        }
+                        updated[v] = base + (1 - alpha) * input;
+                        change += Math.abs(updated[v] - current[v]);
+                    }
+                    return change;
+                });
+
+                rank = updated;
+                next = current;
+
+                if (delta < tolerance) {
+                    break;
+                }
+            }
+        } finally {
+            if (null != executor) {
+                executor.shutdown();
+            }
+        }
+
+        return rank;
+    }
+
+    private double sumOverChunks(final ExecutorService executor,
+                                 final int chunks,
+                                 final RangeFunction function) {
+        if (null == executor) {
+            return function.apply(0, vertexCount);
+        }
+
+        List<Callable<Double>> tasks = new ArrayList<>(chunks);
+        int chunkSize = (vertexCount + chunks - 1) / chunks;
+        for (int from = 0; from < vertexCount; from += chunkSize) {
+            final int f = from, t = Math.min(vertexCount, from + chunkSize);
+            tasks.add(() -> function.apply(f, t));
+        }
+
+        double sum = 0;
+        try {
+            for (Future<Double> result : executor.invokeAll(tasks)) {
+                sum += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted during PageRank iteration", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        return sum;
+    }
+
+    private interface RangeFunction {
+        double apply(int from, int to);
+    }
+
+    /**
+     * Accumulates directed edges between vertices numbered 0 ... n-1
+     */
+    public static class Builder {
+        private final int vertexCount;
+        private int[] edgeSources = new int[1024];
+        private int[] edgeTargets = new int[1024];
+        private int edgeCount;
+
+        public Builder(final int vertexCount) {
+            if (vertexCount < 0) {
+                throw new IllegalArgumentException();
+            }
+
+            this.vertexCount = vertexCount;
+        }
+
+        public void addEdge(final int from, final int to) {
+            if (from < 0 || from >= vertexCount || to < 0 || to >= vertexCount) {
+                throw new IllegalArgumentException("no such vertex");
+            }
+
+            if (edgeCount == edgeSources.length) {
+                edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+                edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+            }
+
+            edgeSources[edgeCount] = from;
+            edgeTargets[edgeCount] = to;
+            edgeCount++;
+        }
+
+        public SparsePageRank build() {
+            int[] outDegrees = new int[vertexCount];
+            int[] inOffsets = new int[vertexCount + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                outDegrees[edgeSources[i]]++;
+                inOffsets[edgeTargets[i] + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                inOffsets[v + 1] += inOffsets[v];
+            }
+
+            int[] inSources = new int[edgeCount];
+            int[] fill = Arrays.copyOf(inOffsets, vertexCount);
+            for (int i = 0; i < edgeCount; i++) {
+                inSources[fill[edgeTargets[i]]++] = edgeSources[i];
+            }
+
+            // the edge list is no longer needed
+            edgeSources = null;
+            edgeTargets = null;
+
+            return new SparsePageRank(vertexCount, inOffsets, inSources, outDegrees);
+        }
+    }
+}
@@ -4,7 +4,6 @@ import net.fortytwo.smsn.brain.io.BrainWriter;
 import net.fortytwo.smsn.brain.io.Format;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
-import org.openrdf.sail.SailException;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -36,13 +35,13 @@ public class RDFWriter extends BrainWriter {
     }
 
     @Override
-    public void doExport(Context context) throws IOException {
+    protected void exportInternal(Context context) throws IOException {
 
         RDFFormat rdfFormat = toRDFFormat(context.getFormat());
 
         try {
             context.getKnowledgeBase().exportRDF(context.getDestStream(), rdfFormat, context.getFilter());
-        } catch (SailException | RDFHandlerException e) {
+        } catch (RDFHandlerException e) {
             throw new IOException(e);
         }
     }
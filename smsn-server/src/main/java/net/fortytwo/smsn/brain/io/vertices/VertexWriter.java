@@ -6,6 +6,7 @@ import net.fortytwo.smsn.brain.io.Format;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.rdf.KnowledgeBase;
+import net.fortytwo.smsn.brain.util.Deadline;
 
 import java.io.IOException;
 import java.io.PrintStream;
@@ -22,7 +23,7 @@ public class VertexWriter extends BrainWriter {
     }
 
     @Override
-    public void doExport(Context context) throws IOException {
+    protected void exportInternal(Context context) throws IOException {
 
         AtomGraph sourceGraph = context.getFilteredGraph();
         KnowledgeBase sourceKb = context.getKnowledgeBase();
@@ -31,6 +32,8 @@ public class VertexWriter extends BrainWriter {
         p.println("created\tid\tweight\tsharability\tclass\tout\tin\tvalue\talias");
 
         for (Atom a : sourceGraph.getAllAtoms()) {
+            Deadline.check();
+            context.atomWritten();
             Long c = a.getCreated();
             if (null != c) {
                 p.print(c);
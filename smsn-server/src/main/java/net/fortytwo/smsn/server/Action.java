@@ -7,13 +7,19 @@ import net.fortytwo.smsn.brain.Brain;
 import net.fortytwo.smsn.brain.NoteHistory;
 import net.fortytwo.smsn.brain.NoteQueries;
 import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.brain.metrics.BrainEvent;
+import net.fortytwo.smsn.brain.metrics.CommitEvent;
+import net.fortytwo.smsn.brain.metrics.Histogram;
+import net.fortytwo.smsn.brain.metrics.Metrics;
+import net.fortytwo.smsn.brain.metrics.RequestEvent;
 import net.fortytwo.smsn.brain.model.Atom;
-import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.model.Filter;
 import net.fortytwo.smsn.brain.model.Note;
 import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import net.fortytwo.smsn.brain.util.Deadline;
 import net.fortytwo.smsn.brain.wiki.NoteParser;
 import net.fortytwo.smsn.brain.wiki.NoteWriter;
+import net.fortytwo.smsn.server.action.BulkSetProperties;
 import net.fortytwo.smsn.server.error.AuthorizationException;
 import net.fortytwo.smsn.server.error.BadRequestException;
 import net.fortytwo.smsn.server.error.RequestProcessingException;
@@ -22,10 +28,16 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 public abstract class Action {
@@ -41,9 +53,38 @@ public abstract class Action {
 
     protected abstract boolean doesWrite();
 
+    /**
+     * @param p the request
+     * @return whether the request may take much longer than an interactive request,
+     * e.g. by visiting every atom in the graph, so that it is to be run apart from interactive requests
+     */
+    protected boolean isLongRunning(final RequestParams p) {
+        return false;
+    }
+
+    /**
+     * @param p the request
+     * @return whether the changes of the request are committed only when the transaction of its caller ends,
+     * so that the request may be part of an atomic batch.
+     * A background job commits on its own thread, and a long-running request may commit in stages,
+     * e.g. once per imported file, so neither is atomic
+     */
+    boolean isAtomic(final RequestParams p) {
+        return !p.async && !isLongRunning(p);
+    }
+
     private static final Map<KeyIndexableGraph, Brain> brains = new HashMap<>();
 
-    private static final NoteHistory noteHistory = new NoteHistory();
+    private static final Jobs jobs = new Jobs();
+
+    // distinguishes the validators of this server instance from those of earlier instances
+    private static final long validatorEpoch = new Random().nextLong();
+
+    private static final LongAdder validatorHits = Metrics.getCounter("validator.hits");
+    private static final LongAdder validatorMisses = Metrics.getCounter("validator.misses");
+
+    // the number of notes in each view returned by this action
+    private Histogram viewSizes;
 
     private synchronized static Brain getBrain(final KeyIndexableGraph baseGraph)
             throws Brain.BrainException {
@@ -52,7 +93,11 @@ public abstract class Action {
 
         if (null == b) {
             logger.info("instantiating Extend-o-Brain with base graph " + baseGraph);
-            AtomGraph bg = new PGAtomGraph(baseGraph);
+            PGAtomGraph bg = new PGAtomGraph(baseGraph);
+            // a graph written by an earlier version is brought up to date before it serves any request
+            if (bg.upgrade()) {
+                logger.info("upgraded base graph " + baseGraph);
+            }
             b = new Brain(bg);
             b.startBackgroundTasks();
             brains.put(baseGraph, b);
@@ -88,6 +133,107 @@ public abstract class Action {
     public void handleRequestInternal(final RequestParams p)
             throws AuthorizationException, BadRequestException, RequestProcessingException {
 
+        prepareRequest(p);
+
+        // Force manual transaction mode (provided that the graph is transactional)
+        boolean manual = doesWrite() && p.baseGraph instanceof TransactionalGraph;
+
+        boolean normal = false;
+
+        RequestEvent event = new RequestEvent();
+        BrainEvent.setCurrentAction(getName());
+        event.begin();
+        try {
+            performTransaction(p);
+
+            // a request which has outlived its deadline has been, or is about to be, reported to the client as failed,
+            // so its changes are rolled back rather than committed
+            if (!Deadline.completeCurrent()) {
+                throw new CancellationException("deadline exceeded");
+            }
+            normal = true;
+
+            // Note: currently, all activities are logged, but the log is not immediately flushed
+            //       unless the transaction succeeds.
+            if (null != p.brain.getActivityLog()) {
+                p.brain.getActivityLog().flush();
+            }
+        } finally {
+            if (doesWrite()) {
+                if (manual) {
+                    if (!normal) {
+                        SemanticSynchrony.logWarning("rolling back transaction");
+                    }
+
+                    stopTransaction((TransactionalGraph) p.baseGraph, normal);
+                } else if (!normal) {
+                    SemanticSynchrony.logWarning(
+                            "failed update of non-transactional graph. Inconsistent data is possible.");
+                }
+
+                // only now are the changes visible to other transactions
+                p.brain.getAtomGraph().notifyOfUpdate();
+            }
+
+            event.finish(normal);
+            BrainEvent.setCurrentAction(null);
+        }
+    }
+
+    /**
+     * Commits or rolls back the current transaction of a graph.
+     * The transaction is ended through the atom graph of the graph's brain, if there is one,
+     * so that anything cached from the changes of the transaction is shared or discarded along with them
+     */
+    protected static void stopTransaction(final TransactionalGraph graph, final boolean success) {
+        Brain brain;
+        synchronized (Action.class) {
+            brain = brains.get(graph);
+        }
+        if (null != brain) {
+            if (success) {
+                brain.getAtomGraph().commit();
+            } else {
+                brain.getAtomGraph().rollback();
+            }
+            return;
+        }
+
+        CommitEvent event = new CommitEvent();
+        event.begin();
+
+        graph.stopTransaction(success
+                ? TransactionalGraph.Conclusion.SUCCESS
+                : TransactionalGraph.Conclusion.FAILURE);
+
+        event.finish(success);
+    }
+
+    /**
+     * Handles a request as one of a batch of requests.
+     * The transaction, and the activity log, are left to the caller.
+     */
+    void handleRequestWithinBatch(final RequestParams p)
+            throws AuthorizationException, BadRequestException, RequestProcessingException {
+
+        prepareRequest(p);
+
+        RequestEvent event = new RequestEvent();
+        BrainEvent.setCurrentAction(getName());
+        event.begin();
+        boolean normal = false;
+        try {
+            performTransaction(p);
+            normal = true;
+        } finally {
+            event.finish(normal);
+            BrainEvent.setCurrentAction(null);
+        }
+    }
+
+    private void prepareRequest(final RequestParams p)
+            throws AuthorizationException, BadRequestException, RequestProcessingException {
+
         checkAuthorized(p);
 
         String rootId = p.rootId;
@@ -158,38 +304,6 @@ public abstract class Action {
             p.style = NoteQueries.lookupStyle(styleName);
             p.map.put(Params.STYLE, p.style.getName());
         }
-
-        // Force manual transaction mode (provided that the graph is transactional)
-        boolean manual = doesWrite() && p.baseGraph instanceof TransactionalGraph;
-
-        boolean normal = false;
-
-        try {
-            performTransaction(p);
-
-            normal = true;
-
-            // Note: currently, all activities are logged, but the log is not immediately flushed
-            //       unless the transaction succeeds.
-            if (null != p.brain.getActivityLog()) {
-                p.brain.getActivityLog().flush();
-            }
-        } finally {
-            if (doesWrite()) {
-                if (manual) {
-                    if (!normal) {
-                        SemanticSynchrony.logWarning("rolling back transaction");
-                    }
-
-                    ((TransactionalGraph) p.baseGraph).stopTransaction(normal
-                            ? TransactionalGraph.Conclusion.SUCCESS
-                            : TransactionalGraph.Conclusion.FAILURE);
-                } else if (!normal) {
-                    SemanticSynchrony.logWarning(
-                            "failed update of non-transactional graph. Inconsistent data is possible.");
-                }
-            }
-        }
     }
 
     protected org.codehaus.jettison.json.JSONObject toJettison(JSONObject j) throws IOException {
@@ -211,6 +325,19 @@ public abstract class Action {
         }
 
         p.map.put(Params.VIEW, toJettison(json));
+
+        if (null == viewSizes) {
+            viewSizes = Metrics.getHistogram("action." + getName() + ".viewNodes");
+        }
+        viewSizes.record(countNotes(n));
+    }
+
+    private static int countNotes(final Note n) {
+        int count = 1;
+        for (Note child : n.getChildren()) {
+            count += countNotes(child);
+        }
+        return count;
     }
 
     public static float findMinAuthorizedSharability(final Principal user,
@@ -224,38 +351,161 @@ public abstract class Action {
         return true;
     }
 
-    protected void addToHistory(final String rootId) {
-        noteHistory.visit(rootId);
+    /**
+     * Adds a validator to the response, and compares it with the validator supplied by the client, if any.
+     * The validator identifies the state of the graph and of the inferred classes of atoms,
+     * together with the filter and the given keys, which are to include any other state or parameter
+     * the response depends on.
+     * It is derived from counters rather than from the graph itself, so any change produces a new validator.
+     *
+     * @param p    the request
+     * @param keys any further state and parameters which determine the response
+     * @return whether the client's validator matches, in which case the response is not to be generated again
+     */
+    protected boolean isNotModified(final RequestParams p, final Object... keys) throws RequestProcessingException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(validatorEpoch)
+                .append(' ').append(System.identityHashCode(p.brain))
+                .append(' ').append(getName())
+                .append(' ').append(p.brain.getAtomGraph().getChangeCount())
+                .append(' ').append(p.brain.getKnowledgeBase().getVersion());
+        if (null != p.filter) {
+            sb.append(' ').append(p.filter.getMinWeight())
+                    .append(' ').append(p.filter.getMaxWeight())
+                    .append(' ').append(p.filter.getDefaultWeight())
+                    .append(' ').append(p.filter.getMinSharability())
+                    .append(' ').append(p.filter.getMaxSharability())
+                    .append(' ').append(p.filter.getDefaultSharability());
+        }
+        for (Object key : keys) {
+            sb.append(' ').append(key);
+        }
+
+        String validator;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(SemanticSynchrony.UTF8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            validator = hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new RequestProcessingException(e);
+        }
+
+        p.map.put(Params.VALIDATOR, validator);
+        if (validator.equals(p.validator)) {
+            p.map.put(Params.NOT_MODIFIED, "true");
+            validatorHits.increment();
+            return true;
+        } else if (null != p.validator) {
+            validatorMisses.increment();
+        }
+
+        return false;
+    }
+
+    protected static Jobs getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Runs the work of a request as a background job, and adds the job to the response.
+     * The changes of a job which writes to the graph are committed if the job succeeds, and rolled back otherwise.
+     *
+     * @param p      the request
+     * @param target the target of the job, such as a file, by which it is distinguished from other jobs
+     * @param task   the work of the job
+     */
+    protected void submitJob(final RequestParams p, final String target, final Jobs.Task task)
+            throws RequestProcessingException {
+        Jobs.Job job;
+        try {
+            job = jobs.submit(getName(), target, j -> {
+                boolean normal = false;
+                BrainEvent.setCurrentAction(getName());
+                try {
+                    task.run(j);
+                    // a job which has been cancelled in the meantime is rolled back, and reported as cancelled
+                    if (!Deadline.completeCurrent()) {
+                        throw new CancellationException("operation cancelled");
+                    }
+                    normal = true;
+                } finally {
+                    if (doesWrite()) {
+                        if (p.baseGraph instanceof TransactionalGraph) {
+                            stopTransaction((TransactionalGraph) p.baseGraph, normal);
+                        }
+                        p.brain.getAtomGraph().notifyOfUpdate();
+                    }
+                    BrainEvent.setCurrentAction(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new RequestProcessingException("too many jobs are waiting");
+        }
+
+        p.map.put(Params.JOB, new org.codehaus.jettison.json.JSONObject(job.toMap()));
+    }
+
+    /**
+     * @return the history of the client of a request, kept by the brain of the request.
+     * Requests which do not identify their client share a single history
+     */
+    private static NoteHistory getNoteHistory(final RequestParams p) {
+        return p.brain.getNoteHistory(p.client);
+    }
+
+    protected Object[] getHistoryVersion(final RequestParams p) {
+        NoteHistory history = getNoteHistory(p);
+        // a forgotten client starts a new history, which is distinguished from the old one
+        return new Object[]{p.client, System.identityHashCode(history), history.getTotalVisits()};
+    }
+
+    protected void addToHistory(final RequestParams p) {
+        getNoteHistory(p).visit(p.rootId);
     }
 
-    protected List<String> getHistory(final AtomGraph graph,
-                                      final Filter filter) {
-        return noteHistory.getHistory(100, true, graph, filter);
+    protected List<Atom> getHistory(final RequestParams p) {
+        return getNoteHistory(p).getHistory(100, true, p.brain.getAtomGraph(), p.filter);
     }
 
     public static class RequestParams {
+        // whether to run the request as a background job
+        public boolean async;
         public KeyIndexableGraph baseGraph;
         public Brain brain;
+        public String client;
+        public String cursor;
         public String data;
         public Integer height;
         public String file;
         public Filter filter;
         public String format;
         public boolean includeTypes;
+        public String jobId;
         public JSONObject jsonView;
         public Map<String, Object> map;
+        public Integer maxNodes;
         public Integer maxResults;
         public NoteParser parser;
         public String propertyName;
         public Object propertyValue;
+        public List<BulkSetProperties.PropertyValue> propertyValues;
         public NoteQueries queries;
         public String query;
         public NoteQueries.QueryType queryType;
+        public boolean reset;
         public Atom root;
         public String rootId;
+        public boolean shareSubtrees;
         public NoteQueries.ViewStyle style;
         public String styleName;
+        // whether the request follows changes, in the same transaction, which have not yet been committed
+        public boolean uncommittedChanges;
         public Principal user;
+        // the validator of the client's copy of the response, if any
+        public String validator;
         public Integer valueCutoff;
         public String wikiView;
         public NoteWriter writer;
@@ -0,0 +1,321 @@
+package net.fortytwo.smsn.server;
+
+import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.util.Deadline;
+import net.fortytwo.smsn.util.TypedProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A registry of long-running jobs, such as imports and exports, which run in the background
+ * while the client polls for their status.
+ * A job is identified by its kind and its target, e.g. the file to be imported,
+ * and a job which is submitted while another job of the same kind and target is queued or running
+ * is not run again; the existing job is returned instead.
+ * The status of each finished job is kept until it is displaced by later jobs.
+ */
+public class Jobs {
+    protected static final Logger logger = Logger.getLogger(Jobs.class.getName());
+
+    // configuration properties
+    public static final String
+            PROP_JOB_THREADS = "net.fortytwo.smsn.server.jobThreads",
+            PROP_JOB_QUEUE_CAPACITY = "net.fortytwo.smsn.server.jobQueueCapacity",
+            PROP_FINISHED_JOBS = "net.fortytwo.smsn.server.finishedJobs";
+
+    private static final int jobThreads, jobQueueCapacity, finishedJobs;
+
+    static {
+        try {
+            TypedProperties conf = SemanticSynchrony.getConfiguration();
+            jobThreads = conf.getInt(PROP_JOB_THREADS, 1);
+            jobQueueCapacity = conf.getInt(PROP_JOB_QUEUE_CAPACITY, 20);
+            finishedJobs = conf.getInt(PROP_FINISHED_JOBS, 100);
+        } catch (TypedProperties.PropertyException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public enum Status {Queued, Running, Succeeded, Failed, Cancelled}
+
+    public interface Task {
+        void run(Job job) throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    // all jobs, in order of submission
+    private final Map<String, Job> jobsById = new LinkedHashMap<>();
+    // queued and running jobs
+    private final Map<String, Job> activeJobsByKey = new HashMap<>();
+    // the number of atoms processed by the last successful job for each kind and target, for estimates of progress
+    private final Map<String, Long> atomCountsByKey = new HashMap<>();
+
+    public Jobs() {
+        AtomicInteger count = new AtomicInteger();
+        int threads = Math.max(1, jobThreads);
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, jobQueueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "smsn-job-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Submits a job, unless a job of the same kind and target is already queued or running
+     *
+     * @param kind   the kind of job, e.g. the name of the action which submits it
+     * @param target the target of the job, e.g. a file
+     * @param task   the work of the job
+     * @return the new job, or the existing job of the same kind and target
+     * @throws RejectedExecutionException if too many jobs are already waiting
+     */
+    public synchronized Job submit(final String kind, final String target, final Task task) {
+        String key = toKey(kind, target);
+        Job existing = activeJobsByKey.get(key);
+        if (null != existing) {
+            return existing;
+        }
+
+        Job job = new Job(kind, target, atomCountsByKey.get(key));
+        executor.execute(() -> run(job, task));
+
+        jobsById.put(job.id, job);
+        activeJobsByKey.put(key, job);
+        removeFinishedJobs();
+        return job;
+    }
+
+    /**
+     * @return the job with the given id, or null if there is no such job, or if it has been forgotten
+     */
+    public synchronized Job getJob(final String id) {
+        return jobsById.get(id);
+    }
+
+    /**
+     * @return all jobs which are queued, running, or recently finished, in order of submission
+     */
+    public synchronized List<Job> getJobs() {
+        return new ArrayList<>(jobsById.values());
+    }
+
+    /**
+     * Cancels a job. A queued job will not run, and a running job stops at its next check of its deadline.
+     * A job which has already begun to commit its changes can no longer be cancelled.
+     *
+     * @return whether there is such a job which had not yet finished, and which has been cancelled
+     */
+    public synchronized boolean cancel(final String id) {
+        Job job = jobsById.get(id);
+        if (null == job || job.isFinished()) {
+            return false;
+        }
+
+        if (!job.deadline.cancel()) {
+            return false;
+        }
+        if (Status.Queued == job.status) {
+            finish(job, Status.Cancelled, null);
+        }
+        return true;
+    }
+
+    private void run(final Job job, final Task task) {
+        synchronized (this) {
+            if (job.isFinished()) {
+                return;
+            }
+            job.status = Status.Running;
+            job.startTime = System.currentTimeMillis();
+        }
+
+        Deadline.setCurrent(job.deadline);
+        try {
+            Deadline.check();
+            task.run(job);
+            finish(job, Status.Succeeded, null);
+        } catch (CancellationException e) {
+            finish(job, Status.Cancelled, e.getMessage());
+        } catch (Throwable t) {
+            logger.log(Level.WARNING, job.kind + " job failed for " + job.target, t);
+            finish(job, Status.Failed, null == t.getMessage() ? t.toString() : t.getMessage());
+        } finally {
+            Deadline.setCurrent(null);
+        }
+    }
+
+    private synchronized void finish(final Job job, final Status status, final String message) {
+        job.status = status;
+        job.message = message;
+        job.endTime = System.currentTimeMillis();
+
+        String key = toKey(job.kind, job.target);
+        if (job == activeJobsByKey.get(key)) {
+            activeJobsByKey.remove(key);
+        }
+        if (Status.Succeeded == status && job.atomsProcessed > 0) {
+            atomCountsByKey.put(key, job.atomsProcessed);
+        }
+    }
+
+    private void removeFinishedJobs() {
+        int toRemove = jobsById.size() - activeJobsByKey.size() - Math.max(0, finishedJobs);
+        for (Iterator<Job> iter = jobsById.values().iterator(); toRemove > 0 && iter.hasNext(); ) {
+            if (iter.next().isFinished()) {
+                iter.remove();
+                toRemove--;
+            }
+        }
+    }
+
+    private static String toKey(final String kind, final String target) {
+        return kind + " " + target;
+    }
+
+    /**
+     * A job and its progress.
+     * Progress is measured in whichever units the task reports: atoms, bytes, or files.
+     */
+    public static class Job {
+        private final String id;
+        private final String kind;
+        private final String target;
+        private final Long expectedAtoms;
+        private final Deadline deadline = new Deadline(Long.MAX_VALUE);
+        private final long submitTime = System.currentTimeMillis();
+
+        private volatile Status status = Status.Queued;
+        private volatile String message;
+        private volatile long startTime;
+        private volatile long endTime;
+
+        private volatile long atomsProcessed;
+        private volatile long bytesProcessed;
+        private volatile long bytesTotal;
+        private volatile int filesCompleted;
+        private volatile int filesTotal;
+
+        private Job(final String kind, final String target, final Long expectedAtoms) {
+            this.id = SemanticSynchrony.createRandomKey();
+            this.kind = kind;
+            this.target = target;
+            this.expectedAtoms = expectedAtoms;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isFinished() {
+            Status s = status;
+            return Status.Succeeded == s || Status.Failed == s || Status.Cancelled == s;
+        }
+
+        // note: each counter is updated only by the thread which runs the job
+        public void atomProcessed() {
+            atomsProcessed++;
+        }
+
+        public void setBytesProcessed(final long count, final long total) {
+            bytesProcessed = count;
+            bytesTotal = total;
+        }
+
+        public void setFilesCompleted(final int completed, final int total) {
+            filesCompleted = completed;
+            filesTotal = total;
+        }
+
+        /**
+         * @return the fraction of the job which has been completed, or -1 if unknown
+         */
+        public double getProgress() {
+            if (Status.Succeeded == status) {
+                return 1;
+            } else if (filesTotal > 0) {
+                return filesCompleted / (double) filesTotal;
+            } else if (bytesTotal > 0) {
+                return bytesProcessed / (double) bytesTotal;
+            } else if (null != expectedAtoms) {
+                // the target has been processed before; assume that it has not changed much in size
+                return Math.min(1.0, atomsProcessed / (double) expectedAtoms);
+            } else {
+                return -1;
+            }
+        }
+
+        /**
+         * @return the estimated time, in milliseconds, until the job finishes, or -1 if unknown
+         */
+        public long getEstimatedTimeRemaining() {
+            if (Status.Running != status) {
+                return -1;
+            }
+
+            double progress = getProgress();
+            if (progress <= 0) {
+                return -1;
+            }
+
+            long elapsed = System.currentTimeMillis() - startTime;
+            return (long) (elapsed * (1 - progress) / progress);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", id);
+            map.put("kind", kind);
+            map.put("target", target);
+            map.put("status", status.name());
+            if (null != message) {
+                map.put("message", message);
+            }
+            map.put("submitted", submitTime);
+            if (startTime > 0) {
+                map.put("started", startTime);
+            }
+            if (endTime > 0) {
+                map.put("finished", endTime);
+            }
+            map.put("atomsProcessed", atomsProcessed);
+            map.put("bytesProcessed", bytesProcessed);
+            if (bytesTotal > 0) {
+                map.put("bytesTotal", bytesTotal);
+            }
+            if (filesTotal > 0) {
+                map.put("filesCompleted", filesCompleted);
+                map.put("filesTotal", filesTotal);
+            }
+            double progress = getProgress();
+            if (progress >= 0) {
+                map.put("progress", progress);
+            }
+            long eta = getEstimatedTimeRemaining();
+            if (eta >= 0) {
+                map.put("estimatedTimeRemaining", eta);
+            }
+            return map;
+        }
+    }
+}
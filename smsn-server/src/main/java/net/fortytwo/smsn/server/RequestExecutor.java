@@ -0,0 +1,222 @@
+package net.fortytwo.smsn.server;
+
+import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.util.Deadline;
+import net.fortytwo.smsn.util.TypedProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs requests on two bounded pools of worker threads: an interactive lane for short requests such as views,
+ * updates and searches, and a batch lane for long-running requests such as imports, exports and inference,
+ * so that a long-running request never occupies a thread which an interactive request is waiting for.
+ * Each lane has a bounded queue, and a request which does not fit is rejected at once rather than left to wait.
+ * Each request has a deadline. A request which has not begun to commit by its deadline is abandoned:
+ * the client receives an error, and the request stops at its next call to {@link Deadline#check()}
+ * or, at the latest, just before it would commit, so that none of its changes are kept.
+ * A request which has already begun to commit when its deadline passes is waited for, and its result returned.
+ */
+public class RequestExecutor {
+    protected static final Logger logger = Logger.getLogger(RequestExecutor.class.getName());
+
+    // configuration properties
+    public static final String
+            PROP_INTERACTIVE_THREADS = "net.fortytwo.smsn.server.interactiveThreads",
+            PROP_BATCH_THREADS = "net.fortytwo.smsn.server.batchThreads",
+            PROP_QUEUE_CAPACITY = "net.fortytwo.smsn.server.queueCapacity",
+            PROP_INTERACTIVE_TIMEOUT = "net.fortytwo.smsn.server.interactiveTimeout",
+            PROP_BATCH_TIMEOUT = "net.fortytwo.smsn.server.batchTimeout",
+            // followed by the name of an action, e.g. net.fortytwo.smsn.server.maxConcurrent.export
+            // (the number of long-running requests of the action which may run at the same time)
+            PROP_MAX_CONCURRENT_PREFIX = "net.fortytwo.smsn.server.maxConcurrent.";
+
+    private static final int configuredInteractiveThreads, configuredBatchThreads, configuredQueueCapacity;
+    private static final long configuredInteractiveTimeout, configuredBatchTimeout;
+
+    static {
+        try {
+            TypedProperties conf = SemanticSynchrony.getConfiguration();
+            configuredInteractiveThreads = conf.getInt(PROP_INTERACTIVE_THREADS, 8);
+            configuredBatchThreads = conf.getInt(PROP_BATCH_THREADS, 2);
+            configuredQueueCapacity = conf.getInt(PROP_QUEUE_CAPACITY, 100);
+            configuredInteractiveTimeout = conf.getLong(PROP_INTERACTIVE_TIMEOUT, 30000);
+            configuredBatchTimeout = conf.getLong(PROP_BATCH_TIMEOUT, 3600000);
+        } catch (TypedProperties.PropertyException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final ThreadPoolExecutor interactiveLane;
+    private final ThreadPoolExecutor batchLane;
+    private final long interactiveTimeout, batchTimeout;
+
+    // permits for the long-running requests of each action
+    private final Map<String, Semaphore> permitsByAction = new ConcurrentHashMap<>();
+
+    public RequestExecutor() {
+        this(configuredInteractiveThreads, configuredBatchThreads, configuredQueueCapacity,
+                configuredInteractiveTimeout, configuredBatchTimeout);
+    }
+
+    /**
+     * @param queueCapacity      the number of requests which may wait in each lane
+     * @param interactiveTimeout the deadline of an interactive request, in milliseconds
+     * @param batchTimeout       the deadline of a long-running request, in milliseconds
+     */
+    RequestExecutor(final int interactiveThreads,
+                    final int batchThreads,
+                    final int queueCapacity,
+                    final long interactiveTimeout,
+                    final long batchTimeout) {
+        interactiveLane = createLane("interactive", interactiveThreads, queueCapacity);
+        batchLane = createLane("batch", batchThreads, queueCapacity);
+        this.interactiveTimeout = interactiveTimeout;
+        this.batchTimeout = batchTimeout;
+    }
+
+    /**
+     * Runs a task on a worker thread and waits for its result
+     *
+     * @param actions the actions performed by the task, which determine its lane, its deadline,
+     *                and any limits on concurrency
+     * @param params  the parameters of each action, in the same order
+     * @param task    the task to run
+     * @return the result of the task
+     * @throws RejectedExecutionException if the lane is full,
+     *                                    or if one of the actions has reached its limit of concurrent requests
+     * @throws CancellationException      if the deadline of the task expires before the task completes
+     */
+    public <T> T execute(final List<Action> actions,
+                         final List<Action.RequestParams> params,
+                         final Callable<T> task) {
+        // only long-running requests are limited per action
+        Set<String> limitedActions = new LinkedHashSet<>();
+        for (int i = 0; i < actions.size(); i++) {
+            if (actions.get(i).isLongRunning(params.get(i))) {
+                limitedActions.add(actions.get(i).getName());
+            }
+        }
+        boolean longRunning = !limitedActions.isEmpty();
+
+        List<Semaphore> permits = acquirePermits(limitedActions);
+
+        long timeout = longRunning ? batchTimeout : interactiveTimeout;
+        Deadline deadline = new Deadline(timeout);
+
+        Future<T> future;
+        try {
+            future = (longRunning ? batchLane : interactiveLane).submit(() -> {
+                Deadline.setCurrent(deadline);
+                try {
+                    // the request may have waited in the queue until after its deadline
+                    Deadline.check();
+                    return task.call();
+                } finally {
+                    Deadline.setCurrent(null);
+                    releasePermits(permits);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            releasePermits(permits);
+            throw new RejectedExecutionException("too many requests are waiting");
+        }
+
+        try {
+            try {
+                return future.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // the task is not interrupted, but stops at its next check of the deadline
+                if (deadline.cancel()) {
+                    throw new CancellationException("deadline exceeded");
+                }
+
+                // the task has already begun to commit its changes, and is about to finish
+                return future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        } catch (InterruptedException e) {
+            deadline.cancel();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for request");
+        }
+    }
+
+    /**
+     * @return the number of requests waiting in either lane for a worker thread
+     */
+    int getQueuedRequests() {
+        return interactiveLane.getQueue().size() + batchLane.getQueue().size();
+    }
+
+    private List<Semaphore> acquirePermits(final Set<String> actionNames) {
+        List<Semaphore> acquired = new ArrayList<>();
+        for (String name : actionNames) {
+            Semaphore s = permitsByAction.computeIfAbsent(name, this::createPermits);
+            if (!s.tryAcquire()) {
+                releasePermits(acquired);
+                throw new RejectedExecutionException("too many concurrent '" + name + "' requests");
+            }
+            acquired.add(s);
+        }
+
+        return acquired;
+    }
+
+    private void releasePermits(final List<Semaphore> permits) {
+        for (Semaphore s : permits) {
+            s.release();
+        }
+    }
+
+    // by default, each action is limited to one long-running request at a time
+    private Semaphore createPermits(final String actionName) {
+        int limit;
+        try {
+            limit = SemanticSynchrony.getConfiguration().getInt(PROP_MAX_CONCURRENT_PREFIX + actionName, 1);
+        } catch (TypedProperties.PropertyException e) {
+            logger.warning("bad concurrency limit for '" + actionName + "': " + e.getMessage());
+            limit = 1;
+        }
+
+        return new Semaphore(Math.max(1, limit));
+    }
+
+    private ThreadPoolExecutor createLane(final String name, final int threads, final int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "smsn-" + name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+
+        int size = Math.max(1, threads);
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
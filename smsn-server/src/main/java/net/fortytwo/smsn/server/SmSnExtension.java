@@ -2,6 +2,7 @@ package net.fortytwo.smsn.server;
 
 import com.tinkerpop.blueprints.Graph;
 import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.TransactionalGraph;
 import com.tinkerpop.rexster.extension.AbstractRexsterExtension;
 import com.tinkerpop.rexster.extension.ExtensionDefinition;
 import com.tinkerpop.rexster.extension.ExtensionNaming;
@@ -12,17 +13,24 @@ import com.tinkerpop.rexster.extension.HttpMethod;
 import com.tinkerpop.rexster.extension.RexsterContext;
 import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.brain.metrics.Histogram;
+import net.fortytwo.smsn.brain.metrics.Metrics;
 import net.fortytwo.smsn.brain.error.InvalidGraphException;
 import net.fortytwo.smsn.brain.error.InvalidUpdateException;
+import net.fortytwo.smsn.brain.util.Deadline;
 import net.fortytwo.smsn.server.error.AuthorizationException;
 import net.fortytwo.smsn.server.error.BadRequestException;
 import net.fortytwo.smsn.server.action.BroadcastRDF;
+import net.fortytwo.smsn.server.action.BulkSetProperties;
+import net.fortytwo.smsn.server.action.CancelJob;
 import net.fortytwo.smsn.server.action.FindDuplicates;
 import net.fortytwo.smsn.server.action.WriteGraph;
 import net.fortytwo.smsn.server.action.FindIsolatedAtoms;
 import net.fortytwo.smsn.server.action.FindRoots;
 import net.fortytwo.smsn.server.action.GetEvents;
 import net.fortytwo.smsn.server.action.GetHistory;
+import net.fortytwo.smsn.server.action.GetMetrics;
+import net.fortytwo.smsn.server.action.GetJobs;
 import net.fortytwo.smsn.server.action.ReadGraph;
 import net.fortytwo.smsn.server.action.InferTypes;
 import net.fortytwo.smsn.server.action.GetPriorities;
@@ -35,12 +43,20 @@ import net.fortytwo.smsn.server.action.SetProperties;
 import net.fortytwo.smsn.server.action.UpdateView;
 import net.fortytwo.smsn.server.action.GetView;
 import net.fortytwo.smsn.util.TypedProperties;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,19 +64,31 @@ import java.util.logging.Logger;
 public class SmSnExtension extends AbstractRexsterExtension {
     protected static final Logger logger = Logger.getLogger(SmSnExtension.class.getName());
 
+    // the name of the action which carries a list of other requests
+    public static final String BATCH_ACTION = "batch";
+
+    // shared by all instances of the extension, so that the bounds on threads and queues apply to the server
+    private static final RequestExecutor executor = new RequestExecutor();
+
     private final Map<String, Action> extensionsByName;
+    private final Map<String, ActionMetrics> metricsByName;
 
     public SmSnExtension() throws InterruptedException, IOException, TypedProperties.PropertyException {
         extensionsByName = new HashMap<>();
+        metricsByName = new HashMap<>();
+        metricsByName.put(BATCH_ACTION, new ActionMetrics(BATCH_ACTION));
 
         // TODO: replace with a classloader
         add(new BroadcastRDF());
+        add(new BulkSetProperties());
+        add(new CancelJob());
         add(new FindDuplicates());
         add(new WriteGraph());
         add(new FindIsolatedAtoms());
         add(new FindRoots());
         add(new GetEvents());
         add(new GetHistory());
+        add(new GetJobs());
         add(new ReadGraph());
         add(new InferTypes());
         add(new GetPriorities());
@@ -71,10 +99,14 @@ public class SmSnExtension extends AbstractRexsterExtension {
         add(new SetProperties());
         add(new UpdateView());
         add(new GetView());
+        add(new GetMetrics());
+
+        Metrics.registerMBean();
     }
 
     private void add(Action extension) {
         extensionsByName.put(extension.getName(), extension);
+        metricsByName.put(extension.getName(), new ActionMetrics(extension.getName()));
     }
 
     @ExtensionDefinition(extensionPoint = ExtensionPoint.GRAPH, method = HttpMethod.POST)
@@ -99,6 +131,23 @@ public class SmSnExtension extends AbstractRexsterExtension {
             return ExtensionResponse.badRequest(e.getMessage(), null);
         }
 
+        ActionMetrics metrics = null == action ? null : metricsByName.get(action);
+        if (null != metrics) {
+            metrics.requestSize.record(request.length());
+        }
+
+        if (BATCH_ACTION.equals(action)) {
+            long startTime = System.nanoTime();
+            ExtensionResponse response = handleBatch(graph, json);
+            metrics.record(startTime, response);
+            return response;
+        }
+
+        return handleRequestInternal(graph, json, action);
+    }
+
+    private ExtensionResponse handleRequestInternal(Graph graph, JSONObject json, String action) {
+
         if (null == action) {
             return ExtensionResponse.badRequest("missing '" + Params.ACTION + "' parameter", null);
         }
@@ -120,22 +169,209 @@ public class SmSnExtension extends AbstractRexsterExtension {
             return ExtensionResponse.badRequest(e.getMessage(), null);
         }
 
+        long startTime = System.nanoTime();
+        ExtensionResponse response = execute(Collections.singletonList(extension), Collections.singletonList(p), () -> {
+            try {
+                extension.handleRequestInternal(p);
+            } catch (AuthorizationException | BadRequestException | RequestProcessingException
+                    | InvalidUpdateException | InvalidGraphException e) {
+                return toErrorResponse(e, null);
+            }
+
+            return ExtensionResponse.ok(p.map);
+        });
+        metricsByName.get(action).record(startTime, response);
+        return response;
+    }
+
+    // runs a request on a worker thread, on which any transaction of the request begins and ends
+    private ExtensionResponse execute(final List<Action> actions,
+                                      final List<Action.RequestParams> params,
+                                      final Callable<ExtensionResponse> task) {
         try {
-            extension.handleRequestInternal(p);
-        } catch (AuthorizationException e) {
-            return ExtensionResponse.error(e.getMessage()); // TODO: not auth
-        } catch (BadRequestException e) {
-            return ExtensionResponse.error(e.getMessage());
-        } catch (RequestProcessingException e) {
-            logger.log(Level.WARNING, "internal error", e);
-            return ExtensionResponse.error(e);
-        } catch (InvalidUpdateException e) {
+            return executor.execute(actions, params, task);
+        } catch (RejectedExecutionException e) {
+            return ExtensionResponse.error("server is busy: " + e.getMessage());
+        } catch (CancellationException e) {
             return ExtensionResponse.error(e.getMessage());
-        } catch (InvalidGraphException e) {
-            logger.log(Level.WARNING, "invalid graph", e);
-            return ExtensionResponse.error(e);
+        }
+    }
+
+    /**
+     * Handles an ordered list of requests in a single response.
+     * By default, the requests are handled in a single transaction, and either all of them succeed or none.
+     * Such a batch may not include a request which commits on its own, such as a background job
+     * or a long-running request which commits in stages; see {@link Action#isAtomic}.
+     * If the batch is not atomic, each request is handled in its own transaction, as if it had been sent alone,
+     * and the failure of a request, including a malformed request, does not prevent the requests which follow it.
+     * The result of each request, whether a response or an error, is found at the same position in the results.
+     */
+    private ExtensionResponse handleBatch(final Graph graph, final JSONObject json) {
+        JSONArray requests;
+        boolean atomic;
+        try {
+            requests = json.getJSONArray(Params.REQUESTS);
+            // this argument is optional; by default, the requests succeed or fail together
+            atomic = json.optBoolean(Params.ATOMIC, true);
+        } catch (JSONException e) {
+            return ExtensionResponse.badRequest(e.getMessage(), null);
+        }
+
+        SemanticSynchrony.logInfo("SmSn " + BATCH_ACTION + " of " + requests.length() + " requests");
+
+        return atomic
+                ? handleAtomicBatch(graph, requests)
+                : handleNonAtomicBatch(graph, requests);
+    }
+
+    private ExtensionResponse handleNonAtomicBatch(final Graph graph, final JSONArray requests) {
+        org.codehaus.jettison.json.JSONArray results = new org.codehaus.jettison.json.JSONArray();
+
+        for (int i = 0; i < requests.length(); i++) {
+            JSONObject json;
+            String action;
+            try {
+                json = requests.getJSONObject(i);
+                action = json.getString(Params.ACTION);
+            } catch (JSONException e) {
+                // the requests before this one have already been handled, so the error takes its place in the results
+                results.put(ExtensionResponse.badRequest("request " + i + ": " + e.getMessage(), null)
+                        .getJerseyResponse().getEntity());
+                continue;
+            }
+
+            ExtensionResponse response = BATCH_ACTION.equals(action)
+                    ? ExtensionResponse.error("batches may not be nested")
+                    : handleRequestInternal(graph, json, action);
+            results.put(response.getJerseyResponse().getEntity());
         }
 
-        return ExtensionResponse.ok(p.map);
+        return toBatchResponse(results);
+    }
+
+    private ExtensionResponse handleAtomicBatch(final Graph graph, final JSONArray requests) {
+        List<Action> actions = new ArrayList<>();
+        List<Action.RequestParams> params = new ArrayList<>();
+
+        // parse all requests before handling any of them
+        for (int i = 0; i < requests.length(); i++) {
+            Action.RequestParams p = Action.createParams((KeyIndexableGraph) graph);
+            try {
+                JSONObject json = requests.getJSONObject(i);
+                String action = json.getString(Params.ACTION);
+                Action extension = extensionsByName.get(action);
+                if (null == extension) {
+                    return ExtensionResponse.error("request " + i + ": unsupported action: " + action);
+                }
+
+                extension.parseRequest(json, p);
+                if (!extension.isAtomic(p)) {
+                    return ExtensionResponse.badRequest("request " + i + ": '" + action
+                            + "' request commits on its own, and may not be part of an atomic batch", null);
+                }
+                actions.add(extension);
+                params.add(p);
+            } catch (JSONException | BadRequestException e) {
+                return ExtensionResponse.badRequest("request " + i + ": " + e.getMessage(), null);
+            }
+        }
+
+        return execute(actions, params, () -> performAtomicBatch(graph, actions, params));
+    }
+
+    private ExtensionResponse performAtomicBatch(final Graph graph,
+                                                 final List<Action> actions,
+                                                 final List<Action.RequestParams> params) {
+        boolean writes = false;
+        for (Action a : actions) {
+            writes |= a.doesWrite();
+        }
+        boolean manual = writes && graph instanceof TransactionalGraph;
+
+        org.codehaus.jettison.json.JSONArray results = new org.codehaus.jettison.json.JSONArray();
+        boolean normal = false;
+        int i = 0;
+        try {
+            boolean changed = false;
+            for (; i < actions.size(); i++) {
+                Action.RequestParams p = params.get(i);
+                p.uncommittedChanges = changed && manual;
+                actions.get(i).handleRequestWithinBatch(p);
+                results.put(new org.codehaus.jettison.json.JSONObject(p.map));
+                changed |= actions.get(i).doesWrite();
+            }
+
+            // a batch which has outlived its deadline has been, or is about to be, reported as failed
+            if (!Deadline.completeCurrent()) {
+                throw new CancellationException("deadline exceeded");
+            }
+            normal = true;
+
+            if (!params.isEmpty() && null != params.get(0).brain.getActivityLog()) {
+                params.get(0).brain.getActivityLog().flush();
+            }
+        } catch (AuthorizationException | BadRequestException | RequestProcessingException
+                | InvalidUpdateException | InvalidGraphException e) {
+            return toErrorResponse(e, "request " + i + ": ");
+        } finally {
+            if (manual) {
+                if (!normal) {
+                    SemanticSynchrony.logWarning("rolling back transaction");
+                }
+
+                Action.stopTransaction((TransactionalGraph) graph, normal);
+            } else if (writes && !normal) {
+                SemanticSynchrony.logWarning(
+                        "failed update of non-transactional graph. Inconsistent data is possible.");
+            }
+
+            // only now are the changes visible to other transactions
+            if (writes && !params.isEmpty() && null != params.get(0).brain) {
+                params.get(0).brain.getAtomGraph().notifyOfUpdate();
+            }
+        }
+
+        return toBatchResponse(results);
+    }
+
+    private ExtensionResponse toBatchResponse(final org.codehaus.jettison.json.JSONArray results) {
+        Map<String, Object> map = new HashMap<>();
+        map.put(Params.RESULTS, results);
+        return ExtensionResponse.ok(map);
+    }
+
+    private ExtensionResponse toErrorResponse(final Exception e, final String prefix) {
+        String message = null == prefix ? e.getMessage() : prefix + e.getMessage();
+
+        if (e instanceof RequestProcessingException || e instanceof InvalidGraphException) {
+            logger.log(Level.WARNING, e instanceof InvalidGraphException ? "invalid graph" : "internal error", e);
+            return null == prefix ? ExtensionResponse.error(e) : ExtensionResponse.error(message, e);
+        } else {
+            // TODO: authorization failures are not distinguished from other errors
+            return ExtensionResponse.error(message);
+        }
+    }
+
+    // metrics of a single action, looked up once so that recording a request costs no more than a map lookup
+    private static class ActionMetrics {
+        // the time taken to handle each request, including any time spent waiting for a thread
+        private final Histogram latency;
+        // the length of each request, in characters
+        private final Histogram requestSize;
+        private final LongAdder errors;
+
+        private ActionMetrics(final String action) {
+            latency = Metrics.getHistogram("action." + action + ".latency");
+            requestSize = Metrics.getHistogram("action." + action + ".requestChars");
+            errors = Metrics.getCounter("action." + action + ".errors");
+        }
+
+        private void record(final long startTime, final ExtensionResponse response) {
+            // in microseconds
+            latency.record((System.nanoTime() - startTime) / 1000);
+            if (200 != response.getJerseyResponse().getStatus()) {
+                errors.increment();
+            }
+        }
     }
 }
@@ -0,0 +1,194 @@
+package net.fortytwo.smsn.server.action;
+
+import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.ActivityLog;
+import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.server.Action;
+import net.fortytwo.smsn.server.error.BadRequestException;
+import net.fortytwo.smsn.server.error.RequestProcessingException;
+import net.fortytwo.smsn.server.requests.FilteredResultsRequest;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A service for setting any number of properties of any number of atoms at once, e.g. the weights of a subtree.
+ * All values are validated, and all atoms are found, before anything is changed,
+ * and all changes are made in a single transaction.
+ * As in a sequence of individual requests, a later value of the same property of the same atom takes precedence.
+ * A shortcut which is overridden by a later shortcut for the same atom is not given to the atom at all,
+ * and so is not removed from any atom which holds it.
+ * As with individual requests, an optional filter limits the atoms which may be changed,
+ * and from which shortcuts may be removed.
+ */
+public class BulkSetProperties extends Action {
+
+    private static final int MAX_PROPERTY_VALUES = 10000;
+
+    @Override
+    public String getName() {
+        return "bulk-set";
+    }
+
+    @Override
+    public void parseRequest(final JSONObject request, final RequestParams p) throws JSONException, BadRequestException {
+        BulkSetPropertiesRequest r = new BulkSetPropertiesRequest(request, p.user);
+
+        if (r.values.size() > MAX_PROPERTY_VALUES) {
+            throw new BadRequestException("too many property values: " + r.values.size()
+                    + " (at most " + MAX_PROPERTY_VALUES + " are allowed)");
+        }
+
+        for (PropertyValue v : r.values) {
+            SetProperties.checkValue(v.name, v.value);
+        }
+
+        // shortcuts are inverse functional, so no two atoms may end up with the same shortcut
+        Map<String, String> idsByShortcut = new HashMap<>();
+        for (Map.Entry<String, String> e : getFinalShortcuts(r.values).entrySet()) {
+            if (null != idsByShortcut.put(e.getValue(), e.getKey())) {
+                throw new BadRequestException("shortcut is given to more than one atom: " + e.getValue());
+            }
+        }
+
+        p.propertyValues = r.values;
+        p.filter = r.getFilter();
+
+        SemanticSynchrony.logInfo("SmSn bulk set-properties of " + r.values.size() + " values");
+    }
+
+    protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
+        AtomGraph graph = p.brain.getAtomGraph();
+
+        // find all atoms before changing anything
+        Map<String, Atom> atomsById = new HashMap<>();
+        for (PropertyValue v : p.propertyValues) {
+            if (!atomsById.containsKey(v.id)) {
+                Atom a = graph.getAtom(v.id);
+                if (null == a) {
+                    throw new BadRequestException("no such atom: " + v.id);
+                }
+                if (null != p.filter && !p.filter.isVisible(a)) {
+                    throw new BadRequestException("atom is not visible: " + v.id);
+                }
+                atomsById.put(v.id, a);
+            }
+        }
+
+        // only the shortcut each atom ends up with is removed from any other atom holding it
+        Map<String, String> finalShortcuts = getFinalShortcuts(p.propertyValues);
+
+        // atoms are distinguished by id, as the same atom may be found more than once
+        Map<String, Atom> changed = new LinkedHashMap<>();
+        Map<String, Atom> reprioritized = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : finalShortcuts.entrySet()) {
+            for (Atom a : SetProperties.getPreviousHolders(graph, e.getValue(), e.getKey(), p.filter)) {
+                changed.put(a.getId(), a);
+            }
+        }
+        for (Atom a : changed.values()) {
+            a.setShortcut(null);
+        }
+
+        for (PropertyValue v : p.propertyValues) {
+            Atom a = atomsById.get(v.id);
+            switch (v.name) {
+                case SemanticSynchrony.WEIGHT:
+                    a.setWeight((Float) v.value);
+                    // weight breaks ties in priority
+                    if (null != a.getPriority()) {
+                        reprioritized.put(v.id, a);
+                    }
+                    break;
+                case SemanticSynchrony.SHARABILITY:
+                    a.setSharability((Float) v.value);
+                    break;
+                case SemanticSynchrony.PRIORITY:
+                    a.setPriority((Float) v.value);
+                    reprioritized.put(v.id, a);
+                    break;
+                case SemanticSynchrony.SHORTCUT:
+                    // an overridden shortcut is skipped, as it is never held once the request is complete
+                    if (v.value.equals(finalShortcuts.get(v.id))) {
+                        a.setShortcut((String) v.value);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+            changed.put(v.id, a);
+        }
+
+        if (!reprioritized.isEmpty()) {
+            p.brain.getPriorities().updatePriorities(reprioritized.values());
+        }
+
+        ActivityLog log = p.brain.getActivityLog();
+        if (null != log) {
+            for (Atom a : changed.values()) {
+                log.logSetProperties(a);
+            }
+        }
+
+        p.map.put("values", "" + p.propertyValues.size());
+        p.map.put("atoms", "" + changed.size());
+    }
+
+    // the last shortcut given to each atom, by atom id
+    private static Map<String, String> getFinalShortcuts(final List<PropertyValue> values) {
+        Map<String, String> shortcutsById = new LinkedHashMap<>();
+        for (PropertyValue v : values) {
+            if (SemanticSynchrony.SHORTCUT.equals(v.name)) {
+                shortcutsById.put(v.id, (String) v.value);
+            }
+        }
+        return shortcutsById;
+    }
+
+    protected boolean doesRead() {
+        return false;
+    }
+
+    protected boolean doesWrite() {
+        return true;
+    }
+
+    /**
+     * A new value of a property of an atom
+     */
+    public static class PropertyValue {
+        private final String id;
+        private final String name;
+        private final Object value;
+
+        public PropertyValue(final String id, final String name, final Object value) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    protected class BulkSetPropertiesRequest extends FilteredResultsRequest {
+        public final List<PropertyValue> values = new ArrayList<>();
+
+        public BulkSetPropertiesRequest(JSONObject json, Principal user) throws JSONException {
+            super(json, user, false);
+
+            JSONArray array = this.json.getJSONArray(Params.PROPERTIES);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject v = array.getJSONObject(i);
+                String name = v.getString(Params.NAME);
+                values.add(new PropertyValue(v.getString(Params.ID), name, SetProperties.getValue(v, name)));
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.fortytwo.smsn.server.action;
+
+import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.server.Action;
+import net.fortytwo.smsn.server.Jobs;
+import net.fortytwo.smsn.server.Request;
+import net.fortytwo.smsn.server.error.BadRequestException;
+import net.fortytwo.smsn.server.error.RequestProcessingException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.Principal;
+
+/**
+ * A service for cancelling a background job.
+ * A queued job does not run, while a running job stops shortly afterwards, rolling back any uncommitted changes.
+ */
+public class CancelJob extends Action {
+
+    @Override
+    public String getName() {
+        return "cancel-job";
+    }
+
+    @Override
+    public void parseRequest(final JSONObject request, final RequestParams p) throws JSONException {
+        CancelJobRequest r = new CancelJobRequest(request, p.user);
+
+        p.jobId = r.jobId;
+    }
+
+    protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
+        Jobs.Job job = getJobs().getJob(p.jobId);
+        if (null == job) {
+            throw new BadRequestException("no such job: " + p.jobId);
+        }
+
+        if (!getJobs().cancel(p.jobId)) {
+            throw new BadRequestException("job has already finished, or is finishing: " + p.jobId);
+        }
+
+        p.map.put(Params.JOB, new org.codehaus.jettison.json.JSONObject(job.toMap()));
+    }
+
+    protected boolean doesRead() {
+        return false;
+    }
+
+    protected boolean doesWrite() {
+        // cancelling a job does not itself write to the graph
+        return false;
+    }
+
+    private class CancelJobRequest extends Request {
+        private final String jobId;
+
+        public CancelJobRequest(final JSONObject json,
+                                final Principal user) throws JSONException {
+            super(json, user);
+
+            jobId = this.json.getString(Params.JOB_ID);
+        }
+    }
+}
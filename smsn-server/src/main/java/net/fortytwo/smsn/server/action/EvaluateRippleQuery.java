@@ -1,20 +1,51 @@
 package net.fortytwo.smsn.server.action;
 
+import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.brain.error.InvalidQueryException;
+import net.fortytwo.smsn.brain.error.QueryBudgetExceededException;
 import net.fortytwo.smsn.brain.model.Note;
+import net.fortytwo.smsn.brain.ripple.ProgramCache;
+import net.fortytwo.smsn.brain.ripple.RippleProgram;
 import net.fortytwo.smsn.server.Action;
 import net.fortytwo.smsn.server.error.BadRequestException;
 import net.fortytwo.smsn.server.error.RequestProcessingException;
-import net.fortytwo.smsn.server.requests.BasicSearchRequest;
+import net.fortytwo.smsn.server.requests.BasicViewRequest;
+import net.fortytwo.smsn.util.TypedProperties;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.security.Principal;
 
 /**
- * A service for executing Ripple queries over Extend-o-Brain graphs
+ * A service for executing Ripple queries over Extend-o-Brain graphs.
+ * Queries are evaluated directly against the graph, so that a query of many steps costs a single request.
+ * Compiled queries are cached by their text, and each evaluation is limited in steps and in time.
  */
 public class EvaluateRippleQuery extends Action {
 
+    // configuration properties
+    public static final String
+            PROP_RIPPLE_CACHE_SIZE = "net.fortytwo.smsn.server.rippleCacheSize",
+            PROP_RIPPLE_MAX_STEPS = "net.fortytwo.smsn.server.rippleMaxSteps",
+            PROP_RIPPLE_TIMEOUT = "net.fortytwo.smsn.server.rippleTimeout";
+
+    private static final int rippleMaxSteps, rippleTimeout;
+
+    private static final ProgramCache programCache;
+
+    static {
+        try {
+            TypedProperties conf = SemanticSynchrony.getConfiguration();
+            programCache = new ProgramCache(conf.getInt(PROP_RIPPLE_CACHE_SIZE, 100));
+            rippleMaxSteps = conf.getInt(PROP_RIPPLE_MAX_STEPS, 100000);
+            rippleTimeout = conf.getInt(PROP_RIPPLE_TIMEOUT, 5000);
+        } catch (TypedProperties.PropertyException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     @Override
     public String getName() {
         return "ripple";
@@ -23,10 +54,10 @@ public class EvaluateRippleQuery extends Action {
     @Override
     public void parseRequest(final JSONObject request, final RequestParams p) throws JSONException {
 
-        BasicSearchRequest r = new BasicSearchRequest(request, p.user);
+        RippleRequest r = new RippleRequest(request, p.user);
 
         p.height = r.getHeight();
-        p.query = r.getQuery();
+        p.query = r.query;
         p.styleName = r.getStyleName();
         p.filter = r.getFilter();
     }
@@ -49,17 +80,25 @@ public class EvaluateRippleQuery extends Action {
         return false;
     }
 
-    protected void addSearchResults(final RequestParams p) throws IOException {
-        // TODO: restore Ripple after dealing with Android/Dalvik + dependency issues
-        Note n = new Note();
-        //Note n = p.queries.rippleQuery(p.query, p.depth, p.filter, p.style);
-        JSONObject json;
-
+    protected void addSearchResults(final RequestParams p) throws IOException, BadRequestException {
+        Note n;
         try {
-            json = p.writer.toJSON(n);
-        } catch (JSONException e) {
-            throw new IOException(e);
+            RippleProgram program = programCache.getProgram(p.query);
+            n = p.queries.rippleQuery(program, p.height, p.filter, p.style, rippleMaxSteps, rippleTimeout);
+        } catch (InvalidQueryException | QueryBudgetExceededException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
+        addView(n, p);
+    }
+
+    protected class RippleRequest extends BasicViewRequest {
+        public final String query;
+
+        public RippleRequest(JSONObject json, Principal user) throws JSONException {
+            super(json, user);
+
+            query = this.json.getString(Params.QUERY);
         }
-        p.map.put("view", json.toString());
     }
 }
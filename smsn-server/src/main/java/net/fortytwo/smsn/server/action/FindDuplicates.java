@@ -4,6 +4,7 @@ import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.brain.model.AtomGraph;
 import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.util.Deadline;
 import net.fortytwo.smsn.server.Action;
 import net.fortytwo.smsn.server.error.RequestProcessingException;
 import net.fortytwo.smsn.server.requests.FilteredResultsRequest;
@@ -55,6 +56,11 @@ public class FindDuplicates extends Action {
         return false;
     }
 
+    @Override
+    protected boolean isLongRunning(final RequestParams p) {
+        return true;
+    }
+
     private static final int MAX_DUPLICATES = 1000;
 
     private static final String UTF_8 = "UTF-8";
@@ -76,6 +82,7 @@ public class FindDuplicates extends Action {
         int total = 0;
 
         for (Atom a : graph.getAllAtoms()) {
+            Deadline.check();
             if (filter.isVisible(a)) {
                 String value = a.getValue();
                 if (null != value && 0 < value.length()) {
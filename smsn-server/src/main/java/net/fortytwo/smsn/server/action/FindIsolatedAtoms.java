@@ -1,20 +1,26 @@
 package net.fortytwo.smsn.server.action;
 
 import net.fortytwo.smsn.SemanticSynchrony;
-import net.fortytwo.smsn.brain.model.Note;
+import net.fortytwo.smsn.brain.NoteQueries;
+import net.fortytwo.smsn.brain.Params;
 import net.fortytwo.smsn.server.Action;
+import net.fortytwo.smsn.server.error.BadRequestException;
 import net.fortytwo.smsn.server.error.RequestProcessingException;
 import net.fortytwo.smsn.server.requests.FilteredResultsRequest;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.security.Principal;
 
 /**
  * A service for finding isolated atoms (i.e. atoms with no parents or children) in an Extend-o-Brain graph
  */
 public class FindIsolatedAtoms extends Action {
 
+    // the size of each page after the first, if a cursor is given without a page size
+    private static final int DEFAULT_MAX_RESULTS = 100;
+
     @Override
     public String getName() {
         return "find-isolated-atoms";
@@ -23,22 +29,35 @@ public class FindIsolatedAtoms extends Action {
     @Override
     public void parseRequest(final JSONObject request, final RequestParams p) throws JSONException {
 
-        FilteredResultsRequest r = new FilteredResultsRequest(request, p.user);
+        FindIsolatedAtomsRequest r = new FindIsolatedAtomsRequest(request, p.user);
 
         p.filter = r.getFilter();
+        p.maxResults = r.maxResults;
+        p.cursor = r.cursor;
 
         SemanticSynchrony.logInfo("SmSn find-isolated-atoms");
     }
 
-    protected void performTransaction(final RequestParams p) throws RequestProcessingException {
-        Note n = p.queries.findIsolatedAtoms(p.filter);
+    protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
+        NoteQueries.NotePage page;
+        try {
+            page = p.queries.findIsolatedAtoms(p.filter, p.maxResults, p.cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
         try {
-            addView(n, p);
+            addView(page.getNote(), p);
         } catch (IOException e) {
             throw new RequestProcessingException(e);
         }
 
         p.map.put("title", "isolated atoms");
+
+        // the cursor is absent from the last page
+        if (null != page.getNextCursor()) {
+            p.map.put(Params.CURSOR, page.getNextCursor());
+        }
     }
 
     protected boolean doesRead() {
@@ -48,4 +67,24 @@ public class FindIsolatedAtoms extends Action {
     protected boolean doesWrite() {
         return false;
     }
+
+    protected class FindIsolatedAtomsRequest extends FilteredResultsRequest {
+        public final int maxResults;
+        public final String cursor;
+
+        public FindIsolatedAtomsRequest(JSONObject json, Principal user) throws JSONException {
+            super(json, user);
+
+            // this argument is optional; the first page is returned by default
+            cursor = this.json.optString(Params.CURSOR, null);
+
+            // a request without paging parameters receives all results,
+            // while a cursor without a page size continues in pages of the default size
+            maxResults = this.json.optInt(Params.MAX_RESULTS, null == cursor ? Integer.MAX_VALUE : DEFAULT_MAX_RESULTS);
+
+            if (maxResults <= 0) {
+                throw new JSONException(Params.MAX_RESULTS + " parameter must be a positive integer");
+            }
+        }
+    }
 }
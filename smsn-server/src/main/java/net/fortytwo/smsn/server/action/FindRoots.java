@@ -1,6 +1,7 @@
 package net.fortytwo.smsn.server.action;
 
-import net.fortytwo.smsn.brain.model.Note;
+import net.fortytwo.smsn.brain.NoteQueries;
+import net.fortytwo.smsn.brain.Params;
 import net.fortytwo.smsn.server.Action;
 import net.fortytwo.smsn.server.error.BadRequestException;
 import net.fortytwo.smsn.server.error.RequestProcessingException;
@@ -9,12 +10,16 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.security.Principal;
 
 /**
  * A service for finding root nodes of an Extend-o-Brain graph
  */
 public class FindRoots extends Action {
 
+    // the size of each page after the first, if a cursor is given without a page size
+    private static final int DEFAULT_MAX_RESULTS = 100;
+
     @Override
     public String getName() {
         return "find-roots";
@@ -23,23 +28,36 @@ public class FindRoots extends Action {
     @Override
     public void parseRequest(final JSONObject request, final RequestParams p) throws JSONException {
 
-        BasicViewRequest r;
-        r = new BasicViewRequest(request, p.user);
+        FindRootsRequest r;
+        r = new FindRootsRequest(request, p.user);
 
         p.height = r.getHeight();
         p.styleName = r.getStyleName();
         p.filter = r.getFilter();
+        p.maxResults = r.maxResults;
+        p.cursor = r.cursor;
     }
 
     protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
-        Note n = p.queries.findRootAtoms(p.filter, p.style, p.height - 1);
+        NoteQueries.NotePage page;
+        try {
+            page = p.queries.findRootAtoms(p.filter, p.style, p.height - 1, p.maxResults, p.cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
         try {
-            addView(n, p);
+            addView(page.getNote(), p);
         } catch (IOException e) {
             throw new RequestProcessingException(e);
         }
 
         p.map.put("title", "all roots");
+
+        // the cursor is absent from the last page
+        if (null != page.getNextCursor()) {
+            p.map.put(Params.CURSOR, page.getNextCursor());
+        }
     }
 
     protected boolean doesRead() {
@@ -49,4 +67,24 @@ public class FindRoots extends Action {
     protected boolean doesWrite() {
         return false;
     }
+
+    protected class FindRootsRequest extends BasicViewRequest {
+        public final int maxResults;
+        public final String cursor;
+
+        public FindRootsRequest(JSONObject json, Principal user) throws JSONException {
+            super(json, user);
+
+            // this argument is optional; the first page is returned by default
+            cursor = this.json.optString(Params.CURSOR, null);
+
+            // a request without paging parameters receives all results,
+            // while a cursor without a page size continues in pages of the default size
+            maxResults = this.json.optInt(Params.MAX_RESULTS, null == cursor ? Integer.MAX_VALUE : DEFAULT_MAX_RESULTS);
+
+            if (maxResults <= 0) {
+                throw new JSONException(Params.MAX_RESULTS + " parameter must be a positive integer");
+            }
+        }
+    }
 }
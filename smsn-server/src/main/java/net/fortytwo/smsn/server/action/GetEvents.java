@@ -37,8 +37,8 @@ public class GetEvents extends Action {
         Note view = new Note();
         view.setValue("event stack");
 
-        for (Note n : events) {
-            Note e = new Note(n);
+        // the events are copies, which may be truncated freely
+        for (Note e : events) {
             e.truncate(p.height);
             view.addChild(e);
         }
@@ -1,20 +1,60 @@
 package net.fortytwo.smsn.server.action;
 
+import com.tinkerpop.blueprints.TransactionalGraph;
+import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.NoteQueries;
+import net.fortytwo.smsn.brain.model.Atom;
 import net.fortytwo.smsn.server.Action;
 import net.fortytwo.smsn.server.error.BadRequestException;
 import net.fortytwo.smsn.server.error.RequestProcessingException;
 import net.fortytwo.smsn.server.requests.FilteredResultsRequest;
+import net.fortytwo.smsn.util.TypedProperties;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 /**
- * A service for finding recently visited atoms
+ * A service for finding recently visited atoms.
+ * Each client which identifies itself has its own history.
+ * Optionally, the views of the most recently visited atoms are rendered in the background,
+ * so that a return to one of them finds its atoms already cached.
  */
 public class GetHistory extends Action {
 
+    // configuration properties
+    public static final String
+            PROP_HISTORY_PREFETCH = "net.fortytwo.smsn.server.historyPrefetch",
+            PROP_HISTORY_PREFETCH_HEIGHT = "net.fortytwo.smsn.server.historyPrefetchHeight";
+
+    private static final int historyPrefetch, historyPrefetchHeight;
+
+    static {
+        try {
+            TypedProperties conf = SemanticSynchrony.getConfiguration();
+            historyPrefetch = conf.getInt(PROP_HISTORY_PREFETCH, 0);
+            historyPrefetchHeight = conf.getInt(PROP_HISTORY_PREFETCH_HEIGHT, 2);
+        } catch (TypedProperties.PropertyException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // a single background thread, which abandons an older prefetch in favor of a newer one
+    private static final ThreadPoolExecutor prefetchExecutor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+            r -> {
+                Thread t = new Thread(r, "smsn-history-prefetch");
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+
     @Override
     public String getName() {
         return "history";
@@ -27,16 +67,26 @@ public class GetHistory extends Action {
         r = new FilteredResultsRequest(request, p.user);
 
         p.filter = r.getFilter();
+        p.validator = r.getValidator();
+        p.client = r.getClient();
     }
 
     protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
-        List<String> ids = getHistory(p.brain.getAtomGraph(), p.filter);
+        if (isNotModified(p, getHistoryVersion(p))) {
+            return;
+        }
+
+        List<Atom> atoms = getHistory(p);
 
         try {
-            addView(p.queries.customView(ids, p.filter), p);
+            addView(p.queries.customViewOfAtoms(atoms, p.filter), p);
         } catch (IOException e) {
             throw new RequestProcessingException(e);
         }
+
+        if (historyPrefetch > 0 && !atoms.isEmpty()) {
+            prefetch(p, new ArrayList<>(atoms.subList(0, Math.min(historyPrefetch, atoms.size()))));
+        }
     }
 
     protected boolean doesRead() {
@@ -46,4 +96,24 @@ public class GetHistory extends Action {
     protected boolean doesWrite() {
         return false;
     }
+
+    private void prefetch(final RequestParams p, final List<Atom> atoms) {
+        prefetchExecutor.execute(() -> {
+            try {
+                for (Atom a : atoms) {
+                    p.queries.prefetchView(a, historyPrefetchHeight, p.filter, NoteQueries.forwardViewStyle);
+                }
+            } catch (RuntimeException e) {
+                // an atom may have been removed in the meantime
+                logger.log(Level.FINE, "failed to prefetch history", e);
+            } finally {
+                if (p.baseGraph instanceof TransactionalGraph) {
+                    // this thread has only read from the graph, so its transaction is rolled back rather than committed,
+                    // which would count as a change and invalidate the validators of clients.
+                    // It is ended through the atom graph, as any other transaction is
+                    stopTransaction((TransactionalGraph) p.baseGraph, false);
+                }
+            }
+        });
+    }
 }
@@ -0,0 +1,67 @@
+package net.fortytwo.smsn.server.action;
+
+import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.server.Action;
+import net.fortytwo.smsn.server.Jobs;
+import net.fortytwo.smsn.server.Request;
+import net.fortytwo.smsn.server.error.BadRequestException;
+import net.fortytwo.smsn.server.error.RequestProcessingException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.Principal;
+
+/**
+ * A service for retrieving the status and progress of background jobs, such as imports and exports
+ */
+public class GetJobs extends Action {
+
+    @Override
+    public String getName() {
+        return "jobs";
+    }
+
+    @Override
+    public void parseRequest(final JSONObject request, final RequestParams p) throws JSONException {
+        GetJobsRequest r = new GetJobsRequest(request, p.user);
+
+        p.jobId = r.jobId;
+    }
+
+    protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
+        if (null == p.jobId) {
+            org.codehaus.jettison.json.JSONArray jobs = new org.codehaus.jettison.json.JSONArray();
+            for (Jobs.Job job : getJobs().getJobs()) {
+                jobs.put(new org.codehaus.jettison.json.JSONObject(job.toMap()));
+            }
+            p.map.put(Params.JOBS, jobs);
+        } else {
+            Jobs.Job job = getJobs().getJob(p.jobId);
+            if (null == job) {
+                throw new BadRequestException("no such job: " + p.jobId);
+            }
+            p.map.put(Params.JOB, new org.codehaus.jettison.json.JSONObject(job.toMap()));
+        }
+    }
+
+    protected boolean doesRead() {
+        // jobs are not data from the graph
+        return false;
+    }
+
+    protected boolean doesWrite() {
+        return false;
+    }
+
+    private class GetJobsRequest extends Request {
+        // if null, all jobs are retrieved
+        private final String jobId;
+
+        public GetJobsRequest(final JSONObject json,
+                              final Principal user) throws JSONException {
+            super(json, user);
+
+            jobId = optString(Params.JOB_ID);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.fortytwo.smsn.server.action;
+
+import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.brain.metrics.Metrics;
+import net.fortytwo.smsn.server.Action;
+import net.fortytwo.smsn.server.error.BadRequestException;
+import net.fortytwo.smsn.server.error.RequestProcessingException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+
+/**
+ * A service for retrieving the counters and histograms of the server, such as the latency of each action.
+ * Latencies are in microseconds.
+ */
+public class GetMetrics extends Action {
+
+    @Override
+    public String getName() {
+        return "metrics";
+    }
+
+    @Override
+    public void parseRequest(final JSONObject request, final RequestParams p) throws JSONException {
+        // this argument is optional; by default, metrics are not reset
+        p.reset = request.optBoolean(Params.RESET, false);
+    }
+
+    protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
+        org.codehaus.jettison.json.JSONObject histograms = new org.codehaus.jettison.json.JSONObject();
+        try {
+            for (Map.Entry<String, Map<String, Number>> e : Metrics.getHistogramSummaries().entrySet()) {
+                histograms.put(e.getKey(), new org.codehaus.jettison.json.JSONObject(e.getValue()));
+            }
+        } catch (org.codehaus.jettison.json.JSONException e) {
+            throw new RequestProcessingException(e);
+        }
+
+        p.map.put(Params.COUNTERS, new org.codehaus.jettison.json.JSONObject(Metrics.getCounterValues()));
+        p.map.put(Params.HISTOGRAMS, histograms);
+
+        if (p.reset) {
+            Metrics.reset();
+        }
+    }
+
+    protected boolean doesRead() {
+        // metrics are not data from the graph
+        return false;
+    }
+
+    protected boolean doesWrite() {
+        return false;
+    }
+}
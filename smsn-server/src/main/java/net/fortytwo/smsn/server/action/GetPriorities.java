@@ -1,6 +1,7 @@
 package net.fortytwo.smsn.server.action;
 
 import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.brain.Priorities;
 import net.fortytwo.smsn.brain.model.Note;
 import net.fortytwo.smsn.server.Action;
 import net.fortytwo.smsn.server.error.BadRequestException;
@@ -31,16 +32,34 @@ public class GetPriorities extends Action {
 
         p.filter = r.getFilter();
         p.maxResults = r.maxResults;
+        p.cursor = r.cursor;
+        p.validator = r.getValidator();
     }
 
     protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
 
-        Note n = p.queries.priorityView(p.filter, p.maxResults, p.brain.getPriorities());
+        if (isNotModified(p, p.maxResults, p.cursor, p.brain.getPriorities().getVersion())) {
+            return;
+        }
+
+        Priorities.Page page;
+        try {
+            page = p.brain.getPriorities().getPage(p.filter, p.maxResults, p.cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
+        Note n = p.queries.priorityView(page, p.maxResults);
         try {
             addView(n, p);
         } catch (IOException e) {
             throw new RequestProcessingException(e);
         }
+
+        // the cursor is absent from the last page
+        if (null != page.getNextCursor()) {
+            p.map.put(Params.CURSOR, page.getNextCursor());
+        }
     }
 
     protected boolean doesRead() {
@@ -53,6 +72,7 @@ public class GetPriorities extends Action {
 
     protected class PrioritiesRequest extends FilteredResultsRequest {
         public final int maxResults;
+        public final String cursor;
 
         public PrioritiesRequest(JSONObject json, Principal user) throws JSONException {
             super(json, user);
@@ -62,6 +82,9 @@ public class GetPriorities extends Action {
             if (maxResults <= 0) {
                 throw new JSONException(Params.MAX_RESULTS + " parameter must be a positive integer");
             }
+
+            // this argument is optional; the first page is returned by default
+            cursor = this.json.optString(Params.CURSOR, null);
         }
     }
 }
@@ -33,18 +33,40 @@ public class GetView extends Action {
         p.styleName = r.getStyleName();
         p.filter = r.getFilter();
         p.includeTypes = r.isIncludeTypes();
+        p.shareSubtrees = r.isShareSubtrees();
+        p.maxNodes = r.getMaxNodes();
+        p.validator = r.getValidator();
+        p.client = r.getClient();
     }
 
     protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
 
-        Note n = p.queries.view(p.root, p.height, p.filter, p.style);
+        if (p.shareSubtrees && p.maxNodes < 1) {
+            throw new BadRequestException("maxNodes must be at least 1");
+        }
+
+        if (isNotModified(p, p.rootId, p.height, p.style.getName(), p.shareSubtrees, p.maxNodes)) {
+            addToHistory(p);
+            return;
+        }
+
+        Note n;
+        if (p.shareSubtrees) {
+            n = p.queries.viewWithSharedSubtrees(p.root, p.height, p.filter, p.style, p.maxNodes);
+        } else if (p.uncommittedChanges) {
+            // other threads would not see the changes
+            n = p.queries.view(p.root, p.height, p.filter, p.style);
+        } else {
+            // this action makes no changes, so the view may be expanded by several threads
+            n = p.queries.parallelView(p.root, p.height, p.filter, p.style);
+        }
         try {
             addView(n, p);
         } catch (IOException e) {
             throw new RequestProcessingException(e);
         }
 
-        addToHistory(p.rootId);
+        addToHistory(p);
     }
 
     protected boolean doesRead() {
@@ -58,6 +80,8 @@ public class GetView extends Action {
     private class ViewRequest extends RootedViewRequest {
 
         private final boolean includeTypes;
+        private final boolean shareSubtrees;
+        private final int maxNodes;
 
         public ViewRequest(final JSONObject json,
                            final Principal user) throws JSONException {
@@ -65,10 +89,22 @@ public class GetView extends Action {
 
             // this argument is optional; do not include types by default
             includeTypes = json.optBoolean(Params.INCLUDE_TYPES, false);
+
+            // these arguments are optional; by default, each subtree is rendered wherever it appears
+            shareSubtrees = json.optBoolean(Params.SHARE_SUBTREES, false);
+            maxNodes = json.optInt(Params.MAX_NODES, Integer.MAX_VALUE);
         }
 
         public boolean isIncludeTypes() {
             return includeTypes;
         }
+
+        public boolean isShareSubtrees() {
+            return shareSubtrees;
+        }
+
+        public int getMaxNodes() {
+            return maxNodes;
+        }
     }
 }
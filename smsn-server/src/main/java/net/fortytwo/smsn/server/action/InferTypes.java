@@ -41,4 +41,9 @@ public class InferTypes extends Action {
     protected boolean doesWrite() {
         return false;
     }
+
+    @Override
+    protected boolean isLongRunning(final RequestParams p) {
+        return true;
+    }
 }
@@ -3,6 +3,7 @@ package net.fortytwo.smsn.server.action;
 import com.tinkerpop.blueprints.Graph;
 import net.fortytwo.smsn.brain.Params;
 import net.fortytwo.smsn.server.Action;
+import net.fortytwo.smsn.server.Jobs;
 import net.fortytwo.smsn.server.Request;
 import net.fortytwo.smsn.server.error.BadRequestException;
 import net.fortytwo.smsn.server.error.RequestProcessingException;
@@ -20,7 +21,7 @@ import java.util.Map;
 import java.util.Set;
 
 /**
- * A service for importing an Extend-o-Brain subgraph
+ * A service for importing an Extend-o-Brain subgraph, either while the client waits or as a background job
  */
 public class ReadGraph extends Action {
     private final Map<Graph, Set<String>> importsInProgress;
@@ -42,6 +43,7 @@ public class ReadGraph extends Action {
 
         p.file = r.file;
         p.format = r.format;
+        p.async = r.async;
     }
 
     private synchronized void beginImport(final Graph g, final String file) throws BadRequestException {
@@ -57,6 +59,7 @@ public class ReadGraph extends Action {
             }
         } else {
             files = new HashSet<>();
+            importsInProgress.put(g, files);
         }
         files.add(file);
     }
@@ -85,14 +88,27 @@ public class ReadGraph extends Action {
         Format format = Format.getFormat(p.format);
         BrainReader reader = Format.getReader(format);
 
+        if (p.async) {
+            submitJob(p, p.file, job -> importFile(reader, format, p, job));
+        } else {
+            try {
+                importFile(reader, format, p, null);
+            } catch (IOException e) {
+                throw new RequestProcessingException(e);
+            }
+        }
+    }
+
+    private void importFile(final BrainReader reader,
+                            final Format format,
+                            final RequestParams p,
+                            final Jobs.Job job) throws BadRequestException, IOException {
         beginImport(p.baseGraph, p.file);
 
         boolean success = false;
         try {
-            reader.doImport(new File(p.file), format, p.brain, true);
+            reader.doImport(new File(p.file), format, p.brain, true, null == job ? null : new ImportProgress(job));
             success = true;
-        } catch (IOException e) {
-            throw new RequestProcessingException(e);
         } finally {
             finishImport(p.baseGraph, p.file, success);
         }
@@ -109,9 +125,38 @@ public class ReadGraph extends Action {
         return true;
     }
 
+    @Override
+    protected boolean isLongRunning(final RequestParams p) {
+        return !p.async;
+    }
+
+    private static class ImportProgress implements BrainReader.ProgressListener {
+        private final Jobs.Job job;
+
+        private ImportProgress(final Jobs.Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void fileImported(final File file, final int completed, final int total) {
+            job.setFilesCompleted(completed, total);
+        }
+
+        @Override
+        public void fileFailed(final File file, final Throwable cause) {
+            // the failure is logged by the reader, and reported at the end of the import
+        }
+
+        @Override
+        public void bytesRead(final long count, final long total) {
+            job.setBytesProcessed(count, total);
+        }
+    }
+
     private class ImportRequest extends Request {
         private final String format;
         private final String file;
+        private final boolean async;
 
         public ImportRequest(final JSONObject json,
                              final Principal user) throws JSONException {
@@ -119,6 +164,7 @@ public class ReadGraph extends Action {
 
             format = this.json.getString(Params.FORMAT);
             file = this.json.getString(Params.FILE);
+            async = this.json.optBoolean(Params.ASYNC, false);
         }
     }
 }
@@ -37,4 +37,9 @@ public class RemoveIsolatedAtoms extends Action {
     protected boolean doesWrite() {
         return true;
     }
+
+    @Override
+    protected boolean isLongRunning(final RequestParams p) {
+        return true;
+    }
 }
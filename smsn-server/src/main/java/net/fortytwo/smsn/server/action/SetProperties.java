@@ -4,14 +4,18 @@ import net.fortytwo.smsn.SemanticSynchrony;
 import net.fortytwo.smsn.brain.ActivityLog;
 import net.fortytwo.smsn.brain.Params;
 import net.fortytwo.smsn.brain.model.Atom;
-import net.fortytwo.smsn.server.Request;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
 import net.fortytwo.smsn.server.Action;
 import net.fortytwo.smsn.server.error.BadRequestException;
 import net.fortytwo.smsn.server.error.RequestProcessingException;
+import net.fortytwo.smsn.server.requests.FilteredResultsRequest;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A service for setting the properties of an atom
@@ -27,42 +31,12 @@ public class SetProperties extends Action {
     public void parseRequest(final JSONObject request, final RequestParams p) throws JSONException, BadRequestException {
         SetPropertiesRequest r = new SetPropertiesRequest(request, p.user);
 
-        switch (r.name) {
-            case SemanticSynchrony.WEIGHT: {
-                float f = (Float) r.value;
-                // Note: weight may not currently be set to 0, which would cause the atom to disappear from all normal views
-                if (f <= 0 || f > 1.0) {
-                    throw new BadRequestException("weight is outside of range (0, 1]: " + f);
-                }
-                break;
-            }
-            case SemanticSynchrony.SHARABILITY: {
-                float f = (Float) r.value;
-                if (f <= 0 || f > 1.0) {
-                    throw new BadRequestException("sharability is outside of range (0, 1]: " + f);
-                }
-                break;
-            }
-            case SemanticSynchrony.PRIORITY: {
-                float f = (Float) r.value;
-                if (f < 0 || f > 1.0) {
-                    throw new BadRequestException("priority is outside of range [0, 1]: " + f);
-                }
-                break;
-            }
-            case SemanticSynchrony.SHORTCUT:
-                String s = (String) r.value;
-                if (s.length() > 50) {
-                    throw new BadRequestException("shortcut is too long: " + s);
-                }
-                break;
-            default:
-                throw new BadRequestException("unknown property: " + r.name);
-        }
+        checkValue(r.name, r.value);
 
         p.propertyName = r.name;
         p.propertyValue = r.value;
         p.rootId = r.id;
+        p.filter = r.getFilter();
 
         SemanticSynchrony.logInfo("SmSn set-properties on " + r.id + ": " + r.name + " <- " + r.value);
     }
@@ -80,12 +54,8 @@ public class SetProperties extends Action {
                 p.brain.getPriorities().updatePriority(p.root);
                 break;
             case SemanticSynchrony.SHORTCUT:
-                // first remove this shortcut from any atom(s) currently holding it; shortcuts are inverse functional
                 String shortcut = (String) p.propertyValue;
-                for (Atom a : p.brain.getAtomGraph().getAtomsWithShortcut(shortcut, p.filter)) {
-                    a.setShortcut(null);
-                }
-
+                releaseShortcut(p.brain.getAtomGraph(), shortcut, p.root.getId(), p.filter);
                 p.root.setShortcut(shortcut);
                 break;
             default:
@@ -104,6 +74,97 @@ public class SetProperties extends Action {
         }
     }
 
+    /**
+     * Removes a shortcut from any atom(s) currently holding it, other than its new holder;
+     * shortcuts are inverse functional
+     *
+     * @param filter the atoms from which the shortcut may be removed, or null for all atoms
+     * @return the atoms from which the shortcut has been removed
+     * @throws BadRequestException if the shortcut is held by an atom outside of the filter
+     */
+    static List<Atom> releaseShortcut(final AtomGraph graph,
+                                      final String shortcut,
+                                      final String newHolderId,
+                                      final Filter filter) throws BadRequestException {
+        List<Atom> previousHolders = getPreviousHolders(graph, shortcut, newHolderId, filter);
+        for (Atom a : previousHolders) {
+            a.setShortcut(null);
+        }
+
+        return previousHolders;
+    }
+
+    /**
+     * Finds the atom(s) currently holding a shortcut, other than its new holder.
+     * Holders are found regardless of the filter, so that no hidden atom is left sharing the shortcut
+     *
+     * @param filter the atoms from which the shortcut may be removed, or null for all atoms
+     * @throws BadRequestException if the shortcut is held by an atom outside of the filter
+     */
+    static List<Atom> getPreviousHolders(final AtomGraph graph,
+                                         final String shortcut,
+                                         final String newHolderId,
+                                         final Filter filter) throws BadRequestException {
+        List<Atom> previousHolders = new ArrayList<>();
+        for (Atom a : graph.getAtomsWithShortcut(shortcut, new Filter())) {
+            if (!a.getId().equals(newHolderId)) {
+                if (null != filter && !filter.isVisible(a)) {
+                    throw new BadRequestException("shortcut is held by an atom which is not visible: " + shortcut);
+                }
+                previousHolders.add(a);
+            }
+        }
+
+        return previousHolders;
+    }
+
+    /**
+     * @throws BadRequestException if the property is not one which may be set, or if the value is out of range
+     */
+    static void checkValue(final String name, final Object value) throws BadRequestException {
+        switch (name) {
+            case SemanticSynchrony.WEIGHT: {
+                float f = (Float) value;
+                // Note: weight may not currently be set to 0, which would cause the atom to disappear from all normal views
+                if (f <= 0 || f > 1.0) {
+                    throw new BadRequestException("weight is outside of range (0, 1]: " + f);
+                }
+                break;
+            }
+            case SemanticSynchrony.SHARABILITY: {
+                float f = (Float) value;
+                if (f <= 0 || f > 1.0) {
+                    throw new BadRequestException("sharability is outside of range (0, 1]: " + f);
+                }
+                break;
+            }
+            case SemanticSynchrony.PRIORITY: {
+                float f = (Float) value;
+                if (f < 0 || f > 1.0) {
+                    throw new BadRequestException("priority is outside of range [0, 1]: " + f);
+                }
+                break;
+            }
+            case SemanticSynchrony.SHORTCUT:
+                String s = (String) value;
+                if (s.length() > 50) {
+                    throw new BadRequestException("shortcut is too long: " + s);
+                }
+                break;
+            default:
+                throw new BadRequestException("unknown property: " + name);
+        }
+    }
+
+    /**
+     * @return the value of the given property in a request, which is a string for a shortcut and a number otherwise
+     */
+    static Object getValue(final JSONObject json, final String name) throws JSONException {
+        return name.equals(SemanticSynchrony.SHORTCUT)
+                ? json.getString(Params.VALUE)
+                : (float) json.getDouble(Params.VALUE);
+    }
+
     protected boolean doesRead() {
         return false;
     }
@@ -112,19 +173,17 @@ public class SetProperties extends Action {
         return true;
     }
 
-    protected class SetPropertiesRequest extends Request {
+    protected class SetPropertiesRequest extends FilteredResultsRequest {
         public final String id;
         public final String name;
         public final Object value;
 
         public SetPropertiesRequest(JSONObject json, Principal user) throws JSONException {
-            super(json, user);
+            super(json, user, false);
 
             id = this.json.getString(Params.ID);
             name = this.json.getString(Params.NAME);
-            value = name.equals(SemanticSynchrony.SHORTCUT)
-                    ? this.json.getString(Params.VALUE)
-                    : (float) this.json.getDouble(Params.VALUE);
+            value = getValue(this.json, name);
         }
     }
 
@@ -2,11 +2,13 @@ package net.fortytwo.smsn.server.action;
 
 import net.fortytwo.smsn.brain.Params;
 import net.fortytwo.smsn.server.Action;
+import net.fortytwo.smsn.server.Jobs;
 import net.fortytwo.smsn.server.error.BadRequestException;
 import net.fortytwo.smsn.server.error.RequestProcessingException;
 import net.fortytwo.smsn.brain.io.BrainWriter;
 import net.fortytwo.smsn.brain.io.Format;
 import net.fortytwo.smsn.server.requests.FilteredResultsRequest;
+import org.apache.commons.io.output.ProxyOutputStream;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -16,7 +18,8 @@ import java.io.OutputStream;
 import java.security.Principal;
 
 /**
- * A service for exporting an Extend-o-Brain graph to the file system
+ * A service for exporting an Extend-o-Brain graph to the file system,
+ * either while the client waits or as a background job
  */
 public class WriteGraph extends Action {
 
@@ -36,6 +39,7 @@ public class WriteGraph extends Action {
 
         p.rootId = r.rootId;
         p.height = r.height;
+        p.async = r.async;
     }
 
     protected void performTransaction(final RequestParams p) throws RequestProcessingException, BadRequestException {
@@ -51,13 +55,41 @@ public class WriteGraph extends Action {
         context.setFormat(Format.getFormat(p.format));
         BrainWriter writer = Format.getWriter(context.getFormat());
 
-        try {
-            try (OutputStream destStream = new FileOutputStream(p.file)) {
-                context.setDestStream(destStream);
-                writer.doExport(context);
+        if (p.async) {
+            // note: the export reads committed data without holding a transaction, so it does not block updates.
+            // Neither Neo4j nor TinkerGraph offers snapshot isolation, so atoms changed during the export
+            // may appear in either their old or their new state
+            submitJob(p, p.file, job -> exportFile(writer, context, p.file, job));
+        } else {
+            try {
+                exportFile(writer, context, p.file, null);
+            } catch (IOException e) {
+                throw new RequestProcessingException(e);
             }
-        } catch (IOException e) {
-            throw new RequestProcessingException(e);
+        }
+    }
+
+    private void exportFile(final BrainWriter writer,
+                            final BrainWriter.Context context,
+                            final String file,
+                            final Jobs.Job job) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (null != job) {
+            context.setProgressListener(job::atomProcessed);
+            out = new ProxyOutputStream(out) {
+                private long count;
+
+                @Override
+                protected void afterWrite(final int n) {
+                    count += n;
+                    job.setBytesProcessed(count, 0);
+                }
+            };
+        }
+
+        try (OutputStream destStream = out) {
+            context.setDestStream(destStream);
+            writer.doExport(context);
         }
     }
 
@@ -70,12 +102,18 @@ public class WriteGraph extends Action {
         return false;
     }
 
+    @Override
+    protected boolean isLongRunning(final RequestParams p) {
+        return !p.async;
+    }
+
     private class ExportRequest extends FilteredResultsRequest {
         private final String format;
         private final String file;
 
         private final String rootId;
         private final int height;
+        private final boolean async;
 
         public ExportRequest(final JSONObject json,
                              final Principal user) throws JSONException {
@@ -84,8 +122,9 @@ public class WriteGraph extends Action {
             format = this.json.getString(Params.FORMAT);
             file = this.json.getString(Params.FILE);
 
-            rootId = this.json.optString(Params.ROOT);
+            rootId = optString(Params.ROOT);
             height = this.json.optInt(Params.HEIGHT, 0);
+            async = this.json.optBoolean(Params.ASYNC, false);
         }
     }
 }
@@ -11,18 +11,43 @@ import java.security.Principal;
 
 public class FilteredResultsRequest extends Request {
     private final Filter filter;
+    private final String validator;
+    private final String client;
 
     public FilteredResultsRequest(final JSONObject json,
                                   final Principal user) throws JSONException {
+        this(json, user, true);
+    }
+
+    /**
+     * @param filterRequired whether the request must have a filter. If not, the filter of a request without one is null
+     */
+    protected FilteredResultsRequest(final JSONObject json,
+                                     final Principal user,
+                                     final boolean filterRequired) throws JSONException {
         super(json, user);
 
-        filter = constructFilter();
+        filter = filterRequired || json.has(Params.FILTER) ? constructFilter() : null;
+
+        // this argument is optional; it is the validator of the client's copy of the results, if any
+        validator = optString(Params.VALIDATOR);
+
+        // this argument is optional; it distinguishes the history of one client from that of others
+        client = optString(Params.CLIENT);
     }
 
     public Filter getFilter() {
         return filter;
     }
 
+    public String getValidator() {
+        return validator;
+    }
+
+    public String getClient() {
+        return client;
+    }
+
     private Filter constructFilter() throws JSONException {
         JSONObject f = json.getJSONObject(Params.FILTER);
 
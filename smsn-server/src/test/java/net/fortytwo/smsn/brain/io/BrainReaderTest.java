@@ -0,0 +1,133 @@
+package net.fortytwo.smsn.brain.io;
+
+import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
+import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.Brain;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BrainReaderTest {
+    private static final Format LINES_FORMAT = new Format("Lines", new String[]{"lines"});
+
+    private File dir;
+    private Neo4jGraph graph;
+    private AtomGraph atomGraph;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("smsn", "test");
+        dir.delete();
+        dir.mkdir();
+
+        File graphDir = new File(dir, "graph");
+        graphDir.mkdir();
+        graph = new Neo4jGraph(graphDir.getPath());
+        atomGraph = new PGAtomGraph(graph);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        graph.shutdown();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testFileWhichFailsInParallelImportIsRolledBack() throws Exception {
+        File importDir = new File(dir, "import");
+        importDir.mkdir();
+        writeFile(importDir, "1.lines", "one", "two");
+        // two atoms are created before the failure
+        writeFile(importDir, "2.lines", "three", "four", "fail", "five");
+        writeFile(importDir, "3.lines", "six");
+
+        List<String> failedFiles = new ArrayList<>();
+        BrainReader.ProgressListener listener = new BrainReader.ProgressListener() {
+            @Override
+            public void fileImported(File file, int completed, int total) {
+            }
+
+            @Override
+            public void fileFailed(File file, Throwable cause) {
+                failedFiles.add(file.getName());
+            }
+
+            @Override
+            public void bytesRead(long count, long total) {
+            }
+        };
+
+        try {
+            new LinesReader().doImport(importDir, LINES_FORMAT, new Brain(atomGraph), true, listener);
+            fail("a failed file should fail the import");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(Collections.singletonList("2.lines"), failedFiles);
+        // the files before and after the failed file are imported, and nothing of the failed file remains
+        assertEquals(Arrays.asList("one", "six", "two"), getValues());
+    }
+
+    private void writeFile(final File parent, final String name, final String... lines) throws IOException {
+        Files.write(new File(parent, name).toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private List<String> getValues() {
+        List<String> values = new ArrayList<>();
+        for (Atom a : atomGraph.getAllAtoms()) {
+            values.add(a.getValue());
+        }
+        Collections.sort(values);
+        return values;
+    }
+
+    // creates an atom for each line of a file, failing at a line which reads "fail"
+    private static class LinesReader extends ParallelBrainReader {
+        @Override
+        public List<Format> getFormats() {
+            return Collections.singletonList(LINES_FORMAT);
+        }
+
+        @Override
+        protected void importInternal(final Context context) throws IOException {
+            parse(context.getSourceStream(), context.getDefaultNodeName()).applyTo(context);
+        }
+
+        @Override
+        protected ParsedFile parse(final InputStream sourceStream, final String defaultNodeName)
+                throws IOException {
+            List<String> lines = IOUtils.readLines(sourceStream, StandardCharsets.UTF_8);
+
+            return context -> {
+                AtomGraph destGraph = context.getAtomGraph();
+                for (String line : lines) {
+                    if (line.equals("fail")) {
+                        throw new IOException("failed at line: " + line);
+                    }
+                    Atom a = destGraph.createAtom(new Filter(), SemanticSynchrony.createRandomKey());
+                    a.setValue(line);
+                }
+            };
+        }
+    }
+}
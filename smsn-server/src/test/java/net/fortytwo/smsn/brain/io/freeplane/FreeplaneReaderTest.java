@@ -0,0 +1,202 @@
+package net.fortytwo.smsn.brain.io.freeplane;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import net.fortytwo.smsn.brain.Brain;
+import net.fortytwo.smsn.brain.io.BrainReader;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.AtomList;
+import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class FreeplaneReaderTest {
+    private static final String MIND_MAP = "<map version=\"freeplane 1.3.0\">\n"
+            + "<node TEXT=\"root\" ID=\"ID_root\" CREATED=\"1000\">\n"
+            // links to nodes which have not been seen yet, one of which does not exist
+            + "  <node TEXT=\"a\" ID=\"ID_a\">\n"
+            + "    <arrowlink DESTINATION=\"ID_b\"/>\n"
+            + "    <arrowlink DESTINATION=\"ID_missing\"/>\n"
+            + "    <arrowlink DESTINATION=\"ID_c\"/>\n"
+            + "  </node>\n"
+            // rich content in place of text, a link to a node already seen, a child,
+            // and a link which follows the child
+            + "  <node ID=\"ID_b\">\n"
+            + "    <richcontent TYPE=\"NODE\"><body><p>rich</p> <p>b</p></body></richcontent>\n"
+            + "    <arrowlink DESTINATION=\"ID_a\"/>\n"
+            + "    <node TEXT=\"b1\" ID=\"ID_b1\"/>\n"
+            + "    <arrowlink DESTINATION=\"ID_root\"/>\n"
+            + "  </node>\n"
+            // neither text nor rich content
+            + "  <node ID=\"ID_c\"/>\n"
+            + "</node>\n"
+            + "</map>\n";
+
+    private AtomGraph atomGraph;
+    private FreeplaneReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        atomGraph = new PGAtomGraph(new TinkerGraph());
+        reader = new FreeplaneReader();
+    }
+
+    @Test
+    public void testNodesRichContentAndArrowLinks() throws Exception {
+        importMindMap(MIND_MAP);
+
+        Map<String, Atom> atomsByValue = getAtomsByValue();
+        // the map itself, with the default name, and one atom for each node
+        assertEquals(6, countAtoms());
+        Atom root = atomsByValue.get("root");
+        assertEquals(1000L, (long) root.getCreated());
+
+        // the value of "b" is the text of all elements of its rich content, and "c" has the default name
+        assertEquals(Arrays.asList("a", "rich b", "test.mm"), childValues(root));
+        assertEquals(Arrays.asList("root"), childValues(getParent(root)));
+        // forward links appear in reverse order, before any children, and the missing destination is dropped
+        assertEquals(Arrays.asList("test.mm", "rich b"), childValues(atomsByValue.get("a")));
+        // a link which follows a child is prepended
+        assertEquals(Arrays.asList("root", "a", "b1"), childValues(atomsByValue.get("rich b")));
+
+        assertEveryListCellHasAnAtom();
+    }
+
+    @Test
+    public void testFailedImportLeavesNoEmptyListCells() throws Exception {
+        // the map ends after a node with a forward link has started its children
+        String truncated = MIND_MAP.substring(0, MIND_MAP.indexOf("  <node ID=\"ID_b\">"))
+                .replace("<arrowlink DESTINATION=\"ID_c\"/>\n",
+                        "<arrowlink DESTINATION=\"ID_c\"/>\n    <node TEXT=\"a1\"/>\n");
+        try {
+            importMindMap(truncated);
+            fail("a truncated map should fail to import");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // the links of "a" were never resolved, but its child remains, as do the values of unfinished nodes
+        assertEquals(Arrays.asList("a1"), childValues(getAtomsByValue().get("a")));
+        assertEquals("test.mm", getParent(getAtomsByValue().get("root")).getValue());
+        assertEveryListCellHasAnAtom();
+    }
+
+    @Test
+    public void testParallelDirectoryImportMatchesSequentialImport() throws Exception {
+        File dir = File.createTempFile("smsn", "test");
+        dir.delete();
+        File subDir = new File(dir, "sub");
+        subDir.mkdirs();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            File file = new File(0 == i % 2 ? dir : subDir, "map" + i + ".mm");
+            String xml = MIND_MAP.replace("TEXT=\"a\"", "TEXT=\"a" + i + "\"")
+                    .replace("TEXT=\"b1\"", "TEXT=\"b" + i + "\"");
+            Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        // not a mind map, so not imported
+        Files.write(new File(dir, "notes.txt").toPath(), "ignored".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            for (File file : files) {
+                reader.doImport(file, FreeplaneFormat.getInstance(), new Brain(atomGraph), false);
+            }
+            List<String> sequential = describeGraph();
+
+            atomGraph = new PGAtomGraph(new TinkerGraph());
+            reader.doImport(dir, FreeplaneFormat.getInstance(), new Brain(atomGraph), true);
+            List<String> parallel = describeGraph();
+
+            assertEquals(6 * files.size(), countAtoms());
+            assertEquals(sequential, parallel);
+            assertEveryListCellHasAnAtom();
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+            new File(dir, "notes.txt").delete();
+            subDir.delete();
+            dir.delete();
+        }
+    }
+
+    private void importMindMap(final String xml) throws IOException {
+        BrainReader.Context context = new BrainReader.Context();
+        context.setAtomGraph(atomGraph);
+        context.setSourceStream(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        context.setFormat(FreeplaneFormat.getInstance());
+        context.setDefaultNodeName("test.mm");
+        reader.doImport(context);
+    }
+
+    private int countAtoms() {
+        int count = 0;
+        for (Atom ignored : atomGraph.getAllAtoms()) {
+            count++;
+        }
+        return count;
+    }
+
+    // atoms with the default name are not distinguished
+    private Map<String, Atom> getAtomsByValue() {
+        Map<String, Atom> atomsByValue = new HashMap<>();
+        for (Atom a : atomGraph.getAllAtoms()) {
+            atomsByValue.put(a.getValue(), a);
+        }
+        return atomsByValue;
+    }
+
+    // the value and the child values of each atom, in an order independent of atom ids and of import order
+    private List<String> describeGraph() {
+        List<String> description = new ArrayList<>();
+        for (Atom a : atomGraph.getAllAtoms()) {
+            description.add(a.getValue() + " " + childValues(a));
+        }
+        Collections.sort(description);
+        return description;
+    }
+
+    private Atom getParent(final Atom child) {
+        for (Atom a : atomGraph.getAllAtoms()) {
+            for (AtomList cur = a.getNotes(); null != cur; cur = cur.getRest()) {
+                if (cur.getFirst().getId().equals(child.getId())) {
+                    return a;
+                }
+            }
+        }
+        throw new IllegalStateException("no parent found");
+    }
+
+    private List<String> childValues(final Atom a) {
+        List<String> values = new ArrayList<>();
+        for (AtomList cur = a.getNotes(); null != cur; cur = cur.getRest()) {
+            values.add(cur.getFirst().getValue());
+        }
+        return values;
+    }
+
+    private void assertEveryListCellHasAnAtom() {
+        for (Atom a : atomGraph.getAllAtoms()) {
+            for (AtomList cur = a.getNotes(); null != cur; cur = cur.getRest()) {
+                assertNotNull(cur.getFirst());
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package net.fortytwo.smsn.brain.io.graphml;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import net.fortytwo.smsn.brain.io.BrainReader;
+import net.fortytwo.smsn.brain.io.BrainWriter;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GraphMLWriterTest {
+
+    @Test
+    public void testInternalPropertiesNotExportedButRecomputedOnImport() throws Exception {
+        PGAtomGraph original = new PGAtomGraph(new TinkerGraph());
+        Filter filter = new Filter();
+        Atom root = createAtom(original, filter, "root");
+        Atom child = createAtom(original, filter, "child");
+        Atom isolated = createAtom(original, filter, "isolated");
+        root.addChildAt(child, 0);
+
+        String graphML = export(original);
+        for (String key : PGAtomGraph.INTERNAL_PROPERTIES) {
+            assertFalse(graphML.contains("\"" + key + "\""));
+        }
+        assertTrue(graphML.contains("\"value\""));
+
+        PGAtomGraph copy = new PGAtomGraph(new TinkerGraph());
+        importGraphML(copy, graphML);
+
+        assertEquals(3, getIds(copy.getAllAtoms()).size());
+        assertEquals("child", copy.getAtom(root.getId()).getNotes().getFirst().getValue());
+        List<String> withoutParents = getIds(copy.getAtomsWithoutParents());
+        assertEquals(2, withoutParents.size());
+        assertTrue(withoutParents.contains(root.getId()));
+        assertTrue(withoutParents.contains(isolated.getId()));
+        List<String> withoutChildren = getIds(copy.getAtomsWithoutChildren());
+        assertEquals(2, withoutChildren.size());
+        assertTrue(withoutChildren.contains(child.getId()));
+
+        // an import into a graph which already has atoms counts only the atoms it adds or links to,
+        // here giving a parent to an atom which had none, while the count of an atom it does not touch is not visited
+        copy.getPropertyGraph().getVertex(child.getId()).setProperty("parentCount", 7);
+        PGAtomGraph more = new PGAtomGraph(new TinkerGraph());
+        Atom parent = createAtom(more, filter, "parent");
+        Atom sameAsIsolated = more.createAtom(filter, isolated.getId());
+        sameAsIsolated.setValue("isolated");
+        parent.addChildAt(sameAsIsolated, 0);
+        importGraphML(copy, export(more));
+        assertEquals(4, getIds(copy.getAllAtoms()).size());
+        assertFalse(getIds(copy.getAtomsWithoutParents()).contains(isolated.getId()));
+        assertEquals(1, copy.getAtom(isolated.getId()).getNumberOfParents());
+        assertEquals(0, copy.getAtom(parent.getId()).getNumberOfParents());
+        assertEquals(1, copy.getAtom(parent.getId()).getNumberOfChildren());
+        assertEquals(7, copy.getPropertyGraph().getVertex(child.getId()).getProperty("parentCount"));
+    }
+
+    @Test
+    public void testFailedImportLeavesNoVertices() throws Exception {
+        PGAtomGraph original = new PGAtomGraph(new TinkerGraph());
+        Filter filter = new Filter();
+        Atom root = createAtom(original, filter, "root");
+        root.addChildAt(createAtom(original, filter, "child"), 0);
+        createAtom(original, filter, "isolated");
+
+        // the dump is cut off after its first two vertices
+        String graphML = export(original);
+        int cut = graphML.indexOf("</node>", graphML.indexOf("</node>") + 1) + "</node>".length();
+        PGAtomGraph copy = new PGAtomGraph(new TinkerGraph());
+        try {
+            importGraphML(copy, graphML.substring(0, cut));
+            fail("truncated dump was imported");
+        } catch (Exception e) {
+            // expected
+        }
+
+        assertFalse(copy.getPropertyGraph().getVertices().iterator().hasNext());
+        assertFalse(copy.getAllAtoms().iterator().hasNext());
+    }
+
+    private Atom createAtom(final PGAtomGraph graph, final Filter filter, final String value) {
+        Atom a = graph.createAtom(filter, null);
+        a.setValue(value);
+        return a;
+    }
+
+    private List<String> getIds(final Iterable<Atom> atoms) {
+        List<String> ids = new ArrayList<>();
+        for (Atom a : atoms) {
+            ids.add(a.getId());
+        }
+        return ids;
+    }
+
+    private String export(final PGAtomGraph graph) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BrainWriter.Context context = new BrainWriter.Context();
+        context.setAtomGraph(graph);
+        context.setDestStream(out);
+        context.setFormat(GraphMLFormat.getInstance());
+        new GraphMLWriter().doExport(context);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void importGraphML(final PGAtomGraph graph, final String graphML) throws Exception {
+        BrainReader.Context context = new BrainReader.Context();
+        context.setAtomGraph(graph);
+        context.setSourceStream(new ByteArrayInputStream(graphML.getBytes(StandardCharsets.UTF_8)));
+        context.setFormat(GraphMLFormat.getInstance());
+        new GraphMLReader().doImport(context);
+    }
+}
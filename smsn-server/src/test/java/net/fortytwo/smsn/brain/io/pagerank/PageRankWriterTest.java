@@ -0,0 +1,71 @@
+package net.fortytwo.smsn.brain.io.pagerank;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import net.fortytwo.smsn.brain.io.BrainWriter;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PageRankWriterTest {
+
+    @Test
+    public void testFilteredAtomsAreExcluded() throws Exception {
+        AtomGraph atomGraph = new PGAtomGraph(new TinkerGraph());
+        Filter filter = new Filter();
+        Atom a = createAtom(atomGraph, filter);
+        Atom b = createAtom(atomGraph, filter);
+        Atom hidden = createAtom(atomGraph, filter);
+        hidden.setSharability(0.25f);
+        // a's only link to b passes through the hidden atom
+        a.addChildAt(hidden, 0);
+        hidden.addChildAt(b, 0);
+
+        Map<String, Double> scores = export(atomGraph, new Filter(0f, 1f, 0.5f, 0.3f, 1f, 0.75f));
+
+        assertEquals(2, scores.size());
+        assertFalse(scores.containsKey(hidden.getId()));
+        // without the hidden atom, neither remaining atom links to the other, so they share the rank evenly
+        assertEquals(0.5, scores.get(a.getId()), 1e-9);
+        assertEquals(0.5, scores.get(b.getId()), 1e-9);
+
+        // without a filter, all atoms are ranked, and b gains from its incoming link
+        scores = export(atomGraph, null);
+        assertEquals(3, scores.size());
+        assertTrue(scores.get(b.getId()) > scores.get(a.getId()));
+    }
+
+    private Atom createAtom(final AtomGraph atomGraph, final Filter filter) {
+        Atom a = atomGraph.createAtom(filter, null);
+        a.setValue("atom");
+        return a;
+    }
+
+    private Map<String, Double> export(final AtomGraph atomGraph, final Filter filter) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BrainWriter.Context context = new BrainWriter.Context();
+        context.setAtomGraph(atomGraph);
+        context.setFilter(filter);
+        context.setDestStream(out);
+        context.setFormat(PageRankTSVFormat.getInstance());
+        new PageRankWriter().doExport(context);
+
+        Map<String, Double> scores = new HashMap<>();
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals("id\tscore", lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split("\t");
+            scores.put(fields[0], Double.valueOf(fields[1]));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,99 @@
+package net.fortytwo.smsn.brain.io.pagerank;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SparsePageRankTest {
+    private static final double ALPHA = 0.15;
+
+    @Test
+    public void testRanksOfSmallGraph() throws Exception {
+        SparsePageRank.Builder b = new SparsePageRank.Builder(3);
+        b.addEdge(0, 1);
+        b.addEdge(0, 2);
+        b.addEdge(1, 2);
+        b.addEdge(2, 0);
+
+        // solved by hand from r = alpha/n + (1 - alpha) * (sum of the shares of incoming edges)
+        double[] scores = b.build().evaluate(ALPHA, 1e-12, 1000, 1);
+        assertArrayEquals(new double[]{686.0 / 1769, 380.0 / 1769, 703.0 / 1769}, scores, 1e-9);
+    }
+
+    @Test
+    public void testRankOfDanglingVerticesIsRedistributed() throws Exception {
+        // vertex 1 has no outgoing edges, and vertex 2 has no edges at all
+        SparsePageRank.Builder b = new SparsePageRank.Builder(3);
+        b.addEdge(0, 1);
+
+        double[] scores = b.build().evaluate(ALPHA, 1e-12, 1000, 1);
+        assertArrayEquals(new double[]{1 / 3.85, 1.85 / 3.85, 1 / 3.85}, scores, 1e-9);
+        assertEquals(1.0, sum(scores), 1e-9);
+    }
+
+    @Test
+    public void testEmptyGraph() throws Exception {
+        assertEquals(0, new SparsePageRank.Builder(0).build().evaluate(ALPHA, 1e-6, 100, 1).length);
+    }
+
+    @Test
+    public void testIterationStopsAtTolerance() throws Exception {
+        SparsePageRank pageRank = createRandomGraph(1000, 5000, new Random(42));
+        double[] exact = pageRank.evaluate(ALPHA, 1e-15, 10000, 1);
+
+        // a tolerance which any iteration meets allows only a single iteration
+        assertArrayEquals(pageRank.evaluate(ALPHA, 0, 1, 1), pageRank.evaluate(ALPHA, 10, 1000, 1), 0);
+
+        // a looser tolerance stops earlier, but not before the scores are within a bound of the exact scores.
+        // Each iteration shrinks the error by a factor of (1 - alpha), so the error which remains
+        // is at most (1 - alpha) / alpha times the change of the last iteration
+        double tolerance = 1e-4;
+        double[] approximate = pageRank.evaluate(ALPHA, tolerance, 10000, 1);
+        double error = distance(exact, approximate);
+        assertTrue(error > 0);
+        assertTrue(error < tolerance * (1 - ALPHA) / ALPHA);
+        assertEquals(1.0, sum(approximate), 1e-9);
+    }
+
+    @Test
+    public void testParallelScoresEqualSequentialScores() throws Exception {
+        // large enough to be divided among several threads
+        SparsePageRank pageRank = createRandomGraph(50000, 200000, new Random(42));
+
+        double[] sequential = pageRank.evaluate(ALPHA, 1e-9, 100, 1);
+        double[] parallel = pageRank.evaluate(ALPHA, 1e-9, 100, 4);
+
+        // the order of summation differs between chunks, so the scores may differ in the last few bits
+        assertArrayEquals(sequential, parallel, 1e-15);
+        assertEquals(1.0, sum(parallel), 1e-9);
+    }
+
+    private SparsePageRank createRandomGraph(final int vertices, final int edges, final Random random) {
+        SparsePageRank.Builder b = new SparsePageRank.Builder(vertices);
+        for (int i = 0; i < edges; i++) {
+            // only the first half of the vertices have outgoing edges, so that many vertices are dangling
+            b.addEdge(random.nextInt(vertices / 2), random.nextInt(vertices));
+        }
+        return b.build();
+    }
+
+    private double sum(final double[] scores) {
+        double sum = 0;
+        for (double s : scores) {
+            sum += s;
+        }
+        return sum;
+    }
+
+    private double distance(final double[] a, final double[] b) {
+        double d = 0;
+        for (int i = 0; i < a.length; i++) {
+            d += Math.abs(a[i] - b[i]);
+        }
+        return d;
+    }
+}
@@ -0,0 +1,312 @@
+package net.fortytwo.smsn.server;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.brain.util.Deadline;
+import net.fortytwo.smsn.server.action.CancelJob;
+import net.fortytwo.smsn.server.action.GetJobs;
+import net.fortytwo.smsn.server.error.BadRequestException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JobsTest {
+    private static final long TIMEOUT = 10000;
+
+    // releases any job still waiting at the end of a test
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    public void testIdenticalSubmissionsShareAJob() throws Exception {
+        Jobs jobs = new Jobs();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        Jobs.Task task = j -> {
+            runs.incrementAndGet();
+            started.countDown();
+            release.await();
+        };
+
+        Jobs.Job job = jobs.submit("export", "/tmp/a", task);
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        // the same kind and target while the job is running
+        assertSame(job, jobs.submit("export", "/tmp/a", task));
+        // a different target
+        Jobs.Job other = jobs.submit("export", "/tmp/b", j -> {
+        });
+        assertNotSame(job, other);
+
+        release.countDown();
+        awaitFinished(job);
+        awaitFinished(other);
+        assertEquals(Jobs.Status.Succeeded, job.getStatus());
+        assertEquals(1, runs.get());
+
+        // once the job has finished, the same kind and target is run again
+        Jobs.Job again = jobs.submit("export", "/tmp/a", task);
+        assertNotSame(job, again);
+        awaitFinished(again);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testQueuedJobIsCancelledWithoutRunning() throws Exception {
+        Jobs jobs = new Jobs();
+        List<Jobs.Job> blockers = occupyAllThreads(jobs);
+
+        AtomicInteger runs = new AtomicInteger();
+        Jobs.Job queued = jobs.submit("import", "/tmp/queued", j -> runs.incrementAndGet());
+        assertEquals(Jobs.Status.Queued, queued.getStatus());
+
+        assertTrue(jobs.cancel(queued.getId()));
+        // a queued job is cancelled at once
+        assertEquals(Jobs.Status.Cancelled, queued.getStatus());
+        assertFalse(jobs.cancel(queued.getId()));
+
+        release.countDown();
+        for (Jobs.Job b : blockers) {
+            awaitFinished(b);
+        }
+        // once the blockers have finished, the cancelled job is taken from the queue, but not run
+        Thread.sleep(100);
+        assertEquals(0, runs.get());
+        assertEquals(Jobs.Status.Cancelled, queued.getStatus());
+    }
+
+    @Test
+    public void testRunningJobStopsAtItsNextCheck() throws Exception {
+        Jobs jobs = new Jobs();
+        CountDownLatch started = new CountDownLatch(1);
+        Jobs.Job job = jobs.submit("import", "/tmp/running", j -> {
+            started.countDown();
+            while (true) {
+                Deadline.check();
+                Thread.sleep(1);
+            }
+        });
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(Jobs.Status.Running, job.getStatus());
+
+        assertTrue(jobs.cancel(job.getId()));
+        awaitFinished(job);
+        assertEquals(Jobs.Status.Cancelled, job.getStatus());
+        assertFalse(jobs.cancel(job.getId()));
+    }
+
+    @Test
+    public void testJobWhichHasBegunToCompleteIsNotCancelled() throws Exception {
+        Jobs jobs = new Jobs();
+        CountDownLatch completing = new CountDownLatch(1);
+        Jobs.Job job = jobs.submit("export", "/tmp/completing", j -> {
+            assertTrue(Deadline.completeCurrent());
+            completing.countDown();
+            release.await();
+        });
+        assertTrue(completing.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        assertFalse(jobs.cancel(job.getId()));
+        release.countDown();
+        awaitFinished(job);
+        assertEquals(Jobs.Status.Succeeded, job.getStatus());
+    }
+
+    @Test
+    public void testFailedJobIsReported() throws Exception {
+        Jobs jobs = new Jobs();
+        Jobs.Job job = jobs.submit("import", "/tmp/failing", j -> {
+            throw new IllegalStateException("no such file");
+        });
+        awaitFinished(job);
+
+        assertEquals(Jobs.Status.Failed, job.getStatus());
+        assertEquals("no such file", job.toMap().get("message"));
+    }
+
+    @Test
+    public void testProgressIsReported() throws Exception {
+        Jobs jobs = new Jobs();
+        CountDownLatch reported = new CountDownLatch(1);
+        Jobs.Job job = jobs.submit("import", "/tmp/dir", j -> {
+            j.setFilesCompleted(1, 4);
+            reported.countDown();
+            release.await();
+        });
+        assertTrue(reported.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0.25, job.getProgress(), 0);
+        assertEquals(4, job.toMap().get("filesTotal"));
+
+        release.countDown();
+        awaitFinished(job);
+        // a job which has succeeded is complete, whatever it last reported
+        assertEquals(1, job.getProgress(), 0);
+
+        CountDownLatch bytesReported = new CountDownLatch(1);
+        CountDownLatch bytesRead = new CountDownLatch(1);
+        Jobs.Job bytes = jobs.submit("import", "/tmp/file", j -> {
+            j.setBytesProcessed(300, 400);
+            bytesReported.countDown();
+            bytesRead.await();
+        });
+        assertTrue(bytesReported.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0.75, bytes.getProgress(), 0);
+        assertEquals(400L, bytes.toMap().get("bytesTotal"));
+        bytesRead.countDown();
+        awaitFinished(bytes);
+
+        // progress in atoms is estimated from the last successful job of the same kind and target
+        Jobs.Job first = jobs.submit("export", "/tmp/atoms", j -> {
+            for (int i = 0; i < 10; i++) {
+                j.atomProcessed();
+            }
+        });
+        awaitFinished(first);
+        assertEquals(10L, first.toMap().get("atomsProcessed"));
+
+        CountDownLatch halfway = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Jobs.Job second = jobs.submit("export", "/tmp/atoms", j -> {
+            for (int i = 0; i < 5; i++) {
+                j.atomProcessed();
+            }
+            halfway.countDown();
+            finish.await();
+        });
+        assertTrue(halfway.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0.5, second.getProgress(), 0);
+        assertTrue(second.getEstimatedTimeRemaining() >= 0);
+        finish.countDown();
+        awaitFinished(second);
+
+        // without an earlier job, progress in atoms is unknown
+        Jobs.Job unknown = jobs.submit("export", "/tmp/other", j -> j.atomProcessed());
+        assertEquals(-1, unknown.getEstimatedTimeRemaining());
+        awaitFinished(unknown);
+    }
+
+    @Test
+    public void testFinishedJobsAreForgotten() throws Exception {
+        int finishedJobs = SemanticSynchrony.getConfiguration().getInt(Jobs.PROP_FINISHED_JOBS, 100);
+
+        Jobs jobs = new Jobs();
+        List<Jobs.Job> all = new ArrayList<>();
+        for (int i = 0; i < finishedJobs + 2; i++) {
+            Jobs.Job job = jobs.submit("export", "/tmp/" + i, j -> {
+            });
+            awaitFinished(job);
+            all.add(job);
+        }
+
+        // the oldest finished jobs make way for newer ones
+        assertNull(jobs.getJob(all.get(0).getId()));
+        assertSame(all.get(all.size() - 1), jobs.getJob(all.get(all.size() - 1).getId()));
+        assertTrue(jobs.getJobs().size() <= finishedJobs + 1);
+    }
+
+    @Test
+    public void testJobsAreRetrievedAndCancelledThroughActions() throws Exception {
+        TinkerGraph graph = new TinkerGraph();
+        CountDownLatch started = new CountDownLatch(1);
+        String target = "/tmp/" + SemanticSynchrony.createRandomKey();
+        Jobs.Job job = Action.getJobs().submit("import", target, j -> {
+            started.countDown();
+            while (true) {
+                Deadline.check();
+                Thread.sleep(1);
+            }
+        });
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        Action.RequestParams p = handle(new GetJobs(), graph, job.getId());
+        org.codehaus.jettison.json.JSONObject json = (org.codehaus.jettison.json.JSONObject) p.map.get(Params.JOB);
+        assertEquals(job.getId(), json.getString("id"));
+        assertEquals("Running", json.getString("status"));
+        assertEquals(target, json.getString("target"));
+
+        p = handle(new GetJobs(), graph, null);
+        org.codehaus.jettison.json.JSONArray array = (org.codehaus.jettison.json.JSONArray) p.map.get(Params.JOBS);
+        boolean found = false;
+        for (int i = 0; i < array.length(); i++) {
+            if (job.getId().equals(array.getJSONObject(i).getString("id"))) {
+                found = true;
+            }
+        }
+        assertTrue(found);
+
+        handle(new CancelJob(), graph, job.getId());
+        awaitFinished(job);
+        assertEquals(Jobs.Status.Cancelled, job.getStatus());
+
+        // a finished job can no longer be cancelled
+        try {
+            handle(new CancelJob(), graph, job.getId());
+            fail("a finished job should not be cancelled");
+        } catch (BadRequestException e) {
+            // expected
+        }
+
+        try {
+            handle(new GetJobs(), graph, "nosuchjob");
+            fail("there should be no such job");
+        } catch (BadRequestException e) {
+            // expected
+        }
+    }
+
+    // takes up every thread of the executor with a job which waits to be released
+    private List<Jobs.Job> occupyAllThreads(final Jobs jobs) throws Exception {
+        int threads = Math.max(1, SemanticSynchrony.getConfiguration().getInt(Jobs.PROP_JOB_THREADS, 1));
+        CountDownLatch started = new CountDownLatch(threads);
+        List<Jobs.Job> blockers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            blockers.add(jobs.submit("blocker", "" + i, j -> {
+                started.countDown();
+                release.await();
+            }));
+        }
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        return blockers;
+    }
+
+    private Action.RequestParams handle(final Action action, final TinkerGraph graph, final String jobId)
+            throws Exception {
+        JSONObject request = new JSONObject();
+        if (null != jobId) {
+            request.put(Params.JOB_ID, jobId);
+        }
+
+        Action.RequestParams p = Action.createParams(graph);
+        action.parseRequest(request, p);
+        action.handleRequestInternal(p);
+        return p;
+    }
+
+    private void awaitFinished(final Jobs.Job job) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (!job.isFinished()) {
+            if (System.currentTimeMillis() > timeout) {
+                fail("job did not finish in time: " + job.getId());
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package net.fortytwo.smsn.server;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import net.fortytwo.smsn.brain.util.Deadline;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestExecutorTest {
+    private static final long TIMEOUT = 10000;
+
+    private final Action view = new TestAction("view", false);
+    private final Action export = new TestAction("export", true);
+    private final Action infer = new TestAction("infer", true);
+
+    // the threads of clients which wait for their requests
+    private final ExecutorService clients = Executors.newCachedThreadPool();
+    // releases any request still waiting at the end of a test
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        clients.shutdownNow();
+    }
+
+    @Test
+    public void testRequestsAreRunInTheirLanes() throws Exception {
+        RequestExecutor executor = new RequestExecutor(1, 1, 1, TIMEOUT, TIMEOUT);
+
+        String lane = execute(executor, view, () -> Thread.currentThread().getName());
+        assertTrue(lane.startsWith("smsn-interactive-"));
+        lane = execute(executor, export, () -> Thread.currentThread().getName());
+        assertTrue(lane.startsWith("smsn-batch-"));
+
+        // an interactive request does not wait for a long-running request
+        CountDownLatch started = new CountDownLatch(1);
+        Future<String> running = submit(executor, export, () -> {
+            started.countDown();
+            release.await();
+            return "exported";
+        });
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("viewed", execute(executor, view, () -> "viewed"));
+
+        release.countDown();
+        assertEquals("exported", running.get(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRequestIsRejectedWhenItsLaneIsFull() throws Exception {
+        RequestExecutor executor = new RequestExecutor(1, 1, 1, TIMEOUT, TIMEOUT);
+
+        // one request runs, and another waits in the queue
+        CountDownLatch started = new CountDownLatch(1);
+        Future<String> running = submit(executor, view, () -> {
+            started.countDown();
+            release.await();
+            return "first";
+        });
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Future<String> queued = submit(executor, view, () -> "second");
+        awaitQueued(executor, queued);
+
+        try {
+            execute(executor, view, () -> "third");
+            fail("a request should not fit in a full lane");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        release.countDown();
+        assertEquals("first", running.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("second", queued.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("fourth", execute(executor, view, () -> "fourth"));
+    }
+
+    @Test
+    public void testLongRunningRequestsAreLimitedPerAction() throws Exception {
+        RequestExecutor executor = new RequestExecutor(1, 2, 1, TIMEOUT, TIMEOUT);
+
+        CountDownLatch started = new CountDownLatch(1);
+        Future<String> running = submit(executor, export, () -> {
+            started.countDown();
+            release.await();
+            return "exported";
+        });
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // by default, one long-running request of each action at a time
+        try {
+            execute(executor, export, () -> "again");
+            fail("a second export should not run at the same time as the first");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals("inferred", execute(executor, infer, () -> "inferred"));
+
+        release.countDown();
+        assertEquals("exported", running.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("again", execute(executor, export, () -> "again"));
+    }
+
+    @Test
+    public void testPermitIsReleasedOnFailure() throws Exception {
+        RequestExecutor executor = new RequestExecutor(1, 1, 1, TIMEOUT, TIMEOUT);
+
+        // a request which fails
+        try {
+            execute(executor, export, () -> {
+                throw new IllegalStateException("failed");
+            });
+            fail("the failure should reach the client");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals("exported", execute(executor, export, () -> "exported"));
+
+        // a request which is rejected because its lane is full
+        CountDownLatch started = new CountDownLatch(1);
+        Future<String> running = submit(executor, infer, () -> {
+            started.countDown();
+            release.await();
+            return "inferred";
+        });
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Future<String> queued = submit(executor, new TestAction("import", true), () -> "imported");
+        awaitQueued(executor, queued);
+        try {
+            execute(executor, export, () -> "exported");
+            fail("a request should not fit in a full lane");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        release.countDown();
+        assertEquals("inferred", running.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("imported", queued.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("exported", execute(executor, export, () -> "exported"));
+    }
+
+    @Test
+    public void testRequestIsCancelledAtItsDeadline() throws Exception {
+        RequestExecutor executor = new RequestExecutor(1, 1, 1, 200, TIMEOUT);
+
+        // a request which checks its deadline stops at the next check
+        CountDownLatch stopped = new CountDownLatch(1);
+        try {
+            execute(executor, view, () -> {
+                try {
+                    while (true) {
+                        Deadline.check();
+                        Thread.sleep(1);
+                    }
+                } finally {
+                    stopped.countDown();
+                }
+            });
+            fail("the request should have been cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+        assertTrue(stopped.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // a request which does not check its deadline may not commit once the deadline has passed
+        AtomicBoolean committed = new AtomicBoolean(true);
+        CountDownLatch finished = new CountDownLatch(1);
+        try {
+            execute(executor, view, () -> {
+                Thread.sleep(400);
+                committed.set(Deadline.completeCurrent());
+                finished.countDown();
+                return "viewed";
+            });
+            fail("the request should have been cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+        assertTrue(finished.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertFalse(committed.get());
+    }
+
+    @Test
+    public void testCommitInProgressIsWaitedFor() throws Exception {
+        RequestExecutor executor = new RequestExecutor(1, 1, 1, 200, TIMEOUT);
+
+        // the request begins to commit before its deadline, and finishes after it
+        assertEquals("committed", execute(executor, view, () -> {
+            assertTrue(Deadline.completeCurrent());
+            Thread.sleep(400);
+            return "committed";
+        }));
+    }
+
+    private <T> T execute(final RequestExecutor executor, final Action action, final Callable<T> task) {
+        return executor.execute(Collections.singletonList(action),
+                Collections.singletonList(Action.createParams(new TinkerGraph())), task);
+    }
+
+    private <T> Future<T> submit(final RequestExecutor executor, final Action action, final Callable<T> task) {
+        return clients.submit(() -> execute(executor, action, task));
+    }
+
+    // waits until a request has been accepted into the queue of its lane, or has failed
+    private void awaitQueued(final RequestExecutor executor, final Future<?> request) throws Exception {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (!request.isDone() && executor.getQueuedRequests() == 0) {
+            if (System.currentTimeMillis() > timeout) {
+                fail("request was not queued in time");
+            }
+            Thread.sleep(10);
+        }
+        assertFalse(request.isDone());
+    }
+
+    private static class TestAction extends Action {
+        private final String name;
+        private final boolean longRunning;
+
+        private TestAction(final String name, final boolean longRunning) {
+            this.name = name;
+            this.longRunning = longRunning;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void parseRequest(final JSONObject request, final RequestParams p) {
+        }
+
+        @Override
+        protected void performTransaction(final RequestParams p) {
+        }
+
+        @Override
+        protected boolean doesRead() {
+            return false;
+        }
+
+        @Override
+        protected boolean doesWrite() {
+            return false;
+        }
+
+        @Override
+        protected boolean isLongRunning(final RequestParams p) {
+            return longRunning;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package net.fortytwo.smsn.server;
+
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.rexster.extension.ExtensionResponse;
+import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SmSnExtensionTest {
+    private File dir;
+    private KeyIndexableGraph graph;
+    private String arthurId, fordId;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != dir) {
+            graph.shutdown();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testNonAtomicBatchHandlesEachRequestAlone() throws Exception {
+        createGraph(new TinkerGraph());
+
+        JSONObject malformed = new JSONObject();
+        malformed.put(Params.ID, arthurId);
+
+        ExtensionResponse response = batch(false,
+                setWeight(arthurId, 0.25f),
+                setWeight("nosuchatom", 0.25f),
+                malformed,
+                setWeight(fordId, 0.75f));
+        assertEquals(200, response.getJerseyResponse().getStatus());
+
+        // the failed and malformed requests take their places in the results, and the requests around them succeed
+        org.codehaus.jettison.json.JSONArray results = getResults(response);
+        assertEquals(4, results.length());
+        assertEquals(arthurId, results.getJSONObject(0).getString("key"));
+        assertFalse(results.getJSONObject(1).has("key"));
+        assertFalse(results.getJSONObject(2).has("key"));
+        assertEquals(fordId, results.getJSONObject(3).getString("key"));
+
+        assertEquals(0.25f, getWeight(arthurId), 0f);
+        assertEquals(0.75f, getWeight(fordId), 0f);
+    }
+
+    @Test
+    public void testFailedAtomicBatchIsRolledBack() throws Exception {
+        createNeo4jGraph();
+
+        ExtensionResponse response = batch(true,
+                setWeight(arthurId, 0.25f),
+                setWeight(fordId, 0.75f),
+                setWeight("nosuchatom", 0.25f));
+        assertTrue(200 != response.getJerseyResponse().getStatus());
+
+        // the requests which succeeded before the failure are rolled back along with it
+        assertEquals(0.5f, getWeight(arthurId), 0f);
+        assertEquals(0.5f, getWeight(fordId), 0f);
+
+        response = batch(true,
+                setWeight(arthurId, 0.25f),
+                setWeight(fordId, 0.75f));
+        assertEquals(200, response.getJerseyResponse().getStatus());
+        assertEquals(2, getResults(response).length());
+        assertEquals(0.25f, getWeight(arthurId), 0f);
+        assertEquals(0.75f, getWeight(fordId), 0f);
+    }
+
+    @Test
+    public void testMalformedAtomicBatchIsNotHandled() throws Exception {
+        createGraph(new TinkerGraph());
+
+        JSONObject malformed = new JSONObject();
+        malformed.put(Params.ID, arthurId);
+
+        ExtensionResponse response = batch(true, setWeight(arthurId, 0.25f), malformed);
+        assertEquals(400, response.getJerseyResponse().getStatus());
+        assertEquals(0.5f, getWeight(arthurId), 0f);
+    }
+
+    @Test
+    public void testRequestsWhichCommitOnTheirOwnAreNotAtomic() throws Exception {
+        createGraph(new TinkerGraph());
+
+        // isolated atoms are removed in batches, each of which is committed
+        JSONObject removeIsolated = new JSONObject();
+        removeIsolated.put(Params.ACTION, "remove-isolated-atoms");
+        removeIsolated.put(Params.FILTER, filter());
+
+        ExtensionResponse response = batch(true, setWeight(arthurId, 0.25f), removeIsolated);
+        assertEquals(400, response.getJerseyResponse().getStatus());
+        assertEquals(0.5f, getWeight(arthurId), 0f);
+
+        // a background job commits on a thread of its own
+        JSONObject export = new JSONObject();
+        export.put(Params.ACTION, "export");
+        export.put(Params.FORMAT, "graphml");
+        export.put(Params.FILE, "/tmp/export.xml");
+        export.put(Params.ASYNC, true);
+        export.put(Params.FILTER, filter());
+
+        response = batch(true, setWeight(arthurId, 0.25f), export);
+        assertEquals(400, response.getJerseyResponse().getStatus());
+        assertEquals(0.5f, getWeight(arthurId), 0f);
+    }
+
+    private void createNeo4jGraph() throws Exception {
+        dir = File.createTempFile("smsn", "test");
+        dir.delete();
+        dir.mkdir();
+
+        createGraph(new Neo4jGraph(dir.getPath()));
+    }
+
+    private void createGraph(final KeyIndexableGraph graph) throws Exception {
+        this.graph = graph;
+
+        AtomGraph atomGraph = new PGAtomGraph(graph);
+        Filter f = new Filter();
+        Atom arthur = atomGraph.createAtom(f, null);
+        arthur.setValue("Arthur Dent");
+        arthur.setWeight(0.5f);
+        Atom ford = atomGraph.createAtom(f, null);
+        ford.setValue("Ford Prefect");
+        ford.setWeight(0.5f);
+        atomGraph.commit();
+
+        arthurId = arthur.getId();
+        fordId = ford.getId();
+    }
+
+    private JSONObject filter() throws Exception {
+        JSONObject f = new JSONObject();
+        f.put(Params.MIN_WEIGHT, 0f);
+        f.put(Params.MIN_SHARABILITY, 0f);
+        return f;
+    }
+
+    private JSONObject setWeight(final String id, final float weight) throws Exception {
+        JSONObject request = new JSONObject();
+        request.put(Params.ACTION, "set");
+        request.put(Params.ID, id);
+        request.put(Params.NAME, SemanticSynchrony.WEIGHT);
+        request.put(Params.VALUE, weight);
+        return request;
+    }
+
+    private ExtensionResponse batch(final boolean atomic, final JSONObject... requests) throws Exception {
+        JSONObject request = new JSONObject();
+        request.put(Params.ACTION, SmSnExtension.BATCH_ACTION);
+        request.put(Params.ATOMIC, atomic);
+        JSONArray array = new JSONArray();
+        for (JSONObject r : requests) {
+            array.put(r);
+        }
+        request.put(Params.REQUESTS, array);
+
+        return new SmSnExtension().handleRequest(graph, request.toString());
+    }
+
+    private org.codehaus.jettison.json.JSONArray getResults(final ExtensionResponse response) throws Exception {
+        return ((org.codehaus.jettison.json.JSONObject) response.getJerseyResponse().getEntity())
+                .getJSONArray(Params.RESULTS);
+    }
+
+    // read through a separate atom graph, so as to see the base graph rather than any cached properties
+    private float getWeight(final String id) {
+        return new PGAtomGraph(graph).getAtom(id).getWeight();
+    }
+}
@@ -0,0 +1,129 @@
+package net.fortytwo.smsn.server.action;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import net.fortytwo.smsn.SemanticSynchrony;
+import net.fortytwo.smsn.brain.Params;
+import net.fortytwo.smsn.brain.model.Atom;
+import net.fortytwo.smsn.brain.model.AtomGraph;
+import net.fortytwo.smsn.brain.model.Filter;
+import net.fortytwo.smsn.brain.model.pg.PGAtomGraph;
+import net.fortytwo.smsn.server.Action;
+import net.fortytwo.smsn.server.error.BadRequestException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class BulkSetPropertiesTest {
+    private TinkerGraph graph;
+    private AtomGraph atomGraph;
+    private Atom arthur, ford, zaphod;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new TinkerGraph();
+        atomGraph = new PGAtomGraph(graph);
+
+        Filter f = new Filter();
+        arthur = atomGraph.createAtom(f, null);
+        arthur.setValue("Arthur Dent");
+        ford = atomGraph.createAtom(f, null);
+        ford.setValue("Ford Prefect");
+        zaphod = atomGraph.createAtom(f, null);
+        zaphod.setValue("Zaphod Beeblebrox");
+    }
+
+    @Test
+    public void testOverriddenShortcutIsNotTakenFromItsHolder() throws Exception {
+        ford.setShortcut("x");
+        zaphod.setShortcut("y");
+
+        bulkSet(null, shortcut(arthur, "x"), shortcut(arthur, "y"));
+
+        // as if the first shortcut had never been given: Ford keeps it, and only the final shortcut moves
+        assertEquals("y", getShortcut(arthur));
+        assertEquals("x", getShortcut(ford));
+        assertNull(getShortcut(zaphod));
+    }
+
+    @Test
+    public void testShortcutMayBeReusedOnceOverridden() throws Exception {
+        bulkSet(null, shortcut(arthur, "x"), shortcut(arthur, "y"), shortcut(ford, "x"));
+
+        assertEquals("y", getShortcut(arthur));
+        assertEquals("x", getShortcut(ford));
+
+        try {
+            bulkSet(null, shortcut(arthur, "z"), shortcut(ford, "z"));
+            fail("two atoms should not be given the same shortcut");
+        } catch (BadRequestException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testShortcutIsNotTakenFromHiddenAtoms() throws Exception {
+        ford.setShortcut("x");
+        ford.setSharability(0.25f);
+        zaphod.setShortcut("y");
+
+        // an atom outside of the filter may not lose its shortcut, nor be left sharing it, so the request is rejected
+        // before any shortcut is released
+        try {
+            bulkSet(new Filter(0f, 1f, 0.5f, 0.3f, 1f, 0.5f), shortcut(arthur, "y"), shortcut(zaphod, "x"));
+            fail("shortcut of a hidden atom should not be taken");
+        } catch (BadRequestException e) {
+            // expected
+        }
+        assertNull(getShortcut(arthur));
+        assertEquals("x", getShortcut(ford));
+        assertEquals("y", getShortcut(zaphod));
+
+        // a shortcut held only by visible atoms is taken from them under the same filter
+        bulkSet(new Filter(0f, 1f, 0.5f, 0.3f, 1f, 0.5f), shortcut(arthur, "y"));
+        assertEquals("y", getShortcut(arthur));
+        assertNull(getShortcut(zaphod));
+
+        // without a filter, the shortcut is taken from any atom
+        bulkSet(null, shortcut(zaphod, "x"));
+        assertEquals("x", getShortcut(zaphod));
+        assertNull(getShortcut(ford));
+    }
+
+    private JSONObject shortcut(final Atom a, final String shortcut) throws Exception {
+        JSONObject v = new JSONObject();
+        v.put(Params.ID, a.getId());
+        v.put(Params.NAME, SemanticSynchrony.SHORTCUT);
+        v.put(Params.VALUE, shortcut);
+        return v;
+    }
+
+    private void bulkSet(final Filter filter, final JSONObject... values) throws Exception {
+        JSONObject request = new JSONObject();
+        JSONArray array = new JSONArray();
+        for (JSONObject v : values) {
+            array.put(v);
+        }
+        request.put(Params.PROPERTIES, array);
+        if (null != filter) {
+            JSONObject f = new JSONObject();
+            f.put(Params.MIN_WEIGHT, filter.getMinWeight());
+            f.put(Params.MIN_SHARABILITY, filter.getMinSharability());
+            request.put(Params.FILTER, f);
+        }
+
+        BulkSetProperties action = new BulkSetProperties();
+        Action.RequestParams p = Action.createParams(graph);
+        action.parseRequest(request, p);
+        action.handleRequestInternal(p);
+    }
+
+    // read through a separate atom graph, so as to see the base graph rather than any cached properties
+    private String getShortcut(final Atom a) {
+        return new PGAtomGraph(graph).getAtom(a.getId()).getShortcut();
+    }
+}